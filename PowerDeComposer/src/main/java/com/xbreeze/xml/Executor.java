@@ -25,14 +25,20 @@ package com.xbreeze.xml;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
+import com.xbreeze.xml.batch.BatchExecutor;
+import com.xbreeze.xml.batch.BatchJobResult;
 import com.xbreeze.xml.compose.XmlComposer;
 import com.xbreeze.xml.config.PowerDeComposerConfig;
 import com.xbreeze.xml.decompose.XmlDecomposer;
+import com.xbreeze.xml.server.PowerDeComposerClient;
+import com.xbreeze.xml.server.PowerDeComposerServer;
 
 public class Executor {
 
@@ -71,7 +77,44 @@ public class Executor {
 		
 		// Check the passed arguments.
 		try {
-			if (args.length == 3 || args.length == 4) {
+			if (args.length >= 1 && args[0].equalsIgnoreCase("batch")) {
+				if (args.length != 2 && args.length != 3)
+					throw new Exception("Expecting exactly 2 or 3 arguments: (batch, manifest-file-location[, thread-count]).");
+				
+				// By default run as many jobs in parallel as there are processors.
+				int threadCount = Runtime.getRuntime().availableProcessors();
+				if (args.length == 3) {
+					try {
+						threadCount = Integer.parseInt(args[2].trim());
+					} catch (NumberFormatException e) {
+						throw new Exception(String.format("The thread-count should be a number, found '%s'.", args[2]));
+					}
+					if (threadCount < 1)
+						throw new Exception(String.format("The thread-count should be at least 1, found '%d'.", threadCount));
+				}
+				
+				// Execute the batch and fail if any of the jobs failed.
+				List<BatchJobResult> batchJobResults = new BatchExecutor(threadCount).execute(Paths.get(args[1].trim()).toFile());
+				long failedJobCount = batchJobResults.stream().filter(r -> !r.isSuccessful()).count();
+				if (failedJobCount > 0)
+					throw new Exception(String.format("%d of the %d batch jobs failed.", failedJobCount, batchJobResults.size()));
+			} else if (args.length >= 1 && args[0].equalsIgnoreCase("server")) {
+				if (args.length != 2)
+					throw new Exception("Expecting exactly 2 arguments: (server, port).");
+				
+				// Handle requests until the server receives the shutdown request.
+				try (PowerDeComposerServer server = new PowerDeComposerServer(parsePort(args[1]))) {
+					server.run();
+				}
+			} else if (args.length >= 1 && args[0].equalsIgnoreCase("client")) {
+				if (args.length < 3)
+					throw new Exception("Expecting at least 3 arguments: (client, port, operation[, arguments]).");
+				
+				// Send the operation with its arguments to the server and exit with the exit code of the operation.
+				int exitCode = new PowerDeComposerClient(parsePort(args[1])).execute(Arrays.copyOfRange(args, 2, args.length), System.out);
+				if (exitCode != 0)
+					System.exit(exitCode);
+			} else if (args.length == 3 || args.length == 4) {
 				String operationType = args[0];
 				
 				// Parse the config.
@@ -84,21 +127,10 @@ public class Executor {
 					pdcConfig = PowerDeComposerConfig.GetDefaultConfig();
 				}
 				
-				// Perform the operation. 
-				if (operationType.equalsIgnoreCase("decompose")) {
-					String xmlFilePath = args[1].trim();
-					String targetDirectory = args[2].trim();
-					new XmlDecomposer(xmlFilePath, targetDirectory, pdcConfig.getDecomposeConfig());
-				} else
-					if (operationType.equalsIgnoreCase("compose")) {
-						String xmlSourceFile = args[1].trim();
-						String xmlTargetFile = args[2].trim();
-						new XmlComposer(xmlSourceFile, xmlTargetFile);
-					} else {
-						throw new Exception("First argument should be compose or decompose");
-					}
+				// Perform the operation.
+				executeOperation(operationType, args[1].trim(), args[2].trim(), pdcConfig);
 			} else {
-				throw new Exception("Expecting exactly 3 or 4 arguments: (decompose, xml-file-path, target-directory[, config-file-location]) or (compose, xml-source-file, xml-target-file[, config-file-location]).");
+				throw new Exception("Expecting exactly 3 or 4 arguments: (decompose, xml-file-path, target-directory[, config-file-location]) or (compose, xml-source-file, xml-target-file[, config-file-location]), or 2 or 3 arguments: (batch, manifest-file-location[, thread-count]), or 2 arguments: (server, port), or at least 3 arguments: (client, port, operation[, arguments]).");
 			}
 		} catch (Exception e) {
 			System.err.println("An error ocurred while running PowerDeComposer: ");
@@ -107,4 +139,40 @@ public class Executor {
 			System.exit(1);
 		}
 	}
+	
+	/**
+	 * Parse the port argument of the server or client.
+	 * @param port The port argument.
+	 * @return The port number.
+	 * @throws Exception When the port isn't a valid port number.
+	 */
+	private static int parsePort(String port) throws Exception {
+		try {
+			int portNumber = Integer.parseInt(port.trim());
+			if (portNumber >= 0 && portNumber <= 65535)
+				return portNumber;
+		} catch (NumberFormatException e) {
+			// The error is thrown below.
+		}
+		throw new Exception(String.format("The port should be a number between 0 and 65535, found '%s'.", port));
+	}
+	
+	/**
+	 * Perform a single compose or decompose operation.
+	 * @param operationType The operation type (compose or decompose).
+	 * @param source The xml file to decompose or the xml source file to compose.
+	 * @param target The target directory to decompose into or the xml target file to compose into.
+	 * @param pdcConfig The PowerDeComposerConfig to use.
+	 * @throws Exception
+	 */
+	public static void executeOperation(String operationType, String source, String target, PowerDeComposerConfig pdcConfig) throws Exception {
+		if (operationType.equalsIgnoreCase("decompose")) {
+			new XmlDecomposer(source, target, pdcConfig.getDecomposeConfig());
+		} else
+			if (operationType.equalsIgnoreCase("compose")) {
+				new XmlComposer(source, target, pdcConfig.getComposeConfig());
+			} else {
+				throw new Exception("First argument should be compose or decompose");
+			}
+	}
 }
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.batch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import com.xbreeze.xml.Executor;
+import com.xbreeze.xml.config.ConfigException;
+import com.xbreeze.xml.config.PowerDeComposerConfig;
+
+/**
+ * Class to execute a list of BatchJobs on a fixed size thread pool within one process.
+ * This way the JVM startup, config parsing and JIT warm-up are shared by all jobs in the batch.
+ */
+public class BatchExecutor {
+	private static final Logger logger = Logger.getGlobal();
+	
+	private int _threadCount;
+	
+	/**
+	 * Constructor.
+	 * @param threadCount The number of jobs to execute in parallel.
+	 */
+	public BatchExecutor(int threadCount) {
+		this._threadCount = threadCount;
+	}
+	
+	/**
+	 * Execute all jobs in the manifest file.
+	 * @param manifestFile The manifest file.
+	 * @return The results of the jobs, in the order of the manifest.
+	 * @throws Exception
+	 */
+	public List<BatchJobResult> execute(File manifestFile) throws Exception {
+		return execute(BatchManifest.fromFile(manifestFile));
+	}
+	
+	/**
+	 * Execute the batch jobs.
+	 * A failing job doesn't stop the other jobs, its error is reported in the job result.
+	 * @param batchJobs The jobs to execute.
+	 * @return The results of the jobs, in the order of the batchJobs list.
+	 * @throws Exception
+	 */
+	public List<BatchJobResult> execute(List<BatchJob> batchJobs) throws Exception {
+		logger.info(String.format("Starting batch of %d jobs using %d threads", batchJobs.size(), _threadCount));
+		long batchStartTime = System.currentTimeMillis();
+		
+		// When jobs run in parallel, the log of each job is buffered and logged when the job is finished, so the logs of the jobs aren't interleaved.
+		BatchLogHandler batchLogHandler = (_threadCount > 1) ? new BatchLogHandler(logger) : null;
+		
+		List<Callable<BatchJobResult>> batchCallables = new ArrayList<Callable<BatchJobResult>>();
+		for (BatchJob batchJob : batchJobs) {
+			batchCallables.add(() -> executeJob(batchJob, batchLogHandler));
+		}
+		
+		List<BatchJobResult> batchJobResults = new ArrayList<BatchJobResult>();
+		ExecutorService executorService = Executors.newFixedThreadPool(_threadCount);
+		try {
+			for (Future<BatchJobResult> batchJobFuture : executorService.invokeAll(batchCallables)) {
+				batchJobResults.add(batchJobFuture.get());
+			}
+		} finally {
+			executorService.shutdown();
+			if (batchLogHandler != null)
+				batchLogHandler.close();
+		}
+		
+		logSummary(batchJobResults, System.currentTimeMillis() - batchStartTime);
+		return batchJobResults;
+	}
+	
+	/**
+	 * Execute a single job and capture its outcome.
+	 * @param batchJob The job to execute.
+	 * @param batchLogHandler The handler buffering the log of the job, or null when the log isn't buffered.
+	 * @return The job result.
+	 */
+	private BatchJobResult executeJob(BatchJob batchJob, BatchLogHandler batchLogHandler) {
+		long jobStartTime = System.currentTimeMillis();
+		if (batchLogHandler != null)
+			batchLogHandler.startJob(batchJob);
+		try {
+			PowerDeComposerConfig pdcConfig = getConfig(batchJob.getConfigFilePath());
+			Executor.executeOperation(batchJob.getOperationType(), batchJob.getSourceFilePath(), batchJob.getTargetFilePath(), pdcConfig);
+			return new BatchJobResult(batchJob, 0, System.currentTimeMillis() - jobStartTime, null);
+		} catch (Exception e) {
+			logger.severe(String.format("Error while executing %s: %s", batchJob, e.getMessage()));
+			return new BatchJobResult(batchJob, 1, System.currentTimeMillis() - jobStartTime, e.getMessage());
+		} finally {
+			if (batchLogHandler != null)
+				batchLogHandler.finishJob();
+		}
+	}
+	
+	/**
+	 * Get the config for a config file location, the config is only parsed again when the config file changed.
+	 * @param configFilePath The config file location, or null for the default config.
+	 * @return The PowerDeComposerConfig.
+	 * @throws ConfigException
+	 */
+	private PowerDeComposerConfig getConfig(String configFilePath) throws ConfigException {
+		return PowerDeComposerConfig.getCachedConfig((configFilePath != null) ? new File(configFilePath) : null);
+	}
+	
+	/**
+	 * Log the status per job and the aggregated summary of the batch.
+	 */
+	private void logSummary(List<BatchJobResult> batchJobResults, long batchDurationMillis) {
+		int failedJobCount = 0;
+		logger.info("Batch job results:");
+		for (BatchJobResult batchJobResult : batchJobResults) {
+			if (batchJobResult.isSuccessful()) {
+				logger.info(String.format("  [exit code 0] %s (%d ms)", batchJobResult.getBatchJob(), batchJobResult.getDurationMillis()));
+			} else {
+				failedJobCount++;
+				logger.info(String.format("  [exit code %d] %s (%d ms): %s", batchJobResult.getExitCode(), batchJobResult.getBatchJob(), batchJobResult.getDurationMillis(), batchJobResult.getErrorMessage()));
+			}
+		}
+		logger.info(String.format("Batch finished in %d ms: %d jobs, %d succeeded, %d failed", batchDurationMillis, batchJobResults.size(), batchJobResults.size() - failedJobCount, failedJobCount));
+	}
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.batch;
+
+/**
+ * A single compose or decompose operation within a batch.
+ */
+public class BatchJob {
+	private String _operationType;
+	private String _sourceFilePath;
+	private String _targetFilePath;
+	private String _configFilePath;
+	
+	/**
+	 * Constructor.
+	 * @param operationType The operation type (compose or decompose).
+	 * @param sourceFilePath The model file to compose or decompose.
+	 * @param targetFilePath The target file (compose) or target folder (decompose).
+	 * @param configFilePath The config file location, or null when the default config should be used.
+	 */
+	public BatchJob(String operationType, String sourceFilePath, String targetFilePath, String configFilePath) {
+		this._operationType = operationType;
+		this._sourceFilePath = sourceFilePath;
+		this._targetFilePath = targetFilePath;
+		this._configFilePath = configFilePath;
+	}
+
+	public String getOperationType() {
+		return _operationType;
+	}
+
+	public String getSourceFilePath() {
+		return _sourceFilePath;
+	}
+
+	public String getTargetFilePath() {
+		return _targetFilePath;
+	}
+
+	public String getConfigFilePath() {
+		return _configFilePath;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s '%s' to '%s'", _operationType, _sourceFilePath, _targetFilePath);
+	}
+}
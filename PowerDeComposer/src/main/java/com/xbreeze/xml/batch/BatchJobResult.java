@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.batch;
+
+/**
+ * The outcome of a BatchJob.
+ */
+public class BatchJobResult {
+	private BatchJob _batchJob;
+	private int _exitCode;
+	private long _durationMillis;
+	private String _errorMessage;
+	
+	/**
+	 * Constructor.
+	 * @param batchJob The job which was executed.
+	 * @param exitCode The exit code of the job (0 is success, 1 is failure).
+	 * @param durationMillis The duration of the job in milliseconds.
+	 * @param errorMessage The error message if the job failed, otherwise null.
+	 */
+	public BatchJobResult(BatchJob batchJob, int exitCode, long durationMillis, String errorMessage) {
+		this._batchJob = batchJob;
+		this._exitCode = exitCode;
+		this._durationMillis = durationMillis;
+		this._errorMessage = errorMessage;
+	}
+
+	public BatchJob getBatchJob() {
+		return _batchJob;
+	}
+
+	public int getExitCode() {
+		return _exitCode;
+	}
+
+	public long getDurationMillis() {
+		return _durationMillis;
+	}
+
+	public String getErrorMessage() {
+		return _errorMessage;
+	}
+	
+	public boolean isSuccessful() {
+		return _exitCode == 0;
+	}
+}
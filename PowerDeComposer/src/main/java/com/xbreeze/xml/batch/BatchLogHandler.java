@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Log handler which keeps the log of the batch jobs running in parallel apart.
+ * The log records of a job are buffered while the job runs and are published together (preceded by the job) when the job is finished.
+ * The records logged by the threads a job creates (like the writer threads and the threads decomposing or composing in parallel) are part of the log of the job.
+ * When the buffer of a job is full, the buffered records are published together, so the memory used doesn't grow with the size of the log.
+ * Log records which aren't logged by a job are published directly.
+ * While the handler is installed it replaces the handlers of the logger, closing the handler restores them.
+ */
+class BatchLogHandler extends Handler {
+	// The maximum number of buffered log records of a job.
+	private static final int MAX_BUFFERED_LOG_RECORD_COUNT = 1000;
+	
+	private Logger _logger;
+	private Handler[] _formerHandlers;
+	private boolean _formerUseParentHandlers;
+	// The handlers the log records are published to.
+	private List<Handler> _targetHandlers = new ArrayList<Handler>();
+	// The log of the job running on the current thread, which is inherited by the threads created by the job (null when no job is running on the thread).
+	private InheritableThreadLocal<JobLog> _jobLog = new InheritableThreadLocal<JobLog>();
+	
+	/**
+	 * Constructor, which installs the handler on the logger.
+	 * @param logger The logger the jobs log to.
+	 */
+	public BatchLogHandler(Logger logger) {
+		this._logger = logger;
+		this._formerHandlers = logger.getHandlers();
+		this._formerUseParentHandlers = logger.getUseParentHandlers();
+		
+		// Publish to the handlers of the logger, and to the handlers of its parents when it uses them.
+		_targetHandlers.addAll(Arrays.asList(_formerHandlers));
+		for (Logger parentLogger = logger.getParent(); _formerUseParentHandlers && parentLogger != null; parentLogger = parentLogger.getUseParentHandlers() ? parentLogger.getParent() : null)
+			_targetHandlers.addAll(Arrays.asList(parentLogger.getHandlers()));
+		
+		for (Handler formerHandler : _formerHandlers)
+			logger.removeHandler(formerHandler);
+		logger.setUseParentHandlers(false);
+		logger.addHandler(this);
+		this.setLevel(Level.ALL);
+	}
+	
+	/**
+	 * Start buffering the log records of the job running on the current thread.
+	 * @param batchJob The job.
+	 */
+	public void startJob(BatchJob batchJob) {
+		_jobLog.set(new JobLog(batchJob));
+	}
+	
+	/**
+	 * Publish the buffered log records of the job running on the current thread.
+	 * Records which are logged afterwards by threads the job created are published directly.
+	 */
+	public void finishJob() {
+		JobLog jobLog = _jobLog.get();
+		_jobLog.remove();
+		if (jobLog != null)
+			jobLog.finish();
+	}
+	
+	@Override
+	public void publish(LogRecord logRecord) {
+		JobLog jobLog = _jobLog.get();
+		if (jobLog == null || !jobLog.add(logRecord)) {
+			synchronized (this) {
+				publishToTargetHandlers(logRecord);
+			}
+		}
+	}
+	
+	private void publishToTargetHandlers(LogRecord logRecord) {
+		for (Handler targetHandler : _targetHandlers)
+			targetHandler.publish(logRecord);
+	}
+	
+	@Override
+	public void flush() {
+		for (Handler targetHandler : _targetHandlers)
+			targetHandler.flush();
+	}
+	
+	/**
+	 * Restore the former handlers of the logger.
+	 */
+	@Override
+	public void close() {
+		_logger.removeHandler(this);
+		for (Handler formerHandler : _formerHandlers)
+			_logger.addHandler(formerHandler);
+		_logger.setUseParentHandlers(_formerUseParentHandlers);
+		flush();
+	}
+	
+	/**
+	 * The buffered log records of a job, which are shared by the threads of the job.
+	 */
+	private class JobLog {
+		private BatchJob _batchJob;
+		private List<LogRecord> _logRecords = new ArrayList<LogRecord>();
+		// Whether log records of the job are already published, because the buffer was full.
+		private boolean _published = false;
+		private boolean _finished = false;
+		
+		public JobLog(BatchJob batchJob) {
+			this._batchJob = batchJob;
+		}
+		
+		/**
+		 * Add a log record to the buffer, the buffered records are published when the buffer is full.
+		 * @return Whether the record is added, which isn't the case when the job is already finished.
+		 */
+		public synchronized boolean add(LogRecord logRecord) {
+			if (_finished)
+				return false;
+			_logRecords.add(logRecord);
+			if (_logRecords.size() >= MAX_BUFFERED_LOG_RECORD_COUNT)
+				publishLogRecords();
+			return true;
+		}
+		
+		/**
+		 * Publish the remaining buffered log records.
+		 */
+		public synchronized void finish() {
+			_finished = true;
+			publishLogRecords();
+		}
+		
+		private void publishLogRecords() {
+			if (_logRecords.isEmpty())
+				return;
+			LogRecord jobLogRecord = new LogRecord(Level.INFO, String.format(_published ? "Log of %s (continued):" : "Log of %s:", _batchJob));
+			// Publish the records of the job together, so they aren't interleaved with the records of other jobs.
+			synchronized (BatchLogHandler.this) {
+				publishToTargetHandlers(jobLogRecord);
+				for (LogRecord logRecord : _logRecords)
+					publishToTargetHandlers(logRecord);
+			}
+			_logRecords = new ArrayList<LogRecord>();
+			_published = true;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Class to read a batch manifest file into a list of BatchJobs.
+ * Each non-empty line in the manifest which doesn't start with '#' describes one or more jobs using the format:
+ *   operation;source;target[;config-file-location]
+ * When the source contains a glob pattern (for example 'composed/**.ldm'), a job is created for each matching file:
+ *   - For decompose the target is used as root folder and each model is decomposed into target/relative-folder/model-base-name.
+ *   - For compose the target is used as root folder and each model is composed into target/relative-folder-of-the-model-folder/model-file-name.
+ * Relative paths are resolved against the folder of the manifest file.
+ */
+public class BatchManifest {
+	private static final Logger logger = Logger.getGlobal();
+	
+	private static final String MANIFEST_SEPARATOR = ";";
+	private static final String MANIFEST_COMMENT = "#";
+	private static final String GLOB_CHARACTERS = "*?[{";
+	
+	/**
+	 * Read the manifest file and return the list of jobs to execute.
+	 * @param manifestFile The manifest file.
+	 * @return The list of jobs in the order of the manifest.
+	 * @throws Exception
+	 */
+	public static List<BatchJob> fromFile(File manifestFile) throws Exception {
+		if (!manifestFile.exists())
+			throw new Exception(String.format("The specified batch manifest doesn't exist '%s'.", manifestFile));
+		
+		// Relative paths in the manifest are resolved against the folder of the manifest.
+		Path manifestFolderPath = manifestFile.getAbsoluteFile().toPath().getParent();
+		List<BatchJob> batchJobs = new ArrayList<BatchJob>();
+		List<String> manifestLines = Files.readAllLines(manifestFile.toPath(), StandardCharsets.UTF_8);
+		for (int lineIndex = 0; lineIndex < manifestLines.size(); lineIndex++) {
+			String manifestLine = manifestLines.get(lineIndex).trim();
+			// Skip empty lines and comments.
+			if (manifestLine.length() == 0 || manifestLine.startsWith(MANIFEST_COMMENT))
+				continue;
+			
+			String[] lineParts = manifestLine.split(MANIFEST_SEPARATOR);
+			if (lineParts.length != 3 && lineParts.length != 4)
+				throw new Exception(String.format("Expecting operation;source;target[;config-file-location] on line %d of the batch manifest '%s'.", lineIndex + 1, manifestFile));
+			
+			String operationType = lineParts[0].trim();
+			if (!operationType.equalsIgnoreCase("decompose") && !operationType.equalsIgnoreCase("compose"))
+				throw new Exception(String.format("The operation on line %d of the batch manifest should be compose or decompose, found '%s'.", lineIndex + 1, operationType));
+			String source = lineParts[1].trim();
+			Path targetPath = manifestFolderPath.resolve(lineParts[2].trim());
+			String configFilePath = (lineParts.length == 4) ? manifestFolderPath.resolve(lineParts[3].trim()).toString() : null;
+			
+			if (isGlobPattern(source)) {
+				List<BatchJob> globJobs = getGlobJobs(operationType, manifestFolderPath, source, targetPath, configFilePath);
+				if (globJobs.size() == 0)
+					logger.warning(String.format("The pattern '%s' on line %d of the batch manifest didn't match any files.", source, lineIndex + 1));
+				batchJobs.addAll(globJobs);
+			} else {
+				batchJobs.add(new BatchJob(operationType, manifestFolderPath.resolve(source).toString(), targetPath.toString(), configFilePath));
+			}
+		}
+		
+		return batchJobs;
+	}
+	
+	/**
+	 * Check whether the source of a manifest line is a glob pattern.
+	 * @param source The source.
+	 * @return Whether the source contains glob characters.
+	 */
+	private static boolean isGlobPattern(String source) {
+		for (char globCharacter : GLOB_CHARACTERS.toCharArray()) {
+			if (source.indexOf(globCharacter) != -1)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Create the jobs for all files matching a glob pattern.
+	 * The folder part of the pattern before the first glob character is used as base folder, the rest of the pattern is matched against the paths relative to the base folder.
+	 * @return The list of jobs, ordered by source file path.
+	 * @throws IOException
+	 */
+	private static List<BatchJob> getGlobJobs(String operationType, Path manifestFolderPath, String sourcePattern, Path targetRootPath, String configFilePath) throws IOException {
+		// Split the pattern in the base folder and the glob part.
+		String[] patternParts = sourcePattern.replace('\\', '/').split("/");
+		int globPartIndex = 0;
+		while (globPartIndex < patternParts.length - 1 && !isGlobPattern(patternParts[globPartIndex]))
+			globPartIndex++;
+		// Resolving the base folder against the manifest folder keeps absolute base folders as they are.
+		String baseFolder = String.join("/", Arrays.copyOfRange(patternParts, 0, globPartIndex));
+		Path baseFolderPath = (globPartIndex == 0) ? manifestFolderPath : manifestFolderPath.resolve((baseFolder.length() == 0) ? "/" : baseFolder);
+		String globPattern = String.join("/", Arrays.copyOfRange(patternParts, globPartIndex, patternParts.length));
+		logger.fine(String.format("Searching for files matching '%s' in '%s'", globPattern, baseFolderPath));
+		
+		List<BatchJob> globJobs = new ArrayList<BatchJob>();
+		if (!baseFolderPath.toFile().isDirectory())
+			return globJobs;
+		
+		PathMatcher pathMatcher = baseFolderPath.getFileSystem().getPathMatcher(String.format("glob:%s", globPattern));
+		List<Path> matchingPaths;
+		try (Stream<Path> pathStream = Files.walk(baseFolderPath)) {
+			matchingPaths = pathStream
+				.filter(Files::isRegularFile)
+				.filter(p -> pathMatcher.matches(baseFolderPath.relativize(p)))
+				.sorted()
+				.collect(Collectors.toList());
+		}
+		
+		for (Path sourcePath : matchingPaths) {
+			Path relativeSourcePath = baseFolderPath.relativize(sourcePath);
+			Path targetPath;
+			if (operationType.equalsIgnoreCase("decompose")) {
+				// Decompose into target-root/relative-folder/model-base-name.
+				Path relativeFolderPath = relativeSourcePath.getParent();
+				Path targetFolderPath = (relativeFolderPath != null) ? targetRootPath.resolve(relativeFolderPath) : targetRootPath;
+				targetPath = targetFolderPath.resolve(FilenameUtils.getBaseName(sourcePath.getFileName().toString()));
+			} else {
+				// A decomposed model lives in a folder named after the model, so compose into target-root/relative-folder-of-the-model-folder/model-file-name.
+				Path relativeModelFolderPath = relativeSourcePath.getParent();
+				Path relativeFolderPath = (relativeModelFolderPath != null) ? relativeModelFolderPath.getParent() : null;
+				Path targetFolderPath = (relativeFolderPath != null) ? targetRootPath.resolve(relativeFolderPath) : targetRootPath;
+				targetPath = targetFolderPath.resolve(sourcePath.getFileName());
+			}
+			globJobs.add(new BatchJob(operationType, sourcePath.toString(), targetPath.toString(), configFilePath));
+		}
+		return globJobs;
+	}
+}
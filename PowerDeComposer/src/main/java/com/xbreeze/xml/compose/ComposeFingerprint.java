@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.compose;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import com.xbreeze.xml.utils.FileFingerprint;
+import com.xbreeze.xml.utils.FileUtils;
+
+/**
+ * Fingerprint of the files read while composing a model and the composed target file, written after composing.
+ * For each file the size, modification time, content checksum and path are stored in a file in the state directory (so it isn't part of the decomposed model or version control).
+ * On the next compose the fingerprint is used to detect the model is up-to-date, without reading and resolving the included files.
+ */
+public class ComposeFingerprint {
+	private static final Logger logger = Logger.getGlobal();
+	
+	// The extension of the fingerprint file, which is stored in the state directory (and was stored next to the composed target file by former versions).
+	public static final String FINGERPRINT_FILE_EXTENSION = ".pdcfingerprint";
+	
+	// The first line of the fingerprint file, which is used to check whether the file is a compose fingerprint file.
+	private static final String FINGERPRINT_HEADER = "# PowerDeComposer compose fingerprint 1.0: size;modification-time;crc32c;path";
+	
+	// The fingerprints of the files read while composing, taken before the file is read.
+	private ConcurrentHashMap<File, FileFingerprint> _inputFileFingerprints = new ConcurrentHashMap<File, FileFingerprint>();
+	
+	/**
+	 * Get the path of the fingerprint file for the composed target file.
+	 * The fingerprint is stored in the state directory, named after the target file and a hash of its full path.
+	 * @param stateDirectoryPath The directory in which the state of the former compose is stored.
+	 * @param targetFile The composed target file.
+	 * @return The path of the fingerprint file.
+	 * @throws Exception
+	 */
+	public static Path getFingerprintFilePath(Path stateDirectoryPath, File targetFile) throws Exception {
+		return FileUtils.getPathHashedFilePath(stateDirectoryPath, targetFile, FINGERPRINT_FILE_EXTENSION);
+	}
+	
+	/**
+	 * Get the path of the fingerprint file next to the composed target file, where former versions stored it.
+	 * @param targetFile The composed target file.
+	 * @return The path of the former fingerprint file.
+	 */
+	public static Path getFormerFingerprintFilePath(File targetFile) {
+		return targetFile.toPath().resolveSibling(targetFile.getName() + FINGERPRINT_FILE_EXTENSION);
+	}
+	
+	/**
+	 * Add a file which is read while composing, this must be called before the file is read.
+	 * This method can be called from multiple threads (when composing in parallel).
+	 * @param inputFile The file.
+	 */
+	public void addInputFile(File inputFile) {
+		_inputFileFingerprints.putIfAbsent(FileUtils.getAbsoluteFile(inputFile), new FileFingerprint(inputFile));
+	}
+	
+	/**
+	 * Check whether the target file is up-to-date, which is when the target file and all files read by the former compose are unchanged since the fingerprint file was written.
+	 * A file is unchanged when the size is equal and the modification time or checksum is equal.
+	 * @param fingerprintFilePath The fingerprint file of the former compose.
+	 * @param xmlFile The xml file to compose.
+	 * @param targetFile The composed target file.
+	 * @return Whether the target file is up-to-date, false when the fingerprint file doesn't exist or can't be read.
+	 * @throws IOException
+	 */
+	public static boolean isUpToDate(Path fingerprintFilePath, File xmlFile, File targetFile) throws IOException {
+		if (!Files.isRegularFile(fingerprintFilePath) || !targetFile.exists())
+			return false;
+		List<String> fingerprintLines = Files.readAllLines(fingerprintFilePath, StandardCharsets.UTF_8);
+		long fingerprintTime = Files.getLastModifiedTime(fingerprintFilePath).toMillis();
+		if (fingerprintLines.size() < 3 || !fingerprintLines.get(0).equals(FINGERPRINT_HEADER)) {
+			logger.warning(String.format("The file '%s' isn't a valid fingerprint file.", fingerprintFilePath));
+			return false;
+		}
+		try {
+			// The second line is the target file, the third line is the xml file which was composed and the other lines are the included files.
+			for (int lineNumber = 2; lineNumber <= fingerprintLines.size(); lineNumber++) {
+				String fingerprintLine = fingerprintLines.get(lineNumber - 1);
+				if (fingerprintLine.isEmpty())
+					continue;
+				// The path is the last column, so it can contain the separator.
+				String[] fingerprintColumns = fingerprintLine.split(";", 4);
+				if (fingerprintColumns.length != 4)
+					throw new Exception(String.format("Invalid fingerprint entry on line %d in '%s'.", lineNumber, fingerprintFilePath));
+				File file = new File(fingerprintColumns[3]);
+				if ((lineNumber == 2 && !file.equals(FileUtils.getAbsoluteFile(targetFile))) || (lineNumber == 3 && !file.equals(FileUtils.getAbsoluteFile(xmlFile)))) {
+					logger.fine("The fingerprint was written for another compose.");
+					return false;
+				}
+				if (!new FileFingerprint(file).matches(FileFingerprint.fromColumns(fingerprintColumns), fingerprintTime)) {
+					logger.fine(String.format("The file '%s' changed after the fingerprint was written.", file));
+					return false;
+				}
+			}
+		} catch (Exception e) {
+			logger.warning(String.format("Error while reading fingerprint file: %s", e.getMessage()));
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Write the fingerprint to a file, with the fingerprint of the target file as it is now.
+	 * When a file changed while composing, the fingerprint isn't written (since it wouldn't match the target file).
+	 * @param fingerprintFilePath The fingerprint file.
+	 * @param xmlFile The xml file which is composed.
+	 * @param targetFile The composed target file.
+	 * @throws Exception
+	 */
+	public void toFile(Path fingerprintFilePath, File xmlFile, File targetFile) throws Exception {
+		try {
+			StringBuilder fingerprintContents = new StringBuilder();
+			fingerprintContents.append(FINGERPRINT_HEADER).append('\n');
+			appendFingerprintLine(fingerprintContents, FileUtils.getAbsoluteFile(targetFile), new FileFingerprint(targetFile));
+			// The xml file is written first, the included files are sorted so the fingerprint file is the same for the same files.
+			File absoluteXmlFile = FileUtils.getAbsoluteFile(xmlFile);
+			Map<String, File> includedFiles = new TreeMap<String, File>();
+			for (File inputFile : _inputFileFingerprints.keySet())
+				if (!inputFile.equals(absoluteXmlFile))
+					includedFiles.put(inputFile.getPath(), inputFile);
+			List<File> inputFiles = new ArrayList<File>();
+			inputFiles.add(absoluteXmlFile);
+			inputFiles.addAll(includedFiles.values());
+			for (File inputFile : inputFiles) {
+				FileFingerprint inputFileFingerprint = _inputFileFingerprints.get(inputFile);
+				if (inputFileFingerprint == null || !inputFileFingerprint.isUnchanged()) {
+					logger.warning(String.format("The file '%s' changed while composing, so the fingerprint isn't written.", inputFile));
+					Files.deleteIfExists(fingerprintFilePath);
+					return;
+				}
+				appendFingerprintLine(fingerprintContents, inputFile, inputFileFingerprint);
+			}
+			Files.createDirectories(fingerprintFilePath.getParent());
+			Files.write(fingerprintFilePath, fingerprintContents.toString().getBytes(StandardCharsets.UTF_8));
+		} catch (Exception e) {
+			throw new Exception(String.format("Error while writing fingerprint file '%s': %s", fingerprintFilePath, e.getMessage()), e);
+		}
+	}
+	
+	private static void appendFingerprintLine(StringBuilder fingerprintContents, File file, FileFingerprint fileFingerprint) throws IOException {
+		fingerprintContents.append(fileFingerprint.toLine()).append(';').append(file.getPath()).append('\n');
+	}
+}
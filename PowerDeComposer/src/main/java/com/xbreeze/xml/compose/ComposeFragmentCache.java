@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.compose;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.xbreeze.xml.utils.FileFingerprint;
+import com.xbreeze.xml.utils.FileUtils;
+
+/**
+ * Cache of the resolved contents of included files, so an included file which didn't change (including the files it includes) doesn't need to be read and resolved again.
+ * The resolved contents of a file are stored in the cache directory together with the size, modification time, content checksum (CRC32C) and path of the file and all files it includes.
+ * The cached contents are only used when all these files are unchanged, otherwise the file is resolved and the cache is updated.
+ * When the total size of the cache exceeds the maximum size, the least recently used fragments are removed (which also removes the fragments of files which aren't included anymore).
+ */
+public class ComposeFragmentCache {
+	private static final Logger logger = Logger.getGlobal();
+	
+	// The extension of the fragment files in the cache directory.
+	public static final String FRAGMENT_FILE_EXTENSION = ".pdcfragment";
+	
+	// The header of the fragment file, which is changed when the format of the fragment file changes (so older fragment files are not used).
+	private static final String FRAGMENT_FILE_HEADER = "PowerDeComposer compose fragment 1.0";
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private Path _cacheDirectoryPath;
+	private long _maxSize;
+	// Whether the stored fingerprint of a file matches the file (by the stored fingerprint line and path), so each file is only checked once per compose.
+	private ConcurrentHashMap<String, Boolean> _checkedFingerprints = new ConcurrentHashMap<String, Boolean>();
+	// The number of files of which the cached contents are used, and the number of files which are resolved.
+	private AtomicInteger _hitCount = new AtomicInteger();
+	private AtomicInteger _missCount = new AtomicInteger();
+	
+	/**
+	 * Constructor.
+	 * @param cacheDirectoryPath The directory in which the fragments are cached, it's created when it doesn't exist.
+	 * @param maxSize The maximum total size of the cached fragments in bytes.
+	 */
+	public ComposeFragmentCache(Path cacheDirectoryPath, long maxSize) {
+		this._cacheDirectoryPath = cacheDirectoryPath;
+		this._maxSize = maxSize;
+	}
+	
+	/**
+	 * Get the cached fragment of an included file, if the file and the files it includes didn't change since the fragment was stored.
+	 * This method can be called from multiple threads (when composing in parallel).
+	 * @param file The included file.
+	 * @param fileCharset The charset the file is read with.
+	 * @return The cached fragment, or null when the file isn't cached or changed.
+	 */
+	public CachedFragment get(File file, Charset fileCharset) {
+		File absoluteFile = FileUtils.getAbsoluteFile(file);
+		Path fragmentFilePath = null;
+		try {
+			fragmentFilePath = FileUtils.getPathHashedFilePath(_cacheDirectoryPath, absoluteFile, FRAGMENT_FILE_EXTENSION);
+			if (Files.isRegularFile(fragmentFilePath)) {
+				CachedFragment cachedFragment = loadFragment(fragmentFilePath, absoluteFile, fileCharset);
+				if (cachedFragment != null) {
+					logger.fine(String.format("Using the cached fragment of '%s'.", file));
+					// Update the modification time of the fragment file, so the least recently used fragments are removed first.
+					FileUtils.setLastUsedTime(fragmentFilePath);
+					_hitCount.incrementAndGet();
+					return cachedFragment;
+				}
+			}
+		} catch (Exception e) {
+			logger.warning(String.format("Error while loading the fragment file '%s', resolving the file instead: %s", fragmentFilePath, e.getMessage()));
+		}
+		_missCount.incrementAndGet();
+		return null;
+	}
+	
+	/**
+	 * Load a fragment file, if the included files didn't change since the fragment was stored.
+	 * @return The cached fragment, or null when the fragment is outdated or for another file.
+	 * @throws Exception
+	 */
+	private CachedFragment loadFragment(Path fragmentFilePath, File absoluteFile, Charset fileCharset) throws Exception {
+		try (DataInputStream fragmentInputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(fragmentFilePath), BUFFER_SIZE))) {
+			if (!fragmentInputStream.readUTF().equals(FRAGMENT_FILE_HEADER)) {
+				logger.fine(String.format("The fragment file '%s' has an unsupported format.", fragmentFilePath));
+				return null;
+			}
+			if (!fragmentInputStream.readUTF().equals(absoluteFile.getPath()) || !fragmentInputStream.readUTF().equals(fileCharset.name())) {
+				logger.fine(String.format("The fragment file '%s' is stored for another file.", fragmentFilePath));
+				return null;
+			}
+			long storedTime = fragmentInputStream.readLong();
+			int includedFileCount = fragmentInputStream.readInt();
+			List<IncludedFile> includedFiles = new ArrayList<IncludedFile>(includedFileCount);
+			for (int i = 0; i < includedFileCount; i++) {
+				int level = fragmentInputStream.readInt();
+				String fingerprintLine = fragmentInputStream.readUTF();
+				File includedFile = new File(fragmentInputStream.readUTF());
+				// The stored fingerprint is checked once per compose, since the fragments of the parent files contain the same files.
+				String fingerprintKey = fingerprintLine + ";" + includedFile.getPath();
+				Boolean matches = _checkedFingerprints.get(fingerprintKey);
+				if (matches == null) {
+					matches = new FileFingerprint(includedFile).matches(FileFingerprint.fromColumns(fingerprintLine.split(";")), storedTime);
+					_checkedFingerprints.put(fingerprintKey, matches);
+				}
+				if (!matches) {
+					logger.fine(String.format("The cached fragment of '%s' is outdated, since '%s' changed.", absoluteFile, includedFile));
+					return null;
+				}
+				includedFiles.add(new IncludedFile(includedFile, null, fingerprintLine, level));
+			}
+			byte[] contents = new byte[fragmentInputStream.readInt()];
+			fragmentInputStream.readFully(contents);
+			return new CachedFragment(new String(contents, StandardCharsets.UTF_8), includedFiles);
+		}
+	}
+	
+	/**
+	 * Store the resolved contents of an included file in the cache.
+	 * When one of the files changed while composing, the fragment isn't stored (since it wouldn't match the files).
+	 * Failing to store the fragment isn't an error, since the cache is only used to speed up the next compose.
+	 * This method can be called from multiple threads (when composing in parallel).
+	 * @param file The included file.
+	 * @param fileCharset The charset the file is read with.
+	 * @param includedFiles The file itself (at level 0) and all files it includes (at their level relative to the file).
+	 * @param contents The resolved contents of the file.
+	 */
+	public void put(File file, Charset fileCharset, List<IncludedFile> includedFiles, String contents) {
+		File absoluteFile = FileUtils.getAbsoluteFile(file);
+		Path temporaryFragmentFilePath = null;
+		try {
+			Path fragmentFilePath = FileUtils.getPathHashedFilePath(_cacheDirectoryPath, absoluteFile, FRAGMENT_FILE_EXTENSION);
+			for (IncludedFile includedFile : includedFiles) {
+				if (!includedFile.isUnchanged()) {
+					logger.fine(String.format("The file '%s' changed while composing, so the fragment of '%s' isn't cached.", includedFile.getFile(), file));
+					Files.deleteIfExists(fragmentFilePath);
+					return;
+				}
+			}
+			// The fragment is written to a temporary file first, so a concurrent compose never reads a partially written fragment.
+			temporaryFragmentFilePath = FileUtils.createTemporaryFile(fragmentFilePath);
+			try (DataOutputStream fragmentOutputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFragmentFilePath), BUFFER_SIZE))) {
+				fragmentOutputStream.writeUTF(FRAGMENT_FILE_HEADER);
+				fragmentOutputStream.writeUTF(absoluteFile.getPath());
+				fragmentOutputStream.writeUTF(fileCharset.name());
+				fragmentOutputStream.writeLong(System.currentTimeMillis());
+				fragmentOutputStream.writeInt(includedFiles.size());
+				for (IncludedFile includedFile : includedFiles) {
+					fragmentOutputStream.writeInt(includedFile.getLevel());
+					fragmentOutputStream.writeUTF(includedFile.getFingerprintLine());
+					fragmentOutputStream.writeUTF(includedFile.getFile().getPath());
+				}
+				byte[] contentBytes = contents.getBytes(StandardCharsets.UTF_8);
+				fragmentOutputStream.writeInt(contentBytes.length);
+				fragmentOutputStream.write(contentBytes);
+			}
+			
+			long fragmentFileSize = Files.size(temporaryFragmentFilePath);
+			if (fragmentFileSize > _maxSize) {
+				logger.fine(String.format("The fragment of '%s' is larger than the fragment cache size, so it's not cached.", file));
+				Files.delete(temporaryFragmentFilePath);
+				Files.deleteIfExists(fragmentFilePath);
+				return;
+			}
+			FileUtils.moveAtomically(temporaryFragmentFilePath, fragmentFilePath);
+			logger.fine(String.format("Stored the fragment of '%s' in the fragment cache (%d bytes).", file, fragmentFileSize));
+			FileUtils.removeLeastRecentlyUsedFiles(_cacheDirectoryPath, FRAGMENT_FILE_EXTENSION, _maxSize, fragmentFilePath);
+		} catch (Exception e) {
+			logger.warning(String.format("Error while storing the fragment of '%s' in the fragment cache: %s", file, e.getMessage()));
+			try {
+				if (temporaryFragmentFilePath != null)
+					Files.deleteIfExists(temporaryFragmentFilePath);
+			} catch (IOException deleteException) {
+				// The temporary file is left behind, it's removed when the cache is too large.
+			}
+		}
+	}
+	
+	/**
+	 * Get the number of included files of which the cached contents are used.
+	 */
+	public int getHitCount() {
+		return _hitCount.get();
+	}
+	
+	/**
+	 * Get the number of included files which are resolved, since they weren't cached or changed.
+	 */
+	public int getMissCount() {
+		return _missCount.get();
+	}
+	
+	/**
+	 * A file which is part of a fragment, with its fingerprint and level relative to the included file of the fragment.
+	 */
+	public static class IncludedFile {
+		private File _file;
+		private FileFingerprint _fileFingerprint;
+		private String _fingerprintLine;
+		private int _level;
+		
+		/**
+		 * Constructor for a file which is read while composing, the fingerprint must be taken before the file is read.
+		 */
+		public IncludedFile(File file, FileFingerprint fileFingerprint, int level) {
+			this(FileUtils.getAbsoluteFile(file), fileFingerprint, null, level);
+		}
+		
+		/**
+		 * Constructor for a file of a cached fragment, which matches the stored fingerprint line (or both).
+		 */
+		private IncludedFile(File file, FileFingerprint fileFingerprint, String fingerprintLine, int level) {
+			this._file = file;
+			this._fileFingerprint = fileFingerprint;
+			this._fingerprintLine = fingerprintLine;
+			this._level = level;
+		}
+		
+		public File getFile() {
+			return _file;
+		}
+		
+		public int getLevel() {
+			return _level;
+		}
+		
+		/**
+		 * Get the file at another level, used to add the files of a fragment to the fragment of the including file.
+		 */
+		public IncludedFile atLevel(int level) {
+			return new IncludedFile(_file, _fileFingerprint, _fingerprintLine, level);
+		}
+		
+		/**
+		 * Get the fingerprint of the file as it's stored (see FileFingerprint.toLine).
+		 */
+		private String getFingerprintLine() throws IOException {
+			if (_fingerprintLine == null)
+				_fingerprintLine = _fileFingerprint.toLine();
+			return _fingerprintLine;
+		}
+		
+		/**
+		 * Check whether the file is unchanged since its fingerprint was taken, a file of a cached fragment is checked when it's loaded.
+		 */
+		private boolean isUnchanged() {
+			return _fileFingerprint == null || _fileFingerprint.isUnchanged();
+		}
+	}
+	
+	/**
+	 * The cached contents of an included file, with the files it consists of.
+	 */
+	public static class CachedFragment {
+		private String _contents;
+		private List<IncludedFile> _includedFiles;
+		
+		private CachedFragment(String contents, List<IncludedFile> includedFiles) {
+			this._contents = contents;
+			this._includedFiles = includedFiles;
+		}
+		
+		public String getContents() {
+			return _contents;
+		}
+		
+		/**
+		 * Get the included file itself (at level 0) and all files it includes.
+		 */
+		public List<IncludedFile> getIncludedFiles() {
+			return _includedFiles;
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.compose;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.xbreeze.xml.utils.FileUtils;
+import com.xbreeze.xml.utils.XMLUtils;
+import com.ximpleware.AutoPilot;
+import com.ximpleware.NavException;
+import com.ximpleware.VTDNav;
+import com.ximpleware.XPathEvalException;
+import com.ximpleware.XPathParseException;
+
+/**
+ * Composer which streams the composed model directly into the target file.
+ * The parts of a file before, between and after the includes are copied as-is into the target file and each include is streamed in its place.
+ * This way only the files on the current include path are kept in memory, instead of the whole composed model.
+ */
+public class StreamingXmlComposer {
+	private static final Logger logger = Logger.getGlobal();
+	
+	// The XML declaration which is removed from included files (the same as the in-memory composer removes).
+	private static final Pattern XML_DECLARATION_PATTERN = Pattern.compile("^<\\?xml.*\\?>\r?\n?");
+	
+	// The buffer size of the output stream to the target file.
+	private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+	
+	private HashMap<File, Integer> _resolvedIncludes = new HashMap<File, Integer>();
+	private Charset _fileCharset;
+	// The fingerprint of the files read while composing (null if unchanged models aren't skipped).
+	private ComposeFingerprint _composeFingerprint;
+	
+	/**
+	 * Constructor.
+	 * @param composeFingerprint The fingerprint to add the files read while composing to, or null if unchanged models aren't skipped.
+	 */
+	public StreamingXmlComposer(ComposeFingerprint composeFingerprint) {
+		this._composeFingerprint = composeFingerprint;
+	}
+	
+	/**
+	 * Compose the xml file into the target file.
+	 * The composed model is first written to a temporary file next to the target file, which replaces the target file when the compose succeeded.
+	 * When unchanged models are skipped, the target file is only replaced when the composed model differs.
+	 * @param xmlFile The xml file to compose.
+	 * @param xmlTargetFilePath The path of the target file.
+	 * @throws Exception
+	 */
+	public void compose(File xmlFile, Path xmlTargetFilePath) throws Exception {
+		// The included files are read using the charset of the root file.
+		_fileCharset = FileUtils.getFileCharset(xmlFile);
+		if (_composeFingerprint != null)
+			_composeFingerprint.addInputFile(xmlFile);
+		byte[] xmlFileBytes = FileUtils.getFileBytes(xmlFile);
+		
+		// Every compose uses its own temporary file, so concurrent composes of the same target file don't collide.
+		Path temporaryFilePath = null;
+		try {
+			temporaryFilePath = FileUtils.createTemporaryFile(xmlTargetFilePath.toAbsolutePath());
+			try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(temporaryFilePath), OUTPUT_BUFFER_SIZE)) {
+				writeResolvedXml(xmlFileBytes, xmlFile, 0, false, outputStream);
+			}
+			if (_composeFingerprint != null && FileUtils.isFileContentEqual(temporaryFilePath, xmlTargetFilePath))
+				logger.info("The composed model is equal to the target file, so the target file isn't written.");
+			else
+				FileUtils.moveAtomically(temporaryFilePath, xmlTargetFilePath);
+		} catch (IOException exc) {
+			throw new Exception(String.format("Error writing to target file %s: %s", xmlTargetFilePath, exc.getMessage()));
+		} finally {
+			if (temporaryFilePath != null)
+				Files.deleteIfExists(temporaryFilePath);
+		}
+	}
+	
+	/**
+	 * Write the xml file to the output stream, while resolving the includes and de-formalizing the extended attributes.
+	 * @param xmlFileBytes The bytes of the xml file.
+	 * @param xmlFile The xml file.
+	 * @param level The include level of the file.
+	 * @param removeXmlDeclaration Whether to remove the XML declaration of the file.
+	 * @param outputStream The output stream to write to.
+	 * @throws Exception
+	 */
+	private void writeResolvedXml(byte[] xmlFileBytes, File xmlFile, int level, boolean removeXmlDeclaration, OutputStream outputStream) throws Exception {
+		logger.fine(String.format("Scanning file %s for includes", xmlFile.toString()));
+		
+		// Check for cycle detection, e.g. an include that is already included previously
+		XmlComposer.registerInclude(_resolvedIncludes, xmlFile, level);
+		
+		// Collect the parts of the file which are replaced, in document order.
+		List<Replacement> replacements;
+		try {
+			replacements = getReplacements(xmlFileBytes, xmlFile);
+		} catch (NavException e) {
+			throw new Exception(String.format("Error scanning %s for includes", xmlFile.toString()), e);
+		} catch (XPathParseException | XPathEvalException e) {
+			throw new Exception(String.format("XPath error scanning for includes in %s", xmlFile.toString()), e);
+		}
+		
+		// Write the file, replacing the includes with the included files and the extended attributes with the text representation.
+		int currentOffset = removeXmlDeclaration ? getXmlDeclarationLength(xmlFileBytes) : 0;
+		int includeCount = 0;
+		for (Replacement replacement : replacements) {
+			if (replacement.getOffset() < currentOffset)
+				throw new Exception(String.format("Error modifying config file %s, an include overlaps with another include or extended attributes.", xmlFile.toString()));
+			outputStream.write(xmlFileBytes, currentOffset, replacement.getOffset() - currentOffset);
+			if (replacement.getIncludeFile() != null) {
+				File includeFile = replacement.getIncludeFile();
+				byte[] includeFileBytes;
+				try {
+					if (_composeFingerprint != null)
+						_composeFingerprint.addInputFile(includeFile);
+					// Read the included file like the root file, so a byte order mark isn't written in the middle of the composed model.
+					includeFileBytes = FileUtils.getFileBytes(includeFile);
+				} catch (IOException e) {
+					throw new Exception(String.format("Could not read contents of included file %s", includeFile.toString()), e);
+				}
+				writeResolvedXml(includeFileBytes, includeFile, level + 1, true, outputStream);
+				includeCount++;
+			} else {
+				outputStream.write(replacement.getText().getBytes(_fileCharset));
+			}
+			currentOffset = replacement.getOffset() + replacement.getLength();
+		}
+		outputStream.write(xmlFileBytes, currentOffset, xmlFileBytes.length - currentOffset);
+		logger.fine(String.format("Found %d includes in XML file %s", includeCount, xmlFile.toString()));
+	}
+	
+	/**
+	 * Get the replacements for the ExtendedAttributes and include elements in the file, ordered by offset.
+	 */
+	private List<Replacement> getReplacements(byte[] xmlFileBytes, File xmlFile) throws Exception {
+		List<Replacement> replacements = new ArrayList<Replacement>();
+		Path basePath = FileUtils.getBasePath(xmlFile);
+		
+		VTDNav nav = XMLUtils.getVTDNav(xmlFileBytes, false);
+		AutoPilot ap = new AutoPilot(nav);
+		
+		// De-Formalize all extended attributes, including the whitespace before the ExtendedAttributes element.
+		ap.selectXPath("//ExtendedAttributes");
+		String lineSeparator = null;
+		while ((ap.evalXPath()) != -1) {
+			long extAttrsNodeFragment = nav.expandWhiteSpaces(nav.getElementFragment(), VTDNav.WS_LEADING);
+			if (lineSeparator == null)
+				lineSeparator = getLineSeparator(xmlFileBytes);
+			replacements.add(new Replacement(extAttrsNodeFragment, null, XmlComposer.getExtendedAttributesText(nav, lineSeparator)));
+		}
+		
+		// Search for all xi:include elements.
+		ap.selectXPath("//include");
+		while ((ap.evalXPath()) != -1) {
+			// Obtain the filename of include
+			AutoPilot ap_href = new AutoPilot(nav);
+			ap_href.selectXPath("@href");
+			String includeFileLocation = ap_href.evalXPathToString();
+			logger.fine(String.format("Found include for %s in config file %s", includeFileLocation, xmlFile.toString()));
+			// Resolve include to a valid path against the basePath
+			File includeFile = basePath.resolve(includeFileLocation).toFile();
+			logger.fine(String.format("Resolved include to %s", includeFile.toString()));
+			replacements.add(new Replacement(nav.getElementFragment(), includeFile, null));
+		}
+		
+		replacements.sort((r1, r2) -> Integer.compare(r1.getOffset(), r2.getOffset()));
+		return replacements;
+	}
+	
+	/**
+	 * Get the length in bytes of the XML declaration at the start of the file (including the trailing line separator).
+	 * @param xmlFileBytes The bytes of the xml file.
+	 * @return The length of the XML declaration, or 0 if the file doesn't start with a XML declaration.
+	 */
+	private int getXmlDeclarationLength(byte[] xmlFileBytes) {
+		byte[] xmlDeclarationStart = "<?xml".getBytes(_fileCharset);
+		if (xmlFileBytes.length < xmlDeclarationStart.length || !Arrays.equals(xmlDeclarationStart, Arrays.copyOf(xmlFileBytes, xmlDeclarationStart.length)))
+			return 0;
+		
+		// The declaration can't span multiple lines, so for ASCII compatible charsets only the first line is decoded.
+		int firstLineLength = xmlFileBytes.length;
+		if (Arrays.equals(xmlDeclarationStart, "<?xml".getBytes(StandardCharsets.US_ASCII))) {
+			for (int i = 0; i < xmlFileBytes.length; i++) {
+				if (xmlFileBytes[i] == '\r' || xmlFileBytes[i] == '\n') {
+					firstLineLength = Math.min(i + 2, xmlFileBytes.length);
+					break;
+				}
+			}
+		}
+		Matcher xmlDeclarationMatcher = XML_DECLARATION_PATTERN.matcher(new String(xmlFileBytes, 0, firstLineLength, _fileCharset));
+		if (!xmlDeclarationMatcher.find())
+			return 0;
+		return xmlDeclarationMatcher.group().getBytes(_fileCharset).length;
+	}
+	
+	/**
+	 * Get the line separator of the file, which is the line separator of the first line.
+	 * @param xmlFileBytes The bytes of the xml file.
+	 * @return The line separator.
+	 * @throws Exception If the line separator can't be found and exception is thrown.
+	 */
+	private String getLineSeparator(byte[] xmlFileBytes) throws Exception {
+		byte[] lineFeed = "\n".getBytes(_fileCharset);
+		byte[] carriageReturn = "\r".getBytes(_fileCharset);
+		for (int i = 0; i + lineFeed.length <= xmlFileBytes.length; i += lineFeed.length) {
+			if (Arrays.equals(lineFeed, Arrays.copyOfRange(xmlFileBytes, i, i + lineFeed.length))) {
+				// Check whether there is a carriage return before the line-feed character.
+				if (i >= carriageReturn.length && Arrays.equals(carriageReturn, Arrays.copyOfRange(xmlFileBytes, i - carriageReturn.length, i)))
+					return "\r\n";
+				return "\n";
+			}
+		}
+		throw new Exception("Cannot detect line separator. No line-feed character found in file!");
+	}
+	
+	/**
+	 * A part of the file which is replaced by either an included file or a text.
+	 */
+	private static class Replacement {
+		private int _offset;
+		private int _length;
+		private File _includeFile;
+		private String _text;
+		
+		public Replacement(long fragment, File includeFile, String text) {
+			// The fragment contains the offset in the lower 32 bits and the length in the upper 32 bits.
+			this._offset = (int) fragment;
+			this._length = (int) (fragment >> 32);
+			this._includeFile = includeFile;
+			this._text = text;
+		}
+		
+		public int getOffset() {
+			return _offset;
+		}
+		
+		public int getLength() {
+			return _length;
+		}
+		
+		public File getIncludeFile() {
+			return _includeFile;
+		}
+		
+		public String getText() {
+			return _text;
+		}
+	}
+}
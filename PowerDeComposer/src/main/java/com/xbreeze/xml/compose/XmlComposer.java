@@ -24,14 +24,26 @@ package com.xbreeze.xml.compose;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Logger;
 
+import com.xbreeze.xml.compose.ComposeFragmentCache.CachedFragment;
+import com.xbreeze.xml.compose.ComposeFragmentCache.IncludedFile;
+import com.xbreeze.xml.compose.config.ComposeConfig;
+
 import com.xbreeze.xml.utils.FileContentAndCharset;
+import com.xbreeze.xml.utils.FileFingerprint;
 import com.xbreeze.xml.utils.FileUtils;
 import com.xbreeze.xml.utils.XMLUtils;
 import com.ximpleware.AutoPilot;
@@ -44,12 +56,24 @@ import com.ximpleware.XPathParseException;
 
 public class XmlComposer {
 	private static final Logger logger = Logger.getGlobal();
+	
+	// The fingerprint of the files read while composing (null if unchanged models aren't skipped).
+	private ComposeFingerprint _composeFingerprint;
+	// The fingerprint file in the state directory (null if unchanged models aren't skipped).
+	private Path _composeFingerprintFilePath;
+	
+	// The cache of the resolved contents of included files (null if no fragment cache is configured).
+	private ComposeFragmentCache _fragmentCache;
 
 	public XmlComposer(String xmlFilePath, String xmlTargetFilePath) throws Exception {
-		composeXml(xmlFilePath, xmlTargetFilePath);
+		this(xmlFilePath, xmlTargetFilePath, null);
+	}
+	
+	public XmlComposer(String xmlFilePath, String xmlTargetFilePath, ComposeConfig composeConfig) throws Exception {
+		composeXml(xmlFilePath, xmlTargetFilePath, (composeConfig != null) ? composeConfig : new ComposeConfig());
 	}
 
-	private void composeXml(String xmlFilePath, String xmlTargetFilePath) throws Exception {
+	private void composeXml(String xmlFilePath, String xmlTargetFilePath, ComposeConfig composeConfig) throws Exception {
 
 		logger.info(String.format("Starting Xml Composer for '%s'", xmlFilePath));
 
@@ -58,19 +82,74 @@ public class XmlComposer {
 		if (!xmlFile.exists())
 			throw new Exception(String.format("The specified xml file doesn't exist '%s'.", xmlFilePath));
 
+		// When configured, the compose is skipped when the target file and the files read by the former compose are unchanged.
+		File xmlTargetFile = new File(xmlTargetFilePath);
+		if (composeConfig.getSkipUnchanged()) {
+			_composeFingerprintFilePath = ComposeFingerprint.getFingerprintFilePath(Paths.get(composeConfig.getStateDirectory()), xmlTargetFile);
+			if (ComposeFingerprint.isUpToDate(_composeFingerprintFilePath, xmlFile, xmlTargetFile)) {
+				logger.info("The target file and the included files are unchanged since the former compose, so stopping.");
+				return;
+			}
+			_composeFingerprint = new ComposeFingerprint();
+		}
+
+		// When streaming, the composed model is written directly to the target file, without building it in memory.
+		if (composeConfig.getStreaming()) {
+			if (composeConfig.getParallelism() > 1)
+				logger.warning("The parallelism setting is ignored when composing using streaming.");
+			if (composeConfig.getFragmentCacheDirectory() != null)
+				logger.warning("The fragment cache isn't used when composing using streaming.");
+			new StreamingXmlComposer(_composeFingerprint).compose(xmlFile, Paths.get(xmlTargetFilePath));
+			writeComposeFingerprint(xmlFile, xmlTargetFile);
+			logger.info("Done.");
+			return;
+		}
+
+		// When configured, the resolved contents of the included files are cached, so included files which are unchanged don't need to be resolved again.
+		if (composeConfig.getFragmentCacheDirectory() != null)
+			_fragmentCache = new ComposeFragmentCache(Paths.get(composeConfig.getFragmentCacheDirectory()), composeConfig.getFragmentCacheSize());
+
 		// Read the xml file into a string.
+		if (_composeFingerprint != null)
+			_composeFingerprint.addInputFile(xmlFile);
 		FileContentAndCharset fcac = FileUtils.getFileContent(xmlFile); 
-		HashMap<File, Integer> resolvedIncludes = new HashMap<File, Integer>();
+		ConcurrentHashMap<File, Integer> resolvedIncludes = new ConcurrentHashMap<File, Integer>();
 		// Resolve all includes
-		String resolvedXmlFileContents = this.resolveIncludes(fcac, xmlFile, 0, resolvedIncludes);
+		String resolvedXmlFileContents;
+		if (composeConfig.getParallelism() > 1) {
+			// Resolve the includes using a fork-join pool, the includes of a file are read and resolved in parallel.
+			logger.info(String.format("Resolving includes in parallel using %d threads...", composeConfig.getParallelism()));
+			ForkJoinPool forkJoinPool = new ForkJoinPool(composeConfig.getParallelism());
+			try {
+				resolvedXmlFileContents = forkJoinPool.submit(() -> this.resolveIncludes(fcac, xmlFile, 0, resolvedIncludes, true, null)).get();
+			} catch (ExecutionException e) {
+				// Unwrap the exception of the failing include.
+				Throwable cause = e.getCause();
+				while (cause instanceof RuntimeException && cause.getCause() instanceof Exception)
+					cause = cause.getCause();
+				throw (cause instanceof Exception) ? (Exception)cause : e;
+			} finally {
+				forkJoinPool.shutdown();
+			}
+		} else {
+			resolvedXmlFileContents = this.resolveIncludes(fcac, xmlFile, 0, resolvedIncludes, false, null);
+		}
+		if (_fragmentCache != null)
+			logger.info(String.format("Used the cached contents of %d included files and resolved %d included files.", _fragmentCache.getHitCount(), _fragmentCache.getMissCount()));
 
 		try {
-			Files.write(
-					Paths.get(xmlTargetFilePath),
-					resolvedXmlFileContents.getBytes(fcac.getFileCharset()),
-					StandardOpenOption.CREATE,
-					StandardOpenOption.TRUNCATE_EXISTING
-			);
+			byte[] resolvedXmlFileBytes = resolvedXmlFileContents.getBytes(fcac.getFileCharset());
+			// When skipping unchanged models, the target file is only written when the composed model differs (so it keeps its modification time).
+			if (_composeFingerprint != null && FileUtils.isFileContentEqual(Paths.get(xmlTargetFilePath), resolvedXmlFileBytes)) {
+				logger.info("The composed model is equal to the target file, so the target file isn't written.");
+			} else {
+				Files.write(
+						Paths.get(xmlTargetFilePath),
+						resolvedXmlFileBytes,
+						StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING
+				);
+			}
 
 			// extra options
 			// Files.write(Paths.get(path), content.getBytes(),
@@ -80,20 +159,40 @@ public class XmlComposer {
 					String.format("Error writing to target file %s: %s", xmlTargetFilePath, exc.getMessage()));
 		}
 		
+		writeComposeFingerprint(xmlFile, xmlTargetFile);
+		
 		// Done
 		logger.info("Done.");
 
 	}
 
-	private String resolveIncludes(FileContentAndCharset xmlFileContentsAndCharset, File xmlFile, int level, HashMap<File, Integer> resolvedIncludes) throws Exception {
+	/**
+	 * Write the fingerprint of the files read while composing and the target file, if configured.
+	 * @param xmlFile The xml file which is composed.
+	 * @param xmlTargetFile The target file.
+	 * @throws Exception
+	 */
+	private void writeComposeFingerprint(File xmlFile, File xmlTargetFile) throws Exception {
+		if (_composeFingerprint != null) {
+			logger.fine("Writing fingerprint...");
+			_composeFingerprint.toFile(_composeFingerprintFilePath, xmlFile, xmlTargetFile);
+			// Remove the fingerprint written next to the composed model by former versions, since it's replaced by the fingerprint in the state directory.
+			if (Files.deleteIfExists(ComposeFingerprint.getFormerFingerprintFilePath(xmlTargetFile)))
+				logger.info("Removed the fingerprint file next to the composed model, the fingerprint is now stored in the state directory.");
+		}
+	}
+
+	/**
+	 * Resolve the includes of a file and de-formalize its extended attributes.
+	 * @param includedFiles The list to which the files included by this file (directly or indirectly) are added with their level relative to this file, or null when they aren't needed.
+	 * @return The resolved contents.
+	 * @throws Exception
+	 */
+	private String resolveIncludes(FileContentAndCharset xmlFileContentsAndCharset, File xmlFile, int level, ConcurrentHashMap<File, Integer> resolvedIncludes, boolean resolveInParallel, List<IncludedFile> includedFiles) throws Exception {
 		logger.fine(String.format("Scanning file %s for includes", xmlFile.toString()));
 		
 		// Check for cycle detection, e.g. an include that is already included previously
-		if (resolvedIncludes.containsKey(xmlFile) && resolvedIncludes.get(xmlFile) != level) {
-			throw new Exception(String.format("Include cycle detected at level %d, file %s is already included previously", level, xmlFile.toString()));
-		} else if (!resolvedIncludes.containsKey(xmlFile)) {
-			resolvedIncludes.put(xmlFile, level);
-		}
+		registerInclude(resolvedIncludes, xmlFile, level);
 
 		// Get basePath of the file. If the provided File refers to a file, use its
 		// parent path, if it refers to a folder use it as base path
@@ -120,47 +219,10 @@ public class XmlComposer {
 					// Store the fragment of the ExtendedAttributes element (so we can remove it later.
 					long extAttrsNodeFragment = nav.getElementFragment();
 					
-					// Create a string buffer for the extended attribute text.
-					StringBuffer extendedAttributeText = new StringBuffer();
-					extendedAttributeText.append(xmlFileContentsAndCharset.getLineSeparator());
-					extendedAttributeText.append("<a:ExtendedAttributesText>");
-					
-					// Find the OriginatingExtension elements.
-					AutoPilot ap_extension = new AutoPilot(nav);
-					ap_extension.selectXPath("OriginatingExtension");
-					// Loop thru the set of OriginatingExtension.
-					while ((ap_extension.evalXPath()) != -1) {
-						String extObjectID = nav.toString(nav.getAttrVal("ObjectID"));
-						String extName = nav.toString(nav.getAttrVal("Name"));
-						
-						// Find the ExtendedAttribute elements.
-						AutoPilot ap_extattribute = new AutoPilot(nav);
-						ap_extattribute.selectXPath("ExtendedAttribute");
-						// Create a buffer for the extended attributes of the current extension.
-						StringBuffer extensionExtAttrTextBuffer = new StringBuffer();
-						// Loop thru the set of ExtendedAttribute.
-						while ((ap_extattribute.evalXPath()) != -1) {
-							String extAttrObjectID = nav.toString(nav.getAttrVal("ObjectID"));
-							String extAttrName = nav.toString(nav.getAttrVal("Name"));
-							// Replace a LF without preceding LF to CRLF (since VTD-NAV removed it during parsing).
-							int extendedAttributeTextIndex = nav.getText();
-							String extAttrValue = new String(nav.getXML().getBytes(nav.getTokenOffset(extendedAttributeTextIndex), nav.getTokenLength(extendedAttributeTextIndex)));
-							// Add the current extended attribute to the list for the current extension.
-							// For the length we use the unescaped version of the extended attribute text.
-							extensionExtAttrTextBuffer.append(String.format("{%s},%s,%d=%s", extAttrObjectID, extAttrName, XMLUtils.unescapeXMLChars(extAttrValue).length(), extAttrValue));
-							extensionExtAttrTextBuffer.append(xmlFileContentsAndCharset.getLineSeparator());
-						}
-						extensionExtAttrTextBuffer.append(xmlFileContentsAndCharset.getLineSeparator());
-						String extensionExtAttrText = extensionExtAttrTextBuffer.toString();
-						
-						// Add the extension extended attributes to the extended attributes buffer.
-						// For the length we use the unescaped version of the extended attribute text.
-						// The length is minus 2, to compensate for the trailing CRLF.
-						extendedAttributeText.append(String.format("{%s},%s,%d=%s", extObjectID, extName, XMLUtils.unescapeXMLChars(extensionExtAttrText).length() - 2, extensionExtAttrText));
-					}
-					extendedAttributeText.append("</a:ExtendedAttributesText>");
+					// Create the textual representation of the extended attributes.
+					String extendedAttributeText = getExtendedAttributesText(nav, xmlFileContentsAndCharset.getLineSeparator());
 					// Insert the ExtendedAttributesText element.
-					vm.insertAfterElement(extendedAttributeText.toString());
+					vm.insertAfterElement(extendedAttributeText);
 					// Now we added the replacement of the textual extended attributes, we can remove the ExtendedAttributesText element.
 					vm.remove(nav.expandWhiteSpaces(extAttrsNodeFragment, VTDNav.WS_LEADING));
 					// Set the indicator whether we de-formalized anything to true.
@@ -169,7 +231,7 @@ public class XmlComposer {
 				
 				// Search for all xi:include elements.
 				ap.selectXPath("//include");
-				int includeCount = 0;
+				List<IncludeTask> includeTasks = new ArrayList<IncludeTask>();
 				while ((ap.evalXPath()) != -1) {
 					// Obtain the filename of include
 					AutoPilot ap_href = new AutoPilot(nav);
@@ -180,10 +242,25 @@ public class XmlComposer {
 					logger.fine(String.format("base path %s", basePath.toString()));
 					File includeFile = basePath.resolve(includeFileLocation).toFile();
 					logger.fine(String.format("Resolved include to %s", includeFile.toString()));
-
+					
+					// When resolving in parallel, the include is read and resolved by a fork-join task.
+					IncludeTask includeTask = new IncludeTask(nav.getCurrentIndex(), includeFile, xmlFileContentsAndCharset.getFileCharset(), level + 1, resolvedIncludes, resolveInParallel);
+					if (resolveInParallel)
+						includeTask.fork();
+					includeTasks.add(includeTask);
+				}
+				
+				// Replace the includes with the resolved contents, in document order.
+				int includeCount = 0;
+				for (IncludeTask includeTask : includeTasks) {
+					File includeFile = includeTask.getIncludeFile();
 					try {
 						// Get file contents, recursively processing any includes found
-						String includeContents = this.resolveIncludes(FileUtils.getFileContent(includeFile, xmlFileContentsAndCharset.getFileCharset()), includeFile, level + 1, resolvedIncludes);
+						String includeContents = resolveInParallel ? includeTask.join() : includeTask.resolve();
+						if (includedFiles != null) {
+							for (IncludedFile includedFile : includeTask.getIncludedFiles())
+								includedFiles.add(includedFile.atLevel(includedFile.getLevel() + 1));
+						}
 
 						/* XPointer is not needed for now */
 						/*
@@ -200,6 +277,7 @@ public class XmlComposer {
 						}
 
 						// Replace the node with the include contents
+						nav.recoverNode(includeTask.getIncludeElementIndex());
 						vm.insertAfterElement(includeContents);
 						// Then remove the include node
 						vm.remove();
@@ -231,5 +309,152 @@ public class XmlComposer {
 			throw new Exception(String.format("XPath error scanning for includes in %s", xmlFile.toString()), e);
 		}
 	}
+	
+	/**
+	 * Register a file which is included at a level, to detect include cycles (an include that is already included previously at another level).
+	 * The check and registration is done in one atomic operation when a ConcurrentHashMap is passed, since includes can be resolved in parallel.
+	 * This is also used by the StreamingXmlComposer, so both engines detect the same cycles.
+	 * @throws Exception When the file is already included at another level.
+	 */
+	static void registerInclude(Map<File, Integer> resolvedIncludes, File xmlFile, int level) throws Exception {
+		// The file is registered by its absolute normalized path, so the same file is found when it's included using another relative path.
+		Integer previousLevel = resolvedIncludes.putIfAbsent(FileUtils.getAbsoluteFile(xmlFile), level);
+		if (previousLevel != null && previousLevel != level) {
+			throw new Exception(String.format("Include cycle detected at level %d, file %s is already included previously", level, xmlFile.toString()));
+		}
+	}
+	
+	/**
+	 * Get the textual representation of the ExtendedAttributes element the navigator is positioned on, as PowerDesigner stores it.
+	 * @param nav The VTDNav positioned on the ExtendedAttributes element.
+	 * @param lineSeparator The line separator of the file.
+	 * @return The ExtendedAttributesText element.
+	 */
+	static String getExtendedAttributesText(VTDNav nav, String lineSeparator) throws XPathParseException, XPathEvalException, NavException {
+		// Create a string buffer for the extended attribute text.
+		StringBuffer extendedAttributeText = new StringBuffer();
+		extendedAttributeText.append(lineSeparator);
+		extendedAttributeText.append("<a:ExtendedAttributesText>");
+		
+		// Find the OriginatingExtension elements.
+		AutoPilot ap_extension = new AutoPilot(nav);
+		ap_extension.selectXPath("OriginatingExtension");
+		// Loop thru the set of OriginatingExtension.
+		while ((ap_extension.evalXPath()) != -1) {
+			String extObjectID = nav.toString(nav.getAttrVal("ObjectID"));
+			String extName = nav.toString(nav.getAttrVal("Name"));
+			
+			// Find the ExtendedAttribute elements.
+			AutoPilot ap_extattribute = new AutoPilot(nav);
+			ap_extattribute.selectXPath("ExtendedAttribute");
+			// Create a buffer for the extended attributes of the current extension.
+			StringBuffer extensionExtAttrTextBuffer = new StringBuffer();
+			// Loop thru the set of ExtendedAttribute.
+			while ((ap_extattribute.evalXPath()) != -1) {
+				String extAttrObjectID = nav.toString(nav.getAttrVal("ObjectID"));
+				String extAttrName = nav.toString(nav.getAttrVal("Name"));
+				// Replace a LF without preceding LF to CRLF (since VTD-NAV removed it during parsing).
+				int extendedAttributeTextIndex = nav.getText();
+				String extAttrValue = new String(nav.getXML().getBytes(nav.getTokenOffset(extendedAttributeTextIndex), nav.getTokenLength(extendedAttributeTextIndex)));
+				// Add the current extended attribute to the list for the current extension.
+				// For the length we use the unescaped version of the extended attribute text.
+				extensionExtAttrTextBuffer.append(String.format("{%s},%s,%d=%s", extAttrObjectID, extAttrName, XMLUtils.unescapeXMLChars(extAttrValue).length(), extAttrValue));
+				extensionExtAttrTextBuffer.append(lineSeparator);
+			}
+			extensionExtAttrTextBuffer.append(lineSeparator);
+			String extensionExtAttrText = extensionExtAttrTextBuffer.toString();
+			
+			// Add the extension extended attributes to the extended attributes buffer.
+			// For the length we use the unescaped version of the extended attribute text.
+			// The length is minus 2, to compensate for the trailing CRLF.
+			extendedAttributeText.append(String.format("{%s},%s,%d=%s", extObjectID, extName, XMLUtils.unescapeXMLChars(extensionExtAttrText).length() - 2, extensionExtAttrText));
+		}
+		extendedAttributeText.append("</a:ExtendedAttributesText>");
+		return extendedAttributeText.toString();
+	}
+	
+	/**
+	 * Task to read and resolve an included file, which can be executed as fork-join task.
+	 */
+	private class IncludeTask extends RecursiveTask<String> {
+		private static final long serialVersionUID = 1L;
+		
+		private int _includeElementIndex;
+		private File _includeFile;
+		private Charset _fileCharset;
+		private int _level;
+		private ConcurrentHashMap<File, Integer> _resolvedIncludes;
+		private boolean _resolveInParallel;
+		// The included file and the files it includes, when the fragment cache is used.
+		private List<IncludedFile> _includedFiles;
+		
+		public IncludeTask(int includeElementIndex, File includeFile, Charset fileCharset, int level, ConcurrentHashMap<File, Integer> resolvedIncludes, boolean resolveInParallel) {
+			this._includeElementIndex = includeElementIndex;
+			this._includeFile = includeFile;
+			this._fileCharset = fileCharset;
+			this._level = level;
+			this._resolvedIncludes = resolvedIncludes;
+			this._resolveInParallel = resolveInParallel;
+		}
+		
+		public int getIncludeElementIndex() {
+			return _includeElementIndex;
+		}
+		
+		public File getIncludeFile() {
+			return _includeFile;
+		}
+		
+		/**
+		 * Get the included file (at level 0) and the files it includes, after it's resolved.
+		 */
+		public List<IncludedFile> getIncludedFiles() {
+			return _includedFiles;
+		}
+		
+		/**
+		 * Read the included file and resolve its includes.
+		 * When the fragment cache is used and the file and the files it includes are unchanged, the cached contents are used instead.
+		 */
+		public String resolve() throws Exception {
+			if (_composeFingerprint != null)
+				_composeFingerprint.addInputFile(_includeFile);
+			if (_fragmentCache == null)
+				return resolveIncludes(FileUtils.getFileContent(_includeFile, _fileCharset), _includeFile, _level, _resolvedIncludes, _resolveInParallel, null);
+			
+			CachedFragment cachedFragment = _fragmentCache.get(_includeFile, _fileCharset);
+			if (cachedFragment != null) {
+				// The files of the cached fragment aren't read, but are registered as if they were.
+				for (IncludedFile includedFile : cachedFragment.getIncludedFiles()) {
+					registerInclude(_resolvedIncludes, includedFile.getFile(), _level + includedFile.getLevel());
+					if (_composeFingerprint != null)
+						_composeFingerprint.addInputFile(includedFile.getFile());
+				}
+				_includedFiles = cachedFragment.getIncludedFiles();
+				return cachedFragment.getContents();
+			}
+			
+			// The fingerprint of the file is taken before it's read, so a change while composing is detected when the fragment is stored.
+			List<IncludedFile> includedFiles = new ArrayList<IncludedFile>();
+			includedFiles.add(new IncludedFile(_includeFile, new FileFingerprint(_includeFile), 0));
+			String resolvedContents = resolveIncludes(FileUtils.getFileContent(_includeFile, _fileCharset), _includeFile, _level, _resolvedIncludes, _resolveInParallel, includedFiles);
+			_fragmentCache.put(_includeFile, _fileCharset, includedFiles, resolvedContents);
+			_includedFiles = includedFiles;
+			return resolvedContents;
+		}
+		
+		@Override
+		protected String compute() {
+			try {
+				return resolve();
+			} catch (IOException e) {
+				throw new RuntimeException(new Exception(String.format("Could not read contents of included file %s", _includeFile.toString()), e));
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException(e.getMessage(), e);
+			}
+		}
+	}
 
 }
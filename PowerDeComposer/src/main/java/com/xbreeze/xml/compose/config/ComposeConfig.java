@@ -0,0 +1,89 @@
+package com.xbreeze.xml.compose.config;
+
+import java.nio.file.Paths;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlAttribute;
+
+@XmlAccessorType(XmlAccessType.NONE)
+public class ComposeConfig {
+	// The number of threads resolving the includes of the model.
+	// By default this is 1, which means the includes are resolved one after another.
+	@XmlAttribute(name = "parallelism", required = false)
+	private Integer _parallelism = 1;
+	
+	// Whether the composed model is streamed directly into the target file.
+	// By default this is false, which means the composed model is created in memory before writing it.
+	@XmlAttribute(name = "streaming", required = false)
+	private Boolean _streaming = false;
+	
+	// Whether the compose is skipped when the target file and the files read by the former compose are unchanged, and the target file is only written when the composed model differs.
+	// By default this is false, which means the model is always composed and written.
+	@XmlAttribute(name = "skipUnchanged", required = false)
+	private Boolean _skipUnchanged = false;
+	
+	// The directory in which the resolved contents of the included files are cached, so included files which didn't change don't need to be resolved again (no caching when not set).
+	@XmlAttribute(name = "fragmentCacheDirectory", required = false)
+	private String _fragmentCacheDirectory;
+	
+	// The maximum total size (in bytes) of the cached fragments, when exceeded the least recently used fragments are removed.
+	@XmlAttribute(name = "fragmentCacheSize", required = false)
+	private Long _fragmentCacheSize = 1L << 30;
+	
+	// The directory in which the state of the former compose (the fingerprint when skipping unchanged models) is stored, outside of the decomposed model.
+	@XmlAttribute(name = "stateDirectory", required = false)
+	private String _stateDirectory = Paths.get(System.getProperty("user.home"), ".powerdecomposer", "state").toString();
+	
+	public ComposeConfig() {
+		super();
+	}
+	
+	public Integer getParallelism() {
+		return _parallelism;
+	}
+	
+	public void setParallelism(Integer parallelism) {
+		this._parallelism = parallelism;
+	}
+	
+	public Boolean getStreaming() {
+		return _streaming;
+	}
+	
+	public void setStreaming(Boolean streaming) {
+		this._streaming = streaming;
+	}
+	
+	public Boolean getSkipUnchanged() {
+		return _skipUnchanged;
+	}
+	
+	public void setSkipUnchanged(Boolean skipUnchanged) {
+		this._skipUnchanged = skipUnchanged;
+	}
+	
+	public String getFragmentCacheDirectory() {
+		return _fragmentCacheDirectory;
+	}
+	
+	public void setFragmentCacheDirectory(String fragmentCacheDirectory) {
+		this._fragmentCacheDirectory = fragmentCacheDirectory;
+	}
+	
+	public Long getFragmentCacheSize() {
+		return _fragmentCacheSize;
+	}
+	
+	public void setFragmentCacheSize(Long fragmentCacheSize) {
+		this._fragmentCacheSize = fragmentCacheSize;
+	}
+	
+	public String getStateDirectory() {
+		return _stateDirectory;
+	}
+	
+	public void setStateDirectory(String stateDirectory) {
+		this._stateDirectory = stateDirectory;
+	}
+}
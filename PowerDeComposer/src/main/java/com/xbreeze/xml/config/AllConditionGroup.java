@@ -1,5 +1,7 @@
 package com.xbreeze.xml.config;
 
+import java.util.List;
+
 public class AllConditionGroup extends ConditionGroup {
 
 	public AllConditionGroup() {
@@ -10,4 +12,9 @@ public class AllConditionGroup extends ConditionGroup {
 	protected String getXPathConditionOperator() {
 		return "and";
 	}
+
+	@Override
+	protected CompiledElementCondition compileConditionGroup(List<CompiledElementCondition> compiledConditions) {
+		return new CompiledElementCondition.AllConditions(compiledConditions);
+	}
 }
@@ -0,0 +1,349 @@
+package com.xbreeze.xml.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.xbreeze.xml.utils.XPathCache;
+import com.ximpleware.NavException;
+import com.ximpleware.VTDNav;
+import com.ximpleware.XPathParseException;
+
+/**
+ * Element condition (or group of conditions) compiled into a predicate which is evaluated on the element the VTDNav is positioned on.
+ * The common shapes of conditions (element and parent name tests, and attribute and child element existence) are evaluated directly on the VTD tokens,
+ * other conditions are evaluated using XPath. The result is the same as evaluating the XPath expression of the condition on the element.
+ * A compiled condition is immutable, so it can be used by multiple threads (as long as each thread uses its own VTDNav).
+ */
+public abstract class CompiledElementCondition {
+	// Patterns for the parts of an expression.
+	private static final String NAME = "[A-Za-z_][\\w.\\-]*";
+	private static final String LITERAL = "(?:'(?<value1>[^']*)'|\"(?<value2>[^\"]*)\")";
+	
+	// Patterns for the conditions which are evaluated directly on the VTD tokens.
+	private static final Pattern NAME_COMPARISON_PATTERN = Pattern.compile("name\\(\\s*\\)\\s*(?<operator>!?=)\\s*" + LITERAL);
+	private static final Pattern NAME_STARTS_WITH_PATTERN = Pattern.compile("starts-with\\(\\s*name\\(\\s*\\)\\s*,\\s*" + LITERAL + "\\s*\\)");
+	private static final Pattern PARENT_PATTERN = Pattern.compile("parent::(node\\(\\s*\\)|\\*)\\s*\\[(?<predicate>.*)\\]");
+	private static final Pattern CHILD_ELEMENT_PATTERN = Pattern.compile("(?:\\./|child::)?(?<name>" + NAME + ")");
+	private static final Pattern ATTRIBUTE_PATTERN = Pattern.compile("(?:\\./)?(?:@|attribute::)(?<name>" + NAME + ")");
+	// Pattern for the 'and' and 'or' operators (the operands are checked to be outside of brackets and string literals).
+	private static final Pattern OPERATOR_PATTERN = Pattern.compile("(?<=[\\s)\\]])(?<operator>and|or)(?=[\\s(])");
+	
+	/**
+	 * Evaluate the condition on the element the VTDNav is positioned on, the position of the VTDNav is kept.
+	 * @param nv The VTDNav.
+	 * @return Whether the element conforms to the condition.
+	 * @throws NavException
+	 * @throws XPathParseException
+	 */
+	public abstract boolean evaluate(VTDNav nv) throws NavException, XPathParseException;
+	
+	/**
+	 * Check whether (a part of) the condition is evaluated using XPath.
+	 * @return Whether XPath is used.
+	 */
+	public abstract boolean usesXPath();
+	
+	/**
+	 * Compile the condition of an element condition.
+	 * @param xpath The XPath expression of the condition.
+	 * @param nv The VTDNav, which is used to compile the XPath expressions which can't be evaluated directly on the VTD tokens (so errors in the expression are found when compiling).
+	 * @param autoPilotFactory The factory to create a new AutoPilot (for example to declare namespaces) for the XPath expressions.
+	 * @return The compiled condition.
+	 * @throws XPathParseException
+	 */
+	public static CompiledElementCondition compile(String xpath, VTDNav nv, XPathCache.AutoPilotFactory autoPilotFactory) throws XPathParseException {
+		String expression = stripParentheses(xpath.trim());
+		
+		// An expression with 'or' or 'and' operators is compiled into a group of its operands ('and' takes precedence over 'or').
+		for (String operator : new String[] { "or", "and" }) {
+			List<String> operands = splitOnOperator(expression, operator);
+			if (operands != null && operands.size() > 1) {
+				List<CompiledElementCondition> conditions = new ArrayList<CompiledElementCondition>();
+				for (String operand : operands)
+					conditions.add(compile(operand, nv, autoPilotFactory));
+				return operator.equals("or") ? new OneOffConditions(conditions) : new AllConditions(conditions);
+			}
+		}
+		
+		CompiledElementCondition nameCondition = compileNameCondition(expression, false);
+		if (nameCondition != null)
+			return nameCondition;
+		
+		Matcher parentMatcher = PARENT_PATTERN.matcher(expression);
+		if (parentMatcher.matches()) {
+			nameCondition = compileNameCondition(stripParentheses(parentMatcher.group("predicate").trim()), true);
+			if (nameCondition != null)
+				return nameCondition;
+		}
+		
+		Matcher childElementMatcher = CHILD_ELEMENT_PATTERN.matcher(expression);
+		if (childElementMatcher.matches())
+			return new ChildElementExists(childElementMatcher.group("name"));
+		
+		Matcher attributeMatcher = ATTRIBUTE_PATTERN.matcher(expression);
+		if (attributeMatcher.matches() && !attributeMatcher.group("name").equals("xmlns"))
+			return new AttributeExists(attributeMatcher.group("name"));
+		
+		// Evaluate any other condition using XPath, the expression is compiled now to report errors in the expression.
+		XPathCache.getAutoPilot(nv, xpath, 0, autoPilotFactory);
+		return new XPathCondition(xpath, autoPilotFactory);
+	}
+	
+	/**
+	 * Compile a name test on the element or its parent.
+	 * @return The compiled condition, or null if the expression isn't a name test.
+	 */
+	private static CompiledElementCondition compileNameCondition(String expression, boolean onParent) {
+		Matcher nameComparisonMatcher = NAME_COMPARISON_PATTERN.matcher(expression);
+		if (nameComparisonMatcher.matches()) {
+			NameOperator nameOperator = nameComparisonMatcher.group("operator").equals("=") ? NameOperator.EQUALS : NameOperator.NOT_EQUALS;
+			return new ElementName(nameOperator, getLiteralValue(nameComparisonMatcher), onParent);
+		}
+		Matcher nameStartsWithMatcher = NAME_STARTS_WITH_PATTERN.matcher(expression);
+		if (nameStartsWithMatcher.matches())
+			return new ElementName(NameOperator.STARTS_WITH, getLiteralValue(nameStartsWithMatcher), onParent);
+		return null;
+	}
+	
+	private static String getLiteralValue(Matcher matcher) {
+		return (matcher.group("value1") != null) ? matcher.group("value1") : matcher.group("value2");
+	}
+	
+	/**
+	 * Remove the parentheses around the complete expression.
+	 */
+	private static String stripParentheses(String expression) {
+		while (expression.startsWith("(") && expression.endsWith(")") && getClosingBracketIndex(expression, 0) == expression.length() - 1)
+			expression = expression.substring(1, expression.length() - 1).trim();
+		return expression;
+	}
+	
+	/**
+	 * Get the index of the bracket which closes the bracket at the index.
+	 * @return The index of the closing bracket, or -1 if the bracket isn't closed.
+	 */
+	private static int getClosingBracketIndex(String expression, int openingBracketIndex) {
+		int depth = 0;
+		char quote = 0;
+		for (int i = openingBracketIndex; i < expression.length(); i++) {
+			char c = expression.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == '(' || c == '[') {
+				depth++;
+			} else if ((c == ')' || c == ']') && --depth == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Split the expression on the operator, where the operator is outside of brackets and string literals.
+	 * @return The operands, or null if the brackets or string literals in the expression aren't closed.
+	 */
+	private static List<String> splitOnOperator(String expression, String operator) {
+		List<String> operands = new ArrayList<String>();
+		int depth = 0;
+		char quote = 0;
+		int operandStart = 0;
+		Matcher operatorMatcher = OPERATOR_PATTERN.matcher(expression);
+		for (int i = 0; i < expression.length(); i++) {
+			char c = expression.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == '(' || c == '[') {
+				depth++;
+			} else if (c == ')' || c == ']') {
+				depth--;
+			} else if (depth == 0 && c == operator.charAt(0) && operatorMatcher.find(i) && operatorMatcher.start() == i && operatorMatcher.group("operator").equals(operator)) {
+				operands.add(expression.substring(operandStart, i).trim());
+				operandStart = i + operator.length();
+			}
+		}
+		operands.add(expression.substring(operandStart).trim());
+		if (depth != 0 || quote != 0 || operands.contains(""))
+			return null;
+		return operands;
+	}
+	
+	/**
+	 * Group of conditions, where all conditions must be met.
+	 */
+	public static class AllConditions extends CompiledElementCondition {
+		private final List<CompiledElementCondition> _conditions;
+		
+		public AllConditions(List<CompiledElementCondition> conditions) {
+			this._conditions = conditions;
+		}
+		
+		@Override
+		public boolean evaluate(VTDNav nv) throws NavException, XPathParseException {
+			for (CompiledElementCondition condition : _conditions) {
+				if (!condition.evaluate(nv))
+					return false;
+			}
+			return true;
+		}
+		
+		@Override
+		public boolean usesXPath() {
+			return _conditions.stream().anyMatch(CompiledElementCondition::usesXPath);
+		}
+	}
+	
+	/**
+	 * Group of conditions, where one of the conditions must be met.
+	 */
+	public static class OneOffConditions extends CompiledElementCondition {
+		private final List<CompiledElementCondition> _conditions;
+		
+		public OneOffConditions(List<CompiledElementCondition> conditions) {
+			this._conditions = conditions;
+		}
+		
+		@Override
+		public boolean evaluate(VTDNav nv) throws NavException, XPathParseException {
+			for (CompiledElementCondition condition : _conditions) {
+				if (condition.evaluate(nv))
+					return true;
+			}
+			return false;
+		}
+		
+		@Override
+		public boolean usesXPath() {
+			return _conditions.stream().anyMatch(CompiledElementCondition::usesXPath);
+		}
+	}
+	
+	private enum NameOperator {
+		EQUALS,
+		NOT_EQUALS,
+		STARTS_WITH
+	}
+	
+	/**
+	 * Test on the (qualified) name of the element or its parent, like name() = 'x' or parent::node()[starts-with(name(), 'x')].
+	 */
+	private static class ElementName extends CompiledElementCondition {
+		private final NameOperator _operator;
+		private final String _value;
+		private final boolean _onParent;
+		
+		public ElementName(NameOperator operator, String value, boolean onParent) {
+			this._operator = operator;
+			this._value = value;
+			this._onParent = onParent;
+		}
+		
+		@Override
+		public boolean evaluate(VTDNav nv) throws NavException {
+			if (!_onParent)
+				return matchName(nv, nv.getCurrentIndex());
+			nv.push();
+			try {
+				if (nv.toElement(VTDNav.PARENT))
+					return matchName(nv, nv.getCurrentIndex());
+				// The parent of the root element is the document node, VTD-XML gives it a name which is never equal to (and only starts with) an empty string.
+				return _operator != NameOperator.EQUALS && (_operator == NameOperator.NOT_EQUALS || _value.isEmpty());
+			} finally {
+				nv.pop();
+			}
+		}
+		
+		private boolean matchName(VTDNav nv, int elementIndex) throws NavException {
+			switch (_operator) {
+				case EQUALS:
+					return nv.matchRawTokenString(elementIndex, _value);
+				case NOT_EQUALS:
+					return !nv.matchRawTokenString(elementIndex, _value);
+				default:
+					return nv.toRawString(elementIndex).startsWith(_value);
+			}
+		}
+		
+		@Override
+		public boolean usesXPath() {
+			return false;
+		}
+	}
+	
+	/**
+	 * Test whether the element has a child element with a name, like ./Name.
+	 */
+	private static class ChildElementExists extends CompiledElementCondition {
+		private final String _name;
+		
+		public ChildElementExists(String name) {
+			this._name = name;
+		}
+		
+		@Override
+		public boolean evaluate(VTDNav nv) throws NavException {
+			nv.push();
+			try {
+				return nv.toElement(VTDNav.FIRST_CHILD, _name);
+			} finally {
+				nv.pop();
+			}
+		}
+		
+		@Override
+		public boolean usesXPath() {
+			return false;
+		}
+	}
+	
+	/**
+	 * Test whether the element has an attribute with a name, like @Name.
+	 */
+	private static class AttributeExists extends CompiledElementCondition {
+		private final String _name;
+		
+		public AttributeExists(String name) {
+			this._name = name;
+		}
+		
+		@Override
+		public boolean evaluate(VTDNav nv) throws NavException {
+			return nv.hasAttr(_name);
+		}
+		
+		@Override
+		public boolean usesXPath() {
+			return false;
+		}
+	}
+	
+	/**
+	 * Condition which is evaluated using XPath (using the compiled expression of the current thread).
+	 */
+	private static class XPathCondition extends CompiledElementCondition {
+		private final String _xpath;
+		private final XPathCache.AutoPilotFactory _autoPilotFactory;
+		
+		public XPathCondition(String xpath, XPathCache.AutoPilotFactory autoPilotFactory) {
+			this._xpath = xpath;
+			this._autoPilotFactory = autoPilotFactory;
+		}
+		
+		@Override
+		public boolean evaluate(VTDNav nv) throws XPathParseException {
+			return XPathCache.getAutoPilot(nv, _xpath, 0, _autoPilotFactory).evalXPathToBoolean();
+		}
+		
+		@Override
+		public boolean usesXPath() {
+			return true;
+		}
+	}
+}
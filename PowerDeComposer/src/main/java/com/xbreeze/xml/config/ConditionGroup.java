@@ -1,7 +1,12 @@
 package com.xbreeze.xml.config;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import com.xbreeze.xml.utils.XPathCache;
+import com.ximpleware.VTDNav;
+import com.ximpleware.XPathParseException;
+
 import jakarta.xml.bind.annotation.XmlElement;
 import jakarta.xml.bind.annotation.XmlElements;
 import jakarta.xml.bind.annotation.XmlSeeAlso;
@@ -42,5 +47,17 @@ public abstract class ConditionGroup implements ElementConditionOrGroup {
 		return stringBuffer.toString();
 	}
 	
+	@Override
+	public CompiledElementCondition compileCondition(VTDNav nv, XPathCache.AutoPilotFactory autoPilotFactory) throws XPathParseException {
+		List<CompiledElementCondition> compiledConditions = new ArrayList<CompiledElementCondition>();
+		if (this.getElementConditionsAndGroups() != null) {
+			for (ElementConditionOrGroup elementConditionOrGroup : this.getElementConditionsAndGroups())
+				compiledConditions.add(elementConditionOrGroup.compileCondition(nv, autoPilotFactory));
+		}
+		return this.compileConditionGroup(compiledConditions);
+	}
+	
 	protected abstract String getXPathConditionOperator();
+	
+	protected abstract CompiledElementCondition compileConditionGroup(List<CompiledElementCondition> compiledConditions);
 }
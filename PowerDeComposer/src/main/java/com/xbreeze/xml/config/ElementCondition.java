@@ -1,5 +1,9 @@
 package com.xbreeze.xml.config;
 
+import com.xbreeze.xml.utils.XPathCache;
+import com.ximpleware.VTDNav;
+import com.ximpleware.XPathParseException;
+
 public class ElementCondition extends AbstractConfigElementWithXPathAttribute implements ElementConditionOrGroup {
 
 	public ElementCondition() {
@@ -10,4 +14,9 @@ public class ElementCondition extends AbstractConfigElementWithXPathAttribute im
 	public String getXPathExpression() {
 		return this.getXPath();
 	}
+
+	@Override
+	public CompiledElementCondition compileCondition(VTDNav nv, XPathCache.AutoPilotFactory autoPilotFactory) throws XPathParseException {
+		return CompiledElementCondition.compile(this.getXPath(), nv, autoPilotFactory);
+	}
 }
@@ -1,5 +1,9 @@
 package com.xbreeze.xml.config;
 
+import com.xbreeze.xml.utils.XPathCache;
+import com.ximpleware.VTDNav;
+import com.ximpleware.XPathParseException;
+
 import jakarta.xml.bind.annotation.XmlSeeAlso;
 import jakarta.xml.bind.annotation.XmlTransient;
 
@@ -8,4 +12,6 @@ import jakarta.xml.bind.annotation.XmlTransient;
 public interface ElementConditionOrGroup {
 
 	public String getXPathExpression();
+	
+	public CompiledElementCondition compileCondition(VTDNav nv, XPathCache.AutoPilotFactory autoPilotFactory) throws XPathParseException;
 }
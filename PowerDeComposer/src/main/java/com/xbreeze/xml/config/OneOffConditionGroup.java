@@ -1,5 +1,7 @@
 package com.xbreeze.xml.config;
 
+import java.util.List;
+
 public class OneOffConditionGroup extends ConditionGroup {
 
 	public OneOffConditionGroup() {
@@ -10,4 +12,9 @@ public class OneOffConditionGroup extends ConditionGroup {
 	protected String getXPathConditionOperator() {
 		return "or";
 	}
+
+	@Override
+	protected CompiledElementCondition compileConditionGroup(List<CompiledElementCondition> compiledConditions) {
+		return new CompiledElementCondition.OneOffConditions(compiledConditions);
+	}
 }
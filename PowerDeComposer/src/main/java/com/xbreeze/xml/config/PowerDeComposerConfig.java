@@ -25,9 +25,14 @@ package com.xbreeze.xml.config;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.util.HashMap;
 import java.util.logging.Logger;
 
 import javax.xml.XMLConstants;
@@ -45,10 +50,12 @@ import jakarta.xml.bind.annotation.XmlAccessorType;
 import jakarta.xml.bind.annotation.XmlElement;
 import jakarta.xml.bind.annotation.XmlRootElement;
 
+import org.apache.commons.io.IOUtils;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
+import com.xbreeze.xml.compose.config.ComposeConfig;
 import com.xbreeze.xml.decompose.config.DecomposeConfig;
 
 
@@ -59,7 +66,14 @@ public class PowerDeComposerConfig {
 	// The logger for this class.
 	private static final Logger logger = Logger.getLogger(PowerDeComposerConfig.class.getName());
 	
+	// The compiled config schema and the JAXB context, these are created on first use and shared by all config loads (both are thread-safe).
+	private static Schema _configSchema;
+	private static JAXBContext _jaxbContext;
+	// The configs read using getCachedConfig, by canonical config file location (null is the default config). Guarded by synchronizing on the map.
+	private static final HashMap<String, CachedConfig> _configCache = new HashMap<String, CachedConfig>();
+	
 	private DecomposeConfig _decomposeConfig;
+	private ComposeConfig _composeConfig;
 	
 	@XmlElement(name = "Decompose")
 	public DecomposeConfig getDecomposeConfig() {
@@ -70,6 +84,15 @@ public class PowerDeComposerConfig {
 		this._decomposeConfig = decomposeConfig;
 	}
 	
+	@XmlElement(name = "Compose")
+	public ComposeConfig getComposeConfig() {
+		return _composeConfig;
+	}
+
+	public void setComposeConfig(ComposeConfig composeConfig) {
+		this._composeConfig = composeConfig;
+	}
+	
 	/**
 	 * Default constructor.
 	 */
@@ -81,6 +104,14 @@ public class PowerDeComposerConfig {
 	 */
 	public static PowerDeComposerConfig GetDefaultConfig() throws ConfigException {
 		String defaultConfigFile = String.format("Default%s.xml", PowerDeComposerConfig.class.getSimpleName());
+		// Read the default config file using the config reader.
+		try (InputStream defaultConfigStream = PowerDeComposerConfig.class.getResourceAsStream(defaultConfigFile)) {
+			PowerDeComposerConfig config = fromBytes(IOUtils.toByteArray(defaultConfigStream));
+			if (config != null)
+				return config;
+		} catch (IOException e) {
+			// The error is reported when reading the config using JAXB below.
+		}
 		// Get an stream on the default config file.
 		InputStream defaultConfigStream = PowerDeComposerConfig.class.getResourceAsStream(defaultConfigFile);
 		// Create the config object based on the default config file.
@@ -96,6 +127,9 @@ public class PowerDeComposerConfig {
 	 * @throws ConfigException
 	 */
 	public static PowerDeComposerConfig fromString(String pdcConfigFileContent) throws ConfigException {
+		PowerDeComposerConfig pdcConfig = fromBytes(pdcConfigFileContent.getBytes(StandardCharsets.UTF_8));
+		if (pdcConfig != null)
+			return pdcConfig;
 		return fromInputSource(new InputSource(new StringReader(pdcConfigFileContent)));
 	}
 	
@@ -108,6 +142,15 @@ public class PowerDeComposerConfig {
 	public static PowerDeComposerConfig fromFile(File pdcConfigFile) throws ConfigException {
 		logger.fine(String.format("Creating PowerDeComposerConfigFile object from '%s'", pdcConfigFile));
 		PowerDeComposerConfig pdcConfig;
+		// Read the config file using the config reader.
+		try {
+			pdcConfig = fromBytes(Files.readAllBytes(pdcConfigFile.toPath()));
+			if (pdcConfig != null)
+				return pdcConfig;
+		} catch (IOException | InvalidPathException e) {
+			// The error is reported when reading the config using JAXB below.
+		}
+		
 		try {
 			pdcConfig = fromInputSource(new InputSource(new FileReader(pdcConfigFile)));
 		} catch (ConfigException e) {
@@ -120,6 +163,94 @@ public class PowerDeComposerConfig {
 		return pdcConfig;
 	}
 	
+	/**
+	 * Create a PowerDeComposerConfig object from the contents of a config file using the PowerDeComposerConfigReader, which doesn't need JAXB.
+	 * @param configFileContents The contents of the config file.
+	 * @return The PowerDeComposerConfig object, or null when the config reader can't read the config (so it should be read using JAXB).
+	 */
+	private static PowerDeComposerConfig fromBytes(byte[] configFileContents) {
+		try {
+			return PowerDeComposerConfigReader.read(configFileContents);
+		} catch (ConfigException e) {
+			logger.fine(String.format("Reading the config using JAXB, since the config reader can't read it: %s", e.getMessage()));
+			return null;
+		}
+	}
+	
+	/**
+	 * Get the config for a config file, the config is only read again when the config file changed (by size or modification time) since it was read.
+	 * The returned config is shared with other callers, so it shouldn't be modified.
+	 * @param pdcConfigFile The config file, or null for the default config.
+	 * @return The PowerDeComposerConfig object.
+	 * @throws ConfigException
+	 */
+	public static PowerDeComposerConfig getCachedConfig(File pdcConfigFile) throws ConfigException {
+		String configCacheKey = null;
+		if (pdcConfigFile != null) {
+			try {
+				configCacheKey = pdcConfigFile.getCanonicalPath();
+			} catch (IOException e) {
+				configCacheKey = pdcConfigFile.getAbsolutePath();
+			}
+		}
+		synchronized (_configCache) {
+			CachedConfig cachedConfig = _configCache.get(configCacheKey);
+			if (cachedConfig != null && cachedConfig.isUnchanged(pdcConfigFile)) {
+				logger.fine(String.format("Using the cached config of '%s'.", pdcConfigFile));
+				return cachedConfig.getConfig();
+			}
+			if (pdcConfigFile != null) {
+				// The size and modification time are taken before the file is read, so a change while reading is detected on the next call.
+				long configFileSize = pdcConfigFile.length();
+				long configFileModificationTime = pdcConfigFile.lastModified();
+				cachedConfig = new CachedConfig(fromFile(pdcConfigFile), configFileSize, configFileModificationTime);
+			} else {
+				cachedConfig = new CachedConfig(GetDefaultConfig(), 0, 0);
+			}
+			_configCache.put(configCacheKey, cachedConfig);
+			return cachedConfig.getConfig();
+		}
+	}
+	
+	/**
+	 * Get the compiled config schema, the schema is compiled on first use.
+	 * @return The config schema.
+	 * @throws ConfigException
+	 */
+	private static synchronized Schema getConfigSchema() throws ConfigException {
+		if (_configSchema == null) {
+			// Create a resource on the schema file.
+			// Schema file generated using following tutorial: https://examples.javacodegeeks.com/core-java/xml/bind/jaxb-schema-validation-example/
+			String pdcConfigXsdFileName = String.format("%s.xsd", PowerDeComposerConfig.class.getSimpleName());
+			URL pdcConfigXsdResource = PowerDeComposerConfig.class.getResource(pdcConfigXsdFileName);
+			// If the schema file can't be found, throw an exception.
+			if (pdcConfigXsdResource == null) {
+				throw new ConfigException(String.format("Can't find the schema file '%s'", pdcConfigXsdFileName));
+			}
+			
+			// Try to load the schema.
+			try {
+				SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+				_configSchema = sf.newSchema(pdcConfigXsdResource);
+			} catch (SAXException e) {
+				throw new ConfigException(String.format("Couldn't read the schema file (%s)", pdcConfigXsdResource.toString()), e);
+			}
+		}
+		return _configSchema;
+	}
+	
+	/**
+	 * Get the JAXB context for the config classes, the context is created on first use.
+	 * @return The JAXB context.
+	 * @throws JAXBException
+	 */
+	private static synchronized JAXBContext getJAXBContext() throws JAXBException {
+		if (_jaxbContext == null) {
+			_jaxbContext = JAXBContext.newInstance(PowerDeComposerConfig.class);
+		}
+		return _jaxbContext;
+	}
+	
 	/**
 	 * Create a PowerDeComposerConfig object using a InputSource.
 	 * @param inputSource The InputSource.
@@ -128,29 +259,13 @@ public class PowerDeComposerConfig {
 	 */
 	private static PowerDeComposerConfig fromInputSource(InputSource inputSource) throws ConfigException {
 		PowerDeComposerConfig pdcConfig;
-		// Create a resource on the schema file.
-		// Schema file generated using following tutorial: https://examples.javacodegeeks.com/core-java/xml/bind/jaxb-schema-validation-example/
-		String pdcConfigXsdFileName = String.format("%s.xsd", PowerDeComposerConfig.class.getSimpleName());
-		URL pdcConfigXsdResource = PowerDeComposerConfig.class.getResource(pdcConfigXsdFileName);
-		// If the schema file can't be found, throw an exception.
-		if (pdcConfigXsdResource == null) {
-			throw new ConfigException(String.format("Can't find the schema file '%s'", pdcConfigXsdFileName));
-		}
-		
-		// Try to load the schema.
-		Schema configSchema;
-		try {
-			SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-			configSchema = sf.newSchema(pdcConfigXsdResource);
-		} catch (SAXException e) {
-			throw new ConfigException(String.format("Couldn't read the schema file (%s)", pdcConfigXsdResource.toString()), e);
-		}
+		// Get the compiled schema.
+		Schema configSchema = getConfigSchema();
 		
 		// Try to unmarshal the config file.
 		try {
-			// Create the JAXB context.
-			JAXBContext jaxbContext = JAXBContext.newInstance(PowerDeComposerConfig.class);
-			Unmarshaller pdcConfigUnmarshaller = jaxbContext.createUnmarshaller();
+			// Create an unmarshaller using the shared JAXB context (an unmarshaller isn't thread-safe, so it is created for every config).
+			Unmarshaller pdcConfigUnmarshaller = getJAXBContext().createUnmarshaller();
 			// Set the schema on the unmarshaller.
 			pdcConfigUnmarshaller.setSchema(configSchema);
 			// Set the event handler.
@@ -172,4 +287,29 @@ public class PowerDeComposerConfig {
 		return pdcConfig;
 	}
 	
+	/**
+	 * A config with the size and modification time of the config file when it was read.
+	 */
+	private static class CachedConfig {
+		private PowerDeComposerConfig _config;
+		private long _size;
+		private long _modificationTime;
+		
+		public CachedConfig(PowerDeComposerConfig config, long size, long modificationTime) {
+			this._config = config;
+			this._size = size;
+			this._modificationTime = modificationTime;
+		}
+		
+		public PowerDeComposerConfig getConfig() {
+			return _config;
+		}
+		
+		/**
+		 * Check whether the config file is unchanged since the config was read (the default config never changes).
+		 */
+		public boolean isUnchanged(File configFile) {
+			return configFile == null || (configFile.isFile() && configFile.length() == _size && configFile.lastModified() == _modificationTime);
+		}
+	}
 }
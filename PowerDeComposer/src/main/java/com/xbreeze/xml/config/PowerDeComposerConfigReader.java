@@ -0,0 +1,529 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.xbreeze.xml.compose.config.ComposeConfig;
+import com.xbreeze.xml.decompose.config.ChangeDetectionConfig;
+import com.xbreeze.xml.decompose.config.DecomposableElementConfig;
+import com.xbreeze.xml.decompose.config.DecomposeConfig;
+import com.xbreeze.xml.decompose.config.DecomposeEngine;
+import com.xbreeze.xml.decompose.config.IdentifierReplacementConfig;
+import com.xbreeze.xml.decompose.config.IncludeAttributeConfig;
+import com.xbreeze.xml.decompose.config.NodeRemovalConfig;
+import com.xbreeze.xml.decompose.config.TargetFileNameConfig;
+import com.xbreeze.xml.decompose.config.TargetFolderNameConfig;
+import com.ximpleware.NavException;
+import com.ximpleware.ParseException;
+import com.ximpleware.VTDGen;
+import com.ximpleware.VTDNav;
+
+/**
+ * Reader which reads a PowerDeComposerConfig directly from the config file using the VTD parser.
+ * This way JAXB doesn't need to be loaded and the config schema doesn't need to be compiled, which is the largest fixed cost when composing or decomposing a small model.
+ * The reader only accepts configs which are valid according to the config schema and results in the same config objects as JAXB.
+ * For any other config, or a construct the reader doesn't support (like a DTD, namespaces or non-ASCII characters), it throws a ConfigException so the config can be read using JAXB, which reports the errors in the config.
+ */
+class PowerDeComposerConfigReader {
+	// The lexical representation of xs:int and xs:long values (after trimming).
+	private static final Pattern INTEGER_PATTERN = Pattern.compile("[+-]?[0-9]+");
+	
+	private VTDNav _nav;
+	
+	/**
+	 * Constructor.
+	 * @param nav The VTDNav on the config file.
+	 */
+	private PowerDeComposerConfigReader(VTDNav nav) {
+		this._nav = nav;
+	}
+	
+	/**
+	 * Read a PowerDeComposerConfig from the contents of a config file.
+	 * @param configFileContents The contents of the config file.
+	 * @return The PowerDeComposerConfig object.
+	 * @throws ConfigException When the config can't be read using this reader.
+	 */
+	static PowerDeComposerConfig read(byte[] configFileContents) throws ConfigException {
+		// Only read ASCII files, so the contents are the same regardless of the charset the file is read with by JAXB (control characters aren't allowed in XML).
+		for (byte configFileByte : configFileContents) {
+			if (configFileByte < 0 || (configFileByte < 0x20 && configFileByte != '\t' && configFileByte != '\n' && configFileByte != '\r'))
+				throw new ConfigException("The config file contains non-ASCII or control characters");
+		}
+		
+		VTDGen vg = new VTDGen();
+		vg.setDoc(configFileContents);
+		try {
+			vg.parse(false);
+		} catch (ParseException e) {
+			throw new ConfigException(String.format("The config file can't be parsed: %s", e.getMessage()), e);
+		}
+		
+		try {
+			return new PowerDeComposerConfigReader(vg.getNav()).readConfig();
+		} catch (NavException e) {
+			throw new ConfigException(String.format("The config file can't be navigated: %s", e.getMessage()), e);
+		}
+	}
+	
+	/**
+	 * Read the PowerDeComposerConfig element (the root element).
+	 */
+	private PowerDeComposerConfig readConfig() throws ConfigException, NavException {
+		// Check the document only contains elements, attributes, comments, processing instructions and whitespace.
+		for (int tokenIndex = 0; tokenIndex < _nav.getTokenCount(); tokenIndex++) {
+			int tokenType = _nav.getTokenType(tokenIndex);
+			if (tokenType == VTDNav.TOKEN_DTD_VAL || tokenType == VTDNav.TOKEN_CDATA_VAL || tokenType == VTDNav.TOKEN_ATTR_NS)
+				throw new ConfigException("The config file contains a DTD, CDATA section or namespace declaration");
+			if (tokenType == VTDNav.TOKEN_CHARACTER_DATA && !isWhitespace(_nav.toRawString(tokenIndex)))
+				throw new ConfigException(String.format("The config file contains text '%s'", _nav.toRawString(tokenIndex).trim()));
+		}
+		
+		int configElementIndex = _nav.getCurrentIndex();
+		checkElementName(configElementIndex, "PowerDeComposerConfig");
+		getAttributes(configElementIndex);
+		
+		// The Compose and Decompose elements can be specified in any order.
+		PowerDeComposerConfig pdcConfig = new PowerDeComposerConfig();
+		for (int childElementIndex : getChildElements(configElementIndex)) {
+			String childElementName = _nav.toRawString(childElementIndex);
+			if (childElementName.equals("Compose") && pdcConfig.getComposeConfig() == null) {
+				pdcConfig.setComposeConfig(readComposeConfig(childElementIndex));
+			} else if (childElementName.equals("Decompose") && pdcConfig.getDecomposeConfig() == null) {
+				pdcConfig.setDecomposeConfig(readDecomposeConfig(childElementIndex));
+			} else {
+				throw unexpectedElement(childElementIndex);
+			}
+		}
+		return pdcConfig;
+	}
+	
+	/**
+	 * Read the Compose element.
+	 */
+	private ComposeConfig readComposeConfig(int elementIndex) throws ConfigException, NavException {
+		Map<String, String> attributes = getAttributes(elementIndex, "parallelism", "streaming", "skipUnchanged", "fragmentCacheDirectory", "fragmentCacheSize", "stateDirectory");
+		checkEmptyElement(elementIndex);
+		
+		ComposeConfig composeConfig = new ComposeConfig();
+		if (attributes.containsKey("parallelism"))
+			composeConfig.setParallelism(parseInteger(attributes, "parallelism"));
+		if (attributes.containsKey("streaming"))
+			composeConfig.setStreaming(parseBoolean(attributes, "streaming"));
+		if (attributes.containsKey("skipUnchanged"))
+			composeConfig.setSkipUnchanged(parseBoolean(attributes, "skipUnchanged"));
+		if (attributes.containsKey("fragmentCacheDirectory"))
+			composeConfig.setFragmentCacheDirectory(attributes.get("fragmentCacheDirectory"));
+		if (attributes.containsKey("fragmentCacheSize"))
+			composeConfig.setFragmentCacheSize(parseLong(attributes, "fragmentCacheSize"));
+		if (attributes.containsKey("stateDirectory"))
+			composeConfig.setStateDirectory(attributes.get("stateDirectory"));
+		return composeConfig;
+	}
+	
+	/**
+	 * Read the Decompose element.
+	 */
+	private DecomposeConfig readDecomposeConfig(int elementIndex) throws ConfigException, NavException {
+		Map<String, String> attributes = getAttributes(elementIndex, "fileRemovalStrategy", "formalizeExtendedAttributes", "writerCount", "parallelism", "skipUnchangedFiles", "engine", "largeDocumentThreshold", "indexCacheDirectory", "indexCacheSize", "incremental", "stateDirectory");
+		
+		DecomposeConfig decomposeConfig = new DecomposeConfig();
+		if (attributes.containsKey("fileRemovalStrategy"))
+			decomposeConfig.setFileRemovalStrategy(attributes.get("fileRemovalStrategy"));
+		if (attributes.containsKey("formalizeExtendedAttributes"))
+			decomposeConfig.setFormalizeExtendedAttributes(parseBoolean(attributes, "formalizeExtendedAttributes"));
+		if (attributes.containsKey("writerCount"))
+			decomposeConfig.setWriterCount(parseInteger(attributes, "writerCount"));
+		if (attributes.containsKey("parallelism"))
+			decomposeConfig.setParallelism(parseInteger(attributes, "parallelism"));
+		if (attributes.containsKey("skipUnchangedFiles"))
+			decomposeConfig.setSkipUnchangedFiles(parseBoolean(attributes, "skipUnchangedFiles"));
+		if (attributes.containsKey("engine"))
+			decomposeConfig.setEngine(parseEngine(attributes, "engine"));
+		if (attributes.containsKey("largeDocumentThreshold"))
+			decomposeConfig.setLargeDocumentThreshold(parseLong(attributes, "largeDocumentThreshold"));
+		if (attributes.containsKey("indexCacheDirectory"))
+			decomposeConfig.setIndexCacheDirectory(attributes.get("indexCacheDirectory"));
+		if (attributes.containsKey("indexCacheSize"))
+			decomposeConfig.setIndexCacheSize(parseLong(attributes, "indexCacheSize"));
+		if (attributes.containsKey("incremental"))
+			decomposeConfig.setIncremental(parseBoolean(attributes, "incremental"));
+		if (attributes.containsKey("stateDirectory"))
+			decomposeConfig.setStateDirectory(attributes.get("stateDirectory"));
+		
+		// The child elements are optional, but must be specified in this order.
+		List<String> childElementOrder = Arrays.asList("ChangeDetection", "NodeRemovals", "IdentifierReplacements", "DecomposableElement");
+		int formerChildElementPosition = -1;
+		for (int childElementIndex : getChildElements(elementIndex)) {
+			String childElementName = _nav.toRawString(childElementIndex);
+			int childElementPosition = childElementOrder.indexOf(childElementName);
+			if (childElementPosition <= formerChildElementPosition)
+				throw unexpectedElement(childElementIndex);
+			formerChildElementPosition = childElementPosition;
+			
+			if (childElementName.equals("ChangeDetection")) {
+				Map<String, String> changeDetectionAttributes = getAttributes(childElementIndex, "xpath", "fingerprint");
+				checkEmptyElement(childElementIndex);
+				ChangeDetectionConfig changeDetectionConfig = new ChangeDetectionConfig();
+				if (changeDetectionAttributes.containsKey("xpath"))
+					changeDetectionConfig.setXPath(changeDetectionAttributes.get("xpath"));
+				if (changeDetectionAttributes.containsKey("fingerprint"))
+					changeDetectionConfig.setFingerprint(parseBoolean(changeDetectionAttributes, "fingerprint"));
+				decomposeConfig.setChangeDetectionConfig(changeDetectionConfig);
+			} else if (childElementName.equals("NodeRemovals")) {
+				List<NodeRemovalConfig> nodeRemovalConfigs = new ArrayList<NodeRemovalConfig>();
+				for (int nodeRemovalElementIndex : getWrappedElements(childElementIndex, "NodeRemoval", false)) {
+					Map<String, String> nodeRemovalAttributes = getAttributes(nodeRemovalElementIndex, "xpath");
+					NodeRemovalConfig nodeRemovalConfig = new NodeRemovalConfig();
+					if (nodeRemovalAttributes.containsKey("xpath"))
+						nodeRemovalConfig.setXPath(nodeRemovalAttributes.get("xpath"));
+					nodeRemovalConfigs.add(nodeRemovalConfig);
+				}
+				decomposeConfig.setNodeRemovalConfigs(nodeRemovalConfigs);
+			} else if (childElementName.equals("IdentifierReplacements")) {
+				List<IdentifierReplacementConfig> identifierReplacementConfigs = new ArrayList<IdentifierReplacementConfig>();
+				for (int identifierReplacementElementIndex : getWrappedElements(childElementIndex, "IdentifierReplacement", false)) {
+					Map<String, String> identifierReplacementAttributes = getAttributes(identifierReplacementElementIndex, "identifierNodeXPath", "referencingNodeXPath", "replacementValueXPath");
+					IdentifierReplacementConfig identifierReplacementConfig = new IdentifierReplacementConfig();
+					if (identifierReplacementAttributes.containsKey("identifierNodeXPath"))
+						identifierReplacementConfig.setIdentifierNodeXPath(identifierReplacementAttributes.get("identifierNodeXPath"));
+					if (identifierReplacementAttributes.containsKey("referencingNodeXPath"))
+						identifierReplacementConfig.setReferencingNodeXPath(identifierReplacementAttributes.get("referencingNodeXPath"));
+					if (identifierReplacementAttributes.containsKey("replacementValueXPath"))
+						identifierReplacementConfig.setReplacementValueXPath(identifierReplacementAttributes.get("replacementValueXPath"));
+					identifierReplacementConfigs.add(identifierReplacementConfig);
+				}
+				decomposeConfig.setIdentifierReplacementConfigs(identifierReplacementConfigs);
+			} else {
+				decomposeConfig.setDecomposableElementConfig(readDecomposableElementConfig(childElementIndex));
+			}
+		}
+		return decomposeConfig;
+	}
+	
+	/**
+	 * Read the DecomposableElement element.
+	 */
+	private DecomposableElementConfig readDecomposableElementConfig(int elementIndex) throws ConfigException, NavException {
+		getAttributes(elementIndex);
+		
+		// The conditions are specified first, followed by the optional TargetFolderNames, TargetFileNames and IncludeAttributes elements in this order.
+		DecomposableElementConfig decomposableElementConfig = new DecomposableElementConfig();
+		List<ElementConditionOrGroup> elementConditionsAndGroups = new ArrayList<ElementConditionOrGroup>();
+		List<String> childElementOrder = Arrays.asList("TargetFolderNames", "TargetFileNames", "IncludeAttributes");
+		int formerChildElementPosition = -1;
+		for (int childElementIndex : getChildElements(elementIndex)) {
+			String childElementName = _nav.toRawString(childElementIndex);
+			if (formerChildElementPosition == -1 && isElementConditionOrGroup(childElementName)) {
+				elementConditionsAndGroups.add(readElementConditionOrGroup(childElementIndex));
+				continue;
+			}
+			int childElementPosition = childElementOrder.indexOf(childElementName);
+			if (childElementPosition <= formerChildElementPosition)
+				throw unexpectedElement(childElementIndex);
+			formerChildElementPosition = childElementPosition;
+			
+			if (childElementName.equals("TargetFolderNames")) {
+				List<TargetFolderNameConfig> targetFolderNameConfigs = new ArrayList<TargetFolderNameConfig>();
+				for (int targetFolderNameElementIndex : getWrappedElements(childElementIndex, "TargetFolderName", false)) {
+					Map<String, String> targetFolderNameAttributes = getAttributes(targetFolderNameElementIndex, "condition", "overrideParent", "xpath");
+					TargetFolderNameConfig targetFolderNameConfig = new TargetFolderNameConfig();
+					if (targetFolderNameAttributes.containsKey("condition"))
+						targetFolderNameConfig.setCondition(targetFolderNameAttributes.get("condition"));
+					if (targetFolderNameAttributes.containsKey("overrideParent"))
+						targetFolderNameConfig.setOverrideParent(parseBoolean(targetFolderNameAttributes, "overrideParent"));
+					if (targetFolderNameAttributes.containsKey("xpath"))
+						targetFolderNameConfig.setXPath(targetFolderNameAttributes.get("xpath"));
+					targetFolderNameConfigs.add(targetFolderNameConfig);
+				}
+				decomposableElementConfig.setTargetFolderNameConfigs(targetFolderNameConfigs);
+			} else if (childElementName.equals("TargetFileNames")) {
+				List<TargetFileNameConfig> targetFileNameConfigs = new ArrayList<TargetFileNameConfig>();
+				for (int targetFileNameElementIndex : getWrappedElements(childElementIndex, "TargetFileName", true)) {
+					Map<String, String> targetFileNameAttributes = getAttributes(targetFileNameElementIndex, "condition", "xpath");
+					TargetFileNameConfig targetFileNameConfig = new TargetFileNameConfig();
+					if (targetFileNameAttributes.containsKey("condition"))
+						targetFileNameConfig.setCondition(targetFileNameAttributes.get("condition"));
+					if (targetFileNameAttributes.containsKey("xpath"))
+						targetFileNameConfig.setXPath(targetFileNameAttributes.get("xpath"));
+					targetFileNameConfigs.add(targetFileNameConfig);
+				}
+				decomposableElementConfig.setTargetFileNameConfigs(targetFileNameConfigs);
+			} else {
+				List<IncludeAttributeConfig> includeAttributeConfigs = new ArrayList<IncludeAttributeConfig>();
+				for (int includeAttributeElementIndex : getWrappedElements(childElementIndex, "IncludeAttribute", false)) {
+					Map<String, String> includeAttributeAttributes = getAttributes(includeAttributeElementIndex, "name", "xpath");
+					IncludeAttributeConfig includeAttributeConfig = new IncludeAttributeConfig();
+					if (includeAttributeAttributes.containsKey("name"))
+						includeAttributeConfig.setName(includeAttributeAttributes.get("name"));
+					if (includeAttributeAttributes.containsKey("xpath"))
+						includeAttributeConfig.setXPath(includeAttributeAttributes.get("xpath"));
+					includeAttributeConfigs.add(includeAttributeConfig);
+				}
+				decomposableElementConfig.setIncludeAttributeConfigs(includeAttributeConfigs);
+			}
+		}
+		// Like JAXB, the conditions are only set when there is at least one.
+		if (!elementConditionsAndGroups.isEmpty())
+			decomposableElementConfig.setElementConditionsAndGroups(elementConditionsAndGroups);
+		return decomposableElementConfig;
+	}
+	
+	/**
+	 * Check whether an element name is the name of an element condition or condition group.
+	 */
+	private boolean isElementConditionOrGroup(String elementName) {
+		return elementName.equals("ElementCondition") || elementName.equals("AllConditions") || elementName.equals("OneOffConditions");
+	}
+	
+	/**
+	 * Read an ElementCondition, AllConditions or OneOffConditions element.
+	 */
+	private ElementConditionOrGroup readElementConditionOrGroup(int elementIndex) throws ConfigException, NavException {
+		String elementName = _nav.toRawString(elementIndex);
+		if (elementName.equals("ElementCondition")) {
+			Map<String, String> attributes = getAttributes(elementIndex, "xpath");
+			checkEmptyElement(elementIndex);
+			ElementCondition elementCondition = new ElementCondition();
+			if (attributes.containsKey("xpath"))
+				elementCondition.setXPath(attributes.get("xpath"));
+			return elementCondition;
+		}
+		
+		getAttributes(elementIndex);
+		ConditionGroup conditionGroup = elementName.equals("AllConditions") ? new AllConditionGroup() : new OneOffConditionGroup();
+		List<ElementConditionOrGroup> elementConditionsAndGroups = new ArrayList<ElementConditionOrGroup>();
+		for (int childElementIndex : getChildElements(elementIndex)) {
+			if (!isElementConditionOrGroup(_nav.toRawString(childElementIndex)))
+				throw unexpectedElement(childElementIndex);
+			elementConditionsAndGroups.add(readElementConditionOrGroup(childElementIndex));
+		}
+		// Like JAXB, the conditions are only set when there is at least one.
+		if (!elementConditionsAndGroups.isEmpty())
+			conditionGroup.setElementConditionsAndGroups(elementConditionsAndGroups);
+		return conditionGroup;
+	}
+	
+	/**
+	 * Get the child elements of a wrapper element (like NodeRemovals), which can only contain elements with the given name.
+	 * @param elementIndex The index of the wrapper element.
+	 * @param wrappedElementName The name of the wrapped elements.
+	 * @param required Whether at least one wrapped element is required.
+	 * @return The indexes of the wrapped elements.
+	 */
+	private List<Integer> getWrappedElements(int elementIndex, String wrappedElementName, boolean required) throws ConfigException, NavException {
+		getAttributes(elementIndex);
+		List<Integer> wrappedElementIndexes = getChildElements(elementIndex);
+		for (int wrappedElementIndex : wrappedElementIndexes) {
+			checkElementName(wrappedElementIndex, wrappedElementName);
+			checkEmptyElement(wrappedElementIndex);
+		}
+		if (required && wrappedElementIndexes.isEmpty())
+			throw new ConfigException(String.format("The element '%s' doesn't contain a '%s' element", _nav.toRawString(elementIndex), wrappedElementName));
+		return wrappedElementIndexes;
+	}
+	
+	/**
+	 * Get the indexes of the child elements of an element.
+	 */
+	private List<Integer> getChildElements(int elementIndex) throws NavException {
+		List<Integer> childElementIndexes = new ArrayList<Integer>();
+		_nav.recoverNode(elementIndex);
+		if (_nav.toElement(VTDNav.FIRST_CHILD)) {
+			do {
+				childElementIndexes.add(_nav.getCurrentIndex());
+			} while (_nav.toElement(VTDNav.NEXT_SIBLING));
+		}
+		return childElementIndexes;
+	}
+	
+	/**
+	 * Check an element is empty, so it doesn't have child elements or text (not even whitespace).
+	 */
+	private void checkEmptyElement(int elementIndex) throws ConfigException, NavException {
+		List<Integer> childElementIndexes = getChildElements(elementIndex);
+		if (!childElementIndexes.isEmpty())
+			throw unexpectedElement(childElementIndexes.get(0));
+		// The text in the element has the same depth as the element and follows the attributes (comments and processing instructions are allowed).
+		int elementDepth = _nav.getTokenDepth(elementIndex);
+		for (int tokenIndex = elementIndex + 1; tokenIndex < _nav.getTokenCount() && _nav.getTokenDepth(tokenIndex) == elementDepth && _nav.getTokenType(tokenIndex) != VTDNav.TOKEN_STARTING_TAG; tokenIndex++) {
+			if (_nav.getTokenType(tokenIndex) == VTDNav.TOKEN_CHARACTER_DATA)
+				throw new ConfigException(String.format("The element '%s' contains text", _nav.toRawString(elementIndex)));
+		}
+	}
+	
+	/**
+	 * Check the name of an element.
+	 */
+	private void checkElementName(int elementIndex, String expectedElementName) throws ConfigException, NavException {
+		if (!_nav.toRawString(elementIndex).equals(expectedElementName))
+			throw unexpectedElement(elementIndex);
+	}
+	
+	/**
+	 * Create the exception for an element which isn't expected at its location.
+	 */
+	private ConfigException unexpectedElement(int elementIndex) throws NavException {
+		return new ConfigException(String.format("Unexpected element '%s'", _nav.toRawString(elementIndex)));
+	}
+	
+	/**
+	 * Get the attributes of an element.
+	 * @param elementIndex The index of the element.
+	 * @param attributeNames The names of the attributes the element can have.
+	 * @return The attribute values by name.
+	 * @throws ConfigException When the element has another attribute.
+	 */
+	private Map<String, String> getAttributes(int elementIndex, String... attributeNames) throws ConfigException, NavException {
+		List<String> allowedAttributeNames = Arrays.asList(attributeNames);
+		Map<String, String> attributes = new LinkedHashMap<String, String>();
+		// The attribute name and value tokens directly follow the starting tag token.
+		for (int tokenIndex = elementIndex + 1; tokenIndex < _nav.getTokenCount() && _nav.getTokenType(tokenIndex) == VTDNav.TOKEN_ATTR_NAME; tokenIndex += 2) {
+			String attributeName = _nav.toRawString(tokenIndex);
+			if (!allowedAttributeNames.contains(attributeName))
+				throw new ConfigException(String.format("Unexpected attribute '%s' on element '%s'", attributeName, _nav.toRawString(elementIndex)));
+			attributes.put(attributeName, getAttributeValue(_nav.toRawString(tokenIndex + 1)));
+		}
+		return attributes;
+	}
+	
+	/**
+	 * Get the value of an attribute from its raw value, the same way an XML parser does.
+	 * The whitespace characters are replaced by spaces (a line break is one whitespace character) and the character and predefined entity references are resolved.
+	 * @param rawAttributeValue The raw attribute value.
+	 * @return The attribute value.
+	 * @throws ConfigException When the attribute value contains an unsupported reference.
+	 */
+	private String getAttributeValue(String rawAttributeValue) throws ConfigException {
+		String normalizedAttributeValue = rawAttributeValue.replace("\r\n", "\n").replace('\r', ' ').replace('\n', ' ').replace('\t', ' ');
+		StringBuilder attributeValue = new StringBuilder(normalizedAttributeValue.length());
+		int position = 0;
+		int referenceStart;
+		while ((referenceStart = normalizedAttributeValue.indexOf('&', position)) != -1) {
+			attributeValue.append(normalizedAttributeValue, position, referenceStart);
+			int referenceEnd = normalizedAttributeValue.indexOf(';', referenceStart);
+			if (referenceEnd == -1)
+				throw new ConfigException(String.format("Invalid reference in attribute value '%s'", rawAttributeValue));
+			String reference = normalizedAttributeValue.substring(referenceStart + 1, referenceEnd);
+			switch (reference) {
+				case "lt": attributeValue.append('<'); break;
+				case "gt": attributeValue.append('>'); break;
+				case "amp": attributeValue.append('&'); break;
+				case "quot": attributeValue.append('"'); break;
+				case "apos": attributeValue.append('\''); break;
+				default:
+					attributeValue.appendCodePoint(getCharacterReference(reference, rawAttributeValue));
+			}
+			position = referenceEnd + 1;
+		}
+		attributeValue.append(normalizedAttributeValue, position, normalizedAttributeValue.length());
+		return attributeValue.toString();
+	}
+	
+	/**
+	 * Get the character of a character reference (like #10 or #xA).
+	 */
+	private int getCharacterReference(String reference, String rawAttributeValue) throws ConfigException {
+		int codePoint = -1;
+		try {
+			if (reference.matches("#[0-9]+"))
+				codePoint = Integer.parseInt(reference.substring(1));
+			else if (reference.matches("#x[0-9a-fA-F]+"))
+				codePoint = Integer.parseInt(reference.substring(2), 16);
+		} catch (NumberFormatException e) {
+			// The error is thrown below.
+		}
+		// Only the characters allowed in XML can be referenced.
+		if (!(codePoint == 0x9 || codePoint == 0xA || codePoint == 0xD || (codePoint >= 0x20 && codePoint <= 0xD7FF) || (codePoint >= 0xE000 && codePoint <= 0xFFFD) || (codePoint >= 0x10000 && codePoint <= 0x10FFFF)))
+			throw new ConfigException(String.format("Unsupported reference '&%s;' in attribute value '%s'", reference, rawAttributeValue));
+		return codePoint;
+	}
+	
+	/**
+	 * Parse a xs:boolean attribute value.
+	 */
+	private Boolean parseBoolean(Map<String, String> attributes, String attributeName) throws ConfigException {
+		String attributeValue = attributes.get(attributeName).trim();
+		if (attributeValue.equals("true") || attributeValue.equals("1"))
+			return Boolean.TRUE;
+		if (attributeValue.equals("false") || attributeValue.equals("0"))
+			return Boolean.FALSE;
+		throw new ConfigException(String.format("Invalid boolean value '%s' for attribute '%s'", attributes.get(attributeName), attributeName));
+	}
+	
+	/**
+	 * Parse a xs:int attribute value.
+	 */
+	private Integer parseInteger(Map<String, String> attributes, String attributeName) throws ConfigException {
+		String attributeValue = attributes.get(attributeName).trim();
+		try {
+			if (INTEGER_PATTERN.matcher(attributeValue).matches())
+				return Integer.parseInt(attributeValue);
+		} catch (NumberFormatException e) {
+			// The error is thrown below.
+		}
+		throw new ConfigException(String.format("Invalid int value '%s' for attribute '%s'", attributes.get(attributeName), attributeName));
+	}
+	
+	/**
+	 * Parse a xs:long attribute value.
+	 */
+	private Long parseLong(Map<String, String> attributes, String attributeName) throws ConfigException {
+		String attributeValue = attributes.get(attributeName).trim();
+		try {
+			if (INTEGER_PATTERN.matcher(attributeValue).matches())
+				return Long.parseLong(attributeValue);
+		} catch (NumberFormatException e) {
+			// The error is thrown below.
+		}
+		throw new ConfigException(String.format("Invalid long value '%s' for attribute '%s'", attributes.get(attributeName), attributeName));
+	}
+	
+	/**
+	 * Parse a decomposeEngine attribute value (which isn't trimmed, since the enumeration is a restriction of xs:string).
+	 */
+	private DecomposeEngine parseEngine(Map<String, String> attributes, String attributeName) throws ConfigException {
+		DecomposeEngine engine = DecomposeEngine.fromValue(attributes.get(attributeName));
+		if (engine != null)
+			return engine;
+		throw new ConfigException(String.format("Invalid engine value '%s' for attribute '%s'", attributes.get(attributeName), attributeName));
+	}
+	
+	/**
+	 * Check whether a text only contains XML whitespace characters.
+	 */
+	private static boolean isWhitespace(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c != ' ' && c != '\t' && c != '\r' && c != '\n')
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.decompose;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.xbreeze.xml.utils.FileFingerprint;
+import com.xbreeze.xml.utils.FileUtils;
+
+/**
+ * Fingerprint of the composed model and the decomposed model file, written after decomposing a model.
+ * For both files the size, modification time and content checksum are stored in a file in the state directory (outside the decomposed model, so it isn't committed to version control).
+ * A checksum of the decompose config is stored as well, since the decomposed model changes when the config changes.
+ * On the next decompose the fingerprint is used to detect the model didn't change, without reading and parsing the files.
+ */
+public class DecomposeFingerprint {
+	private static final Logger logger = Logger.getGlobal();
+	
+	// The extension of the fingerprint file, which is stored in the state directory.
+	public static final String FINGERPRINT_FILE_EXTENSION = ".pdcfingerprint";
+	
+	// The first line of the fingerprint file, which is used to check whether the file is a fingerprint file.
+	// A fingerprint file of a former version (without the config checksum) doesn't match, so the model is decomposed again.
+	private static final String FINGERPRINT_HEADER = "# PowerDeComposer fingerprint 1.1: size;modification-time;crc32c (the last line is the crc32c of the config)";
+	
+	private FileFingerprint _composedFileFingerprint;
+	private FileFingerprint _decomposedFileFingerprint;
+	private int _configChecksum;
+	// Whether the config changed since the fingerprint file was written (known after matches is called).
+	private boolean _configChanged = false;
+	
+	/**
+	 * Constructor.
+	 * The size and modification time of the composed model are taken at this point, the checksum is only calculated when it's needed.
+	 * @param composedFile The composed model file.
+	 * @param configChecksum The checksum of the decompose config.
+	 */
+	public DecomposeFingerprint(File composedFile, int configChecksum) {
+		this._composedFileFingerprint = new FileFingerprint(composedFile);
+		this._configChecksum = configChecksum;
+	}
+	
+	private DecomposeFingerprint(FileFingerprint composedFileFingerprint, FileFingerprint decomposedFileFingerprint, int configChecksum) {
+		this._composedFileFingerprint = composedFileFingerprint;
+		this._decomposedFileFingerprint = decomposedFileFingerprint;
+		this._configChecksum = configChecksum;
+	}
+	
+	/**
+	 * Get the path of the fingerprint file for the decomposed model file.
+	 * @param stateDirectoryPath The directory in which the state of the former decompose is stored.
+	 * @param decomposedFile The root file of the decomposed model.
+	 * @return The path of the fingerprint file.
+	 * @throws Exception
+	 */
+	public static Path getFingerprintFilePath(Path stateDirectoryPath, File decomposedFile) throws Exception {
+		return FileUtils.getPathHashedFilePath(stateDirectoryPath, decomposedFile, FINGERPRINT_FILE_EXTENSION);
+	}
+	
+	/**
+	 * Get the path of the fingerprint file as it was written by former versions, next to the decomposed model file.
+	 * @param decomposedFile The root file of the decomposed model.
+	 * @return The path of the former fingerprint file.
+	 */
+	public static Path getFormerFingerprintFilePath(File decomposedFile) {
+		return decomposedFile.toPath().resolveSibling(decomposedFile.getName() + FINGERPRINT_FILE_EXTENSION);
+	}
+	
+	/**
+	 * Check whether the composed model, the decomposed model file and the config are unchanged since the fingerprint file was written.
+	 * A file is unchanged when the size is equal and the modification time or checksum is equal (the checksum is always compared when the file was modified just before the fingerprint was written).
+	 * @param fingerprintFilePath The fingerprint file of the former decompose.
+	 * @param decomposedFile The root file of the decomposed model.
+	 * @return Whether both files and the config are unchanged, false when the fingerprint file doesn't exist or can't be read.
+	 * @throws IOException
+	 */
+	public boolean matches(Path fingerprintFilePath, File decomposedFile) throws IOException {
+		if (!Files.isRegularFile(fingerprintFilePath) || !decomposedFile.exists())
+			return false;
+		DecomposeFingerprint formerFingerprint;
+		long fingerprintTime;
+		try {
+			formerFingerprint = fromFile(fingerprintFilePath);
+			fingerprintTime = Files.getLastModifiedTime(fingerprintFilePath).toMillis();
+		} catch (Exception e) {
+			logger.warning(String.format("Error while reading fingerprint file: %s", e.getMessage()));
+			return false;
+		}
+		if (_configChecksum != formerFingerprint._configChecksum) {
+			logger.fine("The config changed after the fingerprint was written.");
+			_configChanged = true;
+			return false;
+		}
+		if (!_composedFileFingerprint.matches(formerFingerprint._composedFileFingerprint, fingerprintTime)) {
+			logger.fine("The composed model changed after the fingerprint was written.");
+			return false;
+		}
+		if (!new FileFingerprint(decomposedFile).matches(formerFingerprint._decomposedFileFingerprint, fingerprintTime)) {
+			logger.fine("The decomposed model file changed after the fingerprint was written.");
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Check whether the config changed since the fingerprint file was written, in which case the model needs to be decomposed even when it didn't change.
+	 * @return Whether the config changed, false when the fingerprint file couldn't be compared.
+	 */
+	public boolean isConfigChanged() {
+		return _configChanged;
+	}
+	
+	/**
+	 * Read a fingerprint file.
+	 * @param fingerprintFilePath The fingerprint file.
+	 * @return The fingerprint.
+	 * @throws Exception When the file isn't a valid fingerprint.
+	 */
+	private static DecomposeFingerprint fromFile(Path fingerprintFilePath) throws Exception {
+		List<String> fingerprintLines = Files.readAllLines(fingerprintFilePath, StandardCharsets.UTF_8);
+		if (fingerprintLines.size() < 4 || !fingerprintLines.get(0).equals(FINGERPRINT_HEADER))
+			throw new Exception(String.format("The file '%s' isn't a valid fingerprint file.", fingerprintFilePath));
+		String[] composedFileColumns = fingerprintLines.get(1).split(";");
+		String[] decomposedFileColumns = fingerprintLines.get(2).split(";");
+		if (composedFileColumns.length != 3 || decomposedFileColumns.length != 3)
+			throw new Exception(String.format("The file '%s' isn't a valid fingerprint file.", fingerprintFilePath));
+		int configChecksum;
+		try {
+			configChecksum = Integer.parseUnsignedInt(fingerprintLines.get(3), 16);
+		} catch (NumberFormatException e) {
+			throw new Exception(String.format("The file '%s' isn't a valid fingerprint file.", fingerprintFilePath));
+		}
+		return new DecomposeFingerprint(FileFingerprint.fromColumns(composedFileColumns), FileFingerprint.fromColumns(decomposedFileColumns), configChecksum);
+	}
+	
+	/**
+	 * Write the fingerprint to a file, with the fingerprint of the decomposed model file as it is now.
+	 * When the composed model changed while decomposing, the fingerprint isn't written (since it wouldn't match the decomposed model).
+	 * @param fingerprintFilePath The fingerprint file.
+	 * @param decomposedFile The root file of the decomposed model.
+	 * @throws Exception
+	 */
+	public void toFile(Path fingerprintFilePath, File decomposedFile) throws Exception {
+		try {
+			if (!_composedFileFingerprint.isUnchanged()) {
+				logger.warning("The composed model changed while decomposing, so the fingerprint isn't written.");
+				Files.deleteIfExists(fingerprintFilePath);
+				return;
+			}
+			_decomposedFileFingerprint = new FileFingerprint(decomposedFile);
+			String fingerprintContents = String.format("%s\n%s\n%s\n%08x\n", FINGERPRINT_HEADER, _composedFileFingerprint.toLine(), _decomposedFileFingerprint.toLine(), _configChecksum);
+			Files.createDirectories(fingerprintFilePath.getParent());
+			Files.write(fingerprintFilePath, fingerprintContents.getBytes(StandardCharsets.UTF_8));
+		} catch (Exception e) {
+			throw new Exception(String.format("Error while writing fingerprint file '%s': %s", fingerprintFilePath, e.getMessage()), e);
+		}
+	}
+}
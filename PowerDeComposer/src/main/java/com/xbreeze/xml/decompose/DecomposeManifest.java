@@ -0,0 +1,343 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.decompose;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+
+import com.xbreeze.xml.utils.FileFingerprint;
+import com.xbreeze.xml.utils.FileUtils;
+
+/**
+ * Manifest of the files written while decomposing a model.
+ * For each decomposed file the relative path, size, content hash and owning object id are stored in a file in the state directory (outside the decomposed model, so it isn't committed to version control).
+ * On the next decompose the manifest is used to find the former decomposed files, so the former decomposed files don't need to be read.
+ * When decomposing incrementally the hash of the fragment of each part is stored as well, so unchanged parts can be found on the next decompose.
+ */
+public class DecomposeManifest {
+	private static final Logger logger = Logger.getGlobal();
+	
+	// The extension of the manifest file, which is stored in the state directory.
+	public static final String MANIFEST_FILE_EXTENSION = ".pdcmanifest";
+	
+	// The first line of the manifest file, which is used to check whether the file is a manifest file.
+	private static final String MANIFEST_HEADER = "# PowerDeComposer manifest 1.1: size;sha-256;object-id;fragment-sha-256;path";
+	// The first line of a manifest file written by a former version (without the fragment hash), which can still be read.
+	private static final String MANIFEST_HEADER_1_0 = "# PowerDeComposer manifest 1.0: size;sha-256;object-id;path";
+	
+	private Path _baseFolderPath;
+	// The entries of the manifest by relative path, sorted so the manifest file is the same for the same decomposed model.
+	private ConcurrentSkipListMap<String, ManifestEntry> _entries = new ConcurrentSkipListMap<String, ManifestEntry>();
+	// The time the manifest file was written, a file which is modified after this time might have changed without changing its size (0 when unknown).
+	private long _writeTime = 0;
+	
+	/**
+	 * Constructor.
+	 * @param baseFolderPath The folder containing the decomposed model, the paths in the manifest are relative to this folder.
+	 */
+	public DecomposeManifest(Path baseFolderPath) {
+		this._baseFolderPath = baseFolderPath;
+	}
+	
+	/**
+	 * Get the path of the manifest file for the decomposed model file.
+	 * @param stateDirectoryPath The directory in which the state of the former decompose is stored.
+	 * @param decomposedFile The root file of the decomposed model.
+	 * @return The path of the manifest file.
+	 * @throws Exception
+	 */
+	public static Path getManifestFilePath(Path stateDirectoryPath, File decomposedFile) throws Exception {
+		return FileUtils.getPathHashedFilePath(stateDirectoryPath, decomposedFile, MANIFEST_FILE_EXTENSION);
+	}
+	
+	/**
+	 * Get the path of the manifest file as it was written by former versions, next to the decomposed model file.
+	 * @param decomposedFile The root file of the decomposed model.
+	 * @return The path of the former manifest file.
+	 */
+	public static Path getFormerManifestFilePath(File decomposedFile) {
+		return decomposedFile.toPath().resolveSibling(decomposedFile.getName() + MANIFEST_FILE_EXTENSION);
+	}
+	
+	/**
+	 * Add a decomposed file to the manifest.
+	 * This method can be called from multiple threads (when decomposing in parallel).
+	 * @param filePath The path of the decomposed file.
+	 * @param fileContents The contents of the decomposed file.
+	 * @param objectId The id of the object in the file, or an empty string if the object doesn't have an id.
+	 * @throws Exception
+	 */
+	public void addEntry(Path filePath, byte[] fileContents, String objectId) throws Exception {
+		addEntry(filePath, fileContents, objectId, null);
+	}
+	
+	/**
+	 * Add a decomposed file to the manifest, including the hash of the fragment the file was decomposed from.
+	 * This method can be called from multiple threads (when decomposing in parallel).
+	 * @param filePath The path of the decomposed file.
+	 * @param fileContents The contents of the decomposed file.
+	 * @param objectId The id of the object in the file, or an empty string if the object doesn't have an id.
+	 * @param fragmentHash The hash of the fragment (see getFragmentHash), or null if the file isn't decomposed incrementally.
+	 * @throws Exception
+	 */
+	public void addEntry(Path filePath, byte[] fileContents, String objectId, String fragmentHash) throws Exception {
+		String relativePath = getRelativePath(filePath);
+		_entries.put(relativePath, new ManifestEntry(relativePath, fileContents.length, getContentHash(fileContents), objectId, (fragmentHash != null) ? fragmentHash : ""));
+	}
+	
+	/**
+	 * Get the files of a part which is unchanged since the manifest was written, so the part doesn't need to be decomposed again.
+	 * The files of a part with children are the files in the folder of the part (the file of the part and the files of its children).
+	 * A file is unchanged when it has the same size as in the manifest and it wasn't modified after the manifest was written, otherwise it is unchanged when it has the same content hash.
+	 * @param filePathWithChildren The path of the file of the part if it has children.
+	 * @param filePathWithoutChildren The path of the file of the part if it doesn't have children.
+	 * @param folderPath The folder of the part, which contains the files of the part if it has children.
+	 * @param fragmentHash The hash of the fragment of the part.
+	 * @return The files of the part, starting with the file of the part, or null if the part isn't in the manifest with the same fragment hash or one of its files changed.
+	 * @throws Exception
+	 */
+	public List<File> getUnchangedPartFiles(Path filePathWithChildren, Path filePathWithoutChildren, Path folderPath, String fragmentHash) throws Exception {
+		List<File> partFiles = new ArrayList<File>();
+		ManifestEntry partEntry = _entries.get(getRelativePath(filePathWithChildren));
+		if (partEntry != null && partEntry.getFragmentHash().equals(fragmentHash)) {
+			partFiles.add(filePathWithChildren.toFile());
+			// The files of the children are the entries in the folder of the part, which are sorted after the folder name followed by a slash.
+			String folderPrefix = getRelativePath(folderPath) + "/";
+			for (String relativePath : _entries.subMap(folderPrefix, folderPrefix + Character.MAX_VALUE).keySet()) {
+				if (!relativePath.equals(partEntry.getRelativePath()))
+					partFiles.add(_baseFolderPath.resolve(relativePath).toFile());
+			}
+		} else {
+			partEntry = _entries.get(getRelativePath(filePathWithoutChildren));
+			if (partEntry == null || !partEntry.getFragmentHash().equals(fragmentHash))
+				return null;
+			partFiles.add(filePathWithoutChildren.toFile());
+		}
+		// The files must still be on disk as they were written.
+		for (File partFile : partFiles) {
+			ManifestEntry entry = _entries.get(getRelativePath(partFile.toPath()));
+			if (!partFile.isFile() || partFile.length() != entry.getSize())
+				return null;
+			// A file modified after (or just before) the manifest was written might be edited without changing its size, so its content hash is compared.
+			if (partFile.lastModified() >= _writeTime - FileFingerprint.MODIFICATION_TIME_PRECISION && !entry.getContentHash().equals(getContentHash(Files.readAllBytes(partFile.toPath()))))
+				return null;
+		}
+		return partFiles;
+	}
+	
+	/**
+	 * Add the entries of files from another manifest, used to keep the entries of unchanged parts from the former manifest.
+	 * @param manifest The manifest to copy the entries from.
+	 * @param files The files of which the entries are added.
+	 */
+	public void addEntries(DecomposeManifest manifest, List<File> files) {
+		for (File file : files) {
+			ManifestEntry entry = manifest._entries.get(manifest.getRelativePath(file.toPath()));
+			if (entry != null)
+				_entries.put(getRelativePath(file.toPath()), entry);
+		}
+	}
+	
+	/**
+	 * Get the decomposed files in the manifest.
+	 * @return The list of files.
+	 */
+	public List<File> getFiles() {
+		List<File> files = new ArrayList<File>();
+		for (String relativePath : _entries.keySet())
+			files.add(_baseFolderPath.resolve(relativePath).toFile());
+		return files;
+	}
+	
+	/**
+	 * Check whether the manifest is consistent with the decomposed model on disk.
+	 * The root file must have the same contents as when the manifest was written, the other existing files must have the same size.
+	 * Files which don't exist anymore are fine, since they don't need to be removed.
+	 * @param rootFile The root file of the decomposed model.
+	 * @return Whether the manifest is consistent.
+	 * @throws Exception
+	 */
+	public boolean isConsistent(File rootFile) throws Exception {
+		ManifestEntry rootEntry = _entries.get(getRelativePath(rootFile.toPath()));
+		if (rootEntry == null || !rootFile.exists()) {
+			logger.fine("The root file is not in the manifest or doesn't exist.");
+			return false;
+		}
+		if (!rootEntry.getContentHash().equals(getContentHash(Files.readAllBytes(rootFile.toPath())))) {
+			logger.fine("The root file changed after the manifest was written.");
+			return false;
+		}
+		for (ManifestEntry entry : _entries.values()) {
+			File entryFile = _baseFolderPath.resolve(entry.getRelativePath()).toFile();
+			if (entryFile.exists() && entryFile.length() != entry.getSize()) {
+				logger.fine(String.format("The file '%s' changed after the manifest was written.", entryFile));
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Read a manifest file.
+	 * @param manifestFilePath The manifest file.
+	 * @param baseFolderPath The folder containing the decomposed model.
+	 * @return The manifest.
+	 * @throws Exception When the file isn't a valid manifest.
+	 */
+	public static DecomposeManifest fromFile(Path manifestFilePath, Path baseFolderPath) throws Exception {
+		DecomposeManifest manifest = new DecomposeManifest(baseFolderPath);
+		List<String> manifestLines = Files.readAllLines(manifestFilePath, StandardCharsets.UTF_8);
+		if (manifestLines.isEmpty() || !(manifestLines.get(0).equals(MANIFEST_HEADER) || manifestLines.get(0).equals(MANIFEST_HEADER_1_0)))
+			throw new Exception(String.format("The file '%s' isn't a valid manifest file.", manifestFilePath));
+		// A manifest of version 1.0 doesn't contain the fragment hash column.
+		int columnCount = manifestLines.get(0).equals(MANIFEST_HEADER) ? 5 : 4;
+		for (int lineNumber = 2; lineNumber <= manifestLines.size(); lineNumber++) {
+			String manifestLine = manifestLines.get(lineNumber - 1);
+			if (manifestLine.isEmpty())
+				continue;
+			// The path is the last column, so it can contain the separator.
+			String[] manifestColumns = manifestLine.split(";", columnCount);
+			if (manifestColumns.length != columnCount)
+				throw new Exception(String.format("Invalid manifest entry on line %d in '%s'.", lineNumber, manifestFilePath));
+			String relativePath = manifestColumns[columnCount - 1];
+			String fragmentHash = (columnCount == 5) ? manifestColumns[3] : "";
+			try {
+				manifest._entries.put(relativePath, new ManifestEntry(relativePath, Long.parseLong(manifestColumns[0]), manifestColumns[1], manifestColumns[2], fragmentHash));
+			} catch (NumberFormatException e) {
+				throw new Exception(String.format("Invalid file size on line %d in '%s'.", lineNumber, manifestFilePath));
+			}
+		}
+		manifest._writeTime = Files.getLastModifiedTime(manifestFilePath).toMillis();
+		return manifest;
+	}
+	
+	/**
+	 * Write the manifest to a file, the file is only written when the manifest changed (otherwise only its modification time is updated, since the files in it are written or checked in this run).
+	 * @param manifestFilePath The manifest file.
+	 * @throws Exception
+	 */
+	public void toFile(Path manifestFilePath) throws Exception {
+		StringBuilder manifestContents = new StringBuilder();
+		manifestContents.append(MANIFEST_HEADER).append('\n');
+		for (ManifestEntry entry : _entries.values()) {
+			manifestContents.append(String.format("%d;%s;%s;%s;%s\n", entry.getSize(), entry.getContentHash(), entry.getObjectId(), entry.getFragmentHash(), entry.getRelativePath()));
+		}
+		byte[] manifestBytes = manifestContents.toString().getBytes(StandardCharsets.UTF_8);
+		try {
+			if (Files.isRegularFile(manifestFilePath) && Arrays.equals(Files.readAllBytes(manifestFilePath), manifestBytes)) {
+				Files.setLastModifiedTime(manifestFilePath, FileTime.fromMillis(System.currentTimeMillis()));
+				return;
+			}
+			Files.createDirectories(manifestFilePath.getParent());
+			Files.write(manifestFilePath, manifestBytes);
+		} catch (Exception e) {
+			throw new Exception(String.format("Error while writing manifest file '%s': %s", manifestFilePath, e.getMessage()), e);
+		}
+	}
+	
+	/**
+	 * Get the path relative to the base folder, using forward slashes (so the manifest is the same on all platforms).
+	 */
+	private String getRelativePath(Path filePath) {
+		return _baseFolderPath.toAbsolutePath().normalize().relativize(filePath.toAbsolutePath().normalize()).toString().replace(File.separatorChar, '/');
+	}
+	
+	/**
+	 * Get the SHA-256 hash of the file contents as hexadecimal string.
+	 */
+	private static String getContentHash(byte[] fileContents) throws Exception {
+		return FileUtils.getHexString(MessageDigest.getInstance("SHA-256").digest(fileContents));
+	}
+	
+	/**
+	 * Get the SHA-256 hash of a fragment of a document as hexadecimal string.
+	 * The seed is hashed before the fragment, so fragments decomposed using a different config get a different hash.
+	 * @param seed The seed of the hash.
+	 * @param documentBytes The bytes of the document.
+	 * @param offset The offset of the fragment in the document.
+	 * @param length The length of the fragment.
+	 * @return The fragment hash.
+	 * @throws Exception
+	 */
+	public static String getFragmentHash(byte[] seed, byte[] documentBytes, int offset, int length) throws Exception {
+		MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+		messageDigest.update(seed);
+		messageDigest.update(documentBytes, offset, length);
+		return FileUtils.getHexString(messageDigest.digest());
+	}
+	
+	/**
+	 * Get the number of entries in the manifest.
+	 */
+	public int size() {
+		return _entries.size();
+	}
+	
+	/**
+	 * An entry in the manifest.
+	 */
+	private static class ManifestEntry {
+		private String _relativePath;
+		private long _size;
+		private String _contentHash;
+		private String _objectId;
+		private String _fragmentHash;
+		
+		public ManifestEntry(String relativePath, long size, String contentHash, String objectId, String fragmentHash) {
+			this._relativePath = relativePath;
+			this._size = size;
+			this._contentHash = contentHash;
+			this._objectId = objectId;
+			this._fragmentHash = fragmentHash;
+		}
+		
+		public String getRelativePath() {
+			return _relativePath;
+		}
+		
+		public long getSize() {
+			return _size;
+		}
+		
+		public String getContentHash() {
+			return _contentHash;
+		}
+		
+		public String getObjectId() {
+			return _objectId;
+		}
+		
+		public String getFragmentHash() {
+			return _fragmentHash;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.decompose;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Set of files which are compared case insensitively on their canonical path.
+ * The key of a file is derived once when it's added or looked up, so adding and finding a file is a hash lookup.
+ * The canonical path of the folder of a file is resolved once for each folder, so only the first file in a folder needs file system access.
+ * Files are equal when their canonical paths are equal ignoring case, this way a file which only differs in case on a case insensitive file system, or which is in a folder reached through a symbolic link, is seen as the same file.
+ * The file name itself isn't resolved, since the decomposed files are regular files and not symbolic links.
+ * This class is not thread-safe.
+ */
+public class DecomposedFileSet extends AbstractSet<File> {
+	private static final Logger logger = Logger.getGlobal();
+	
+	// The files in the set by their path key (in order of adding).
+	private LinkedHashMap<String, File> _filesByPathKey = new LinkedHashMap<String, File>();
+	
+	// The canonical paths of the folders of the files by their absolute normalized path.
+	private HashMap<Path, String> _canonicalFolderPaths = new HashMap<Path, String>();
+	
+	/**
+	 * Get the key of a file, which is the canonical path of its folder with the file name, in lower case.
+	 * The case of each character is folded the same way as String.compareToIgnoreCase does.
+	 * @param file The file.
+	 * @param canonicalFolderPaths The canonical paths of the folders which are already resolved, to which the folder of the file is added (this can be shared by threads when it's a ConcurrentHashMap).
+	 * @return The path key.
+	 */
+	public static String getPathKey(File file, Map<Path, String> canonicalFolderPaths) {
+		Path filePath = file.toPath().toAbsolutePath().normalize();
+		Path folderPath = filePath.getParent();
+		String canonicalFilePath = (folderPath != null) ? new File(canonicalFolderPaths.computeIfAbsent(folderPath, DecomposedFileSet::getCanonicalPath), filePath.getFileName().toString()).getPath() : filePath.toString();
+		char[] pathCharacters = canonicalFilePath.toCharArray();
+		for (int i = 0; i < pathCharacters.length; i++)
+			pathCharacters[i] = Character.toLowerCase(Character.toUpperCase(pathCharacters[i]));
+		return new String(pathCharacters);
+	}
+	
+	/**
+	 * Get the canonical path of a folder.
+	 * If it can't be resolved, the absolute normalized path is used (all paths of a decompose are relative to the same target folder, so they are still compared the same way).
+	 * @param folderPath The absolute normalized path of the folder.
+	 * @return The canonical path.
+	 */
+	private static String getCanonicalPath(Path folderPath) {
+		try {
+			return folderPath.toFile().getCanonicalPath();
+		} catch (IOException e) {
+			logger.warning(String.format("Can't resolve folder to canonical path, comparing with absolute path. Error: %s", e.getMessage()));
+			return folderPath.toString();
+		}
+	}
+	
+	@Override
+	public boolean add(File file) {
+		return _filesByPathKey.putIfAbsent(getPathKey(file, _canonicalFolderPaths), file) == null;
+	}
+	
+	@Override
+	public boolean contains(Object file) {
+		return (file instanceof File) && _filesByPathKey.containsKey(getPathKey((File)file, _canonicalFolderPaths));
+	}
+	
+	@Override
+	public boolean remove(Object file) {
+		return (file instanceof File) && _filesByPathKey.remove(getPathKey((File)file, _canonicalFolderPaths)) != null;
+	}
+	
+	@Override
+	public void clear() {
+		_filesByPathKey.clear();
+		_canonicalFolderPaths.clear();
+	}
+	
+	@Override
+	public Iterator<File> iterator() {
+		return _filesByPathKey.values().iterator();
+	}
+	
+	@Override
+	public int size() {
+		return _filesByPathKey.size();
+	}
+}
@@ -0,0 +1,556 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.decompose;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.xbreeze.xml.utils.XMLUtils;
+import com.ximpleware.NavException;
+import com.ximpleware.VTDNav;
+import com.ximpleware.XMLModifier;
+
+/**
+ * Modifier which collects the modifications of the pre-processing steps (node removal, identifier replacement and formalizing extended attributes) on one VTDNav.
+ * The modifications are applied with a single output and reparse of the document, instead of once for every step.
+ *
+ * To keep the result equal to applying the steps one after another:
+ *  - Nodes within a removed node are seen as removed, and the modified value of a token is returned while it isn't applied yet.
+ *  - Before an instruction is evaluated, the pending modifications are applied when the XPath expressions of the instruction might observe them.
+ *    This is the case when an expression refers to the name of a modified node (or the parent of a removed node), or uses a wildcard, position or string value of the context node.
+ *  - Modifications which partially overlap are rejected.
+ * This class is not thread-safe.
+ */
+public class DocumentModifier {
+	private static final Logger logger = Logger.getGlobal();
+
+	// Patterns to find the parts of XPath expressions which might observe the pending modifications (see isObservedBy).
+	private static final Pattern STRING_LITERAL_PATTERN = Pattern.compile("'[^']*'|\"[^\"]*\"");
+	private static final Pattern NAME_PATTERN = Pattern.compile("(?<![\\w.\\-:])[A-Za-z_][\\w.\\-]*+(?::[A-Za-z_][\\w.\\-]*+)?+");
+	private static final Pattern NAME_TEST_PATTERN = Pattern.compile(NAME_PATTERN.pattern() + "(?!\\s*(\\(|::))");
+	private static final Pattern WILDCARD_PATTERN = Pattern.compile("\\*|\\b(node|text|comment|processing-instruction|position|last)\\s*\\(");
+	private static final Pattern PATH_STEP_DOTS_PATTERN = Pattern.compile("\\.\\.?\\s*/");
+	private static final Pattern NUMBER_PATTERN = Pattern.compile("\\s*[0-9]+(\\.[0-9]*)?\\s*");
+
+	// The VTDNav of the document the modifications are collected on.
+	private VTDNav _nv;
+	// The charset to use for the modified values.
+	private Charset _charset;
+	// The number of bytes per unit of a token offset and length.
+	private int _tokenUnitSize;
+
+	// The removals and token replacements by their byte offset in the document (these never overlap).
+	protected TreeMap<Long, Modification> _modifications = new TreeMap<Long, Modification>();
+	// The inserted bytes by their byte offset in the document.
+	protected TreeMap<Long, byte[]> _insertions = new TreeMap<Long, byte[]>();
+	// The (local) names of the modified nodes, which are used to find out whether an expression might observe the pending modifications.
+	private HashSet<String> _modifiedNames = new HashSet<String>();
+
+	private int _reparseCount = 0;
+
+	/**
+	 * Constructor.
+	 * @param nv The VTDNav of the document.
+	 * @param charset The charset of the document.
+	 */
+	public DocumentModifier(VTDNav nv, Charset charset) {
+		this._nv = nv;
+		// A UTF-16 document is parsed using the byte order, so the modified values are encoded without byte order mark.
+		if (nv.getEncoding() == VTDNav.FORMAT_UTF_16BE)
+			this._charset = StandardCharsets.UTF_16BE;
+		else if (nv.getEncoding() == VTDNav.FORMAT_UTF_16LE)
+			this._charset = StandardCharsets.UTF_16LE;
+		else
+			this._charset = charset;
+		this._tokenUnitSize = (nv.getEncoding() >= VTDNav.FORMAT_UTF_16BE) ? 2 : 1;
+	}
+
+	/**
+	 * Constructor for a document which is processed in parts, where the VTDNav is set for every part (see setNav).
+	 * @param charset The charset of the document, which should be an 8-bit or variable width charset (like UTF-8).
+	 */
+	protected DocumentModifier(Charset charset) {
+		this._charset = charset;
+		this._tokenUnitSize = 1;
+	}
+
+	/**
+	 * Get the VTDNav of the document, on which the pending modifications are not applied yet.
+	 * @return The VTDNav.
+	 */
+	public VTDNav getNav() {
+		return this._nv;
+	}
+
+	/**
+	 * Set the VTDNav the modifications are collected on.
+	 * @param nv The VTDNav.
+	 */
+	protected void setNav(VTDNav nv) {
+		this._nv = nv;
+	}
+
+	/**
+	 * Get the number of times the document was reparsed to apply modifications.
+	 * @return The reparse count.
+	 */
+	public int getReparseCount() {
+		return this._reparseCount;
+	}
+
+	/**
+	 * Check whether there are modifications which are not applied yet.
+	 * @return Whether there are pending modifications.
+	 */
+	public boolean hasModifications() {
+		return _modifications.size() > 0 || _insertions.size() > 0;
+	}
+
+	/**
+	 * Check whether a node is removed by one of the pending modifications.
+	 * @param tokenIndex The index of the token of the node.
+	 * @return Whether the node is removed.
+	 */
+	public boolean isRemoved(int tokenIndex) {
+		long offset = getDocumentOffset(getTokenByteOffset(tokenIndex));
+		Entry<Long, Modification> floorEntry = _modifications.floorEntry(offset);
+		return floorEntry != null && floorEntry.getValue().isRemoval() && floorEntry.getValue().getEnd() > offset;
+	}
+
+	/**
+	 * Get the value of a token, including the pending modification of the token.
+	 * @param tokenIndex The index of the token.
+	 * @return The value of the token.
+	 * @throws NavException
+	 */
+	public String getTokenValue(int tokenIndex) throws NavException {
+		String modifiedTokenValue = getModifiedTokenValue(tokenIndex);
+		return (modifiedTokenValue != null) ? modifiedTokenValue : _nv.toString(tokenIndex);
+	}
+
+	/**
+	 * Get the pending modified value of a token.
+	 * @param tokenIndex The index of the token.
+	 * @return The modified value, or null if the value of the token isn't modified.
+	 */
+	public String getModifiedTokenValue(int tokenIndex) {
+		long offset = getDocumentOffset(getTokenByteOffset(tokenIndex));
+		Modification modification = _modifications.get(offset);
+		if (modification != null && !modification.isRemoval() && modification.getEnd() == getDocumentEndOffset(getTokenByteOffset(tokenIndex) + getTokenByteLength(tokenIndex)))
+			return modification.Value;
+		return null;
+	}
+
+	/**
+	 * Remove a fragment of the document.
+	 * @param fragment The fragment to remove (length in the upper 32 bits and the byte offset in the lower 32 bits).
+	 * @param tokenIndex The index of the token of the removed node (where the VTDNav is positioned on).
+	 * @return Whether the fragment is removed, false when it was already removed.
+	 * @throws Exception
+	 */
+	public boolean remove(long fragment, int tokenIndex) throws Exception {
+		int offset = (int)fragment;
+		boolean removed = addRemoval(getDocumentOffset(offset), getDocumentEndOffset(offset + (int)(fragment >> 32)));
+		if (removed)
+			addModifiedNames(tokenIndex);
+		return removed;
+	}
+
+	/**
+	 * Remove an attribute including its value and the space before it (if it's there).
+	 * @param attributeNameIndex The index of the attribute name (where the VTDNav is positioned on).
+	 * @return Whether the attribute is removed, false when it was already removed.
+	 * @throws Exception
+	 */
+	public boolean removeAttribute(int attributeNameIndex) throws Exception {
+		int attributeNameOffset = _nv.getTokenOffset(attributeNameIndex);
+		int attributeEnd = _nv.getTokenOffset(attributeNameIndex + 1) + _nv.getTokenLength(attributeNameIndex + 1) + 1;
+		// Remove the space before the attribute name (if it's there).
+		if (_nv.toString(attributeNameOffset - 1, 1).equals(" "))
+			attributeNameOffset -= 1;
+		boolean removed = addRemoval(getDocumentOffset(attributeNameOffset * _tokenUnitSize), getDocumentEndOffset(attributeEnd * _tokenUnitSize));
+		if (removed)
+			addModifiedNames(attributeNameIndex);
+		return removed;
+	}
+
+	/**
+	 * Remove a token, including the markup of comments and CDATA sections.
+	 * @param tokenIndex The index of the token (where the VTDNav is positioned on).
+	 * @return Whether the token is removed, false when it was already removed.
+	 * @throws Exception
+	 */
+	public boolean removeToken(int tokenIndex) throws Exception {
+		long tokenFragment = getTokenFragment(tokenIndex);
+		return remove(tokenFragment, tokenIndex);
+	}
+
+	/**
+	 * Replace the value of a token.
+	 * @param tokenIndex The index of the token (where the VTDNav is positioned on the token or the attribute name of the token).
+	 * @param value The new value.
+	 * @return Whether the token is replaced, false when the token was removed.
+	 * @throws Exception
+	 */
+	public boolean updateToken(int tokenIndex, String value) throws Exception {
+		long tokenFragment = getTokenFragment(tokenIndex);
+		long offset = getDocumentOffset((int)tokenFragment);
+		long end = getDocumentEndOffset((int)tokenFragment + (int)(tokenFragment >> 32));
+
+		Entry<Long, Modification> floorEntry = _modifications.floorEntry(offset);
+		if (floorEntry != null && floorEntry.getValue().getEnd() > offset) {
+			Modification floorModification = floorEntry.getValue();
+			// If the token was removed, there is nothing to replace.
+			if (floorModification.isRemoval() && floorModification.getEnd() >= end)
+				return false;
+			// If the token was replaced before, the new value replaces the former one.
+			else if (floorModification.isRemoval() || floorModification.Offset != offset || floorModification.getEnd() != end)
+				throw getOverlappingModificationException(offset, end - offset);
+		}
+		Entry<Long, Modification> higherEntry = _modifications.higherEntry(offset);
+		if ((higherEntry != null && higherEntry.getKey() < end) || !_insertions.subMap(offset, false, end, false).isEmpty())
+			throw getOverlappingModificationException(offset, end - offset);
+
+		_modifications.put(offset, new Modification(offset, end - offset, value, value.getBytes(_charset)));
+		addModifiedNames(tokenIndex);
+		return true;
+	}
+
+	/**
+	 * Insert a string after the element the VTDNav is positioned on.
+	 * @param value The string to insert.
+	 * @return Whether the string is inserted, false when the position was removed.
+	 * @throws Exception
+	 */
+	public boolean insertAfterElement(String value) throws Exception {
+		long elementFragment = _nv.getElementFragment();
+		long offset = getDocumentEndOffset((int)elementFragment + (int)(elementFragment >> 32));
+
+		Entry<Long, Modification> lowerEntry = _modifications.lowerEntry(offset);
+		if (lowerEntry != null && lowerEntry.getValue().getEnd() > offset) {
+			if (lowerEntry.getValue().isRemoval())
+				return false;
+			throw getOverlappingModificationException(offset, 0);
+		}
+
+		byte[] valueBytes = value.getBytes(_charset);
+		_insertions.merge(offset, valueBytes, DocumentModifier::concatenate);
+		return true;
+	}
+
+	/**
+	 * Apply the pending modifications when one of the expressions might observe them.
+	 * @param expressions The expressions which are evaluated next (use getPredicates for expressions which only select nodes).
+	 * @return The VTDNav of the document.
+	 * @throws Exception
+	 */
+	public VTDNav applyModificationsIfObserved(String... expressions) throws Exception {
+		if (hasModifications()) {
+			for (String expression : expressions) {
+				if (expression != null && isObservedBy(expression)) {
+					logger.fine(String.format("The expression '%s' might observe the pending modifications, so applying them first.", expression));
+					return applyModifications();
+				}
+			}
+		}
+		return _nv;
+	}
+
+	/**
+	 * Apply the pending modifications, by outputting and reparsing the modified document.
+	 * @return The VTDNav of the modified document.
+	 * @throws Exception
+	 */
+	public VTDNav applyModifications() throws Exception {
+		if (!hasModifications())
+			return _nv;
+
+		logger.fine(String.format("Applying %d modifications and %d insertions to the document...", _modifications.size(), _insertions.size()));
+		_nv = outputAndReparse();
+		_reparseCount++;
+		_modifications.clear();
+		_insertions.clear();
+		_modifiedNames.clear();
+		return _nv;
+	}
+
+	/**
+	 * Process the document, where the pending modifications are collected on the VTDNav which is passed to the processor.
+	 * @param processor The processor.
+	 * @return Whether the processor returned true.
+	 * @throws Exception
+	 */
+	public boolean forEachNav(NavProcessor processor) throws Exception {
+		return processor.process(_nv);
+	}
+
+	/**
+	 * Output the document including the pending modifications and reparse it.
+	 * @return The VTDNav of the modified document.
+	 * @throws Exception
+	 */
+	protected VTDNav outputAndReparse() throws Exception {
+		XMLModifier xm;
+		try {
+			xm = new XMLModifier(_nv);
+		} catch (Exception e) {
+			throw new Exception("Error while initializing XMLModifier");
+		}
+		for (Modification modification : _modifications.values()) {
+			xm.removeContent((int)modification.Offset, (int)modification.Length);
+			if (!modification.isRemoval()) {
+				// An insertion at the same offset is written before the new value of the token.
+				byte[] insertedBytes = _insertions.remove(modification.Offset);
+				xm.insertBytesAt((int)modification.Offset, (insertedBytes != null) ? concatenate(insertedBytes, modification.ValueBytes) : modification.ValueBytes);
+			}
+		}
+		for (Entry<Long, byte[]> insertion : _insertions.entrySet()) {
+			xm.insertBytesAt((int)(long)insertion.getKey(), insertion.getValue());
+		}
+
+		// Output and reparse the modified xml to the VtdNav.
+		return xm.outputAndReparse();
+	}
+
+	/**
+	 * Get the offset in the document of a byte offset in the VTDNav.
+	 * @param byteOffset The byte offset in the VTDNav.
+	 * @return The byte offset in the document.
+	 */
+	protected long getDocumentOffset(int byteOffset) {
+		return byteOffset;
+	}
+
+	/**
+	 * Get the offset in the document of the (exclusive) end of a range in the VTDNav.
+	 * @param byteEndOffset The byte offset of the end of the range in the VTDNav.
+	 * @return The byte offset of the end of the range in the document.
+	 */
+	private long getDocumentEndOffset(int byteEndOffset) {
+		return getDocumentOffset(byteEndOffset - 1) + 1;
+	}
+
+	/**
+	 * Get the predicates of an XPath expression which selects nodes.
+	 * The nodes which are selected are checked for removal separately, so only the predicates can observe the pending modifications.
+	 * @param xPath The XPath expression.
+	 * @return The predicates of the expression, separated by a space.
+	 */
+	public static String getPredicates(String xPath) {
+		if (xPath == null)
+			return null;
+		StringBuilder predicates = new StringBuilder();
+		StringBuilder predicate = new StringBuilder();
+		int depth = 0;
+		char quote = 0;
+		for (char c : xPath.toCharArray()) {
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == '[') {
+				depth++;
+				if (depth == 1)
+					continue;
+			} else if (c == ']' && depth > 0) {
+				depth--;
+				if (depth == 0) {
+					// A numeric predicate selects on position.
+					predicates.append(NUMBER_PATTERN.matcher(predicate).matches() ? "position()" : predicate).append(' ');
+					predicate.setLength(0);
+					continue;
+				}
+			}
+			if (depth > 0)
+				predicate.append(c);
+		}
+		return predicates.toString();
+	}
+
+	/**
+	 * Check whether an expression might observe the pending modifications.
+	 * @param expression The expression.
+	 * @return Whether the result of the expression might be different after applying the modifications.
+	 */
+	private boolean isObservedBy(String expression) {
+		String expressionWithoutLiterals = STRING_LITERAL_PATTERN.matcher(expression).replaceAll("''");
+		// Wildcards and positions depend on all nodes.
+		if (WILDCARD_PATTERN.matcher(expressionWithoutLiterals).find())
+			return true;
+		// The name tests depend on the nodes with the same name.
+		Matcher nameTestMatcher = NAME_TEST_PATTERN.matcher(expressionWithoutLiterals);
+		while (nameTestMatcher.find()) {
+			if (_modifiedNames.contains(XMLUtils.getElementNameWithoutNameSpace(nameTestMatcher.group())))
+				return true;
+		}
+		// The string value of the context node or its parent depends on all descendants (a dot which isn't part of a name or a path step).
+		String expressionWithoutNamesAndSteps = PATH_STEP_DOTS_PATTERN.matcher(NAME_PATTERN.matcher(expressionWithoutLiterals).replaceAll("N")).replaceAll("");
+		return expressionWithoutNamesAndSteps.indexOf('.') != -1;
+	}
+
+	/**
+	 * Add the removal of a range of bytes.
+	 * @param offset The byte offset in the document.
+	 * @param end The (exclusive) byte end offset in the document.
+	 * @return Whether the removal is added, false when the range was already removed.
+	 * @throws Exception When the range partially overlaps with another modification.
+	 */
+	private boolean addRemoval(long offset, long end) throws Exception {
+		long length = end - offset;
+		Entry<Long, Modification> floorEntry = _modifications.floorEntry(offset);
+		if (floorEntry != null && floorEntry.getValue().getEnd() > offset) {
+			Modification floorModification = floorEntry.getValue();
+			// If the range is already removed, the removal is not needed.
+			if (floorModification.isRemoval() && floorModification.getEnd() >= end)
+				return false;
+			else if (floorModification.Offset < offset || floorModification.getEnd() > end)
+				throw getOverlappingModificationException(offset, length);
+		}
+		// The modifications and insertions within the range are replaced by the removal.
+		for (Modification modification : _modifications.subMap(offset, true, end, false).values()) {
+			if (modification.getEnd() > end)
+				throw getOverlappingModificationException(offset, length);
+		}
+		_modifications.subMap(offset, true, end, false).clear();
+		_insertions.subMap(offset, false, end, false).clear();
+
+		_modifications.put(offset, new Modification(offset, length, null, null));
+		return true;
+	}
+
+	/**
+	 * Add the names which might be observed by other expressions when a node is modified.
+	 * This is the name of the node itself and, when the string value of its parent changes, the name of the parent element.
+	 * @param tokenIndex The index of the token of the node (where the VTDNav is positioned on).
+	 * @throws NavException
+	 */
+	private void addModifiedNames(int tokenIndex) throws NavException {
+		int tokenType = _nv.getTokenType(tokenIndex);
+		switch (tokenType) {
+			case VTDNav.TOKEN_STARTING_TAG:
+			case VTDNav.TOKEN_ATTR_NAME:
+			case VTDNav.TOKEN_ATTR_NS:
+			case VTDNav.TOKEN_PI_NAME:
+				_modifiedNames.add(XMLUtils.getElementNameWithoutNameSpace(_nv.toString(tokenIndex)));
+				break;
+			case VTDNav.TOKEN_ATTR_VAL:
+			case VTDNav.TOKEN_PI_VAL:
+				_modifiedNames.add(XMLUtils.getElementNameWithoutNameSpace(_nv.toString(tokenIndex - 1)));
+				break;
+		}
+		if (tokenType == VTDNav.TOKEN_STARTING_TAG || tokenType == VTDNav.TOKEN_CHARACTER_DATA || tokenType == VTDNav.TOKEN_CDATA_VAL) {
+			_nv.push();
+			if (_nv.toElement(VTDNav.PARENT) && _nv.getTokenType(_nv.getCurrentIndex()) == VTDNav.TOKEN_STARTING_TAG)
+				_modifiedNames.add(XMLUtils.getElementNameWithoutNameSpace(_nv.toString(_nv.getCurrentIndex())));
+			_nv.pop();
+		}
+	}
+
+	/**
+	 * Get the byte fragment of a token, including the markup of comments and CDATA sections (the same way XMLModifier removes and updates them).
+	 * @param tokenIndex The index of the token.
+	 * @return The fragment (length in the upper 32 bits and the byte offset in the lower 32 bits).
+	 */
+	private long getTokenFragment(int tokenIndex) {
+		int offset = _nv.getTokenOffset(tokenIndex);
+		int length = getTokenLength(tokenIndex);
+		switch (_nv.getTokenType(tokenIndex)) {
+			case VTDNav.TOKEN_CDATA_VAL:
+				offset -= 9;
+				length += 12;
+				break;
+			case VTDNav.TOKEN_COMMENT:
+				offset -= 4;
+				length += 7;
+				break;
+		}
+		return ((long)(length * _tokenUnitSize)) << 32 | (offset * _tokenUnitSize);
+	}
+
+	private int getTokenByteOffset(int tokenIndex) {
+		return _nv.getTokenOffset(tokenIndex) * _tokenUnitSize;
+	}
+
+	private int getTokenByteLength(int tokenIndex) {
+		return getTokenLength(tokenIndex) * _tokenUnitSize;
+	}
+
+	private int getTokenLength(int tokenIndex) {
+		int tokenType = _nv.getTokenType(tokenIndex);
+		// The length of names also contains the prefix length in the upper bits.
+		if (tokenType == VTDNav.TOKEN_STARTING_TAG || tokenType == VTDNav.TOKEN_ATTR_NAME || tokenType == VTDNav.TOKEN_ATTR_NS)
+			return _nv.getTokenLength(tokenIndex) & 0xFFFF;
+		return _nv.getTokenLength(tokenIndex);
+	}
+
+	private static Exception getOverlappingModificationException(long offset, long length) {
+		return new Exception(String.format("Overlapping modifications found while pre-processing the document (offset=%d;length=%d).", offset, length));
+	}
+
+	protected static byte[] concatenate(byte[] first, byte[] second) {
+		byte[] result = new byte[first.length + second.length];
+		System.arraycopy(first, 0, result, 0, first.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+	/**
+	 * A removal (when there is no value) or replacement of a range of bytes in the document.
+	 */
+	protected static class Modification {
+		public long Offset;
+		public long Length;
+		public String Value;
+		public byte[] ValueBytes;
+
+		public Modification(long offset, long length, String value, byte[] valueBytes) {
+			this.Offset = offset;
+			this.Length = length;
+			this.Value = value;
+			this.ValueBytes = valueBytes;
+		}
+
+		public long getEnd() {
+			return this.Offset + this.Length;
+		}
+
+		public boolean isRemoval() {
+			return this.Value == null;
+		}
+	}
+
+	/**
+	 * Processor of (a part of) the document, which collects modifications on the VTDNav.
+	 */
+	@FunctionalInterface
+	public interface NavProcessor {
+		public boolean process(VTDNav nv) throws Exception;
+	}
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.decompose;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Map of identifiers to their replacement values, used while replacing identifiers.
+ * PowerDesigner uses local identifiers of the shape 'o<number>' (numbered from 1 upwards), these are stored in an array indexed by the number.
+ * The array only grows for a number which is close to the number of identifiers in the map, so a single high number doesn't allocate a large array.
+ * Identifiers of any other shape, and local identifiers with a number beyond the array, are stored in a HashMap.
+ * This class is not thread-safe.
+ */
+public class IdentifierMap {
+	// The prefix of a local identifier.
+	private static final char LOCAL_IDENTIFIER_PREFIX = 'o';
+	// The highest number of a local identifier which is stored in the array (identifiers with a higher number are stored in the HashMap).
+	private static final int MAX_LOCAL_IDENTIFIER_NUMBER = (1 << 24) - 1;
+	// The number of array entries a local identifier number may be ahead of the number of identifiers in the map to grow the array for it.
+	private static final int MAX_LOCAL_IDENTIFIER_GAP = 1024;
+
+	// The replacement values of the local identifiers by their number.
+	private String[] _localIdentifierValues = new String[1024];
+	// The replacement values of the other identifiers.
+	private HashMap<String, String> _otherIdentifierValues = new HashMap<String, String>();
+	// The number of local identifiers in the HashMap, which are moved to the array when it grows.
+	private int _otherLocalIdentifierCount = 0;
+	private int _size = 0;
+
+	/**
+	 * Check whether the map contains a replacement value for the identifier.
+	 * @param identifier The identifier.
+	 * @return Whether the identifier is in the map.
+	 */
+	public boolean containsKey(String identifier) {
+		return get(identifier) != null;
+	}
+
+	/**
+	 * Get the replacement value of the identifier.
+	 * @param identifier The identifier.
+	 * @return The replacement value, or null if the identifier isn't in the map.
+	 */
+	public String get(String identifier) {
+		int localIdentifierNumber = getLocalIdentifierNumber(identifier);
+		if (localIdentifierNumber == -1 || localIdentifierNumber >= _localIdentifierValues.length)
+			return _otherIdentifierValues.get(identifier);
+		return _localIdentifierValues[localIdentifierNumber];
+	}
+
+	/**
+	 * Store the replacement value of the identifier.
+	 * @param identifier The identifier.
+	 * @param value The replacement value (not null).
+	 * @return The previous replacement value of the identifier, or null if the identifier wasn't in the map.
+	 */
+	public String put(String identifier, String value) {
+		String previousValue;
+		int localIdentifierNumber = getLocalIdentifierNumber(identifier);
+		// Grow the array (by doubling the size) if the number doesn't fit, but only when the array stays dense enough.
+		if (localIdentifierNumber >= _localIdentifierValues.length && localIdentifierNumber < 2 * _size + MAX_LOCAL_IDENTIFIER_GAP)
+			growLocalIdentifierValues(Math.max(_localIdentifierValues.length * 2, localIdentifierNumber + 1));
+		if (localIdentifierNumber == -1 || localIdentifierNumber >= _localIdentifierValues.length) {
+			previousValue = _otherIdentifierValues.put(identifier, value);
+			if (localIdentifierNumber != -1 && previousValue == null)
+				_otherLocalIdentifierCount++;
+		} else {
+			previousValue = _localIdentifierValues[localIdentifierNumber];
+			_localIdentifierValues[localIdentifierNumber] = value;
+		}
+		if (previousValue == null)
+			_size++;
+		return previousValue;
+	}
+
+	/**
+	 * Grow the array of local identifiers and move the local identifiers which now fit from the HashMap to the array.
+	 * @param length The new length of the array.
+	 */
+	private void growLocalIdentifierValues(int length) {
+		_localIdentifierValues = Arrays.copyOf(_localIdentifierValues, length);
+		if (_otherLocalIdentifierCount == 0)
+			return;
+		Iterator<Map.Entry<String, String>> otherIdentifierValues = _otherIdentifierValues.entrySet().iterator();
+		while (otherIdentifierValues.hasNext()) {
+			Map.Entry<String, String> otherIdentifierValue = otherIdentifierValues.next();
+			int localIdentifierNumber = getLocalIdentifierNumber(otherIdentifierValue.getKey());
+			if (localIdentifierNumber != -1 && localIdentifierNumber < length) {
+				_localIdentifierValues[localIdentifierNumber] = otherIdentifierValue.getValue();
+				otherIdentifierValues.remove();
+				_otherLocalIdentifierCount--;
+			}
+		}
+	}
+	
+	/**
+	 * Get the number of identifiers in the map.
+	 * @return The number of identifiers.
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Get the number of a local identifier ('o' followed by a number without leading zeros).
+	 * @param identifier The identifier.
+	 * @return The number of the local identifier, or -1 if the identifier isn't a local identifier which can be stored in the array.
+	 */
+	static int getLocalIdentifierNumber(String identifier) {
+		int length = identifier.length();
+		// The identifier should be the prefix followed by 1 to 8 digits, where the first digit isn't a zero (so every number has only one identifier).
+		if (length < 2 || length > 9 || identifier.charAt(0) != LOCAL_IDENTIFIER_PREFIX || identifier.charAt(1) == '0')
+			return -1;
+		int number = 0;
+		for (int i = 1; i < length; i++) {
+			char c = identifier.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			number = number * 10 + (c - '0');
+		}
+		return (number <= MAX_LOCAL_IDENTIFIER_NUMBER) ? number : -1;
+	}
+}
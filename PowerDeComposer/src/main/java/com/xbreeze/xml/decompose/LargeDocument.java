@@ -0,0 +1,645 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.decompose;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.xbreeze.xml.utils.XMLUtils;
+import com.ximpleware.VTDNav;
+import com.ximpleware.extended.NavExceptionHuge;
+import com.ximpleware.extended.ParseExceptionHuge;
+import com.ximpleware.extended.VTDGenHuge;
+import com.ximpleware.extended.VTDNavHuge;
+import com.ximpleware.extended.XMLMemMappedBuffer;
+
+/**
+ * A document which is too large to read into memory, which is parsed with the memory-mapped (extended) API of VTD-XML.
+ * The XPath engine of the extended API can't evaluate all expressions of the configuration, so the parsed document is only used to navigate the elements.
+ * The XPath expressions are evaluated on windows, which are small documents parsed in memory. A window consists of ranges of the document and synthetic markup to keep it well-formed:
+ *  - A segment window contains consecutive sibling elements which are smaller than the segment size.
+ *  - A stub window contains an element which is larger than the segment size, where child elements which don't fit are represented by an empty element with the same start tag.
+ *  - The document window contains the prolog and the root element (as stub when it's larger than the segment size).
+ * Segment and stub windows start with the start tags of the ancestors of the elements (and end with their end tags), so the expressions can look up.
+ * The document needs to be UTF-8 (or ASCII) encoded, so the ranges in a window have the same bytes as in the document.
+ */
+public class LargeDocument implements Closeable {
+	private static final Logger logger = Logger.getGlobal();
+	
+	// The maximum size of a segment, since the segments are parsed in memory (VTD-XML supports documents up to 2GB in memory).
+	private static final long MAX_SEGMENT_SIZE = 1L << 30;
+	// The maximum size of the child elements with children which are copied completely into a stub window, to give the expressions on the element some context.
+	private static final long STUB_CONTEXT_SIZE = 1L << 20;
+	
+	private File _file;
+	private boolean _isTemporaryFile;
+	private XMLMemMappedBuffer _xmlBuffer;
+	private RandomAccessFile _randomAccessFile;
+	private VTDNavHuge _nv;
+	// The offset of the document after the BOM (if there is one).
+	private long _documentOffset;
+	private long _segmentSize;
+	private Charset _charset;
+	private String _lineSeparator;
+	
+	/**
+	 * Constructor.
+	 * @param file The file of the document.
+	 * @param charset The charset of the document.
+	 * @param segmentSize The maximum size of the elements which are parsed in memory.
+	 * @throws Exception
+	 */
+	public LargeDocument(File file, Charset charset, long segmentSize) throws Exception {
+		if (!charset.equals(StandardCharsets.UTF_8) && !charset.equals(StandardCharsets.US_ASCII))
+			throw new Exception(String.format("A large document can only be decomposed when it's UTF-8 encoded, found '%s'.", charset.name()));
+		this._charset = charset;
+		this._segmentSize = Math.min(segmentSize, MAX_SEGMENT_SIZE);
+		parse(file, false);
+	}
+	
+	/**
+	 * Get the VTDNav of the document, which navigates the memory-mapped file.
+	 * @return The VTDNavHuge.
+	 */
+	public VTDNavHuge getNav() {
+		return this._nv;
+	}
+	
+	public Charset getCharset() {
+		return this._charset;
+	}
+	
+	public long getSegmentSize() {
+		return this._segmentSize;
+	}
+	
+	/**
+	 * Get the length of the document in bytes (including the BOM).
+	 * @return The length.
+	 */
+	public long getLength() {
+		return this._xmlBuffer.length();
+	}
+	
+	/**
+	 * Get the line separator of the document, which is derived from the first line-feed character.
+	 * @return The line separator.
+	 * @throws Exception
+	 */
+	public String getLineSeparator() throws Exception {
+		if (this._lineSeparator == null) {
+			long length = getLength();
+			for (long offset = _documentOffset; offset < length && this._lineSeparator == null; offset++) {
+				if (_xmlBuffer.byteAt(offset) == '\n')
+					this._lineSeparator = (offset > _documentOffset && _xmlBuffer.byteAt(offset - 1) == '\r') ? "\r\n" : "\n";
+			}
+			if (this._lineSeparator == null)
+				throw new Exception("Cannot detect line separator. No line-feed character found in file!");
+		}
+		return this._lineSeparator;
+	}
+	
+	/**
+	 * Get the element the VTDNav is positioned on.
+	 * @return The element.
+	 * @throws NavExceptionHuge
+	 */
+	public Element getCurrentElement() throws NavExceptionHuge {
+		Element element = new Element();
+		element.Name = _nv.toRawString(_nv.getCurrentIndex());
+		long[] elementFragment = _nv.getElementFragment();
+		element.Offset = elementFragment[0];
+		element.Length = elementFragment[1];
+		element.StartTagEnd = getStartTagEnd(element.Offset);
+		_nv.push();
+		element.HasChildElements = _nv.toElement(VTDNavHuge.FIRST_CHILD);
+		_nv.pop();
+		return element;
+	}
+	
+	/**
+	 * Get the child elements of the element the VTDNav is positioned on.
+	 * @return The child elements in document order.
+	 * @throws NavExceptionHuge
+	 */
+	public List<Element> getChildElements() throws NavExceptionHuge {
+		List<Element> childElements = new ArrayList<Element>();
+		_nv.push();
+		if (_nv.toElement(VTDNavHuge.FIRST_CHILD)) {
+			do {
+				childElements.add(getCurrentElement());
+			} while (_nv.toElement(VTDNavHuge.NEXT_SIBLING));
+		}
+		_nv.pop();
+		return childElements;
+	}
+	
+	/**
+	 * Get the document window, containing the prolog and the root element (as stub when it's larger than the segment size) and everything after it.
+	 * @return The window.
+	 * @throws Exception
+	 */
+	public Window getDocumentWindow() throws Exception {
+		_nv.push();
+		_nv.toElement(VTDNavHuge.ROOT);
+		Element rootElement = getCurrentElement();
+		List<Element> childElements = (rootElement.Length > _segmentSize) ? getChildElements() : null;
+		_nv.pop();
+		
+		WindowBuilder windowBuilder = new WindowBuilder();
+		windowBuilder.copy(_documentOffset, rootElement.Offset - _documentOffset, true);
+		if (childElements == null)
+			windowBuilder.copy(rootElement.Offset, rootElement.Length, true);
+		else
+			appendElementStub(windowBuilder, rootElement, childElements);
+		windowBuilder.copy(rootElement.getEnd(), getLength() - rootElement.getEnd(), true);
+		return windowBuilder.build();
+	}
+	
+	/**
+	 * Get the window of an element which is larger than the segment size.
+	 * @param ancestors The ancestors of the element, starting with the root element.
+	 * @param element The element.
+	 * @param childElements The child elements of the element.
+	 * @return The window, where the content is the element.
+	 * @throws Exception
+	 */
+	public Window getStubWindow(List<Element> ancestors, Element element, List<Element> childElements) throws Exception {
+		WindowBuilder windowBuilder = new WindowBuilder();
+		appendAncestorStartTags(windowBuilder, ancestors, element);
+		windowBuilder.markContentStart();
+		appendElementStub(windowBuilder, element, childElements);
+		windowBuilder.markContentEnd();
+		appendAncestorEndTags(windowBuilder, ancestors, element);
+		return windowBuilder.build();
+	}
+	
+	/**
+	 * Get the window of consecutive sibling elements which are smaller than the segment size.
+	 * @param ancestors The ancestors of the elements, starting with the root element.
+	 * @param segments The sibling elements.
+	 * @return The window, where the content is the range from the start of the first to the end of the last element.
+	 * @throws Exception
+	 */
+	public Window getSegmentWindow(List<Element> ancestors, List<Element> segments) throws Exception {
+		WindowBuilder windowBuilder = new WindowBuilder();
+		appendAncestorStartTags(windowBuilder, ancestors, segments.get(0));
+		windowBuilder.markContentStart();
+		long offset = segments.get(0).Offset;
+		for (Element segment : segments) {
+			// The text in between the elements is owned by the window of the parent.
+			windowBuilder.copy(offset, segment.Offset - offset, false);
+			windowBuilder.copy(segment.Offset, segment.Length, true);
+			offset = segment.getEnd();
+		}
+		windowBuilder.markContentEnd();
+		appendAncestorEndTags(windowBuilder, ancestors, segments.get(segments.size() - 1));
+		return windowBuilder.build();
+	}
+	
+	/**
+	 * Pass all windows of the document to the consumer, so every node of the document is owned by exactly one window.
+	 * First the document window is passed, after which the elements are traversed in document order where the consecutive elements which are smaller than the segment size are passed as segment windows.
+	 * @param windowConsumer The consumer.
+	 * @throws Exception
+	 */
+	public void forEachWindow(WindowConsumer windowConsumer) throws Exception {
+		windowConsumer.accept(getDocumentWindow());
+		_nv.toElement(VTDNavHuge.ROOT);
+		Element rootElement = getCurrentElement();
+		if (rootElement.Length > _segmentSize) {
+			rootElement.ChildElements = getChildElements();
+			List<Element> ancestors = new ArrayList<Element>();
+			ancestors.add(rootElement);
+			forEachChildWindow(ancestors, rootElement.ChildElements, windowConsumer);
+		}
+	}
+	
+	/**
+	 * Pass the windows of the child elements of the element the VTDNav is positioned on to the consumer.
+	 */
+	private void forEachChildWindow(List<Element> ancestors, List<Element> childElements, WindowConsumer windowConsumer) throws Exception {
+		List<Element> segments = new ArrayList<Element>();
+		_nv.push();
+		_nv.toElement(VTDNavHuge.FIRST_CHILD);
+		for (int i = 0; i < childElements.size(); i++) {
+			if (i > 0)
+				_nv.toElement(VTDNavHuge.NEXT_SIBLING);
+			Element childElement = childElements.get(i);
+			if (childElement.Length <= _segmentSize) {
+				// Start a new segment window when the element doesn't fit in the current one.
+				if (segments.size() > 0 && childElement.getEnd() - segments.get(0).Offset > _segmentSize) {
+					windowConsumer.accept(getSegmentWindow(ancestors, segments));
+					segments.clear();
+				}
+				segments.add(childElement);
+			} else {
+				if (segments.size() > 0) {
+					windowConsumer.accept(getSegmentWindow(ancestors, segments));
+					segments.clear();
+				}
+				childElement.ChildElements = getChildElements();
+				windowConsumer.accept(getStubWindow(ancestors, childElement, childElement.ChildElements));
+				ancestors.add(childElement);
+				forEachChildWindow(ancestors, childElement.ChildElements, windowConsumer);
+				ancestors.remove(ancestors.size() - 1);
+			}
+		}
+		if (segments.size() > 0)
+			windowConsumer.accept(getSegmentWindow(ancestors, segments));
+		_nv.pop();
+	}
+	
+	/**
+	 * Append the stub of an element to a window, where the element is owned by the window except for its child elements.
+	 * The child elements which only contain text are copied completely and the child elements with children as long as they fit in the stub context size, other child elements are replaced by an empty element with the same start tag.
+	 */
+	private void appendElementStub(WindowBuilder windowBuilder, Element element, List<Element> childElements) {
+		windowBuilder.copy(element.Offset, element.StartTagEnd - element.Offset, true);
+		long offset = element.StartTagEnd;
+		long contextSize = 0;
+		for (Element childElement : childElements) {
+			windowBuilder.copy(offset, childElement.Offset - offset, true);
+			if (!childElement.HasChildElements || contextSize + childElement.Length <= STUB_CONTEXT_SIZE) {
+				windowBuilder.copy(childElement.Offset, childElement.Length, false);
+				if (childElement.HasChildElements)
+					contextSize += childElement.Length;
+			} else {
+				// Copy the start tag without the closing '>' and close it as empty element.
+				windowBuilder.copy(childElement.Offset, childElement.StartTagEnd - 1 - childElement.Offset, false);
+				windowBuilder.append("/>");
+			}
+			offset = childElement.getEnd();
+		}
+		windowBuilder.copy(offset, element.getEnd() - offset, true);
+	}
+	
+	/**
+	 * Append the start tags of the ancestors (each followed by its preceding context elements) and the whitespace before the first element to a window.
+	 */
+	private void appendAncestorStartTags(WindowBuilder windowBuilder, List<Element> ancestors, Element firstElement) {
+		for (int i = 0; i < ancestors.size(); i++) {
+			Element ancestor = ancestors.get(i);
+			long pathOffset = (i + 1 < ancestors.size()) ? ancestors.get(i + 1).Offset : firstElement.Offset;
+			windowBuilder.copy(ancestor.Offset, ancestor.StartTagEnd - ancestor.Offset, false);
+			appendContextElements(windowBuilder, ancestor, ancestor.StartTagEnd, pathOffset);
+		}
+		// The leading whitespace is copied, so removing the element with its leading whitespace gives the same result as on the complete document.
+		long leadingWhiteSpaceOffset = firstElement.Offset;
+		while (leadingWhiteSpaceOffset > ancestors.get(ancestors.size() - 1).StartTagEnd && isWhiteSpace(_xmlBuffer.byteAt(leadingWhiteSpaceOffset - 1)))
+			leadingWhiteSpaceOffset--;
+		windowBuilder.copy(leadingWhiteSpaceOffset, firstElement.Offset - leadingWhiteSpaceOffset, false);
+	}
+	
+	/**
+	 * Append the end tags of the ancestors (each preceded by its following context elements) to a window.
+	 */
+	private void appendAncestorEndTags(WindowBuilder windowBuilder, List<Element> ancestors, Element lastElement) {
+		for (int i = ancestors.size() - 1; i >= 0; i--) {
+			Element ancestor = ancestors.get(i);
+			long pathEnd = (i + 1 < ancestors.size()) ? ancestors.get(i + 1).getEnd() : lastElement.getEnd();
+			appendContextElements(windowBuilder, ancestor, pathEnd, ancestor.getEnd());
+			windowBuilder.append(String.format("</%s>", ancestor.Name));
+		}
+	}
+	
+	/**
+	 * Append the child elements of an ancestor within a range which only contain text (like the name or code of the ancestor), so expressions can refer to them.
+	 */
+	private void appendContextElements(WindowBuilder windowBuilder, Element ancestor, long offset, long endOffset) {
+		if (ancestor.ChildElements == null)
+			return;
+		for (Element childElement : ancestor.ChildElements) {
+			if (!childElement.HasChildElements && childElement.Offset >= offset && childElement.getEnd() <= endOffset)
+				windowBuilder.copy(childElement.Offset, childElement.Length, false);
+		}
+	}
+	
+	/**
+	 * Get the offset after the '>' of the start tag which starts at the offset.
+	 */
+	private long getStartTagEnd(long offset) {
+		byte quote = 0;
+		for (long currentOffset = offset + 1; ; currentOffset++) {
+			byte currentByte = _xmlBuffer.byteAt(currentOffset);
+			if (quote != 0) {
+				if (currentByte == quote)
+					quote = 0;
+			} else if (currentByte == '"' || currentByte == '\'') {
+				quote = currentByte;
+			} else if (currentByte == '>') {
+				return currentOffset + 1;
+			}
+		}
+	}
+	
+	private static boolean isWhiteSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+	
+	/**
+	 * Write a range of the document to an output stream.
+	 * @param outputStream The output stream.
+	 * @param offset The offset of the range.
+	 * @param length The length of the range.
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream outputStream, long offset, long length) throws IOException {
+		byte[] buffer = new byte[(int)Math.min(length, 1 << 20)];
+		while (length > 0) {
+			int readLength = (int)Math.min(length, buffer.length);
+			readBytes(offset, buffer, 0, readLength);
+			outputStream.write(buffer, 0, readLength);
+			offset += readLength;
+			length -= readLength;
+		}
+	}
+	
+	/**
+	 * Transfer a range of the document to a channel, without copying it into memory.
+	 * @param offset The offset of the range.
+	 * @param length The length of the range.
+	 * @param targetChannel The channel.
+	 * @throws IOException
+	 */
+	public void transferTo(long offset, long length, WritableByteChannel targetChannel) throws IOException {
+		FileChannel fileChannel = _randomAccessFile.getChannel();
+		while (length > 0) {
+			long transferredLength = fileChannel.transferTo(offset, length, targetChannel);
+			offset += transferredLength;
+			length -= transferredLength;
+		}
+	}
+	
+	/**
+	 * Read a range of the document into a byte array.
+	 */
+	private void readBytes(long offset, byte[] target, int targetOffset, int length) throws IOException {
+		FileChannel fileChannel = _randomAccessFile.getChannel();
+		ByteBuffer targetBuffer = ByteBuffer.wrap(target, targetOffset, length);
+		while (targetBuffer.hasRemaining()) {
+			if (fileChannel.read(targetBuffer, offset + targetBuffer.position() - targetOffset) == -1)
+				throw new IOException(String.format("Unexpected end of file while reading '%s'.", _file));
+		}
+	}
+	
+	/**
+	 * Create a temporary file to write a modified copy of the document to (see replaceFile).
+	 * @return The temporary file.
+	 * @throws IOException
+	 */
+	public File createTemporaryFile() throws IOException {
+		File temporaryFile = File.createTempFile("PowerDeComposer", ".xml");
+		temporaryFile.deleteOnExit();
+		return temporaryFile;
+	}
+	
+	/**
+	 * Replace the document with a modified copy which is written to a temporary file, the former temporary file is deleted.
+	 * @param temporaryFile The temporary file.
+	 * @throws Exception
+	 */
+	public void replaceFile(File temporaryFile) throws Exception {
+		parse(temporaryFile, true);
+	}
+	
+	/**
+	 * Parse the file using memory mapping.
+	 */
+	private void parse(File file, boolean isTemporaryFile) throws Exception {
+		logger.fine(String.format("Parsing large document '%s' using memory mapping...", file));
+		XMLMemMappedBuffer xmlBuffer = new XMLMemMappedBuffer();
+		VTDNavHuge nv;
+		try {
+			xmlBuffer.readFile(file.getPath());
+			VTDGenHuge vg = new VTDGenHuge();
+			vg.setDoc(xmlBuffer);
+			vg.parse(false);
+			nv = vg.getNav();
+		} catch (IOException | ParseExceptionHuge e) {
+			xmlBuffer.close();
+			throw new Exception(String.format("Error while reading file as large XML document: %s.", e.getMessage()), e);
+		}
+		if (nv.getEncoding() != VTDNavHuge.FORMAT_UTF8 && nv.getEncoding() != VTDNavHuge.FORMAT_ASCII) {
+			xmlBuffer.close();
+			throw new Exception("A large document can only be decomposed when it's UTF-8 encoded.");
+		}
+		
+		// Close the former file, before switching to the new one.
+		close();
+		this._file = file;
+		this._isTemporaryFile = isTemporaryFile;
+		this._xmlBuffer = xmlBuffer;
+		this._randomAccessFile = new RandomAccessFile(file, "r");
+		this._nv = nv;
+		this._documentOffset = (xmlBuffer.length() >= 3 && xmlBuffer.byteAt(0) == (byte)0xEF && xmlBuffer.byteAt(1) == (byte)0xBB && xmlBuffer.byteAt(2) == (byte)0xBF) ? 3 : 0;
+	}
+	
+	/**
+	 * Close the document, a temporary file is deleted (when it's still mapped it's deleted when the JVM exits).
+	 */
+	@Override
+	public void close() {
+		if (_xmlBuffer != null) {
+			_xmlBuffer.close();
+			_xmlBuffer = null;
+		}
+		if (_randomAccessFile != null) {
+			try {
+				_randomAccessFile.close();
+			} catch (IOException e) {
+				logger.warning(String.format("Error while closing file '%s': %s", _file, e.getMessage()));
+			}
+			_randomAccessFile = null;
+		}
+		if (_isTemporaryFile && !_file.delete())
+			logger.fine(String.format("The temporary file '%s' is deleted when the JVM exits.", _file));
+		_nv = null;
+	}
+	
+	/**
+	 * An element of the document.
+	 */
+	public static class Element {
+		public String Name;
+		public long Offset;
+		public long Length;
+		// The offset after the start tag.
+		public long StartTagEnd;
+		public boolean HasChildElements;
+		// The child elements, when the element is used as ancestor of which the child elements which only contain text are added to windows as context.
+		public List<Element> ChildElements;
+		
+		public long getEnd() {
+			return this.Offset + this.Length;
+		}
+	}
+	
+	/**
+	 * A small document which consists of ranges of the document (and synthetic markup), which is parsed in memory.
+	 * The nodes in the ranges which are owned by the window are processed using the window, the other ranges only give context to the XPath expressions.
+	 */
+	public static class Window {
+		private VTDNav _nv;
+		private int[] _pieceOffsets;
+		private WindowPiece[] _pieces;
+		private int _contentOffset;
+		private int _contentEndOffset;
+		
+		private Window(VTDNav nv, List<WindowPiece> pieces, int contentOffset, int contentEndOffset) {
+			this._nv = nv;
+			this._pieces = pieces.toArray(new WindowPiece[pieces.size()]);
+			this._pieceOffsets = new int[_pieces.length];
+			for (int i = 0; i < _pieces.length; i++)
+				this._pieceOffsets[i] = _pieces[i].WindowOffset;
+			this._contentOffset = contentOffset;
+			this._contentEndOffset = contentEndOffset;
+		}
+		
+		public VTDNav getNav() {
+			return this._nv;
+		}
+		
+		/**
+		 * Get the offset in the document of an offset in the window.
+		 * @param windowOffset The byte offset in the window.
+		 * @return The byte offset in the document, or -1 if the offset is in synthetic markup.
+		 */
+		public long getDocumentOffset(int windowOffset) {
+			WindowPiece piece = getPiece(windowOffset);
+			return (piece.DocumentOffset == -1) ? -1 : piece.DocumentOffset + windowOffset - piece.WindowOffset;
+		}
+		
+		/**
+		 * Check whether an offset in the window is in a range which is owned by the window.
+		 * @param windowOffset The byte offset in the window.
+		 * @return Whether the offset is owned by the window.
+		 */
+		public boolean isOwned(int windowOffset) {
+			return getPiece(windowOffset).IsOwned;
+		}
+		
+		/**
+		 * Get the content of the window from the (modified) output of the window, which is the output without the ancestor tags around the content.
+		 * @param windowOutput The output of the window.
+		 * @return The content.
+		 */
+		public byte[] getContent(byte[] windowOutput) {
+			return Arrays.copyOfRange(windowOutput, _contentOffset, windowOutput.length - (_nv.getXML().length() - _contentEndOffset));
+		}
+		
+		private WindowPiece getPiece(int windowOffset) {
+			int pieceIndex = Arrays.binarySearch(_pieceOffsets, windowOffset);
+			return _pieces[(pieceIndex >= 0) ? pieceIndex : -pieceIndex - 2];
+		}
+	}
+	
+	/**
+	 * Consumer of the windows of the document.
+	 */
+	@FunctionalInterface
+	public interface WindowConsumer {
+		public void accept(Window window) throws Exception;
+	}
+	
+	/**
+	 * A range of the document or synthetic markup in a window.
+	 */
+	private static class WindowPiece {
+		public int WindowOffset;
+		public long DocumentOffset;
+		public int Length;
+		public byte[] SyntheticBytes;
+		public boolean IsOwned;
+		
+		public WindowPiece(int windowOffset, long documentOffset, int length, byte[] syntheticBytes, boolean isOwned) {
+			this.WindowOffset = windowOffset;
+			this.DocumentOffset = documentOffset;
+			this.Length = length;
+			this.SyntheticBytes = syntheticBytes;
+			this.IsOwned = isOwned;
+		}
+	}
+	
+	/**
+	 * Builder of a window, which reads the ranges of the document into memory and parses the window.
+	 */
+	private class WindowBuilder {
+		private List<WindowPiece> _pieces = new ArrayList<WindowPiece>();
+		private long _length = 0;
+		private int _contentOffset = 0;
+		private int _contentEndOffset = -1;
+		
+		public void copy(long documentOffset, long length, boolean isOwned) {
+			if (length > 0) {
+				_pieces.add(new WindowPiece((int)_length, documentOffset, (int)length, null, isOwned));
+				_length += length;
+			}
+		}
+		
+		public void append(String syntheticMarkup) {
+			byte[] syntheticBytes = syntheticMarkup.getBytes(_charset);
+			_pieces.add(new WindowPiece((int)_length, -1, syntheticBytes.length, syntheticBytes, false));
+			_length += syntheticBytes.length;
+		}
+		
+		public void markContentStart() {
+			_contentOffset = (int)_length;
+		}
+		
+		public void markContentEnd() {
+			_contentEndOffset = (int)_length;
+		}
+		
+		public Window build() throws Exception {
+			if (_length > Integer.MAX_VALUE - 8)
+				throw new Exception(String.format("The part of the large document at offset %d is too large to be parsed in memory (%d bytes), use a smaller largeDocumentThreshold.", _pieces.get(0).DocumentOffset, _length));
+			byte[] windowBytes = new byte[(int)_length];
+			for (WindowPiece piece : _pieces) {
+				if (piece.SyntheticBytes != null)
+					System.arraycopy(piece.SyntheticBytes, 0, windowBytes, piece.WindowOffset, piece.Length);
+				else
+					readBytes(piece.DocumentOffset, windowBytes, piece.WindowOffset, piece.Length);
+			}
+			VTDNav nv;
+			try {
+				nv = XMLUtils.getVTDNav(windowBytes, false);
+			} catch (Exception e) {
+				throw new Exception(String.format("Error while parsing part of large document: %s", e.getMessage()), e);
+			}
+			return new Window(nv, _pieces, _contentOffset, (_contentEndOffset == -1) ? (int)_length : _contentEndOffset);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.decompose;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import com.ximpleware.VTDNav;
+
+/**
+ * Modifier which collects the modifications of the pre-processing steps on a large document, window by window (see LargeDocument).
+ * The modifications are collected with their offset in the document, where the nodes which aren't owned by the current window are seen as removed (so every node is processed once).
+ * The modifications are applied by writing a modified copy of the document to a temporary file, which is parsed using memory mapping again.
+ */
+public class LargeDocumentModifier extends DocumentModifier {
+	private static final Logger logger = Logger.getGlobal();
+	
+	private LargeDocument _document;
+	// The window the modifications are currently collected on.
+	private LargeDocument.Window _window;
+	
+	/**
+	 * Constructor.
+	 * @param document The large document.
+	 */
+	public LargeDocumentModifier(LargeDocument document) {
+		super(document.getCharset());
+		this._document = document;
+	}
+	
+	@Override
+	public boolean isRemoved(int tokenIndex) {
+		// A node which isn't owned by the window is processed using another window.
+		if (!_window.isOwned(getNav().getTokenOffset(tokenIndex)))
+			return true;
+		return super.isRemoved(tokenIndex);
+	}
+	
+	@Override
+	protected long getDocumentOffset(int byteOffset) {
+		return _window.getDocumentOffset(byteOffset);
+	}
+	
+	/**
+	 * Process the document window by window.
+	 * @param processor The processor.
+	 * @return Whether the processor returned true for one of the windows.
+	 * @throws Exception
+	 */
+	@Override
+	public boolean forEachNav(NavProcessor processor) throws Exception {
+		boolean[] result = new boolean[] { false };
+		_document.forEachWindow(window -> {
+			_window = window;
+			setNav(window.getNav());
+			if (processor.process(window.getNav()))
+				result[0] = true;
+		});
+		_window = null;
+		setNav(null);
+		return result[0];
+	}
+	
+	/**
+	 * Write the modified document to a temporary file and parse it, the VTDNav of the document is accessed using the windows (see forEachNav).
+	 * @return null, since there is no VTDNav on the complete document.
+	 * @throws Exception
+	 */
+	@Override
+	protected VTDNav outputAndReparse() throws Exception {
+		File temporaryFile = _document.createTemporaryFile();
+		logger.fine(String.format("Writing the modified large document to '%s'...", temporaryFile));
+		try (FileOutputStream temporaryFileOutputStream = new FileOutputStream(temporaryFile)) {
+			FileChannel targetChannel = temporaryFileOutputStream.getChannel();
+			// Copy the document in between the modifications, where an insertion at the offset of a modification is written before it.
+			TreeSet<Long> modificationOffsets = new TreeSet<Long>(_modifications.keySet());
+			modificationOffsets.addAll(_insertions.keySet());
+			long offset = 0;
+			for (Long modificationOffset : modificationOffsets) {
+				_document.transferTo(offset, modificationOffset - offset, targetChannel);
+				offset = modificationOffset;
+				byte[] insertedBytes = _insertions.get(modificationOffset);
+				if (insertedBytes != null)
+					write(targetChannel, insertedBytes);
+				Modification modification = _modifications.get(modificationOffset);
+				if (modification != null) {
+					if (!modification.isRemoval())
+						write(targetChannel, modification.ValueBytes);
+					offset = modification.getEnd();
+				}
+			}
+			_document.transferTo(offset, _document.getLength() - offset, targetChannel);
+		}
+		_document.replaceFile(temporaryFile);
+		return null;
+	}
+	
+	private static void write(FileChannel targetChannel, byte[] bytes) throws Exception {
+		ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+		while (byteBuffer.hasRemaining())
+			targetChannel.write(byteBuffer);
+	}
+}
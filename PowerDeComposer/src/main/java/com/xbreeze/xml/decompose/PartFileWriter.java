@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.decompose;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import com.xbreeze.xml.utils.FileUtils;
+
+/**
+ * Class to write the decomposed parts to disk.
+ * When a writer count is specified, the parts are written by a pool of writer threads, so the decomposer can continue with the next part while the former parts are written.
+ * The number of parts waiting to be written is bounded, when the bound is reached the decomposer waits until a writer is done (backpressure).
+ * When writing parts fails, the error of the first failed part (in order of submission) is reported, independent of the order in which the writers finished.
+ * Only the first failure is kept, so the memory used doesn't grow with the number of written parts.
+ * Parts can be handed to the writer from multiple threads (when decomposing in parallel).
+ * When skipping unchanged files, a part is only written when the existing file differs (first comparing the size, then the contents), so unchanged files keep their modification time.
+ */
+public class PartFileWriter {
+	private static final Logger logger = Logger.getGlobal();
+	
+	// The number of pending parts per writer thread.
+	private static final int PENDING_PARTS_PER_WRITER = 4;
+	
+	private int _writerCount;
+	private boolean _skipUnchangedFiles;
+	private ExecutorService _writerPool;
+	private Semaphore _pendingPartPermits;
+	private int _maxPendingPartCount;
+	// The number of submitted parts, used as sequence number of the next submitted part.
+	private AtomicLong _submittedPartCount = new AtomicLong();
+	// The failure of the first failed part in order of submission, or null when no part failed.
+	private AtomicReference<WriteFailure> _firstWriteFailure = new AtomicReference<WriteFailure>();
+	
+	private long _startTime;
+	private AtomicInteger _writtenFileCount = new AtomicInteger();
+	private AtomicInteger _skippedFileCount = new AtomicInteger();
+	
+	/**
+	 * Constructor.
+	 * @param writerCount The number of writer threads, when 0 the parts are written directly in the calling thread.
+	 */
+	public PartFileWriter(int writerCount) {
+		this(writerCount, false);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param writerCount The number of writer threads, when 0 the parts are written directly in the calling thread.
+	 * @param skipUnchangedFiles Whether to skip writing a part when the existing file has the same contents.
+	 */
+	public PartFileWriter(int writerCount, boolean skipUnchangedFiles) {
+		this._writerCount = writerCount;
+		this._skipUnchangedFiles = skipUnchangedFiles;
+		if (writerCount > 0) {
+			this._writerPool = Executors.newFixedThreadPool(writerCount, runnable -> {
+				Thread writerThread = new Thread(runnable, "PartFileWriter");
+				writerThread.setDaemon(true);
+				return writerThread;
+			});
+			this._maxPendingPartCount = writerCount * PENDING_PARTS_PER_WRITER;
+			this._pendingPartPermits = new Semaphore(_maxPendingPartCount);
+		}
+		this._startTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Write the contents of a part to a file, creating the parent folders if needed.
+	 * @param targetFilePath The file to write.
+	 * @param partContents The contents of the part.
+	 * @throws Exception When writing this or a former part failed.
+	 */
+	public void write(Path targetFilePath, byte[] partContents) throws Exception {
+		// Without writer threads, write the file directly.
+		if (_writerPool == null) {
+			writeFile(targetFilePath, partContents);
+			return;
+		}
+		
+		// If a former write failed, stop and report the error.
+		if (_firstWriteFailure.get() != null)
+			awaitCompletion();
+		
+		// Wait until there is room for another pending part.
+		_pendingPartPermits.acquire();
+		try {
+			long partSequence = _submittedPartCount.getAndIncrement();
+			_writerPool.execute(() -> {
+				try {
+					writeFile(targetFilePath, partContents);
+				} catch (Throwable t) {
+					// Keep the failure if it's the first in order of submission.
+					WriteFailure writeFailure = new WriteFailure(partSequence, (t instanceof Exception) ? (Exception)t : new Exception(t));
+					_firstWriteFailure.accumulateAndGet(writeFailure, (firstWriteFailure, otherWriteFailure) -> (firstWriteFailure == null || otherWriteFailure.PartSequence < firstWriteFailure.PartSequence) ? otherWriteFailure : firstWriteFailure);
+				} finally {
+					_pendingPartPermits.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			_pendingPartPermits.release();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Write a file to disk, unless it is unchanged and unchanged files are skipped.
+	 */
+	private void writeFile(Path targetFilePath, byte[] partContents) throws Exception {
+		try {
+			if (_skipUnchangedFiles && FileUtils.isFileContentEqual(targetFilePath, partContents)) {
+				_skippedFileCount.incrementAndGet();
+				return;
+			}
+			Path targetFolderPath = targetFilePath.getParent();
+			// Create the target folder(s) if they don't exist.
+			if (targetFolderPath != null)
+				Files.createDirectories(targetFolderPath);
+			Files.write(targetFilePath, partContents);
+			_writtenFileCount.incrementAndGet();
+		} catch (Exception e) {
+			throw new Exception(String.format("Error while writing file '%s': %s", targetFilePath.toString(), e.getMessage()), e);
+		}
+	}
+	
+	/**
+	 * Wait until all submitted parts are written and report the throughput.
+	 * @throws Exception The error of the first failed part, in order of submission.
+	 */
+	public void awaitCompletion() throws Exception {
+		if (_writerPool != null) {
+			// Wait until all pending parts are written, which is when all permits for pending parts are available.
+			_pendingPartPermits.acquire(_maxPendingPartCount);
+			_pendingPartPermits.release(_maxPendingPartCount);
+			WriteFailure firstWriteFailure = _firstWriteFailure.get();
+			if (firstWriteFailure != null)
+				throw firstWriteFailure.Exception;
+		}
+		
+		long durationMillis = System.currentTimeMillis() - _startTime;
+		int handledFileCount = _writtenFileCount.get() + _skippedFileCount.get();
+		logger.info(String.format("Processed %d files in %d ms using %d writers (%.1f files/sec).", handledFileCount, durationMillis, _writerCount, (durationMillis > 0) ? handledFileCount * 1000.0 / durationMillis : (double)handledFileCount));
+	}
+	
+	/**
+	 * Get the number of files which are written to disk.
+	 */
+	public int getWrittenFileCount() {
+		return _writtenFileCount.get();
+	}
+	
+	/**
+	 * Get the number of files which aren't written, since they were unchanged.
+	 */
+	public int getSkippedFileCount() {
+		return _skippedFileCount.get();
+	}
+	
+	/**
+	 * Stop the writer threads.
+	 */
+	public void shutdown() {
+		if (_writerPool != null)
+			_writerPool.shutdown();
+	}
+	
+	/**
+	 * The failure of writing a part, with the sequence number of the part.
+	 */
+	private static class WriteFailure {
+		public long PartSequence;
+		public Exception Exception;
+		
+		public WriteFailure(long partSequence, Exception exception) {
+			this.PartSequence = partSequence;
+			this.Exception = exception;
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.decompose;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.logging.Logger;
+
+import com.xbreeze.xml.utils.FileUtils;
+import com.xbreeze.xml.utils.XMLUtils;
+import com.ximpleware.IndexReadException;
+import com.ximpleware.VTDGen;
+import com.ximpleware.VTDNav;
+
+/**
+ * Cache of the VTD indexes of parsed files, so a file which didn't change can be loaded without parsing it again.
+ * The index of a file is stored in the cache directory together with the path, size, modification time and content hash of the file, the index is only used when all of them are equal.
+ * The document itself isn't stored in the cache (since it's read anyway to check the content hash), only the VTD records and location caches.
+ * When the total size of the cache exceeds the maximum size, the least recently used indexes are removed.
+ */
+public class VTDIndexCache {
+	private static final Logger logger = Logger.getGlobal();
+	
+	// The extension of the index files in the cache directory.
+	public static final String INDEX_FILE_EXTENSION = ".vtdindex";
+	
+	// The header of the index file, which is changed when the format of the index file changes (so older index files are not used).
+	private static final String INDEX_FILE_HEADER = "PowerDeComposer VTD index 1.0";
+	
+	// The size of the header of a VTD index, after which the document is stored (padded to a multiple of 8 bytes).
+	private static final int VTD_INDEX_HEADER_SIZE = 32;
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private Path _cacheDirectoryPath;
+	private long _maxSize;
+	
+	/**
+	 * Constructor.
+	 * @param cacheDirectoryPath The directory in which the indexes are cached, it's created when it doesn't exist.
+	 * @param maxSize The maximum total size of the cached indexes in bytes.
+	 */
+	public VTDIndexCache(Path cacheDirectoryPath, long maxSize) {
+		this._cacheDirectoryPath = cacheDirectoryPath;
+		this._maxSize = maxSize;
+	}
+	
+	/**
+	 * Get the VTDNav of a file (namespace unaware), using the cached index when the file didn't change.
+	 * When the file isn't in the cache or it changed, the file is parsed and the index is stored in the cache.
+	 * @param file The file.
+	 * @param fileContents The contents of the file.
+	 * @return The VTDNav.
+	 * @throws Exception
+	 */
+	public VTDNav getVTDNav(File file, byte[] fileContents) throws Exception {
+		String filePath = file.getCanonicalPath();
+		long lastModified = file.lastModified();
+		int contentHash = FileUtils.getContentChecksum(fileContents);
+		Path indexFilePath = FileUtils.getPathHashedFilePath(_cacheDirectoryPath, file, INDEX_FILE_EXTENSION);
+		
+		if (Files.isRegularFile(indexFilePath)) {
+			VTDNav nv = loadIndex(indexFilePath, filePath, lastModified, contentHash, fileContents);
+			if (nv != null) {
+				logger.fine(String.format("Loaded the cached index of '%s'.", file));
+				// Update the modification time of the index file, so the least recently used indexes are removed first.
+				FileUtils.setLastUsedTime(indexFilePath);
+				return nv;
+			}
+			// The index is outdated or invalid, so remove it.
+			Files.deleteIfExists(indexFilePath);
+		}
+		
+		VTDNav nv = XMLUtils.getVTDNav(fileContents, false);
+		storeIndex(nv, indexFilePath, filePath, fileContents.length, lastModified, contentHash);
+		return nv;
+	}
+	
+	/**
+	 * Load the index of a file, if the file didn't change since the index was stored.
+	 * @return The VTDNav, or null when the index is outdated or invalid.
+	 */
+	private VTDNav loadIndex(Path indexFilePath, String filePath, long lastModified, int contentHash, byte[] fileContents) {
+		try (InputStream indexInputStream = new BufferedInputStream(Files.newInputStream(indexFilePath), BUFFER_SIZE)) {
+			DataInputStream indexDataInputStream = new DataInputStream(indexInputStream);
+			if (!indexDataInputStream.readUTF().equals(INDEX_FILE_HEADER)) {
+				logger.fine(String.format("The index file '%s' has an unsupported format.", indexFilePath));
+				return null;
+			}
+			if (!indexDataInputStream.readUTF().equals(filePath)
+				|| indexDataInputStream.readLong() != fileContents.length
+				|| indexDataInputStream.readLong() != lastModified
+				|| indexDataInputStream.readInt() != contentHash
+			) {
+				logger.fine(String.format("The cached index of '%s' is outdated.", filePath));
+				return null;
+			}
+			
+			// Insert the document (with its padding) after the header of the VTD index, like it was written by VTD-XML.
+			byte[] vtdIndexHeader = new byte[VTD_INDEX_HEADER_SIZE];
+			indexDataInputStream.readFully(vtdIndexHeader);
+			InputStream vtdIndexInputStream = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+				new ByteArrayInputStream(vtdIndexHeader),
+				new ByteArrayInputStream(fileContents),
+				new ByteArrayInputStream(new byte[getPaddedLength(fileContents.length) - fileContents.length]),
+				indexInputStream
+			)));
+			return new VTDGen().loadIndex(new BufferedInputStream(vtdIndexInputStream, BUFFER_SIZE));
+		} catch (IOException | IndexReadException e) {
+			logger.warning(String.format("Error while loading the index file '%s', parsing the file instead: %s", indexFilePath, e.getMessage()));
+			return null;
+		}
+	}
+	
+	/**
+	 * Store the index of a file in the cache and remove the least recently used indexes when the cache is too large.
+	 * Failing to store the index isn't an error, since the cache is only used to speed up the next run.
+	 */
+	private void storeIndex(VTDNav nv, Path indexFilePath, String filePath, int fileSize, long lastModified, int contentHash) {
+		Path temporaryIndexFilePath = null;
+		try {
+			// The index is written to a temporary file first, so a concurrent run never reads a partially written index.
+			temporaryIndexFilePath = FileUtils.createTemporaryFile(indexFilePath);
+			try (OutputStream indexOutputStream = new BufferedOutputStream(Files.newOutputStream(temporaryIndexFilePath), BUFFER_SIZE)) {
+				DataOutputStream indexDataOutputStream = new DataOutputStream(indexOutputStream);
+				indexDataOutputStream.writeUTF(INDEX_FILE_HEADER);
+				indexDataOutputStream.writeUTF(filePath);
+				indexDataOutputStream.writeLong(fileSize);
+				indexDataOutputStream.writeLong(lastModified);
+				indexDataOutputStream.writeInt(contentHash);
+				indexDataOutputStream.flush();
+				nv.writeIndex(new DocumentSkippingOutputStream(indexOutputStream, VTD_INDEX_HEADER_SIZE, getPaddedLength(fileSize)));
+			}
+			
+			long indexFileSize = Files.size(temporaryIndexFilePath);
+			if (indexFileSize > _maxSize) {
+				logger.fine(String.format("The index of '%s' is larger than the index cache size, so it's not cached.", filePath));
+				Files.delete(temporaryIndexFilePath);
+				return;
+			}
+			FileUtils.moveAtomically(temporaryIndexFilePath, indexFilePath);
+			logger.fine(String.format("Stored the index of '%s' in the index cache (%d bytes).", filePath, indexFileSize));
+			FileUtils.removeLeastRecentlyUsedFiles(_cacheDirectoryPath, INDEX_FILE_EXTENSION, _maxSize, indexFilePath);
+		} catch (Exception e) {
+			logger.warning(String.format("Error while storing the index of '%s' in the index cache: %s", filePath, e.getMessage()));
+			try {
+				if (temporaryIndexFilePath != null)
+					Files.deleteIfExists(temporaryIndexFilePath);
+			} catch (IOException deleteException) {
+				// The temporary file is left behind, it's removed when the cache is too large.
+			}
+		}
+	}
+	
+	/**
+	 * Get the length of the document padded to a multiple of 8 bytes, as it's stored in a VTD index.
+	 */
+	private static int getPaddedLength(int documentLength) {
+		return (documentLength + 7) & ~7;
+	}
+	
+	/**
+	 * Output stream which skips a range of bytes, used to leave the document out of the VTD index.
+	 */
+	private static class DocumentSkippingOutputStream extends FilterOutputStream {
+		private long _position = 0;
+		private long _skipOffset;
+		private long _skipEndOffset;
+		
+		public DocumentSkippingOutputStream(OutputStream outputStream, long skipOffset, long skipLength) {
+			super(outputStream);
+			this._skipOffset = skipOffset;
+			this._skipEndOffset = skipOffset + skipLength;
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			if (_position < _skipOffset || _position >= _skipEndOffset)
+				out.write(b);
+			_position++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			int end = off + len;
+			while (off < end) {
+				int length;
+				if (_position < _skipOffset) {
+					length = (int) Math.min(end - off, _skipOffset - _position);
+					out.write(b, off, length);
+				} else if (_position < _skipEndOffset) {
+					length = (int) Math.min(end - off, _skipEndOffset - _position);
+				} else {
+					length = end - off;
+					out.write(b, off, length);
+				}
+				off += length;
+				_position += length;
+			}
+		}
+	}
+}
@@ -22,18 +22,29 @@
  *******************************************************************************/
 package com.xbreeze.xml.decompose;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -42,8 +53,11 @@ import java.util.stream.Collectors;
 import org.apache.commons.io.FilenameUtils;
 
 import com.xbreeze.xml.config.AbstractConfigElementWithXPathAttributeAndCondition;
+import com.xbreeze.xml.config.CompiledElementCondition;
+import com.xbreeze.xml.decompose.config.ChangeDetectionConfig;
 import com.xbreeze.xml.decompose.config.DecomposableElementConfig;
 import com.xbreeze.xml.decompose.config.DecomposeConfig;
+import com.xbreeze.xml.decompose.config.DecomposeEngine;
 import com.xbreeze.xml.decompose.config.IdentifierReplacementConfig;
 import com.xbreeze.xml.decompose.config.IncludeAttributeConfig;
 import com.xbreeze.xml.decompose.config.NodeRemovalConfig;
@@ -51,18 +65,75 @@ import com.xbreeze.xml.decompose.config.TargetFolderNameConfig;
 import com.xbreeze.xml.utils.FileContentAndCharset;
 import com.xbreeze.xml.utils.FileUtils;
 import com.xbreeze.xml.utils.XMLUtils;
+import com.xbreeze.xml.utils.XPathCache;
 import com.ximpleware.AutoPilot;
+import com.ximpleware.BookMark;
+import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 import com.ximpleware.XMLModifier;
 import com.ximpleware.XPathParseException;
+import com.ximpleware.extended.NavExceptionHuge;
+import com.ximpleware.extended.VTDNavHuge;
 
 public class XmlDecomposer {
 	private static final Logger logger = Logger.getGlobal();
 	
 	private static final String STR_PREFIX_SPACER = "  ";
 	
+	// The factory of AutoPilots with the namespaces of PowerDesigner models, keyed so its compiled expressions are cached separately from expressions without these namespaces.
+	private static final XPathCache.AutoPilotFactory POWERDESIGNER_AUTO_PILOT_FACTORY = new XPathCache.AutoPilotFactory("PowerDesigner", XmlDecomposer::getAutoPilot);
+	
+	// Patterns to check whether an XPath expression only looks within the decomposed element (see canDecomposeOnDocument).
+	private static final Pattern STRING_LITERAL_PATTERN = Pattern.compile("'[^']*'|\"[^\"]*\"");
+	private static final Pattern ABSOLUTE_PATH_PATTERN = Pattern.compile("(^|[\\s(\\[,|=<>!+-])\\s*/");
+	private static final Pattern NON_LOCAL_AXIS_PATTERN = Pattern.compile("ancestor|preceding|following|\\b(id|lang)\\s*\\(");
+	// The conditions are evaluated on each element separately, so the position in the selection isn't known.
+	private static final Pattern POSITION_FUNCTION_PATTERN = Pattern.compile("\\b(position|last)\\s*\\(");
+	private static final Pattern DOUBLE_PARENT_STEP_PATTERN = Pattern.compile("(\\.\\.|parent\\s*::)[^/]*/\\s*(\\.\\.|parent\\s*::)");
+	// The parts of a large document are decomposed on windows without the siblings of the element, so going sideways through the parent isn't possible (see checkLargeDocumentXPathExpressions).
+	private static final Pattern PARENT_CHILD_STEP_PATTERN = Pattern.compile("(\\.\\.|parent\\s*::\\s*[\\w:*.-]+(\\s*\\(\\s*\\))?)(\\s*\\[[^\\[\\]]*\\])*\\s*/(?!\\s*@)");
+	
+	// Pattern to recognize XPath expressions on processing instruction attributes (see removeNodes and detectChangesInProlog).
+	private static final Pattern PI_ATTRIBUTE_REMOVAL_PATTERN = Pattern.compile("(?<PIXPath>/?/processing-instruction\\(.+\\))/@(?<PIAttribute>.+)");
+	// Pattern for a referencing node XPath which selects an attribute on all elements (like //*/@Ref), the references are then found by scanning the tokens of the document.
+	private static final Pattern ALL_ELEMENTS_ATTRIBUTE_XPATH_PATTERN = Pattern.compile("\\s*//(\\*/)?@(?<AttributeName>[A-Za-z_][\\w.\\-]*)\\s*");
+	
+	// The manifest of the files written in the current run (only when using the manifest file removal strategy).
+	private DecomposeManifest _decomposeManifest;
+	
+	// Whether the child parts are decomposed on the VTDNav of the complete document, instead of parsing the xml fragment of each part again.
+	private boolean _decomposeOnDocument;
+	
+	// The compiled element conditions of the decomposable element config (null if no conditions are configured).
+	private CompiledElementCondition _elementCondition;
+	
+	// The cache of the VTD indexes of the parsed files (null if no index cache is configured).
+	private VTDIndexCache _indexCache;
+	
+	// The fingerprint of the composed model, which is written after decomposing (null if no fingerprint is configured).
+	private DecomposeFingerprint _decomposeFingerprint;
+	// The fingerprint file in the state directory (null if no fingerprint is configured).
+	private Path _decomposeFingerprintFilePath;
+	
+	// The manifest of the former decompose run (null if there is no usable manifest).
+	private DecomposeManifest _formerDecomposeManifest;
+	
+	// The seed of the fragment hashes of the parts when decomposing incrementally (null when not decomposing incrementally).
+	private byte[] _fragmentHashSeed;
+	
+	// The number of unchanged parts (including their children) and their files which are reused from the former decompose when decomposing incrementally.
+	private int _reusedPartCount;
+	private int _reusedPartFileCount;
+	
 	public XmlDecomposer(String xmlFilePath, String targetDirectory, DecomposeConfig decomposeConfig) throws Exception {
-		decomposeXml(xmlFilePath, targetDirectory, decomposeConfig);
+		// Only count the use of the XPath cache in this decompose (in batch or server mode multiple decomposes run in the same JVM).
+		XPathCache.resetStatistics();
+		try {
+			decomposeXml(xmlFilePath, targetDirectory, decomposeConfig);
+		} finally {
+			// Release the compiled expressions of this thread, also when the decompose stopped early or failed, so the model they are bound to can be released.
+			XPathCache.clear();
+		}
 	}
 	
 	private void decomposeXml(String xmlFilePath, String targetDirectory, DecomposeConfig decomposeConfig) throws Exception {
@@ -74,14 +145,61 @@ public class XmlDecomposer {
 		if (!xmlFile.exists())
 			throw new Exception(String.format("The specified xml file doesn't exist '%s'.", xmlFilePath));
 		
-		// Read the xml file into a string.
+		// If configured, first try to detect changes without reading and parsing the files.
+		// When the change can't be detected this way, the change detection XPath is evaluated on the parsed files (see decomposeDocument).
+		boolean detectChanges = (decomposeConfig.getChangeDetectionConfig() != null);
+		if (detectChanges) {
+			ChangeDetectionConfig changeDetectionConfig = decomposeConfig.getChangeDetectionConfig();
+			File targetFile = Paths.get(targetDirectory).resolve(xmlFile.getName()).toFile();
+			if (changeDetectionConfig.getFingerprint()) {
+				_decomposeFingerprint = new DecomposeFingerprint(xmlFile, getConfigChecksum(decomposeConfig));
+				_decomposeFingerprintFilePath = DecomposeFingerprint.getFingerprintFilePath(Paths.get(decomposeConfig.getStateDirectory()), targetFile);
+				if (_decomposeFingerprint.matches(_decomposeFingerprintFilePath, targetFile)) {
+					logger.info("The composed and decomposed model are unchanged since the former decompose (according to the fingerprint), so stopping.");
+					return;
+				}
+				// When the config changed, the decomposed model changes as well, so the change detection XPath isn't evaluated.
+				if (_decomposeFingerprint.isConfigChanged()) {
+					logger.info("The config changed since the former decompose (according to the fingerprint), so decomposing.");
+					detectChanges = false;
+				}
+			}
+			if (detectChanges && targetFile.exists()) {
+				Boolean isChanged = detectChangesInProlog(xmlFile, targetFile, changeDetectionConfig.getXPath());
+				if (isChanged != null) {
+					if (!isChanged) {
+						writeDecomposeFingerprint(targetFile);
+						return;
+					}
+					detectChanges = false;
+				}
+			}
+		}
+		
+		// When configured, the parsed files are cached as VTD index, so they don't need to be parsed again when they didn't change.
+		if (decomposeConfig.getIndexCacheDirectory() != null)
+			_indexCache = new VTDIndexCache(Paths.get(decomposeConfig.getIndexCacheDirectory()), decomposeConfig.getIndexCacheSize());
+		
+		// A file which is larger than the large document threshold isn't read into memory, but parsed using memory mapping (see LargeDocument).
+		if (xmlFile.length() > decomposeConfig.getLargeDocumentThreshold()) {
+			logger.info(String.format("The file is larger than the large document threshold (%d bytes), so decomposing it as large document...", decomposeConfig.getLargeDocumentThreshold()));
+			try (LargeDocument largeDocument = new LargeDocument(xmlFile, FileUtils.getFileCharset(xmlFile), decomposeConfig.getLargeDocumentThreshold())) {
+				decomposeDocument(xmlFile, null, null, largeDocument, targetDirectory, decomposeConfig, detectChanges);
+			}
+			return;
+		}
+		
+		// Read the xml file into a byte array (the contents are passed to VTD-XML as is).
 		logger.fine("Getting file contents...");
 		FileContentAndCharset xmlFileContentsAndCharset = FileUtils.getFileContent(xmlFile);
-		logger.fine("Start of file contents:");
-		logger.fine("--------------------------------------------------");
-		logger.fine(xmlFileContentsAndCharset.getFileContents().replaceAll("\n", "[LF]\n").replaceAll("\r", "[CR]"));
-		logger.fine("--------------------------------------------------");
-		logger.fine("End of file contents:");
+		// Only decode the file contents for logging when the fine level is logged, since this takes a multiple of the file size in memory.
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Start of file contents:");
+			logger.fine("--------------------------------------------------");
+			logger.fine(xmlFileContentsAndCharset.getFileContents().replaceAll("\n", "[LF]\n").replaceAll("\r", "[CR]"));
+			logger.fine("--------------------------------------------------");
+			logger.fine("End of file contents:");
+		}
 		
 		// Create a VTDNav for navigating the document.
 		VTDNav nv;
@@ -90,11 +208,123 @@ public class XmlDecomposer {
 			// We need to set the VTDNav to namespace unaware, since we will also process parts of the XML document
 			// in the recursive parseAndWriteDocumentParts function. In the document parts the xmlns is not defined on
 			// the elements anywhere, so it can't parse the XML with namespaces.
-			nv = XMLUtils.getVTDNav(xmlFileContentsAndCharset, false);
+			nv = getVTDNav(xmlFile, xmlFileContentsAndCharset);
 		} catch (Exception e) {
 			throw new Exception(String.format("Error while parsing Xml document: %s", e.getMessage()), e);
 		}
 		
+		decomposeDocument(xmlFile, xmlFileContentsAndCharset, nv, null, targetDirectory, decomposeConfig, detectChanges);
+	}
+	
+	/**
+	 * Detect changes using the processing instructions in the prolog of the composed model and the former decomposed root file, which are read without reading and parsing the complete files.
+	 * This is only possible when the change detection XPath selects an attribute of a processing instruction by its target, and the processing instruction is in the prolog of both files.
+	 * @param xmlFile The composed model file.
+	 * @param targetFile The former decomposed root file.
+	 * @param changeDetectionXPath The change detection XPath.
+	 * @return Whether the model changed, or null when it can't be detected using the prologs.
+	 * @throws Exception
+	 */
+	private Boolean detectChangesInProlog(File xmlFile, File targetFile, String changeDetectionXPath) throws Exception {
+		Matcher piAttributeXPathMatcher = PI_ATTRIBUTE_REMOVAL_PATTERN.matcher(changeDetectionXPath);
+		if (!piAttributeXPathMatcher.matches())
+			return null;
+		String piTarget = XMLUtils.getProcessingInstructionTarget(piAttributeXPathMatcher.group("PIXPath"));
+		if (piTarget == null)
+			return null;
+		
+		LinkedHashMap<String, String> decomposedProcessingInstructions = XMLUtils.getPrologProcessingInstructions(targetFile);
+		if (decomposedProcessingInstructions == null || !decomposedProcessingInstructions.containsKey(piTarget))
+			return null;
+		LinkedHashMap<String, String> composedProcessingInstructions = XMLUtils.getPrologProcessingInstructions(xmlFile);
+		if (composedProcessingInstructions == null || !composedProcessingInstructions.containsKey(piTarget))
+			return null;
+		
+		logger.fine("Detecting changes using the processing instructions in the prolog of the files...");
+		String piAttribute = piAttributeXPathMatcher.group("PIAttribute");
+		return isChanged(
+				XMLUtils.getProcessingInstructionAttributeText(decomposedProcessingInstructions.get(piTarget), piAttribute),
+				XMLUtils.getProcessingInstructionAttributeText(composedProcessingInstructions.get(piTarget), piAttribute)
+		);
+	}
+	
+	/**
+	 * Compare the change detection values of the decomposed and composed model.
+	 * @param decomposedCDValue The change detection value of the decomposed model.
+	 * @param composedCDValue The change detection value of the composed model.
+	 * @return Whether the model changed, so it needs to be decomposed.
+	 */
+	private boolean isChanged(String decomposedCDValue, String composedCDValue) {
+		logger.fine(String.format("Change detection decomposed value: %s", decomposedCDValue));
+		logger.fine(String.format("Change detection composed value: %s", composedCDValue));
+		
+		// If the value doesn't exist on both sides we do nothing.
+		if (
+			(decomposedCDValue == null && composedCDValue == null)
+			||
+			(decomposedCDValue != null && composedCDValue != null && decomposedCDValue.length() == 0 && composedCDValue.length() == 0)
+		) {
+			logger.info("The change detection value is empty on both sides, so stopping.");
+			return false;
+		}
+		// If one of the values is null, we decompose.
+		else if (decomposedCDValue == null || composedCDValue == null) {
+			logger.info("The change detection value is empty on one side, so decomposing.");
+			return true;
+		}
+		// If the value is equal, we do nothing.
+		else if (decomposedCDValue.equals(composedCDValue)) {
+			logger.info("The change detection value is equal on both sides, so stopping.");
+			return false;
+		}
+		// If the value exists on one side but not on the other side, we decompose.
+		// If the value exists on both sides, we decompose if the value is different.
+		else {
+			logger.info("The composed model is different then the decomposed model, so decomposing.");
+			return true;
+		}
+	}
+	
+	/**
+	 * Write the fingerprint of the composed model and the decomposed model file, if configured.
+	 * @param targetFile The decomposed root file.
+	 * @throws Exception
+	 */
+	private void writeDecomposeFingerprint(File targetFile) throws Exception {
+		if (_decomposeFingerprint != null && targetFile.exists()) {
+			logger.fine("Writing fingerprint...");
+			_decomposeFingerprint.toFile(_decomposeFingerprintFilePath, targetFile);
+			// Remove the fingerprint written next to the decomposed model by former versions, since it's replaced by the fingerprint in the state directory.
+			if (Files.deleteIfExists(DecomposeFingerprint.getFormerFingerprintFilePath(targetFile)))
+				logger.info("Removed the fingerprint file next to the decomposed model, the fingerprint is now stored in the state directory.");
+		}
+	}
+	
+	/**
+	 * Get the VTDNav (namespace unaware) of a file which is read into memory, using the index cache when it's configured.
+	 * @param file The file.
+	 * @param fileContentsAndCharset The contents of the file.
+	 * @return The VTDNav.
+	 * @throws Exception
+	 */
+	private VTDNav getVTDNav(File file, FileContentAndCharset fileContentsAndCharset) throws Exception {
+		if (_indexCache != null)
+			return _indexCache.getVTDNav(file, fileContentsAndCharset.getBytes());
+		return XMLUtils.getVTDNav(fileContentsAndCharset, false);
+	}
+	
+	/**
+	 * Decompose the parsed document.
+	 * @param xmlFile The xml file.
+	 * @param xmlFileContentsAndCharset The contents of the file, or null for a large document.
+	 * @param nv The VTDNav of the document, or null for a large document.
+	 * @param largeDocument The large document, or null when the document is read into memory.
+	 * @param targetDirectory The directory to decompose into.
+	 * @param decomposeConfig The decompose config.
+	 * @param detectChanges Whether the change detection XPath needs to be evaluated (false when the change is already detected).
+	 * @throws Exception
+	 */
+	private void decomposeDocument(File xmlFile, FileContentAndCharset xmlFileContentsAndCharset, VTDNav nv, LargeDocument largeDocument, String targetDirectory, DecomposeConfig decomposeConfig, boolean detectChanges) throws Exception {
 		// Construct a Path from the target directory.
 		// We don't convert it to a real path (this way the paths are always in full), because this fails if a directory doesn't exist at this point.
 		// As long as all uses of the File object use this relative path it works.
@@ -114,7 +344,7 @@ public class XmlDecomposer {
 		logger.fine(String.format("File path with children: '%s'", targetFileInfo.FilePathWithChildren));
 		
 		// If configured, perform changes detection here before doing anything else.
-		if (decomposeConfig.getChangeDetectionConfig() != null) {
+		if (detectChanges) {
 			
 			// Check if the target file exists.
 			if (targetFile.exists()) {
@@ -122,37 +352,18 @@ public class XmlDecomposer {
 				
 				// Get a VTDNav on the former decomposed root file.
 				FileContentAndCharset formerFcac = FileUtils.getFileContent(targetFile);
-				VTDNav formerNv = XMLUtils.getVTDNav(formerFcac, false);
+				VTDNav formerNv = getVTDNav(targetFile, formerFcac);
 				
 				// Evaluate the change detection XPath on both sides to get the values.
 				String decomposedCDValue = XMLUtils.getXPathText(formerNv, changeDetectionXPath);
-				logger.fine(String.format("Change detection decomposed value: %s", decomposedCDValue));
-				String composedCDValue = XMLUtils.getXPathText(nv, changeDetectionXPath);
-				logger.fine(String.format("Change detection composed value: %s", composedCDValue));
+				// On a large document the change detection value is evaluated on the document window (see LargeDocument).
+				String composedCDValue = XMLUtils.getXPathText((largeDocument != null) ? largeDocument.getDocumentWindow().getNav() : nv, changeDetectionXPath);
 				
-				// If the value doesn't exist on both sides we do nothing.
-				if (
-					(decomposedCDValue == null && composedCDValue == null)
-					||
-					(decomposedCDValue != null && composedCDValue != null && decomposedCDValue.length() == 0 && composedCDValue.length() == 0)
-				) {
-					logger.info("The change detection value is empty on both sides, so stopping.");
-					return;
-				}
-				// If one of the values is null, we decompose.
-				else if (decomposedCDValue == null || composedCDValue == null) {
-					logger.info("The change detection value is empty on one side, so decomposing.");
-				}
-				// If the value is equal, we do nothing.
-				else if (decomposedCDValue.equals(composedCDValue)) {
-					logger.info("The change detection value is equal on both sides, so stopping.");
+				// Stop when the model didn't change, the fingerprint is written so the next run can stop before reading the files.
+				if (!isChanged(decomposedCDValue, composedCDValue)) {
+					writeDecomposeFingerprint(targetFile);
 					return;
 				}
-				// If the value exists on one side but not on the other side, we decompose.
-				// If the value exists on both sides, we decompose if the value is different.
-				else {
-					logger.info("The composed model is different then the decomposed model, so decomposing.");
-				}
 			}
 			// If the target file doesn't exist, log a warning.
 			else {				
@@ -160,25 +371,37 @@ public class XmlDecomposer {
 			}
 		}
 		
+		// Remove the former fingerprint, so it isn't used when the decompose doesn't finish.
+		if (_decomposeFingerprint != null)
+			Files.deleteIfExists(_decomposeFingerprintFilePath);
+		
+		// The modifications of the pre-processing steps are collected on the document and applied at once (the document is only reparsed in between when a step might observe the modifications of a previous step).
+		// A large document is modified window by window, where the modifications are applied by writing a modified copy of the document.
+		DocumentModifier documentModifier = (largeDocument != null) ? new LargeDocumentModifier(largeDocument) : new DocumentModifier(nv, xmlFileContentsAndCharset.getFileCharset());
+		
 		// Perform the node removals (It's important this is done before the identifier replacement, otherwise it might lead to duplicate key problems).
 		if (decomposeConfig.getNodeRemovalConfigs() != null && decomposeConfig.getNodeRemovalConfigs().size() > 0) {
-			nv = removeNodes(nv, decomposeConfig.getNodeRemovalConfigs());
+			removeNodes(documentModifier, decomposeConfig.getNodeRemovalConfigs());
 		}
 		
 		// Replace the identifiers in the XML Document, if specified in the config.
 		if (decomposeConfig.getIdentifierReplacementConfigs() != null && decomposeConfig.getIdentifierReplacementConfigs().size() > 0) {
 			for (IdentifierReplacementConfig identifierReplacementConfig : decomposeConfig.getIdentifierReplacementConfigs()) {
-				nv = replaceIdentifiers(nv, identifierReplacementConfig);
+				replaceIdentifiers(documentModifier, identifierReplacementConfig);
 			}
 		}
 		
 		// Transform the ExtendedAttributeText elements to separate XML elements.
 		if (decomposeConfig.formalizeExtendedAttributes()) {
-			nv = formalizeExtendedAttributesText(nv, xmlFileContentsAndCharset);
+			formalizeExtendedAttributesText(documentModifier, (largeDocument != null) ? largeDocument.getLineSeparator() : xmlFileContentsAndCharset.getLineSeparator());
 		}
 		
+		// Apply the modifications of the pre-processing steps to the document.
+		nv = documentModifier.applyModifications();
+		logger.fine(String.format("The pre-processing modifications are applied using %d reparse(s) of the document.", documentModifier.getReparseCount()));
+		
 		// Get the existing list of files in the decomposed model (if it exists). This is needed to track files which are written and which need to be deleted.
-		TreeSet<File> formerDecomposedFiles = GetCaseInsensitiveFileSet();
+		DecomposedFileSet formerDecomposedFiles = new DecomposedFileSet();
 
 		logger.info("Collecting previously decomposed files for potential removal...");
 		//Based on configuration, decide what strategy to use for removing old files.
@@ -192,6 +415,20 @@ public class XmlDecomposer {
 				logger.info("- Using the includes strategy...");
 				addFormerFilePaths(targetFile, formerDecomposedFiles, null);
 				break;
+			case "manifest":
+				logger.info("- Using the manifest strategy...");
+				DecomposeManifest formerDecomposeManifest = getFormerDecomposeManifest(Paths.get(decomposeConfig.getStateDirectory()), targetFile, targetDirectoryPath);
+				if (formerDecomposeManifest != null) {
+					formerDecomposedFiles.addAll(formerDecomposeManifest.getFiles());
+					_formerDecomposeManifest = formerDecomposeManifest;
+				} else {
+					// If there is no usable manifest, fall back to the includes strategy.
+					logger.info("- The manifest is missing or inconsistent, using the includes strategy...");
+					addFormerFilePaths(targetFile, formerDecomposedFiles, null);
+				}
+				// Keep track of the files written in this run, so the manifest can be written at the end.
+				_decomposeManifest = new DecomposeManifest(targetDirectoryPath);
+				break;
 		}
 		logger.info("Done collecting previously decomposed files for potential removal...");
 
@@ -199,15 +436,97 @@ public class XmlDecomposer {
 		// Keep track of the decomposed files, so we can:
 		// - Detect whether a file is written multiple times in one run
 		// - Detect which files were in the previous decomposed file, but aren't anymore.
-		TreeSet<File> currentDecomposedFiles = GetCaseInsensitiveFileSet();
+		DecomposedFileSet currentDecomposedFiles = new DecomposedFileSet();
+		// Keep track of the number of written and unchanged (skipped) files, to report them at the end.
+		int writtenFileCount = 0;
+		int skippedFileCount = 0;
 		if (decomposeConfig.getDecomposableElementConfig() != null) {
 			logger.info("Parsing and writing document parts...");
-			parseAndWriteDocumentParts(nv, xmlFileContentsAndCharset.getFileCharset(), targetFileInfo, 0, decomposeConfig.getDecomposableElementConfig(), currentDecomposedFiles);
+			// The parts are handed to the part file writer, which writes them to disk (using the configured number of writer threads).
+			// When configured, files which are unchanged are not written again.
+			PartFileWriter partFileWriter = new PartFileWriter(decomposeConfig.getWriterCount(), decomposeConfig.skipUnchangedFiles());
+			if (largeDocument != null) {
+				// The parts of a large document are decomposed on windows which only contain the parent of the decomposed elements, so the XPath expressions may only look within the decomposed element.
+				checkLargeDocumentXPathExpressions(largeDocument.getDocumentWindow().getNav(), decomposeConfig.getDecomposableElementConfig());
+				_decomposeOnDocument = true;
+			} else {
+				// The parts can be decomposed on the already parsed document when the XPath expressions of the decomposable element config only look within the decomposed element (otherwise the result can differ).
+				_decomposeOnDocument = canDecomposeOnDocument(nv, decomposeConfig.getDecomposableElementConfig());
+				if (!_decomposeOnDocument)
+					logger.info("- The decomposable element config uses XPath expressions outside of the decomposed elements or the document isn't single byte encoded, so each part is parsed separately...");
+			}
+			// When decomposing incrementally, the parts which are unchanged since the former decompose (according to the fragment hashes in the manifest) are not decomposed again.
+			if (decomposeConfig.getIncremental()) {
+				if (_decomposeManifest == null)
+					logger.warning("Decomposing incrementally requires the manifest file removal strategy, so all parts are decomposed.");
+				else if (largeDocument != null || !_decomposeOnDocument)
+					logger.warning("Decomposing incrementally requires the parts to be decomposed on the document (and isn't supported for a large document), so all parts are decomposed.");
+				else
+					_fragmentHashSeed = getFragmentHashSeed(decomposeConfig.getDecomposableElementConfig(), xmlFileContentsAndCharset.getFileCharset());
+			}
+			try {
+				// Compile the element conditions once, the common shapes of conditions are then evaluated directly on the VTD tokens in stead of using XPath.
+				DecomposableElementConfig decomposableElementConfig = decomposeConfig.getDecomposableElementConfig();
+				if (decomposableElementConfig.getElementConditionsAndGroups() != null && decomposableElementConfig.getElementConditionsAndGroups().size() > 0)
+					_elementCondition = decomposableElementConfig.compileCondition((largeDocument != null) ? largeDocument.getDocumentWindow().getNav() : nv, POWERDESIGNER_AUTO_PILOT_FACTORY);
+				boolean partsWritten = false;
+				// When decomposing incrementally, the parts are decomposed one after another using the default engine.
+				if (_fragmentHashSeed != null) {
+					if (decomposeConfig.getEngine() != DecomposeEngine.DEFAULT || decomposeConfig.getParallelism() > 1)
+						logger.info("- Decomposing incrementally is done one part after another, so the engine and parallelism are ignored...");
+					else
+						logger.info("- Decomposing incrementally...");
+					parseAndWriteDocumentParts(nv, -1, xmlFileContentsAndCharset.getFileCharset(), targetFileInfo, 0, decomposeConfig.getDecomposableElementConfig(), currentDecomposedFiles, partFileWriter, null, new int[0]);
+					partsWritten = true;
+				}
+				// A large document is decomposed one part after another, using the windows of the document.
+				if (largeDocument != null) {
+					if (decomposeConfig.getEngine() != DecomposeEngine.DEFAULT || decomposeConfig.getParallelism() > 1)
+						logger.info("- The large document is decomposed one part after another, so the engine and parallelism are ignored...");
+					parseAndWriteLargeDocumentParts(largeDocument, targetFileInfo, decomposableElementConfig, currentDecomposedFiles, partFileWriter);
+					partsWritten = true;
+				}
+				// If configured, decompose the parts in a single pass over the document.
+				if (!partsWritten && decomposeConfig.getEngine() == DecomposeEngine.SINGLE_PASS) {
+					if (!_decomposeOnDocument) {
+						logger.info("- The single pass engine can't be used, so using the default engine...");
+					} else {
+						if (decomposeConfig.getParallelism() > 1)
+							logger.warning("The single pass engine decomposes the parts one after another, so the parallelism is ignored.");
+						logger.info("- Decomposing in a single pass...");
+						parseAndWriteDocumentPartsInSinglePass(nv, targetFileInfo, decomposeConfig.getDecomposableElementConfig(), currentDecomposedFiles, partFileWriter);
+						partsWritten = true;
+					}
+				}
+				// If configured, decompose the child parts in parallel.
+				if (!partsWritten && decomposeConfig.getParallelism() > 1) {
+					logger.info(String.format("- Decomposing in parallel using %d threads...", decomposeConfig.getParallelism()));
+					partsWritten = parseAndWriteDocumentPartsInParallel(nv, xmlFileContentsAndCharset.getFileCharset(), targetFileInfo, decomposeConfig.getDecomposableElementConfig(), currentDecomposedFiles, partFileWriter, decomposeConfig.getParallelism());
+					// If the file names in the parallel decompose differ from the sequential decompose, decompose again sequentially.
+					// The parts of the parallel decompose are only written when the file names are equal, so nothing is written yet.
+					if (!partsWritten) {
+						logger.info("- The parallel decompose differs from the sequential decompose (because of duplicate file names), so decomposing sequentially...");
+						nv.toElement(VTDNav.ROOT);
+					}
+				}
+				if (!partsWritten) {
+					parseAndWriteDocumentParts(nv, -1, xmlFileContentsAndCharset.getFileCharset(), targetFileInfo, 0, decomposeConfig.getDecomposableElementConfig(), currentDecomposedFiles, partFileWriter, null, new int[0]);
+				}
+				// Wait for all parts to be written, before removing former files.
+				partFileWriter.awaitCompletion();
+				writtenFileCount = partFileWriter.getWrittenFileCount();
+				skippedFileCount = partFileWriter.getSkippedFileCount();
+			} finally {
+				partFileWriter.shutdown();
+			}
+			if (_fragmentHashSeed != null)
+				logger.info(String.format("Reused %d unchanged parts (%d files) from the former decompose.", _reusedPartCount, _reusedPartFileCount));
 			logger.info("Done parsing and writing document parts.");
 		}
 
 		// Remove all file paths which are written in the current run in the formerDecomposedFilePaths collections, so we keep a collection of files which were part of the decomposed model and aren't anymore.
 		formerDecomposedFiles.removeAll(currentDecomposedFiles);
+		int deletedFileCount = 0;
 		// If there are files in the former file hierarchy which aren't written, remove them.
 		if (formerDecomposedFiles.size() > 0) {
 			logger.info(String.format("Deleting %d former decomposed files...", formerDecomposedFiles.size()));
@@ -218,7 +537,8 @@ public class XmlDecomposer {
 				
 				// Check whether we can change the file, and if so delete it.
 				if (formerFile.canWrite()) {
-					formerFile.delete();
+					if (formerFile.delete())
+						deletedFileCount++;
 					logger.fine(String.format("Removed former decomposed file '%s'", formerFile));
 				}
 				// If we can't change the file, report a warning.
@@ -228,48 +548,66 @@ public class XmlDecomposer {
 			}
 		}
 		
+		// Write the manifest of the decomposed files, so it can be used to find the former decomposed files in the next run.
+		if (_decomposeManifest != null && _decomposeManifest.size() > 0) {
+			logger.info(String.format("Writing manifest of %d decomposed files...", _decomposeManifest.size()));
+			_decomposeManifest.toFile(DecomposeManifest.getManifestFilePath(Paths.get(decomposeConfig.getStateDirectory()), targetFile));
+			// Remove the manifest written next to the decomposed model by former versions, since it's replaced by the manifest in the state directory.
+			if (Files.deleteIfExists(DecomposeManifest.getFormerManifestFilePath(targetFile)))
+				logger.info("Removed the manifest file next to the decomposed model, the manifest is now stored in the state directory.");
+		}
+		
+		// Write the fingerprint of the composed and decomposed model, so the next run can detect the model didn't change without reading the files.
+		writeDecomposeFingerprint(targetFile);
+		
+		// Report the number of files which were written, unchanged and deleted.
+		if (decomposeConfig.skipUnchangedFiles())
+			logger.info(String.format("Written %d files, skipped %d unchanged files and deleted %d files.", writtenFileCount, skippedFileCount, deletedFileCount));
+		else
+			logger.info(String.format("Written %d files and deleted %d files.", writtenFileCount, deletedFileCount));
+		
+		// Report the use of the XPath cache (the compiled expressions are released when the decompose is done, see the constructor).
+		logger.fine(String.format("XPath cache: %d expressions compiled, %d times a compiled expression was reused.", XPathCache.getMissCount(), XPathCache.getHitCount()));
+		
 		// Done
 		logger.info("Done.");
 	}
 	
-	/**
-	 * Static function to get a TreeSet containing File objects which are case insensitively compared.
-	 * @return The case-insensitive TreeSet for File objects.
-	 */
-	private static TreeSet<File> GetCaseInsensitiveFileSet() {
-		return new TreeSet<File>(new Comparator<File>() {
-			@Override
-			public int compare(File f1, File f2) {
-				// First try to use the canonical path to compare.
-				try {
-					//logger.fine(String.format("Trying to compare files using canonical path. f1: '%s'; f2: '%s'", f1.toString(), f2.toString()));
-					return f1.getCanonicalPath().compareToIgnoreCase(f2.getCanonicalPath());
-				}
-				// If this doesn't work, use the string version of the file (which can be a relative path.
-				// For PowerDeComposer this won't be an issue, since all paths are relative to the same base path.
-				catch (IOException e) {
-					logger.warning(String.format("Can't resolve file to canonical path, comparing with relative path. Error: %s", e.getMessage()));
-					e.printStackTrace();
-					return f1.toString().compareToIgnoreCase(f2.toString());
-				}
-				
-			}
-		});
-	}
-
 	 /**
-	 * Return a TreeSet containing all filepaths from the base decompose folder.
-	 * It collects the toFile value and filters out all directories.
+	 * Return a DecomposedFileSet containing all filepaths from the base decompose folder.
+	 * It collects the toFile value and filters out all directories and files written by PowerDeComposer itself (with an extension starting with .pdc, like a fingerprint).
 	 * @param fileWithIncludesPath The base decompose folder.
 	 */
-	private TreeSet<File> getFormerFilesTree(String baseFolder) throws Exception {
-		TreeSet<File> filePathsSet = Files.walk(Paths.get(baseFolder))
+	private DecomposedFileSet getFormerFilesTree(String baseFolder) throws Exception {
+		DecomposedFileSet filePathsSet = Files.walk(Paths.get(baseFolder))
 									.filter(file -> !Files.isDirectory(file))
+									.filter(file -> !file.getFileName().toString().matches(".*\\.pdc[^.]*"))
 									.map(Path::toFile)
-									.collect(Collectors.toCollection(TreeSet::new));
+									.collect(Collectors.toCollection(DecomposedFileSet::new));
 		return filePathsSet;
 	}
 
+	/**
+	 * Get the manifest of the former decompose run.
+	 * @param stateDirectoryPath The directory in which the state of the former decompose is stored.
+	 * @param targetFile The root file of the decomposed model.
+	 * @param targetDirectoryPath The folder containing the decomposed model.
+	 * @return The manifest, or null if the manifest doesn't exist, can't be read or is inconsistent with the decomposed files.
+	 */
+	private DecomposeManifest getFormerDecomposeManifest(Path stateDirectoryPath, File targetFile, Path targetDirectoryPath) {
+		try {
+			Path manifestFilePath = DecomposeManifest.getManifestFilePath(stateDirectoryPath, targetFile);
+			if (!Files.exists(manifestFilePath))
+				return null;
+			DecomposeManifest formerDecomposeManifest = DecomposeManifest.fromFile(manifestFilePath, targetDirectoryPath);
+			if (formerDecomposeManifest.isConsistent(targetFile))
+				return formerDecomposeManifest;
+		} catch (Exception e) {
+			logger.warning(String.format("Error while reading manifest file: %s", e.getMessage()));
+		}
+		return null;
+	}
+	
 	/**
 	 * Add the former decompose file paths to the filePathsSet collection.
 	 * @param fileWithIncludesPath The current file.
@@ -277,7 +615,7 @@ public class XmlDecomposer {
 	 * @param fileCharset The file charset to use.
 	 * @throws Exception
 	 */
-	private void addFormerFilePaths(File fileWithIncludes, TreeSet<File> filesSet, Charset fileCharset) throws Exception {
+	private void addFormerFilePaths(File fileWithIncludes, DecomposedFileSet filesSet, Charset fileCharset) throws Exception {
 		// Only go further when the file exists.
 		if (fileWithIncludes.exists()) {
 			// Check whether the file is already in the set.
@@ -328,34 +666,60 @@ public class XmlDecomposer {
 	 * In this procedure the following steps are done:
 	 *  - Find all ObjectID's and its internal Id values.
 	 *  - Replace all internal id values and references with the ObjectIDs.
-	 * @param docXml
-	 * @return
+	 * The replacements are added to the document modifier.
+	 * @param documentModifier The modifier of the document.
+	 * @param identifierReplacementConfig The identifier replacement config.
 	 * @throws Exception 
 	 */
-	private VTDNav replaceIdentifiers(VTDNav nv, IdentifierReplacementConfig identifierReplacementConfig) throws Exception {
+	private void replaceIdentifiers(DocumentModifier documentModifier, IdentifierReplacementConfig identifierReplacementConfig) throws Exception {
 		logger.info("Replacing identifiers in document...");
 
-		// We are going to replace all Id="o?" and Ref="o?" values, so we need an XmlModifier.
+		// We are going to replace all Id="o?" and Ref="o?" values.
 		logger.info(" - Overwriting local ids with global ids...");
-		XMLModifier xm;
-		try {
-			xm = new XMLModifier(nv);
-		} catch (Exception e) {
-			throw new Exception("Error while initializing XMLModifier");
+		// Apply the pending modifications first, if the expressions of the identifier replacement might observe them.
+		documentModifier.applyModificationsIfObserved(DocumentModifier.getPredicates(identifierReplacementConfig.getIdentifierNodeXPath()), identifierReplacementConfig.getReplacementValueXPath(), DocumentModifier.getPredicates(identifierReplacementConfig.getReferencingNodeXPath()));
+		
+		// Create a list of local and global ids.
+		IdentifierMap localToGlobalIds = new IdentifierMap();
+
+		//Create a list of global Id's to verify for duplicates
+		//This needs to be added for performance reasons, since containsValue is slow in a HashMap structure.
+		HashSet<String> globalIds = new HashSet<String>();
+		
+		// All identifiers are replaced before the references are replaced (a large document is processed window by window).
+		documentModifier.forEachNav(nv -> replaceIdentifierValues(documentModifier, nv, identifierReplacementConfig, localToGlobalIds, globalIds));
+		
+		// If the referencingNodeXPath is present, replace the referencing values using the key collection of the previous step.
+		if (identifierReplacementConfig.getReferencingNodeXPath() != null) {
+			// Loop through all referencing nodes and replaces their values with the replacement value belonging to the original identifier.
+			logger.info(" - Overwriting identifier references with replacement value...");
+			documentModifier.forEachNav(nv -> replaceReferences(documentModifier, nv, identifierReplacementConfig, localToGlobalIds));
 		}
 		
+		logger.info("Done replacing identifiers in document.");
+	}
+	
+	/**
+	 * Replace the values of the identifier nodes and collect the replacement values by identifier.
+	 * @param documentModifier The modifier of the document.
+	 * @param nv The VTDNav of the document (or the window of a large document).
+	 * @param identifierReplacementConfig The identifier replacement config.
+	 * @param localToGlobalIds The replacement values by identifier.
+	 * @param globalIds The replacement values.
+	 * @return Whether identifiers were replaced.
+	 * @throws Exception
+	 */
+	private boolean replaceIdentifierValues(DocumentModifier documentModifier, VTDNav nv, IdentifierReplacementConfig identifierReplacementConfig, IdentifierMap localToGlobalIds, HashSet<String> globalIds) throws Exception {
 		AutoPilot ap = getAutoPilot(nv);
 		
 		// Select all elements using the identifier node xpath.
 		ap.selectXPath(identifierReplacementConfig.getIdentifierNodeXPath());
 		
-		// Create a list of local and global ids.
-		HashMap<String, String> localToGlobalIds = new HashMap<String, String>();
-
-		//Create a list of global Id's to verify for duplicates
-		//This needs to be added for performance reasons, since containsValue is slow in a HashMap structure.
-		HashSet<String> globalIds = new HashSet<String>();
-
+		// Compile the replacement value xpath once, in stead of for every identifier (except for a processing instruction attribute, which can only be selected using getXPathText).
+		String replacementValueXPath = identifierReplacementConfig.getReplacementValueXPath();
+		AutoPilot replacementValueAp = XMLUtils.isProcessingInstructionAttributeXPath(replacementValueXPath) ? null : XPathCache.getAutoPilot(nv, replacementValueXPath);
+		
+		boolean replacedIdentifiers = false;
 		// Loop thru the set of identifier nodes.
 		while ((ap.evalXPath()) != -1) {
 			// Get the current index
@@ -364,10 +728,19 @@ public class XmlDecomposer {
 			if (nv.getTokenType(identifierNodeIndex) == VTDNav.TOKEN_ATTR_NAME) {
 				identifierNodeIndex += 1;
 			}
-	    	String identifierOriginalValue = nv.toString(identifierNodeIndex);
-	    	String identifierReplacementValue = XMLUtils.getXPathText(nv, identifierReplacementConfig.getReplacementValueXPath());
+			// Skip the identifier if it's removed by a previous step.
+			if (documentModifier.isRemoved(identifierNodeIndex))
+				continue;
+	    	String identifierOriginalValue = documentModifier.getTokenValue(identifierNodeIndex);
+	    	String identifierReplacementValue;
+	    	if (replacementValueAp != null) {
+	    		replacementValueAp.resetXPath();
+	    		identifierReplacementValue = replacementValueAp.evalXPathToString();
+	    	} else {
+	    		identifierReplacementValue = XMLUtils.getXPathText(nv, replacementValueXPath);
+	    	}
 
-	    	logger.fine(String.format("Found identifier '%s' and replaced with value '%s'", identifierOriginalValue, identifierReplacementValue));
+	    	logger.fine(() -> String.format("Found identifier '%s' and replaced with value '%s'", identifierOriginalValue, identifierReplacementValue));
 
 			// If there is a duplicate key, throw an exception
 			if (localToGlobalIds.containsKey(identifierOriginalValue))
@@ -384,16 +757,38 @@ public class XmlDecomposer {
 			}
 	    	
 	    	// Update the value of the identifier node.
-	    	xm.updateToken(identifierNodeIndex, identifierReplacementValue);
+	    	documentModifier.updateToken(identifierNodeIndex, identifierReplacementValue);
+	    	replacedIdentifiers = true;
 		}
-		
-		// If the referencingNodeXPath is present, replace the referencing values using the key collection of the previous step.
-		if (identifierReplacementConfig.getReferencingNodeXPath() != null) {
-			// Loop through all referencing nodes and replaces their values with the replacement value belonging to the original identifier.
-			logger.info(" - Overwriting identifier references with replacement value...");
-			// In stead of looping through specific refs, loop through all refs and replace them there.
+		return replacedIdentifiers;
+	}
+	
+	/**
+	 * Replace the values of the referencing nodes with the replacement values of the identifiers they refer to.
+	 * @param documentModifier The modifier of the document.
+	 * @param nv The VTDNav of the document (or the window of a large document).
+	 * @param identifierReplacementConfig The identifier replacement config.
+	 * @param localToGlobalIds The replacement values by identifier.
+	 * @return Whether references were replaced.
+	 * @throws Exception
+	 */
+	private boolean replaceReferences(DocumentModifier documentModifier, VTDNav nv, IdentifierReplacementConfig identifierReplacementConfig, IdentifierMap localToGlobalIds) throws Exception {
+		boolean replacedReferences = false;
+		// In stead of looping through specific refs, loop through all refs and replace them there.
+		Matcher allElementsAttributeMatcher = ALL_ELEMENTS_ATTRIBUTE_XPATH_PATTERN.matcher(identifierReplacementConfig.getReferencingNodeXPath());
+		if (allElementsAttributeMatcher.matches()) {
+			// When the references are an attribute on all elements, find them using one sequential scan of the tokens (which results in the same document order as the xpath).
+			String referencingAttributeName = allElementsAttributeMatcher.group("AttributeName");
+			int tokenCount = nv.getTokenCount();
+			for (int tokenIndex = 0; tokenIndex < tokenCount; tokenIndex++) {
+				if (nv.getTokenType(tokenIndex) == VTDNav.TOKEN_ATTR_NAME && nv.matchRawTokenString(tokenIndex, referencingAttributeName)) {
+					// The attribute value is the token after the attribute name.
+					replacedReferences |= replaceReference(documentModifier, localToGlobalIds, ++tokenIndex);
+				}
+			}
+		} else {
+			AutoPilot ap = getAutoPilot(nv);
 			try {
-				ap.resetXPath();
 				ap.selectXPath(identifierReplacementConfig.getReferencingNodeXPath());
 			} catch (XPathParseException e) {
 				throw new Exception(String.format("Error while replacing referencing node values: %s", e.getMessage()), e);
@@ -408,34 +803,55 @@ public class XmlDecomposer {
 				if (nv.getTokenType(nv.getCurrentIndex()) == VTDNav.TOKEN_ATTR_NAME) {
 					localObjectRefIndex += 1;
 				}
-				String referencingOriginalIdentifierValue = nv.toString(localObjectRefIndex);
-				// Replace the local id with the global id if it is in the collection.
-				if (localToGlobalIds.containsKey(referencingOriginalIdentifierValue)) {
-					String referencingIdentiierReplacementValue = localToGlobalIds.get(referencingOriginalIdentifierValue);
-			    	logger.fine(String.format("Found reference id '%s' with global id '%s' (index: %d)", referencingOriginalIdentifierValue, referencingIdentiierReplacementValue, localObjectRefIndex));
-			    	// Update local reference to the global GUID.
-			    	xm.updateToken(localObjectRefIndex, referencingIdentiierReplacementValue);
-				}
+				replacedReferences |= replaceReference(documentModifier, localToGlobalIds, localObjectRefIndex);
 			}
 		}
-		
-		logger.info("Done replacing identifiers in document.");
-		
-		// Output and reparse the modifier xml to the VtdNav.
-		return xm.outputAndReparse();
+		return replacedReferences;
+	}
+	
+	/**
+	 * Replace the value of a referencing node with the replacement value of the identifier it refers to.
+	 * @param documentModifier The modifier of the document.
+	 * @param localToGlobalIds The replacement values by identifier.
+	 * @param localObjectRefIndex The token index of the referencing node value.
+	 * @return Whether the reference is replaced.
+	 * @throws Exception
+	 */
+	private boolean replaceReference(DocumentModifier documentModifier, IdentifierMap localToGlobalIds, int localObjectRefIndex) throws Exception {
+		// Skip the reference if it's removed by a previous step.
+		if (documentModifier.isRemoved(localObjectRefIndex))
+			return false;
+		String referencingOriginalIdentifierValue = documentModifier.getTokenValue(localObjectRefIndex);
+		// Replace the local id with the global id if it is in the collection.
+		String referencingIdentiierReplacementValue = localToGlobalIds.get(referencingOriginalIdentifierValue);
+		if (referencingIdentiierReplacementValue != null) {
+	    	logger.fine(() -> String.format("Found reference id '%s' with global id '%s' (index: %d)", referencingOriginalIdentifierValue, referencingIdentiierReplacementValue, localObjectRefIndex));
+	    	// Update local reference to the global GUID.
+	    	return documentModifier.updateToken(localObjectRefIndex, referencingIdentiierReplacementValue);
+		}
+		return false;
 	}
 	
-	private VTDNav formalizeExtendedAttributesText(VTDNav nv, FileContentAndCharset xmlFileContentsAndCharset) throws Exception {
+	private void formalizeExtendedAttributesText(DocumentModifier documentModifier, String lineSeparator) throws Exception {
 		logger.info("Formalizing extended attributes in document...");
 		
-		// We are going to replace all ExtnededAttributeText elements with it's formal representation, so we need an XmlModifier.
-		XMLModifier xm;
-		try {
-			xm = new XMLModifier(nv);
-		} catch (Exception e) {
-			throw new Exception("Error while initializing XMLModifier");
-		}
+		// We are going to replace all ExtnededAttributeText elements with it's formal representation (the selection doesn't observe the pending modifications, since it has no predicates).
+		// A large document is processed window by window.
+		documentModifier.forEachNav(nv -> formalizeExtendedAttributesText(documentModifier, nv, lineSeparator));
 		
+		logger.info("Done formalizing extended attributes in document.");
+	}
+	
+	/**
+	 * Replace the ExtendedAttributesText elements with their formal representation.
+	 * @param documentModifier The modifier of the document.
+	 * @param nv The VTDNav of the document (or the window of a large document).
+	 * @param lineSeparator The line separator of the document.
+	 * @return Whether extended attributes were formalized.
+	 * @throws Exception
+	 */
+	private boolean formalizeExtendedAttributesText(DocumentModifier documentModifier, VTDNav nv, String lineSeparator) throws Exception {
+		boolean formalizedExtendedAttributes = false;
 		AutoPilot ap = getAutoPilot(nv);
 		// Select all a:ExtendedAttributesText elements.
 		ap.selectXPath("//ExtendedAttributesText");
@@ -443,11 +859,13 @@ public class XmlDecomposer {
 		// Loop thru the set of identifier nodes.
 		while ((ap.evalXPath()) != -1) {
 			int extAttrsTextNodeIndex = nv.getCurrentIndex();
-			// The found token should be a starting tag.
-			if (nv.getTokenType(extAttrsTextNodeIndex) == VTDNav.TOKEN_STARTING_TAG) {
-				// Get the extended attribute text.
+			// The found token should be a starting tag (which isn't removed by a previous step).
+			if (nv.getTokenType(extAttrsTextNodeIndex) == VTDNav.TOKEN_STARTING_TAG && !documentModifier.isRemoved(extAttrsTextNodeIndex)) {
+				// Get the extended attribute text (or the modified text when it's replaced by a previous step).
 				int extendedAttributeTextIndex = nv.getText();
-				String extendedAttributesText = new String(nv.getXML().getBytes(nv.getTokenOffset(extendedAttributeTextIndex), nv.getTokenLength(extendedAttributeTextIndex)));
+				String extendedAttributesText = documentModifier.getModifiedTokenValue(extendedAttributeTextIndex);
+				if (extendedAttributesText == null)
+					extendedAttributesText = new String(nv.getXML().getBytes(nv.getTokenOffset(extendedAttributeTextIndex), nv.getTokenLength(extendedAttributeTextIndex)));
 				// We unescape the XML characters here, so the length property in the extended attributes can be used (cause it doesn't account for escaped XML characters).
 				extendedAttributesText = XMLUtils.unescapeXMLChars(extendedAttributesText);
 				logger.fine(String.format("Found extended attributes text: %s", extendedAttributesText.replaceAll("\n", "[LF]\n").replaceAll("\r", "[CR]")));
@@ -463,7 +881,7 @@ public class XmlDecomposer {
 				Pattern extensionExtAttrsPattern = Pattern.compile(extAttrRegex);
 				Matcher extExtAttrsMatcher = extensionExtAttrsPattern.matcher(extendedAttributesText);
 				StringBuffer extExtAttrsXml = new StringBuffer();
-				extExtAttrsXml.append(xmlFileContentsAndCharset.getLineSeparator());
+				extExtAttrsXml.append(lineSeparator);
 				extExtAttrsXml.append("<ExtendedAttributes>");
 				int currentExtensionExtAttrEnd = -1;
 				while (extExtAttrsMatcher.find()) {
@@ -487,7 +905,7 @@ public class XmlDecomposer {
 					// If we reached the end of a previous extension list, we update the end to -1 so this match is handled as a OriginatingExtension.
 					if (currentExtensionExtAttrEnd != -1 && extAttrStart >= currentExtensionExtAttrEnd) {
 						logger.fine("The new match is outside of the extension section, so resetting end index.");
-						extExtAttrsXml.append(xmlFileContentsAndCharset.getLineSeparator());
+						extExtAttrsXml.append(lineSeparator);
 						extExtAttrsXml.append("</OriginatingExtension>");
 						currentExtensionExtAttrEnd = -1;
 					}
@@ -495,7 +913,7 @@ public class XmlDecomposer {
 					// If we outside of a extension attribute list, a new extension part is started.
 					if (currentExtensionExtAttrEnd == -1) {
 						logger.fine(String.format("Found extention [ObjectID=%s;Name=%s;Length=%d;Content='%s'", guid, name, extAttrLength, extExtAttrContent));
-						extExtAttrsXml.append(xmlFileContentsAndCharset.getLineSeparator());
+						extExtAttrsXml.append(lineSeparator);
 						extExtAttrsXml.append(String.format("<OriginatingExtension ObjectID=\"%s\" Name=\"%s\">", guid, name));
 						// Now we have added the element for the OriginatingExtension, we need to loop over the matches within the content part of the extension extended attributes.
 						// For each extended attribute we find, we add a separate XML element.
@@ -505,7 +923,7 @@ public class XmlDecomposer {
 					// We are inside a extension section, so we treat the match as an extended attribute within the extension.
 					else {
 						logger.fine(String.format("Found extended attributes [ObjectID=%s;Name=%s;Length=%d;Value='%s'", guid, name, extAttrLength, extExtAttrContent));
-						extExtAttrsXml.append(xmlFileContentsAndCharset.getLineSeparator());
+						extExtAttrsXml.append(lineSeparator);
 						extExtAttrsXml.append(String.format("<ExtendedAttribute ObjectID=\"%s\" Name=\"%s\">%s</ExtendedAttribute>", guid, name, extExtAttrContent));
 						// Update the region to scan to after the current extended attribute.
 						extExtAttrsMatcher.region(extAttrsEnd, extExtAttrsMatcher.regionEnd());
@@ -513,21 +931,18 @@ public class XmlDecomposer {
 				}
 				// If we exited the while loop and the end index is not -1, we need to add the ending tag of the extension element.
 				if (currentExtensionExtAttrEnd != -1) {
-					extExtAttrsXml.append(xmlFileContentsAndCharset.getLineSeparator());
+					extExtAttrsXml.append(lineSeparator);
 					extExtAttrsXml.append("</OriginatingExtension>");
 				}
-				extExtAttrsXml.append(xmlFileContentsAndCharset.getLineSeparator());
+				extExtAttrsXml.append(lineSeparator);
 				extExtAttrsXml.append("</ExtendedAttributes>");
-				xm.insertAfterElement(extExtAttrsXml.toString());
+				documentModifier.insertAfterElement(extExtAttrsXml.toString());
 				// Now we added the replacement of the textual extended attributes, we can remove the ExtendedAttributesText element.
-				xm.remove(nv.expandWhiteSpaces(nv.getElementFragment(), VTDNav.WS_LEADING));
+				documentModifier.remove(nv.expandWhiteSpaces(nv.getElementFragment(), VTDNav.WS_LEADING), extAttrsTextNodeIndex);
+				formalizedExtendedAttributes = true;
 			}
 		}
-		
-		logger.info("Done formalizing extended attributes in document.");
-		
-		// Output and reparse the modifier xml to the VtdNav.
-		return xm.outputAndReparse();
+		return formalizedExtendedAttributes;
 	}
 	
 	/**
@@ -549,171 +964,215 @@ public class XmlDecomposer {
 	
 	/**
 	 * Function to remove all nodes as specified in the config.
-	 * @param nv The VTDNav object.
-	 * @param decomposeConfig The decompose config.
-	 * @return The VTDNav on the model object where the nodes are removed.
+	 * The removals are added to the document modifier.
+	 * @param documentModifier The modifier of the document.
+	 * @param nodeRemovalConfigs The node removal configs.
 	 * @throws Exception
 	 */
-	private VTDNav removeNodes(VTDNav nv, List<NodeRemovalConfig> nodeRemovalConfigs) throws Exception {
+	private void removeNodes(DocumentModifier documentModifier, List<NodeRemovalConfig> nodeRemovalConfigs) throws Exception {
 		logger.info("Removing nodes from the PowerDesigner model document...");
 		
-		XMLModifier xm;
-		try {
-			xm = new XMLModifier(nv);
-		} catch (Exception e) {
-			throw new Exception("Error while initializing XMLModifier");
-		}
-		
-		// Create a pattern to recognize XPath expressions on processing instructions.
-		Pattern piAttributeRemovalPattern = Pattern.compile("(?<PIXPath>/?/processing-instruction\\(.+\\))/@(?<PIAttribute>.+)");
-		
+		// All node removal instructions are evaluated on the same document.
+		// The document modifier merges the removals (nodes which are already removed are skipped).
 		for (NodeRemovalConfig nodeRemovalConfig : nodeRemovalConfigs) {
-			AutoPilot ap = getAutoPilot(nv);
-			String nodeRemovalXPath = nodeRemovalConfig.getXPath();
-			logger.fine(String.format("Removing nodes using XPath expression '%s'...", nodeRemovalXPath));
+			logger.fine(String.format("Removing nodes using XPath expression '%s'...", nodeRemovalConfig.getXPath()));
 			
 			// If the node removal instruction is on a processing instruction, find the attribute which needs to be removed.
-			String piAttributeToRemove = null;
-			Matcher piAttributeRemovalMatcher = piAttributeRemovalPattern.matcher(nodeRemovalXPath);
-			if (piAttributeRemovalMatcher.matches()) {
-				nodeRemovalXPath = piAttributeRemovalMatcher.group("PIXPath");
-				piAttributeToRemove = piAttributeRemovalMatcher.group("PIAttribute");
+			Matcher piAttributeRemovalMatcher = PI_ATTRIBUTE_REMOVAL_PATTERN.matcher(nodeRemovalConfig.getXPath());
+			boolean isPIAttributeRemoval = piAttributeRemovalMatcher.matches();
+			String nodeRemovalXPath = isPIAttributeRemoval ? piAttributeRemovalMatcher.group("PIXPath") : nodeRemovalConfig.getXPath();
+			String piAttributeToRemove = isPIAttributeRemoval ? piAttributeRemovalMatcher.group("PIAttribute") : null;
+			// Match anything between double quotes after the attribute name and equals sign. This will also include newlines.
+			Pattern piAttributePattern = isPIAttributeRemoval ? Pattern.compile(String.format(" %s=\\\"([^\"])*\\\"", piAttributeToRemove)) : null;
+			if (isPIAttributeRemoval)
 				logger.fine(String.format(" - The node removal is in a processing instruction (PIXPath='%s';PIAttribute='%s').", nodeRemovalXPath, piAttributeToRemove));
-			}
-			ap.selectXPath(nodeRemovalXPath);
+			// Apply the pending modifications first, if the node removal expression might observe them.
+			// This way a removal can depend on a previous removal (for example to remove elements which became empty).
+			documentModifier.applyModificationsIfObserved(DocumentModifier.getPredicates(nodeRemovalXPath));
 			
-			// Execute the XPath expression and loop through the results.
-			boolean removedNodes = false;
-	        while ((ap.evalXPath()) != -1) {
-	        	int currentNodeIndex = nv.getCurrentIndex();
-				int currentTokenType = nv.getTokenType(currentNodeIndex);
-				logger.fine(String.format(" - Removing node with index %d (offset=%d;length=%d;type=%d)...", currentNodeIndex, nv.getTokenOffset(currentNodeIndex), nv.getTokenLength(currentNodeIndex), currentTokenType));
-	        	// If the node is an element, expand the element offset with the leading whitespace, so we also remove whitespace before this node.
-	        	if (currentTokenType == VTDNav.TOKEN_STARTING_TAG) {
-	        		xm.remove(nv.expandWhiteSpaces(nv.getElementFragment(), VTDNav.WS_LEADING));
-	        		// Update removedNodes to true.
-	        		removedNodes = true;
-	        	}
-	        	// If the token is an attribute name, we need to remove the attribute name, the equals sign and its value (we use removeAttribute function for this).
-	        	else if (currentTokenType == VTDNav.TOKEN_ATTR_NAME) {
-	        		// Store the attribute name index.
-	        		int attributeNameIndex = nv.getTokenOffset(currentNodeIndex);
-	        		// Remove the attribute with value.
-	        		xm.remove();
-	        		// Remove the space before the attribute name (if it's there).
-	        		if (nv.toString(attributeNameIndex - 1, 1).equals(" ")) {
-	        			xm.removeContent(attributeNameIndex - 1, 1);
-	        		}
-	        		// Update removedNodes to true.
-	        		removedNodes = true;
-	        	}
-	        	// If the token is a processing-instruction name, we need to remove the token before and after as well.
-	        	else if (currentTokenType == VTDNav.TOKEN_PI_NAME) {
-	        		// If there is an attribute specified on the processing instruction, find the attribute in the processing instruction.
-	        		if (piAttributeToRemove != null) {
-        				// The processing instruction value is in the token after the name (prefix with space so the first attribute can also be found using the attribute pattern).
-	        			String piValue = nv.toString(currentNodeIndex + 1);
-	        			// Get the offset minus 1 (minus 1 because of the space we added in the line above here).
-	        			//int piValueOffset = nv.getTokenOffset(currentNodeIndex + 1) - 1;
-	        			logger.fine(String.format(" - Processing instruction value: '%s'", piValue));
-	        			// Match anything between double quotes after the attribute name and equals sign. This will also include newlines.
-	        			Pattern piAttributePattern = Pattern.compile(String.format(" %s=\\\"([^\"])*\\\"", piAttributeToRemove));
-	        			Matcher piAttributeMatcher = piAttributePattern.matcher(" " + piValue);
-	        			
-	        			// Perform the replace if the regex matches at least once.
-	        			if (piAttributeMatcher.find()) {
-		        			// Replace all matches with empty string.
-		        			String newPiValue = piAttributeMatcher.replaceAll("");
-		        			// If the new pi value starts with a space, remove it (because we added a space when creating the Matcher.
-		        			if (newPiValue.length() > 0 && newPiValue.substring(0, 1).equals(" ")) {
-		        				newPiValue = newPiValue.substring(1);
-		        			}
-		        			
-		        			// Insert the new PI value and remove the old one.
-	        				xm.insertBytesAt(nv.getTokenOffset(currentNodeIndex + 1), newPiValue.getBytes());
-	        				xm.removeToken(currentNodeIndex + 1);
-	    	        		// Update removedNodes to true.
-	    	        		removedNodes = true;
-	        			}
-	        		}
-	        		// If there is no attribute removal specified on the XPath on the processing instruction, remove the whole processing instruction.
-	        		else {
-		        		// The processing instruction offset is the start of the processing instruction name minus 2 characters (<?).
-		        		int piOffset = nv.getTokenOffset(currentNodeIndex) - 2;
-		        		int piLength = nv.getTokenOffset(currentNodeIndex + 1) + nv.getTokenLength(currentNodeIndex + 1) + 2 - piOffset;
-		        		
-		        		logger.fine(String.format(" - Node content: '%s'", nv.toRawString(piOffset, piLength)));
-		    	    	long piFragment = ((long)piLength)<<32| piOffset;
-		    	    	xm.remove(nv.expandWhiteSpaces(piFragment, VTDNav.WS_LEADING));
-		        		// Update removedNodes to true.
-		        		removedNodes = true;
-	        		}
-	        	}
-	        	// If the node is not an element, remove the whole token.
-	        	else {
-	        		xm.remove();
-	        		// Update removedNodes to true.
-	        		removedNodes = true;
-	        	}
-	        }
+			// Execute the XPath expression and remove the resulting nodes (a large document is processed window by window).
+			boolean removedNodes = documentModifier.forEachNav(nv -> removeNodes(documentModifier, nv, nodeRemovalXPath, piAttributeToRemove, piAttributePattern));
 	        
-	        // If nodes were removed, re-init the VTDNav and reset the XMLModifier.
-	        if (removedNodes) {
-		        // Output and re-parse the document for the next injection.
-		        // This is necessary, otherwise exceptions will be thrown when injecting attributes for the same element.
-		        nv = xm.outputAndReparse();
-		        // Reset and bind the modifier to the new VTDNav object.
-		        xm.reset();
-		        xm.bind(nv);
-	        } else {
+	        // If no nodes were removed, log a warning.
+	        if (!removedNodes) {
 	        	logger.warning(String.format("The NodeRemoval instruction yielded no nodes ('%s').", nodeRemovalXPath));
 	        }
 		}
 		
 		logger.info("Done removing nodes from the PowerDesigner model document.");
+	}
+	
+	/**
+	 * Remove the nodes selected by a node removal instruction.
+	 * @param documentModifier The modifier of the document.
+	 * @param nv The VTDNav of the document (or the window of a large document).
+	 * @param nodeRemovalXPath The XPath expression selecting the nodes.
+	 * @param piAttributeToRemove The attribute to remove from the selected processing instructions, or null to remove the nodes.
+	 * @param piAttributePattern The pattern of the attribute to remove from the processing instructions.
+	 * @return Whether nodes were removed.
+	 * @throws Exception
+	 */
+	private boolean removeNodes(DocumentModifier documentModifier, VTDNav nv, String nodeRemovalXPath, String piAttributeToRemove, Pattern piAttributePattern) throws Exception {
+		AutoPilot ap = getAutoPilot(nv);
+		ap.selectXPath(nodeRemovalXPath);
 		
-		// We can return the nv object since it is already reparsed, reset and bind in the latest iteration of the config loop.
-		return nv;
+		// Execute the XPath expression and loop through the results.
+		boolean removedNodes = false;
+        while ((ap.evalXPath()) != -1) {
+        	int currentNodeIndex = nv.getCurrentIndex();
+			int currentTokenType = nv.getTokenType(currentNodeIndex);
+			// Skip the node if it's already removed by a previous instruction.
+			if (documentModifier.isRemoved(currentNodeIndex))
+				continue;
+			logger.fine(String.format(" - Removing node with index %d (offset=%d;length=%d;type=%d)...", currentNodeIndex, nv.getTokenOffset(currentNodeIndex), nv.getTokenLength(currentNodeIndex), currentTokenType));
+        	// If the node is an element, expand the element offset with the leading whitespace, so we also remove whitespace before this node.
+        	if (currentTokenType == VTDNav.TOKEN_STARTING_TAG) {
+        		documentModifier.remove(nv.expandWhiteSpaces(nv.getElementFragment(), VTDNav.WS_LEADING), currentNodeIndex);
+        		// Update removedNodes to true.
+        		removedNodes = true;
+        	}
+        	// If the token is an attribute name, we need to remove the attribute name, the equals sign and its value (we use removeAttribute function for this).
+        	else if (currentTokenType == VTDNav.TOKEN_ATTR_NAME) {
+        		// Remove the attribute with value and the space before the attribute name (if it's there).
+        		documentModifier.removeAttribute(currentNodeIndex);
+        		// Update removedNodes to true.
+        		removedNodes = true;
+        	}
+        	// If the token is a processing-instruction name, we need to remove the token before and after as well.
+        	else if (currentTokenType == VTDNav.TOKEN_PI_NAME) {
+        		// If there is an attribute specified on the processing instruction, find the attribute in the processing instruction.
+        		if (piAttributeToRemove != null) {
+        				// The processing instruction value is in the token after the name (prefix with space so the first attribute can also be found using the attribute pattern).
+        			// If a previous instruction removed an attribute from the same processing instruction, the modified value is used.
+        			String piValue = documentModifier.getTokenValue(currentNodeIndex + 1);
+        			// Get the offset minus 1 (minus 1 because of the space we added in the line above here).
+        			//int piValueOffset = nv.getTokenOffset(currentNodeIndex + 1) - 1;
+        			logger.fine(String.format(" - Processing instruction value: '%s'", piValue));
+        			Matcher piAttributeMatcher = piAttributePattern.matcher(" " + piValue);
+        			
+        			// Perform the replace if the regex matches at least once.
+        			if (piAttributeMatcher.find()) {
+	        			// Replace all matches with empty string.
+	        			String newPiValue = piAttributeMatcher.replaceAll("");
+	        			// If the new pi value starts with a space, remove it (because we added a space when creating the Matcher.
+	        			if (newPiValue.length() > 0 && newPiValue.substring(0, 1).equals(" ")) {
+	        				newPiValue = newPiValue.substring(1);
+	        			}
+	        			
+	        			// Replace the old PI value with the new one.
+        				documentModifier.updateToken(currentNodeIndex + 1, newPiValue);
+    	        		// Update removedNodes to true.
+    	        		removedNodes = true;
+        			}
+        		}
+        		// If there is no attribute removal specified on the XPath on the processing instruction, remove the whole processing instruction.
+        		else {
+	        		// The processing instruction offset is the start of the processing instruction name minus 2 characters (<?).
+	        		int piOffset = nv.getTokenOffset(currentNodeIndex) - 2;
+	        		int piLength = nv.getTokenOffset(currentNodeIndex + 1) + nv.getTokenLength(currentNodeIndex + 1) + 2 - piOffset;
+	        		
+	        		logger.fine(String.format(" - Node content: '%s'", nv.toRawString(piOffset, piLength)));
+	    	    	long piFragment = ((long)piLength)<<32| piOffset;
+	    	    	documentModifier.remove(nv.expandWhiteSpaces(piFragment, VTDNav.WS_LEADING), currentNodeIndex);
+	        		// Update removedNodes to true.
+	        		removedNodes = true;
+        		}
+        	}
+        	// If the node is not an element, remove the whole token.
+        	else {
+        		documentModifier.removeToken(currentNodeIndex);
+        		// Update removedNodes to true.
+        		removedNodes = true;
+        	}
+        }
+        
+		return removedNodes;
 	}
 	
 	/**
 	 * Recursively parse the docPartXml to created xi:include reference and write the resulting Xml document to a file.
+	 * When parallelDecomposeState is specified, the child parts are decomposed as fork-join tasks, otherwise they are decomposed one after another.
+	 * When decomposing on the document, the child parts are decomposed on the VTDNav of the document (a clone for the fork-join tasks) and their bytes are only copied when the part is written.
+	 * @param nv The VTDNav of the part, or of the document when partElementIndex is specified.
+	 * @param partElementIndex The index of the element of the part in the document (where the VTDNav is positioned on), or -1 if the VTDNav only contains the part.
 	 * @param docPartXml
 	 * @param currentTargetFileName
 	 * @param targetDirectoryPath
 	 * @param currentPartIsRoot
 	 * @throws Exception
 	 */
-	private Path parseAndWriteDocumentParts(VTDNav nv, Charset fileCharset, TargetFileInfo currentFileInfo, int depth, DecomposableElementConfig decomposableElementConfig, TreeSet<File> currentDecomposedFiles) throws Exception {
+	private Path parseAndWriteDocumentParts(VTDNav nv, int partElementIndex, Charset fileCharset, TargetFileInfo currentFileInfo, int depth, DecomposableElementConfig decomposableElementConfig, DecomposedFileSet currentDecomposedFiles, PartFileWriter partFileWriter, ParallelDecomposeState parallelDecomposeState, int[] partKey) throws Exception {
+		DocumentPart documentPart = parseDocumentParts(nv, partElementIndex, fileCharset, currentFileInfo, depth, decomposableElementConfig, currentDecomposedFiles, partFileWriter, parallelDecomposeState, partKey);
+		return writeDocumentPart(documentPart, currentFileInfo, depth, currentDecomposedFiles, partFileWriter, parallelDecomposeState, partKey);
+	}
+	
+	/**
+	 * Decompose the child parts of a part (see parseAndWriteDocumentParts) and get the contents of the part, where the child parts are replaced by their include element.
+	 * @return The part, which isn't written yet.
+	 * @throws Exception
+	 */
+	private DocumentPart parseDocumentParts(VTDNav nv, int partElementIndex, Charset fileCharset, TargetFileInfo currentFileInfo, int depth, DecomposableElementConfig decomposableElementConfig, DecomposedFileSet currentDecomposedFiles, PartFileWriter partFileWriter, ParallelDecomposeState parallelDecomposeState, int[] partKey) throws Exception {
 		// Create the prefix string based on the depth.
 		String prefix = String.join("", Collections.nCopies(depth, STR_PREFIX_SPACER));
 		logger.fine(String.format("%s> %s", prefix, currentFileInfo.FolderPath.toString()));
 		
 		// We are going to remove all nodes which are included, so we need a XmlModifier.
-		XMLModifier xm;
-		try {
-			xm = new XMLModifier(nv);
-		} catch (Exception e) {
-			throw new Exception("Error while initializing XMLModifier");
+		// When the part is in the document, the included nodes are replaced when the part is written.
+		XMLModifier xm = null;
+		TreeMap<Integer, IncludedFragment> includedFragments = null;
+		int partOffset = 0;
+		int partEndOffset = 0;
+		String partObjectId = null;
+		if (partElementIndex == -1) {
+			try {
+				xm = new XMLModifier(nv);
+			} catch (Exception e) {
+				throw new Exception("Error while initializing XMLModifier");
+			}
+		} else {
+			includedFragments = new TreeMap<Integer, IncludedFragment>();
+			// Get the fragment and id of the part now the VTDNav is positioned on it (recovering the position later on is slow in deep documents).
+			long partOffsetAndLength = nv.getElementFragment();
+			partOffset = (int)partOffsetAndLength;
+			partEndOffset = partOffset + (int)(partOffsetAndLength>>32);
+			partObjectId = getIdAttributeValue(nv);
 		}
 		int extractedChildCount = 0;
+		// The child parts which are decomposed in parallel, the include tags are inserted when all childs are done.
+		List<ParallelChildPart> parallelChildParts = new ArrayList<ParallelChildPart>();
+		// The files of the child parts which are decomposed in parallel (with and without children), so siblings with the same name get a different name.
+		DecomposedFileSet parallelSiblingFiles = new DecomposedFileSet();
 		
 		// Only decompose elements if conditions are configured.
 		if (decomposableElementConfig.getElementConditionsAndGroups() != null && decomposableElementConfig.getElementConditionsAndGroups().size() > 0) {
 			
-			AutoPilot ap = getAutoPilot(nv);
 			// Select all elements which conform to the elements conditions as specified in the config.
-			ap.selectXPath(String.format("//*[%s]", decomposableElementConfig.getXPathExpression()));
+			// The compiled expression is cached per depth, since the iteration of the parent part is still active while a child part is decomposed.
+			AutoPilot ap;
+			CompiledElementCondition elementCondition = null;
+			if (!_decomposeOnDocument && _elementCondition.usesXPath()) {
+				// The conditions might use the position of the element in the selection, so they are evaluated as predicate of the selection.
+				ap = XPathCache.getAutoPilot(nv, String.format("//*[%s]", decomposableElementConfig.getXPathExpression()), depth + 1, POWERDESIGNER_AUTO_PILOT_FACTORY);
+			} else if (!_decomposeOnDocument) {
+				// The conditions are all evaluated on the VTD tokens, so all elements are selected and the conditions are evaluated on each element.
+				ap = XPathCache.getAutoPilot(nv, "//*", depth + 1, POWERDESIGNER_AUTO_PILOT_FACTORY);
+				elementCondition = _elementCondition;
+			} else {
+				// When decomposing on the document, all elements are selected and the conditions are evaluated separately on each element.
+				// A predicate in the selection is sized to the complete document by VTD-XML, which makes evaluating it on every element slow.
+				// When the part is in the document, the elements are selected relative to the element of the part (which selects them in the same order as on the parsed part).
+				ap = XPathCache.getAutoPilot(nv, (partElementIndex == -1) ? "//*" : ".//*", depth + 1, POWERDESIGNER_AUTO_PILOT_FACTORY);
+				elementCondition = _elementCondition;
+			}
 			int minimumNextOffset = 0;
 			// Loop through the found elements.
 			while ((ap.evalXPath()) != -1) {
 				// skip the root element.
-				if (nv.getCurrentIndex() == nv.getRootIndex())
+				if (nv.getCurrentIndex() == nv.getRootIndex() || nv.getCurrentIndex() == partElementIndex)
+					continue;
+				// Skip the element if it doesn't conform to the element conditions.
+				if (elementCondition != null && !elementCondition.evaluate(nv))
 					continue;
-				
-		    	// Get the parent element name, to be used as the folder name.
-		    	String parentElementName = XMLUtils.getParentElementName(nv);
-		    	String elementName = XMLUtils.getElementName(nv);
 				
 		    	// Get the element offset and length (including whitespaces).
 		    	long elementOffsetAndLength = nv.getElementFragment();
@@ -731,94 +1190,157 @@ public class XmlDecomposer {
 		    	// Make sure the next index found by the AutoPilot is after the current fragment (used in the previous if condition).
 		    	minimumNextOffset = elementOffset + elementLength;
 		    	
-		    	// Make sure the target file name config is set.
-		    	if (decomposableElementConfig.getTargetFileNameConfigs() == null || decomposableElementConfig.getTargetFileNameConfigs().size() == 0)
-		    		throw new Exception("The TargetFileName configuration isn't set!");
-		    	
-		    	// Get the target folder name for the current decomposable element.
-		    	// If the parent element name contains a namespace part, remove it.
-				String childTargetFolderName = FileUtils.getLegalFileName(XMLUtils.getElementNameWithoutNameSpace(parentElementName));
-		    	Path childTargetSubFolderPath = deriveTargetFolderPath(nv, decomposableElementConfig.getTargetFolderNameConfigs(), currentFileInfo.FolderPath, childTargetFolderName);
-		    	
 		    	// Derive the target file name for the current decomposable element.
-				TargetFileInfo childFileInfo = deriveTargetFileAndFolderPath(nv, decomposableElementConfig.getTargetFileNameConfigs(), childTargetSubFolderPath, "xml", currentDecomposedFiles);
-		    	// If the target folder configuration doesn't yield a valid result, throw an exception.
-		    	if (childFileInfo == null) {
-		    		throw new Exception(String.format("A valid child target file name is not found for element %s at %s", elementName, elementOffset));
+		    	// When decomposing in parallel, the files of other parts can still be in progress, so the checks are recorded to validate them afterwards.
+		    	int[] childPartKey = getChildPartKey(partKey, extractedChildCount);
+		    	Predicate<TargetFileInfo> unallowedTarget;
+		    	if (parallelDecomposeState == null) {
+		    		unallowedTarget = getDecomposedTargetCheck(currentDecomposedFiles);
+		    	} else {
+		    		unallowedTarget = target -> parallelDecomposeState.isUnallowedTarget(target, parallelSiblingFiles, childPartKey);
 		    	}
+				TargetFileInfo childFileInfo = deriveChildFileInfo(nv, decomposableElementConfig, currentFileInfo.FolderPath, elementOffset, unallowedTarget);
 		    	
-				// Go through the configured includes attributes if they exist.
-	    		HashMap<String, String> includeAttributesWithValues = new HashMap<String, String>();
-				if (decomposableElementConfig.getIncludeAttributeConfigs() != null) {
-					// Loop over the sub elements to include to fill the hashmap.
-					// We have to do this loop here, and can't do it later in the code, since the pointer is now on the right spot in the model file.
-					for (IncludeAttributeConfig includeAttributeConfig : decomposableElementConfig.getIncludeAttributeConfigs()) {
-						String subElementText = XMLUtils.getXPathText(nv, includeAttributeConfig.getXPath());
-						// Only include the attribute if it contains a value.
-						if (subElementText.length() > 0)
-							includeAttributesWithValues.put(includeAttributeConfig.getName(), subElementText);
-					}
-				}
+				// Get the values of the configured include attributes.
+				// We have to do this here, and can't do it later in the code, since the pointer is now on the right spot in the model file.
+	    		HashMap<String, String> includeAttributesWithValues = getIncludeAttributesWithValues(nv, decomposableElementConfig);
+		    	
+		    	// When decomposing incrementally, get the hash of the fragment and reuse the files of the former decompose if the fragment is unchanged.
+		    	if (_fragmentHashSeed != null) {
+		    		childFileInfo.FragmentHash = DecomposeManifest.getFragmentHash(_fragmentHashSeed, nv.getXML().getBytes(), elementOffset, elementLength);
+		    		Path reusedFileLocation = reuseUnchangedPart(childFileInfo, currentDecomposedFiles);
+		    		if (reusedFileLocation != null) {
+		    			logger.fine(String.format("%s - Reusing unchanged part: %s", prefix, reusedFileLocation.toString()));
+		    			if (xm != null) {
+		    				xm.removeContent(elementOffset, elementLength);
+		    				xm.insertBeforeElement(getIncludeElement(currentFileInfo, reusedFileLocation, includeAttributesWithValues));
+		    			} else {
+		    				includedFragments.put(elementOffset, new IncludedFragment(elementOffset, elementLength, getIncludeElement(currentFileInfo, reusedFileLocation, includeAttributesWithValues)));
+		    			}
+		    			extractedChildCount++;
+		    			continue;
+		    		}
+		    	}
 		    	
-		    	// Get the contents of the XML Fragment.
-		    	byte[] xmlFragmentBytes = nv.getXML().getBytes(elementOffset, elementLength);
+		    	// Get the contents of the XML Fragment (when the child part isn't decomposed on the document).
+		    	byte[] xmlFragmentBytes = (_decomposeOnDocument) ? null : nv.getXML().getBytes(elementOffset, elementLength);
 		    	// Parse the XML Fragment and write it to its own file.
 		    	//logger.fine(String.format("Target folder name: '%s'; child target file name: '%s'", childTargetFolderName, childTargetFileName));
 		    	
 				// Remove the xml fragment, which will be written in a separate file.
-				xm.removeContent(elementOffset, elementLength);
-				
-				// Create a VTDNav for navigating the document.
-				VTDNav partNv;
-				try {
-					partNv = XMLUtils.getVTDNav(xmlFragmentBytes, false);
-				} catch (Exception e) {
-					throw new Exception(String.format("Error while parsing Xml Part: %s", e.getMessage()), e);
-				}
+		    	if (xm != null)
+		    		xm.removeContent(elementOffset, elementLength);
 				
-				// Set the relative path with a parent folder of the current element name.
-				//Path childTargetDirectory = targetSubFolderPath.resolve(childTargetFileName);
-				// Derive the object file name.
-				//String childObjectFileNameWithExtension = String.format("%s.xml", childTargetFileName);
-				Path childFileLocation = parseAndWriteDocumentParts(partNv, fileCharset, childFileInfo, depth + 1, decomposableElementConfig, currentDecomposedFiles);
+				// Increase the extracted child count.
+				extractedChildCount++;
 				
-				// Insert the include tag for the found object.
-				String actualRelativePath = currentFileInfo.FolderPath.relativize(childFileLocation).toString();
-				// If the file system separator is not a slash, replace the actualRelativePath file system separator with slash.
-				if (!currentFileInfo.FolderPath.getFileSystem().getSeparator().equals("/")) {
-					actualRelativePath = actualRelativePath.replace(currentFileInfo.FolderPath.getFileSystem().getSeparator(), "/");
+				// When decomposing in parallel, fork the child part and insert the include tag when it's done.
+				if (parallelDecomposeState != null) {
+					parallelSiblingFiles.add(childFileInfo.FilePathWithoutChildren.toFile());
+					parallelSiblingFiles.add(childFileInfo.FilePathWithChildren.toFile());
+					// When decomposing on the document, the task gets its own VTDNav on the document (a VTDNav can't be used by multiple threads at once).
+					DocumentPartTask childPartTask;
+					if (_decomposeOnDocument)
+						childPartTask = new DocumentPartTask(nv.cloneNav(), nv.getCurrentIndex(), fileCharset, childFileInfo, depth + 1, decomposableElementConfig, partFileWriter, parallelDecomposeState, childPartKey);
+					else
+						childPartTask = new DocumentPartTask(xmlFragmentBytes, fileCharset, childFileInfo, depth + 1, decomposableElementConfig, partFileWriter, parallelDecomposeState, childPartKey);
+					childPartTask.fork();
+					parallelChildParts.add(new ParallelChildPart(nv.getCurrentIndex(), elementOffset, elementLength, includeAttributesWithValues, childPartTask));
+					continue;
 				}
-				// Construct the include tag contents.
-				StringBuffer includeElementStringBuffer = new StringBuffer();
-				includeElementStringBuffer.append(String.format("<xi:include href=\"%s\"", actualRelativePath));
-				// Loop through the include attributes to add the min the include tag.
-				for (String includeAttributeName : includeAttributesWithValues.keySet()) {
-					// Insert the include sub element in the include tag.
-					includeElementStringBuffer.append(String.format(" %s=\"%s\"", includeAttributeName, XMLUtils.escapeXMLChars(includeAttributesWithValues.get(includeAttributeName))));				
+				
+				Path childFileLocation;
+				if (_decomposeOnDocument) {
+					// Decompose the child part on the document, the position of the iteration is restored afterwards.
+					int childElementIndex = nv.getCurrentIndex();
+					nv.push();
+					childFileLocation = parseAndWriteDocumentParts(nv, childElementIndex, fileCharset, childFileInfo, depth + 1, decomposableElementConfig, currentDecomposedFiles, partFileWriter, null, childPartKey);
+					nv.pop();
+				} else {
+					// Create a VTDNav for navigating the document.
+					VTDNav partNv;
+					try {
+						partNv = XMLUtils.getVTDNav(xmlFragmentBytes, false);
+					} catch (Exception e) {
+						throw new Exception(String.format("Error while parsing Xml Part: %s", e.getMessage()), e);
+					}
+					
+					// Set the relative path with a parent folder of the current element name.
+					//Path childTargetDirectory = targetSubFolderPath.resolve(childTargetFileName);
+					// Derive the object file name.
+					//String childObjectFileNameWithExtension = String.format("%s.xml", childTargetFileName);
+					childFileLocation = parseAndWriteDocumentParts(partNv, -1, fileCharset, childFileInfo, depth + 1, decomposableElementConfig, currentDecomposedFiles, partFileWriter, null, childPartKey);
 				}
-				includeElementStringBuffer.append(" />");
 				
 				// Insert the full include element.
-		    	xm.insertBeforeElement(includeElementStringBuffer.toString());
-				
-				// Increase the extracted child count.
-				extractedChildCount++;
+				if (xm != null)
+					xm.insertBeforeElement(getIncludeElement(currentFileInfo, childFileLocation, includeAttributesWithValues));
+				else
+					includedFragments.put(elementOffset, new IncludedFragment(elementOffset, elementLength, getIncludeElement(currentFileInfo, childFileLocation, includeAttributesWithValues)));
+			}
+			
+			// Wait for the child parts which are decomposed in parallel (in document order) and insert their include elements.
+			for (ParallelChildPart parallelChildPart : parallelChildParts) {
+				Path childFileLocation = parallelChildPart.ChildPartTask.join();
+				if (xm != null) {
+					nv.recoverNode(parallelChildPart.ElementIndex);
+					xm.insertBeforeElement(getIncludeElement(currentFileInfo, childFileLocation, parallelChildPart.IncludeAttributesWithValues));
+				} else {
+					includedFragments.put(parallelChildPart.ElementOffset, new IncludedFragment(parallelChildPart.ElementOffset, parallelChildPart.ElementLength, getIncludeElement(currentFileInfo, childFileLocation, parallelChildPart.IncludeAttributesWithValues)));
+				}
 			}
 
 			logger.fine(String.format("%s - Found %d childs", prefix, extractedChildCount));
 		}
 		
+		// Write the part into a array output stream, with the child parts replaced by include elements.
+		ByteArrayOutputStream partOutputStream = new ByteArrayOutputStream();
+		if (xm != null) {
+			xm.output(partOutputStream);
+			nv.toElement(VTDNav.ROOT);
+			partObjectId = getIdAttributeValue(nv);
+		} else {
+			// Copy the fragment of the part from the document, where the include elements are UTF-8 encoded like the XMLModifier does on a parsed part (which has no Xml declaration).
+			byte[] documentBytes = nv.getXML().getBytes();
+			int currentOffset = partOffset;
+			for (IncludedFragment includedFragment : includedFragments.values()) {
+				partOutputStream.write(documentBytes, currentOffset, includedFragment.Offset - currentOffset);
+				partOutputStream.write(includedFragment.IncludeElement.getBytes(StandardCharsets.UTF_8));
+				currentOffset = includedFragment.Offset + includedFragment.Length;
+			}
+			partOutputStream.write(documentBytes, currentOffset, partEndOffset - currentOffset);
+		}
+		return new DocumentPart(partOutputStream.toByteArray(), extractedChildCount, partObjectId);
+	}
+	
+	/**
+	 * Write a part to its file.
+	 * @param documentPart The part.
+	 * @param currentFileInfo The file info of the part.
+	 * @param depth The depth of the part.
+	 * @return The path of the written file.
+	 * @throws Exception
+	 */
+	private Path writeDocumentPart(DocumentPart documentPart, TargetFileInfo currentFileInfo, int depth, DecomposedFileSet currentDecomposedFiles, PartFileWriter partFileWriter, ParallelDecomposeState parallelDecomposeState, int[] partKey) throws Exception {
+		// Create the prefix string based on the depth.
+		String prefix = String.join("", Collections.nCopies(depth, STR_PREFIX_SPACER));
+		
         // Get the current file path from the currentFileInfo object and whether children where decomposed.
 		Path targetFilePath = currentFileInfo.FilePathWithChildren;
 		// If the current element doesn't have extracted child elements, store the file in the parent folder.
-		if (depth != 0 && extractedChildCount == 0) {
+		if (depth != 0 && documentPart.ExtractedChildCount == 0) {
 			targetFilePath = currentFileInfo.FilePathWithoutChildren;
 		}
 		
 		// Add the file to the list of decomposed file paths of the current run.
 		// We need to normalize the absolute path to get a comparable path without relative bits like '..'.
 		File targetFile = targetFilePath.toFile();
-		if (!currentDecomposedFiles.contains(targetFile)) {
+		if (parallelDecomposeState != null) {
+			// The part is written when the parallel decompose is validated, a file which is written twice is detected while validating.
+			parallelDecomposeState.addDecomposedPart(targetFile, documentPart, partKey);
+			return targetFilePath;
+		}
+		else if (!currentDecomposedFiles.contains(targetFile)) {
 			currentDecomposedFiles.add(targetFile);
 		}
 		// Tried to write a file twice in one run, this should never happen.
@@ -826,35 +1348,593 @@ public class XmlDecomposer {
 			throw new Exception(String.format("Tried to write a file twice, this should never happen ('%s').", targetFile.toString()));
 		}
 		
-		// Get the target folder of the target file.
-		File targetFolder = targetFile.getParentFile();
-		// Create the target folder(s) if they don't exist.
-		if (!targetFolder.exists()) {
-			if (!targetFolder.mkdirs()) {
-				throw new Exception(String.format("Error while creating parent directories for '%s'", targetFile.toString()));
-			}
-		}
 		// Write the target Xml file.
 		logger.fine(String.format("%s - Writing file: %s", prefix, targetFile.toString()));
-		// Write the XML file into a array output stream.
-		xm.output(targetFilePath.toString());
+		// Add the file to the manifest, with the id of the element in the file.
+		if (_decomposeManifest != null) {
+			_decomposeManifest.addEntry(targetFilePath, documentPart.Contents, documentPart.ObjectId, currentFileInfo.FragmentHash);
+		}
+		// Hand the part to the part file writer (which also creates the target folder(s) if they don't exist).
+		partFileWriter.write(targetFilePath, documentPart.Contents);
 		//logger.fine(String.format("%s< %s", prefix, targetDirectoryPath));
 		
 		return targetFilePath;
 	}
 	
+	/**
+	 * Reuse the files of a part which is unchanged since the former decompose, instead of decomposing and writing the part again.
+	 * The part is unchanged when the former manifest contains the file of the part with the same fragment hash, and the files of the part are still as they were written.
+	 * The files are only reused when none of them is written already in the current run, otherwise the part would get other file names when it's decomposed again.
+	 * @param childFileInfo The file info of the part, including the fragment hash.
+	 * @param currentDecomposedFiles The decomposed files of the current run.
+	 * @return The path of the file of the part, or null if the part can't be reused.
+	 * @throws Exception
+	 */
+	private Path reuseUnchangedPart(TargetFileInfo childFileInfo, DecomposedFileSet currentDecomposedFiles) throws Exception {
+		if (_formerDecomposeManifest == null)
+			return null;
+		List<File> partFiles = _formerDecomposeManifest.getUnchangedPartFiles(childFileInfo.FilePathWithChildren, childFileInfo.FilePathWithoutChildren, childFileInfo.FolderPath, childFileInfo.FragmentHash);
+		if (partFiles == null)
+			return null;
+		for (File partFile : partFiles) {
+			if (currentDecomposedFiles.contains(partFile))
+				return null;
+		}
+		currentDecomposedFiles.addAll(partFiles);
+		_decomposeManifest.addEntries(_formerDecomposeManifest, partFiles);
+		_reusedPartCount++;
+		_reusedPartFileCount += partFiles.size();
+		return partFiles.get(0).toPath();
+	}
+	
+	/**
+	 * Get the seed of the fragment hashes when decomposing incrementally.
+	 * The decomposed files of a part depend on its fragment and the decomposable element config, so the config is part of the hash.
+	 */
+	private static byte[] getFragmentHashSeed(DecomposableElementConfig decomposableElementConfig, Charset fileCharset) {
+		StringBuilder fragmentHashSeed = new StringBuilder(fileCharset.name());
+		for (String xpathExpression : getXPathExpressions(decomposableElementConfig))
+			fragmentHashSeed.append('\n').append(xpathExpression);
+		if (decomposableElementConfig.getIncludeAttributeConfigs() != null) {
+			for (IncludeAttributeConfig includeAttributeConfig : decomposableElementConfig.getIncludeAttributeConfigs())
+				fragmentHashSeed.append('\n').append(includeAttributeConfig.getName());
+		}
+		return fragmentHashSeed.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Get the checksum of the decompose config for the fingerprint.
+	 * The decomposed model depends on the config as well, so all settings which change the decomposed files are part of the checksum.
+	 */
+	private static int getConfigChecksum(DecomposeConfig decomposeConfig) {
+		StringBuilder configChecksumSeed = new StringBuilder();
+		configChecksumSeed.append("fileRemovalStrategy=").append(decomposeConfig.getFileRemovalStrategy()).append('\n');
+		configChecksumSeed.append("formalizeExtendedAttributes=").append(decomposeConfig.formalizeExtendedAttributes()).append('\n');
+		configChecksumSeed.append("ChangeDetection=").append(decomposeConfig.getChangeDetectionConfig().getXPath()).append('\n');
+		if (decomposeConfig.getNodeRemovalConfigs() != null) {
+			for (NodeRemovalConfig nodeRemovalConfig : decomposeConfig.getNodeRemovalConfigs())
+				configChecksumSeed.append("NodeRemoval=").append(nodeRemovalConfig.getXPath()).append('\n');
+		}
+		if (decomposeConfig.getIdentifierReplacementConfigs() != null) {
+			for (IdentifierReplacementConfig identifierReplacementConfig : decomposeConfig.getIdentifierReplacementConfigs())
+				configChecksumSeed.append("IdentifierReplacement=").append(identifierReplacementConfig.getIdentifierNodeXPath()).append(';').append(identifierReplacementConfig.getReplacementValueXPath()).append(';').append(identifierReplacementConfig.getReferencingNodeXPath()).append('\n');
+		}
+		DecomposableElementConfig decomposableElementConfig = decomposeConfig.getDecomposableElementConfig();
+		if (decomposableElementConfig != null) {
+			configChecksumSeed.append("DecomposableElement").append('\n');
+			for (String xpathExpression : getXPathExpressions(decomposableElementConfig))
+				configChecksumSeed.append("XPath=").append(xpathExpression).append('\n');
+			if (decomposableElementConfig.getTargetFolderNameConfigs() != null) {
+				for (TargetFolderNameConfig targetFolderNameConfig : decomposableElementConfig.getTargetFolderNameConfigs())
+					configChecksumSeed.append("TargetFolderName.overrideParent=").append(targetFolderNameConfig.getOverrideParent()).append('\n');
+			}
+			if (decomposableElementConfig.getIncludeAttributeConfigs() != null) {
+				for (IncludeAttributeConfig includeAttributeConfig : decomposableElementConfig.getIncludeAttributeConfigs())
+					configChecksumSeed.append("IncludeAttribute.name=").append(includeAttributeConfig.getName()).append('\n');
+			}
+		}
+		return FileUtils.getContentChecksum(configChecksumSeed.toString().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Decompose the document parts using a fork-join pool.
+	 * Siblings are named in document order by their parent, but the files of parts in other sub trees may still be in progress while naming.
+	 * So afterwards all checks on already decomposed files are validated against the files as they would have been known when decomposing sequentially.
+	 * The parts are kept in memory until the checks are validated, so no file is written (or overwritten) under a name the sequential decompose wouldn't use.
+	 * @return Whether the parallel decompose yields the same result as the sequential decompose (and the parts are written), if not the parts must be decomposed sequentially.
+	 * @throws Exception
+	 */
+	private boolean parseAndWriteDocumentPartsInParallel(VTDNav nv, Charset fileCharset, TargetFileInfo targetFileInfo, DecomposableElementConfig decomposableElementConfig, DecomposedFileSet currentDecomposedFiles, PartFileWriter partFileWriter, int parallelism) throws Exception {
+		ParallelDecomposeState parallelDecomposeState = new ParallelDecomposeState();
+		ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+		try {
+			forkJoinPool.submit(() -> parseAndWriteDocumentParts(nv, -1, fileCharset, targetFileInfo, 0, decomposableElementConfig, currentDecomposedFiles, partFileWriter, parallelDecomposeState, new int[0])).get();
+		} catch (ExecutionException e) {
+			// Unwrap the exception of the failing part.
+			Throwable cause = e.getCause();
+			while (cause instanceof RuntimeException && cause.getCause() instanceof Exception)
+				cause = cause.getCause();
+			throw (cause instanceof Exception) ? (Exception)cause : e;
+		} finally {
+			forkJoinPool.shutdown();
+		}
+		
+		if (!parallelDecomposeState.isEqualToSequential())
+			return false;
+		// The file names are equal to the sequential decompose, so write the parts (in the order of the sequential decompose).
+		for (DecomposedFile decomposedFile : parallelDecomposeState.getDecomposedFiles()) {
+			currentDecomposedFiles.add(decomposedFile.File);
+			if (_decomposeManifest != null)
+				_decomposeManifest.addEntry(decomposedFile.File.toPath(), decomposedFile.Part.Contents, decomposedFile.Part.ObjectId, null);
+			partFileWriter.write(decomposedFile.File.toPath(), decomposedFile.Part.Contents);
+		}
+		return true;
+	}
+	
+	/**
+	 * Decompose the document parts in one pass over the document.
+	 * The decomposable elements are selected once on the complete document, instead of again on every part. The parts are then selected, named and written from this list
+	 * in the same way and order as in parseAndWriteDocumentParts, so the result is the same.
+	 * @throws Exception
+	 */
+	private void parseAndWriteDocumentPartsInSinglePass(VTDNav nv, TargetFileInfo targetFileInfo, DecomposableElementConfig decomposableElementConfig, DecomposedFileSet currentDecomposedFiles, PartFileWriter partFileWriter) throws Exception {
+		nv.toElement(VTDNav.ROOT);
+		SinglePassPart rootPart = new SinglePassPart(null, 0, nv.getXML().length());
+		rootPart.FileInfo = targetFileInfo;
+		rootPart.ObjectId = getIdAttributeValue(nv);
+		
+		// Only decompose elements if conditions are configured.
+		if (decomposableElementConfig.getElementConditionsAndGroups() != null && decomposableElementConfig.getElementConditionsAndGroups().size() > 0) {
+			// Select all elements which conform to the elements conditions as specified in the config.
+			// The elements are kept in the order of the XPath evaluation (which is not the document order), since this order decides which elements are decomposed and how they are named.
+			// All elements are selected and the conditions are evaluated separately on each element (like in parseAndWriteDocumentParts when decomposing on the document).
+			AutoPilot ap = XPathCache.getAutoPilot(nv, "//*", 1, POWERDESIGNER_AUTO_PILOT_FACTORY);
+			while ((ap.evalXPath()) != -1) {
+				// skip the root element and the elements which don't conform to the element conditions.
+				if (nv.getCurrentIndex() == nv.getRootIndex() || !_elementCondition.evaluate(nv))
+					continue;
+				// Record the position of the element, since recovering the position from the element index is slow in deep documents.
+				BookMark elementPosition = new BookMark(nv);
+				elementPosition.recordCursorPosition();
+				long elementOffsetAndLength = nv.getElementFragment();
+				rootPart.DecomposableElements.add(new SinglePassPart(elementPosition, (int)elementOffsetAndLength, (int)(elementOffsetAndLength>>32)));
+			}
+			logger.fine(String.format("Found %d decomposable elements.", rootPart.DecomposableElements.size()));
+		}
+		
+		parseAndWriteSinglePassPart(nv, rootPart, 0, decomposableElementConfig, currentDecomposedFiles, partFileWriter);
+	}
+	
+	/**
+	 * Select, name and write the child parts of a part found in the single pass decompose, and write the part itself.
+	 * @param part The part, where the DecomposableElements are the decomposable elements within the part (in the order of the XPath evaluation).
+	 * @return The path of the written file.
+	 * @throws Exception
+	 */
+	private Path parseAndWriteSinglePassPart(VTDNav nv, SinglePassPart part, int depth, DecomposableElementConfig decomposableElementConfig, DecomposedFileSet currentDecomposedFiles, PartFileWriter partFileWriter) throws Exception {
+		// Create the prefix string based on the depth.
+		String prefix = String.join("", Collections.nCopies(depth, STR_PREFIX_SPACER));
+		logger.fine(String.format("%s> %s", prefix, part.FileInfo.FolderPath.toString()));
+		
+		// Select the child parts like parseAndWriteDocumentParts: an element is skipped when it's before the end of the former child part (in the order of the XPath evaluation).
+		// The elements within a child part are the decomposable elements of that child part.
+		List<SinglePassPart> childParts = new ArrayList<SinglePassPart>();
+		TreeMap<Integer, SinglePassPart> childPartsByOffset = new TreeMap<Integer, SinglePassPart>();
+		int minimumNextOffset = part.Offset;
+		for (SinglePassPart decomposableElement : part.DecomposableElements) {
+			Map.Entry<Integer, SinglePassPart> precedingChildPart = childPartsByOffset.floorEntry(decomposableElement.Offset);
+			if (precedingChildPart != null && decomposableElement.Offset < precedingChildPart.getValue().EndOffset) {
+				precedingChildPart.getValue().DecomposableElements.add(decomposableElement);
+			} else if (decomposableElement.Offset >= minimumNextOffset) {
+				minimumNextOffset = decomposableElement.EndOffset;
+				childParts.add(decomposableElement);
+				childPartsByOffset.put(decomposableElement.Offset, decomposableElement);
+			}
+		}
+		part.DecomposableElements = null;
+		
+		// Name and write the child parts.
+		for (SinglePassPart childPart : childParts) {
+			childPart.ElementPosition.setCursorPosition();
+			
+			logger.fine(String.format("%s - Found element: '%s' at %d till %d", prefix, nv.toRawString(nv.getCurrentIndex()), childPart.Offset - part.Offset, childPart.EndOffset - part.Offset));
+			
+			// Derive the target file name for the current decomposable element and get the values of the include attributes.
+			childPart.FileInfo = deriveChildFileInfo(nv, decomposableElementConfig, part.FileInfo.FolderPath, childPart.Offset - part.Offset, getDecomposedTargetCheck(currentDecomposedFiles));
+			childPart.IncludeAttributesWithValues = getIncludeAttributesWithValues(nv, decomposableElementConfig);
+			childPart.ObjectId = getIdAttributeValue(nv);
+			
+			childPart.FilePath = parseAndWriteSinglePassPart(nv, childPart, depth + 1, decomposableElementConfig, currentDecomposedFiles, partFileWriter);
+		}
+		logger.fine(String.format("%s - Found %d childs", prefix, childParts.size()));
+		
+		// If the current element doesn't have extracted child elements, store the file in the parent folder.
+		Path targetFilePath = part.FileInfo.FilePathWithChildren;
+		if (depth != 0 && childParts.size() == 0) {
+			targetFilePath = part.FileInfo.FilePathWithoutChildren;
+		}
+		
+		// Add the file to the list of decomposed file paths of the current run.
+		File targetFile = targetFilePath.toFile();
+		if (!currentDecomposedFiles.contains(targetFile)) {
+			currentDecomposedFiles.add(targetFile);
+		}
+		// Tried to write a file twice in one run, this should never happen.
+		else {
+			throw new Exception(String.format("Tried to write a file twice, this should never happen ('%s').", targetFile.toString()));
+		}
+		
+		// Write the target Xml file, with the child parts replaced by include elements.
+		// The root part is written using a XMLModifier on the document (like in parseAndWriteDocumentParts). The other parts are copied from the document bytes,
+		// where the include elements are UTF-8 encoded like the XMLModifier does on a parsed part (which has no Xml declaration).
+		logger.fine(String.format("%s - Writing file: %s", prefix, targetFile.toString()));
+		ByteArrayOutputStream partOutputStream = new ByteArrayOutputStream(part.EndOffset - part.Offset);
+		if (depth == 0) {
+			XMLModifier xm;
+			try {
+				xm = new XMLModifier(nv);
+			} catch (Exception e) {
+				throw new Exception("Error while initializing XMLModifier");
+			}
+			for (SinglePassPart childPart : childParts) {
+				childPart.ElementPosition.setCursorPosition();
+				xm.removeContent(childPart.Offset, childPart.EndOffset - childPart.Offset);
+				xm.insertBeforeElement(getIncludeElement(part.FileInfo, childPart.FilePath, childPart.IncludeAttributesWithValues));
+			}
+			xm.output(partOutputStream);
+		} else {
+			byte[] documentBytes = nv.getXML().getBytes();
+			int currentOffset = part.Offset;
+			for (SinglePassPart childPart : childPartsByOffset.values()) {
+				partOutputStream.write(documentBytes, currentOffset, childPart.Offset - currentOffset);
+				partOutputStream.write(getIncludeElement(part.FileInfo, childPart.FilePath, childPart.IncludeAttributesWithValues).getBytes(StandardCharsets.UTF_8));
+				currentOffset = childPart.EndOffset;
+			}
+			partOutputStream.write(documentBytes, currentOffset, part.EndOffset - currentOffset);
+		}
+		byte[] partContents = partOutputStream.toByteArray();
+		// Add the file to the manifest, with the id of the element in the file.
+		if (_decomposeManifest != null) {
+			_decomposeManifest.addEntry(targetFilePath, partContents, part.ObjectId);
+		}
+		partFileWriter.write(targetFilePath, partContents);
+		
+		return targetFilePath;
+	}
+	
+	/**
+	 * Decompose the parts of a large document (see LargeDocument).
+	 * The elements which are larger than the segment size are decomposed on the memory-mapped document, where the conditions and names are evaluated on the stub window of the element.
+	 * The consecutive elements which are smaller than the segment size are decomposed using parseDocumentParts on their segment window (which contains the parent of the elements).
+	 * The elements are visited in document order, so the parts are selected and named in the same way and order as in parseAndWriteDocumentParts.
+	 * @throws Exception
+	 */
+	private void parseAndWriteLargeDocumentParts(LargeDocument largeDocument, TargetFileInfo targetFileInfo, DecomposableElementConfig decomposableElementConfig, DecomposedFileSet currentDecomposedFiles, PartFileWriter partFileWriter) throws Exception {
+		largeDocument.getNav().toElement(VTDNavHuge.ROOT);
+		parseAndWriteLargeDocumentPart(largeDocument, null, targetFileInfo, 0, decomposableElementConfig, currentDecomposedFiles, partFileWriter);
+	}
+	
+	/**
+	 * Decompose the child parts of a part of a large document and write the part.
+	 * @param partElement The element of the part (where the VTDNav of the document is positioned on), or null for the root part.
+	 * @return The path of the written file.
+	 * @throws Exception
+	 */
+	private Path parseAndWriteLargeDocumentPart(LargeDocument largeDocument, LargeDocument.Element partElement, TargetFileInfo currentFileInfo, int depth, DecomposableElementConfig decomposableElementConfig, DecomposedFileSet currentDecomposedFiles, PartFileWriter partFileWriter) throws Exception {
+		// Create the prefix string based on the depth.
+		String prefix = String.join("", Collections.nCopies(depth, STR_PREFIX_SPACER));
+		logger.fine(String.format("%s> %s", prefix, currentFileInfo.FolderPath.toString()));
+		
+		// The fragments of the document which are replaced when the part is written, by their offset.
+		TreeMap<Long, LargeDocumentFragment> replacedFragments = new TreeMap<Long, LargeDocumentFragment>();
+		int extractedChildCount = 0;
+		// Only decompose elements if conditions are configured.
+		if (decomposableElementConfig.getElementConditionsAndGroups() != null && decomposableElementConfig.getElementConditionsAndGroups().size() > 0) {
+			LargeDocument.Element element = (partElement != null) ? partElement : largeDocument.getCurrentElement();
+			extractedChildCount = parseLargeDocumentChildParts(largeDocument, element, largeDocument.getChildElements(), currentFileInfo, depth, decomposableElementConfig, currentDecomposedFiles, partFileWriter, replacedFragments);
+			logger.fine(String.format("%s - Found %d childs", prefix, extractedChildCount));
+		}
+		
+		// Copy the part from the document, with the replaced fragments (the root part is the complete document).
+		long partOffset = (partElement != null) ? partElement.Offset : 0;
+		long partEndOffset = (partElement != null) ? partElement.getEnd() : largeDocument.getLength();
+		long partLength = partEndOffset - partOffset;
+		for (LargeDocumentFragment replacedFragment : replacedFragments.values())
+			partLength += replacedFragment.Contents.length - replacedFragment.Length;
+		if (partLength > Integer.MAX_VALUE - 8)
+			throw new Exception(String.format("The part at offset %d of the large document is too large to be written (%d bytes), the part should be decomposed further.", partOffset, partLength));
+		ByteArrayOutputStream partOutputStream = new ByteArrayOutputStream((int)partLength);
+		long currentOffset = partOffset;
+		for (LargeDocumentFragment replacedFragment : replacedFragments.values()) {
+			largeDocument.writeTo(partOutputStream, currentOffset, replacedFragment.Offset - currentOffset);
+			partOutputStream.write(replacedFragment.Contents);
+			currentOffset = replacedFragment.Offset + replacedFragment.Length;
+		}
+		largeDocument.writeTo(partOutputStream, currentOffset, partEndOffset - currentOffset);
+		DocumentPart documentPart = new DocumentPart(partOutputStream.toByteArray(), extractedChildCount, getIdAttributeValue(largeDocument.getNav()));
+		return writeDocumentPart(documentPart, currentFileInfo, depth, currentDecomposedFiles, partFileWriter, null, null);
+	}
+	
+	/**
+	 * Decompose the child parts within the child elements of an element of a large document (where the VTDNav of the document is positioned on).
+	 * @param replacedFragments The fragments which are replaced when the part is written, to which the fragments of the child parts are added.
+	 * @return The number of child parts.
+	 * @throws Exception
+	 */
+	private int parseLargeDocumentChildParts(LargeDocument largeDocument, LargeDocument.Element element, List<LargeDocument.Element> childElements, TargetFileInfo currentFileInfo, int depth, DecomposableElementConfig decomposableElementConfig, DecomposedFileSet currentDecomposedFiles, PartFileWriter partFileWriter, TreeMap<Long, LargeDocumentFragment> replacedFragments) throws Exception {
+		VTDNavHuge nv = largeDocument.getNav();
+		List<LargeDocument.Element> parentElements = Collections.singletonList(element);
+		int extractedChildCount = 0;
+		// The consecutive child elements which are smaller than the segment size.
+		List<LargeDocument.Element> segments = new ArrayList<LargeDocument.Element>();
+		nv.push();
+		nv.toElement(VTDNavHuge.FIRST_CHILD);
+		for (int i = 0; i < childElements.size(); i++) {
+			if (i > 0)
+				nv.toElement(VTDNavHuge.NEXT_SIBLING);
+			LargeDocument.Element childElement = childElements.get(i);
+			if (childElement.Length <= largeDocument.getSegmentSize()) {
+				// Decompose the former segments when the element doesn't fit in the same segment window.
+				if (segments.size() > 0 && childElement.getEnd() - segments.get(0).Offset > largeDocument.getSegmentSize()) {
+					extractedChildCount += parseLargeDocumentSegments(largeDocument, parentElements, segments, currentFileInfo, depth, decomposableElementConfig, currentDecomposedFiles, partFileWriter, replacedFragments);
+					segments.clear();
+				}
+				segments.add(childElement);
+			} else {
+				if (segments.size() > 0) {
+					extractedChildCount += parseLargeDocumentSegments(largeDocument, parentElements, segments, currentFileInfo, depth, decomposableElementConfig, currentDecomposedFiles, partFileWriter, replacedFragments);
+					segments.clear();
+				}
+				extractedChildCount += parseLargeDocumentElement(largeDocument, element, childElement, currentFileInfo, depth, decomposableElementConfig, currentDecomposedFiles, partFileWriter, replacedFragments);
+			}
+		}
+		if (segments.size() > 0)
+			extractedChildCount += parseLargeDocumentSegments(largeDocument, parentElements, segments, currentFileInfo, depth, decomposableElementConfig, currentDecomposedFiles, partFileWriter, replacedFragments);
+		nv.pop();
+		return extractedChildCount;
+	}
+	
+	/**
+	 * Decompose the child parts within consecutive elements of a large document which are smaller than the segment size, using parseDocumentParts on their segment window.
+	 * @return The number of child parts.
+	 * @throws Exception
+	 */
+	private int parseLargeDocumentSegments(LargeDocument largeDocument, List<LargeDocument.Element> parentElements, List<LargeDocument.Element> segments, TargetFileInfo currentFileInfo, int depth, DecomposableElementConfig decomposableElementConfig, DecomposedFileSet currentDecomposedFiles, PartFileWriter partFileWriter, TreeMap<Long, LargeDocumentFragment> replacedFragments) throws Exception {
+		LargeDocument.Window window = largeDocument.getSegmentWindow(parentElements, segments);
+		// The child parts are written and the window is returned with the child parts replaced by their include elements.
+		DocumentPart windowPart = parseDocumentParts(window.getNav(), -1, largeDocument.getCharset(), currentFileInfo, depth, decomposableElementConfig, currentDecomposedFiles, partFileWriter, null, new int[0]);
+		if (windowPart.ExtractedChildCount > 0) {
+			long segmentsOffset = segments.get(0).Offset;
+			replacedFragments.put(segmentsOffset, new LargeDocumentFragment(segmentsOffset, segments.get(segments.size() - 1).getEnd() - segmentsOffset, window.getContent(windowPart.Contents)));
+		}
+		return windowPart.ExtractedChildCount;
+	}
+	
+	/**
+	 * Decompose an element of a large document which is larger than the segment size (where the VTDNav of the document is positioned on).
+	 * When the element is a decomposable element it's written as child part, otherwise the child parts within its child elements are decomposed.
+	 * @return The number of child parts.
+	 * @throws Exception
+	 */
+	private int parseLargeDocumentElement(LargeDocument largeDocument, LargeDocument.Element parentElement, LargeDocument.Element element, TargetFileInfo currentFileInfo, int depth, DecomposableElementConfig decomposableElementConfig, DecomposedFileSet currentDecomposedFiles, PartFileWriter partFileWriter, TreeMap<Long, LargeDocumentFragment> replacedFragments) throws Exception {
+		// Create the prefix string based on the depth.
+		String prefix = String.join("", Collections.nCopies(depth, STR_PREFIX_SPACER));
+		
+		// Evaluate the conditions on the stub window of the element.
+		List<LargeDocument.Element> childElements = largeDocument.getChildElements();
+		VTDNav nv = largeDocument.getStubWindow(Collections.singletonList(parentElement), element, childElements).getNav();
+		nv.toElement(VTDNav.FIRST_CHILD);
+		if (!_elementCondition.evaluate(nv))
+			return parseLargeDocumentChildParts(largeDocument, element, childElements, currentFileInfo, depth, decomposableElementConfig, currentDecomposedFiles, partFileWriter, replacedFragments);
+		
+		logger.fine(String.format("%s - Found element: '%s' at %d till %d", prefix, element.Name, element.Offset, element.getEnd()));
+		
+		// Derive the target file name for the current decomposable element and get the values of the include attributes.
+		TargetFileInfo childFileInfo = deriveChildFileInfo(nv, decomposableElementConfig, currentFileInfo.FolderPath, element.Offset, getDecomposedTargetCheck(currentDecomposedFiles));
+		HashMap<String, String> includeAttributesWithValues = getIncludeAttributesWithValues(nv, decomposableElementConfig);
+		
+		// Decompose the child part and replace it with the include element, which is UTF-8 encoded like in parseAndWriteDocumentParts.
+		Path childFileLocation = parseAndWriteLargeDocumentPart(largeDocument, element, childFileInfo, depth + 1, decomposableElementConfig, currentDecomposedFiles, partFileWriter);
+		replacedFragments.put(element.Offset, new LargeDocumentFragment(element.Offset, element.Length, getIncludeElement(currentFileInfo, childFileLocation, includeAttributesWithValues).getBytes(StandardCharsets.UTF_8)));
+		return 1;
+	}
+	
+	/**
+	 * Get the value of the Id attribute of the current element, or an empty string if it doesn't have one.
+	 */
+	private static String getIdAttributeValue(VTDNav nv) throws NavException {
+		int idAttributeIndex = nv.getAttrVal("Id");
+		return (idAttributeIndex != -1) ? nv.toString(idAttributeIndex) : "";
+	}
+	
+	/**
+	 * Get the value of the Id attribute of the current element of a large document, or an empty string if it doesn't have one.
+	 */
+	private static String getIdAttributeValue(VTDNavHuge nv) throws NavExceptionHuge {
+		int idAttributeIndex = nv.getAttrVal("Id");
+		return (idAttributeIndex != -1) ? nv.toString(idAttributeIndex) : "";
+	}
+	
+	/**
+	 * Check whether the parts can be decomposed on the VTDNav of the complete document (instead of parsing each part), which is the case when the document is single byte encoded
+	 * and the XPath expressions of the decomposable element config only look within the decomposed element.
+	 * When parsing each part, the expressions are evaluated on the part the element is in. So expressions with an absolute path, or which go up more than one level or sideways
+	 * (where they can leave the part), can give a different result on the complete document. The same goes for the position functions and numeric conditions, since the conditions are evaluated on each element separately.
+	 */
+	private static boolean canDecomposeOnDocument(VTDNav nv, DecomposableElementConfig decomposableElementConfig) {
+		if (nv.getEncoding() >= VTDNav.FORMAT_UTF_16BE)
+			return false;
+		for (String xpathExpression : getXPathExpressions(decomposableElementConfig)) {
+			if (looksOutsideDecomposedElement(xpathExpression)) {
+				logger.fine(String.format("The XPath expression '%s' can look outside of the decomposed element.", xpathExpression));
+				return false;
+			}
+		}
+		if (isPositionalCondition(nv, decomposableElementConfig)) {
+			logger.fine(String.format("The element conditions '%s' are numeric, so they select the elements on their position.", decomposableElementConfig.getXPathExpression()));
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Check whether the parts of a large document can be decomposed, which is the case when the XPath expressions of the decomposable element config only look within the decomposed element.
+	 * The expressions are evaluated on a window which contains the parent of the element but not its siblings (see LargeDocument), so in addition to canDecomposeOnDocument the expressions can't go sideways.
+	 * @throws Exception When an expression can look outside of the decomposed element.
+	 */
+	private static void checkLargeDocumentXPathExpressions(VTDNav nv, DecomposableElementConfig decomposableElementConfig) throws Exception {
+		for (String xpathExpression : getXPathExpressions(decomposableElementConfig)) {
+			if (looksOutsideDecomposedElement(xpathExpression) || PARENT_CHILD_STEP_PATTERN.matcher(STRING_LITERAL_PATTERN.matcher(xpathExpression).replaceAll("''")).find())
+				throw new Exception(String.format("The XPath expression '%s' of the DecomposableElement configuration can look outside of the decomposed element, which isn't supported for a large document (see largeDocumentThreshold).", xpathExpression));
+		}
+		if (isPositionalCondition(nv, decomposableElementConfig))
+			throw new Exception(String.format("The element conditions '%s' of the DecomposableElement configuration are numeric, so they select the elements on their position, which isn't supported for a large document (see largeDocumentThreshold).", decomposableElementConfig.getXPathExpression()));
+	}
+	
+	/**
+	 * Check whether the element conditions of the DecomposableElement configuration select the elements on their position.
+	 * The conditions are used as predicate when selecting the decomposable elements, where a numeric value (like [1]) selects the element at that position.
+	 * When the conditions are evaluated on each element separately, the position in the selection isn't known.
+	 */
+	private static boolean isPositionalCondition(VTDNav nv, DecomposableElementConfig decomposableElementConfig) {
+		if (decomposableElementConfig.getElementConditionsAndGroups() == null || decomposableElementConfig.getElementConditionsAndGroups().size() == 0)
+			return false;
+		return XPathCache.isNumericExpression(nv, decomposableElementConfig.getXPathExpression(), POWERDESIGNER_AUTO_PILOT_FACTORY);
+	}
+	
+	/**
+	 * Get the XPath expressions of the decomposable element config, which are evaluated on the decomposable elements.
+	 */
+	private static List<String> getXPathExpressions(DecomposableElementConfig decomposableElementConfig) {
+		List<String> xpathExpressions = new ArrayList<String>();
+		if (decomposableElementConfig.getElementConditionsAndGroups() != null && decomposableElementConfig.getElementConditionsAndGroups().size() > 0)
+			xpathExpressions.add(decomposableElementConfig.getXPathExpression());
+		List<AbstractConfigElementWithXPathAttributeAndCondition> nameConfigs = new ArrayList<AbstractConfigElementWithXPathAttributeAndCondition>();
+		if (decomposableElementConfig.getTargetFolderNameConfigs() != null)
+			nameConfigs.addAll(decomposableElementConfig.getTargetFolderNameConfigs());
+		if (decomposableElementConfig.getTargetFileNameConfigs() != null)
+			nameConfigs.addAll(decomposableElementConfig.getTargetFileNameConfigs());
+		for (AbstractConfigElementWithXPathAttributeAndCondition nameConfig : nameConfigs) {
+			xpathExpressions.add(nameConfig.getXPath());
+			if (nameConfig.getCondition() != null)
+				xpathExpressions.add(nameConfig.getCondition());
+		}
+		if (decomposableElementConfig.getIncludeAttributeConfigs() != null) {
+			for (IncludeAttributeConfig includeAttributeConfig : decomposableElementConfig.getIncludeAttributeConfigs())
+				xpathExpressions.add(includeAttributeConfig.getXPath());
+		}
+		return xpathExpressions;
+	}
+	
+	/**
+	 * Check whether an XPath expression can look outside of the decomposed element (see canDecomposeOnDocument).
+	 */
+	private static boolean looksOutsideDecomposedElement(String xpathExpression) {
+		// Remove the string literals, so only the expression itself is checked.
+		String expression = STRING_LITERAL_PATTERN.matcher(xpathExpression).replaceAll("''");
+		// Going up one level is allowed, since the parent of a decomposable element is always in the part.
+		return ABSOLUTE_PATH_PATTERN.matcher(expression).find() || NON_LOCAL_AXIS_PATTERN.matcher(expression).find() || DOUBLE_PARENT_STEP_PATTERN.matcher(expression).find() || POSITION_FUNCTION_PATTERN.matcher(expression).find();
+	}
+	
+	/**
+	 * Get the key of a child part, which is the key of the parent part extended with the index of the child.
+	 */
+	private static int[] getChildPartKey(int[] partKey, int childIndex) {
+		int[] childPartKey = Arrays.copyOf(partKey, partKey.length + 1);
+		childPartKey[partKey.length] = childIndex;
+		return childPartKey;
+	}
+	
+	/**
+	 * Derive the target file of the decomposable element (where the VTDNav is positioned on), using the TargetFolderName and TargetFileName configurations.
+	 * This is used by all engines, so they name the decomposed files in the same way.
+	 * @param nv The VTDNav positioned on the decomposable element.
+	 * @param decomposableElementConfig The DecomposableElement configuration.
+	 * @param currentFolderPath The folder of the part the element is in.
+	 * @param elementOffset The offset of the element, used in the error message.
+	 * @param unallowedTarget The check whether a target file is already used (by another element with the same name), in which case the next TargetFileName configuration is used.
+	 * @return The target file of the element.
+	 * @throws Exception When the TargetFileName configuration isn't set or doesn't yield a valid file name.
+	 */
+	private TargetFileInfo deriveChildFileInfo(VTDNav nv, DecomposableElementConfig decomposableElementConfig, Path currentFolderPath, long elementOffset, Predicate<TargetFileInfo> unallowedTarget) throws Exception {
+		// Make sure the target file name config is set.
+		if (decomposableElementConfig.getTargetFileNameConfigs() == null || decomposableElementConfig.getTargetFileNameConfigs().size() == 0)
+			throw new Exception("The TargetFileName configuration isn't set!");
+		
+		// Get the target folder name for the current decomposable element, the parent element name is used as the folder name.
+		// If the parent element name contains a namespace part, remove it.
+		String childTargetFolderName = FileUtils.getLegalFileName(XMLUtils.getElementNameWithoutNameSpace(XMLUtils.getParentElementName(nv)));
+		Path childTargetSubFolderPath = deriveTargetFolderPath(nv, decomposableElementConfig.getTargetFolderNameConfigs(), currentFolderPath, childTargetFolderName);
+		
+		// Derive the target file name for the current decomposable element.
+		TargetFileInfo childFileInfo = deriveTargetFileAndFolderPath(nv, decomposableElementConfig.getTargetFileNameConfigs(), childTargetSubFolderPath, "xml", unallowedTarget);
+		// If the target folder configuration doesn't yield a valid result, throw an exception.
+		if (childFileInfo == null) {
+			throw new Exception(String.format("A valid child target file name is not found for element %s at %s", XMLUtils.getElementName(nv), elementOffset));
+		}
+		return childFileInfo;
+	}
+	
+	/**
+	 * Get the check whether a target file is already used by a decomposed file.
+	 * @param currentDecomposedFiles The files decomposed so far.
+	 * @return The check, which is true when the file with or without children is already decomposed.
+	 */
+	private static Predicate<TargetFileInfo> getDecomposedTargetCheck(DecomposedFileSet currentDecomposedFiles) {
+		return target -> currentDecomposedFiles.contains(target.FilePathWithoutChildren.toFile()) || currentDecomposedFiles.contains(target.FilePathWithChildren.toFile());
+	}
+	
+	/**
+	 * Get the values of the configured include attributes for the decomposable element (where the VTDNav is positioned on).
+	 * @param nv The VTDNav positioned on the decomposable element.
+	 * @param decomposableElementConfig The DecomposableElement configuration.
+	 * @return The include attributes by name, only the attributes with a value are included.
+	 * @throws Exception
+	 */
+	private static HashMap<String, String> getIncludeAttributesWithValues(VTDNav nv, DecomposableElementConfig decomposableElementConfig) throws Exception {
+		HashMap<String, String> includeAttributesWithValues = new HashMap<String, String>();
+		if (decomposableElementConfig.getIncludeAttributeConfigs() != null) {
+			for (IncludeAttributeConfig includeAttributeConfig : decomposableElementConfig.getIncludeAttributeConfigs()) {
+				String subElementText = XMLUtils.getXPathText(nv, includeAttributeConfig.getXPath());
+				// Only include the attribute if it contains a value.
+				if (subElementText.length() > 0)
+					includeAttributesWithValues.put(includeAttributeConfig.getName(), subElementText);
+			}
+		}
+		return includeAttributesWithValues;
+	}
+	
+	/**
+	 * Get the xi:include element for a decomposed child.
+	 */
+	private static String getIncludeElement(TargetFileInfo currentFileInfo, Path childFileLocation, HashMap<String, String> includeAttributesWithValues) {
+		// Insert the include tag for the found object.
+		String actualRelativePath = currentFileInfo.FolderPath.relativize(childFileLocation).toString();
+		// If the file system separator is not a slash, replace the actualRelativePath file system separator with slash.
+		if (!currentFileInfo.FolderPath.getFileSystem().getSeparator().equals("/")) {
+			actualRelativePath = actualRelativePath.replace(currentFileInfo.FolderPath.getFileSystem().getSeparator(), "/");
+		}
+		// Construct the include tag contents.
+		StringBuffer includeElementStringBuffer = new StringBuffer();
+		includeElementStringBuffer.append(String.format("<xi:include href=\"%s\"", actualRelativePath));
+		// Loop through the include attributes to add the min the include tag.
+		for (String includeAttributeName : includeAttributesWithValues.keySet()) {
+			// Insert the include sub element in the include tag.
+			includeElementStringBuffer.append(String.format(" %s=\"%s\"", includeAttributeName, XMLUtils.escapeXMLChars(includeAttributesWithValues.get(includeAttributeName))));				
+		}
+		includeElementStringBuffer.append(" />");
+		return includeElementStringBuffer.toString();
+	}
+	
 	private static Path deriveTargetFolderPath(VTDNav nv, List<? extends AbstractConfigElementWithXPathAttributeAndCondition> configuredOptions, Path targetDirectoryPath, String parentElementFolderName) throws XPathParseException {
 		if (configuredOptions != null && configuredOptions.size() > 0) {
-	    	AutoPilot sap = new AutoPilot(nv);
 	    	for (AbstractConfigElementWithXPathAttributeAndCondition co : configuredOptions) {
 	    		logger.fine(String.format("Checking configured option '%s' with condition '%s'", co.getXPath(), co.getCondition()));
 	    		// Check whether the condition of the TargetFileName or TargetFolderName config is met.
-	    		if (co.getCondition() != null)
-	    			sap.selectXPath(co.getCondition());
-	    		if (co.getCondition() == null || sap.evalXPathToBoolean()) {
+	    		// The compiled expressions are cached, so they are only parsed once.
+	    		if (co.getCondition() == null || XPathCache.getAutoPilot(nv, co.getCondition()).evalXPathToBoolean()) {
 	    			// If the condition is met, try to get the value.
-	    			sap.selectXPath(co.getXPath());
-	    			String foundValue = sap.evalXPathToString();
+	    			String foundValue = XPathCache.getAutoPilot(nv, co.getXPath()).evalXPathToString();
 	    			// If the value is found go on.
 	    			if (foundValue != null && foundValue.length() > 0) {
 	    				// Strip the found value of illegal file characters.
@@ -880,18 +1960,15 @@ public class XmlDecomposer {
 		return targetDirectoryPath.resolve(parentElementFolderName);
 	}
 	
-	private TargetFileInfo deriveTargetFileAndFolderPath(VTDNav nv, List<? extends AbstractConfigElementWithXPathAttributeAndCondition> configuredOptions, Path targetDirectoryPath, String targetFileExtension, TreeSet<File> unallowedFiles) throws XPathParseException {
+	private TargetFileInfo deriveTargetFileAndFolderPath(VTDNav nv, List<? extends AbstractConfigElementWithXPathAttributeAndCondition> configuredOptions, Path targetDirectoryPath, String targetFileExtension, Predicate<TargetFileInfo> unallowedTarget) throws XPathParseException {
 		if (configuredOptions != null && configuredOptions.size() > 0) {
-	    	AutoPilot sap = new AutoPilot(nv);
 	    	for (AbstractConfigElementWithXPathAttributeAndCondition co : configuredOptions) {
 	    		logger.fine(String.format("Checking configured option '%s' with condition '%s'", co.getXPath(), co.getCondition()));
 	    		// Check whether the condition of the TargetFileName or TargetFolderName config is met.
-	    		if (co.getCondition() != null)
-	    			sap.selectXPath(co.getCondition());
-	    		if (co.getCondition() == null || sap.evalXPathToBoolean()) {
+	    		// The compiled expressions are cached, so they are only parsed once.
+	    		if (co.getCondition() == null || XPathCache.getAutoPilot(nv, co.getCondition()).evalXPathToBoolean()) {
 	    			// If the condition is met, try to get the value.
-	    			sap.selectXPath(co.getXPath());
-	    			String foundValue = sap.evalXPathToString();
+	    			String foundValue = XPathCache.getAutoPilot(nv, co.getXPath()).evalXPathToString();
 	    			// If the value is found go on.
 	    			if (foundValue != null && foundValue.length() > 0) {
 	    				// Strip the found value of illegal file characters.
@@ -913,13 +1990,13 @@ public class XmlDecomposer {
 	    				
 	    				// If there are no unallowedValues, return the found value.
 	    				// unallowedValues is always empty for TargetFolderName configurations.
-	    				if (unallowedFiles == null) {
+	    				if (unallowedTarget == null) {
 	    					logger.fine("There are no unallowed values, so returning found value.");
 	    					return fileAndFolderPath;
 	    				// Otherwise, check whether the value is unallowed, if not return the value.
 	    				} else {
 	    					// If the found file path is valid, return the found value (not the file name!).
-	    					if (!unallowedFiles.contains(fileAndFolderPath.FilePathWithoutChildren.toFile()) && !unallowedFiles.contains(fileAndFolderPath.FilePathWithChildren.toFile())) {
+	    					if (!unallowedTarget.test(fileAndFolderPath)) {
 	    						logger.fine("The resolved target file name doesn't exist yet, so returning value.");
 	    						return fileAndFolderPath;
 	    					} else {
@@ -939,10 +2016,264 @@ public class XmlDecomposer {
     	return null;
 	}
 	
+	/**
+	 * The state shared by the parts which are decomposed in parallel.
+	 * Every part has a key (the index of the part within each of its ancestors), which makes it possible to derive the order in which the parts would be written when decomposing sequentially.
+	 */
+	private class ParallelDecomposeState {
+		// The decomposed files by their path key, with the part and the key of the part.
+		private ConcurrentHashMap<String, DecomposedFile> _decomposedFiles = new ConcurrentHashMap<String, DecomposedFile>();
+		// The canonical paths of the folders of the decomposed files, used to derive the path keys.
+		private ConcurrentHashMap<Path, String> _canonicalFolderPaths = new ConcurrentHashMap<Path, String>();
+		// The checks whether a target file was already written, done while deriving the target file names.
+		private ConcurrentLinkedQueue<UnallowedTargetCheck> _unallowedTargetChecks = new ConcurrentLinkedQueue<UnallowedTargetCheck>();
+		private volatile boolean _fileWrittenTwice = false;
+		
+		/**
+		 * Check whether the file with or without children of a target is already written (or claimed by a sibling) and record the check.
+		 */
+		public boolean isUnallowedTarget(TargetFileInfo target, DecomposedFileSet siblingFiles, int[] partKey) {
+			File fileWithoutChildren = target.FilePathWithoutChildren.toFile();
+			File fileWithChildren = target.FilePathWithChildren.toFile();
+			boolean isUnallowed = siblingFiles.contains(fileWithoutChildren) || siblingFiles.contains(fileWithChildren) || _decomposedFiles.containsKey(DecomposedFileSet.getPathKey(fileWithoutChildren, _canonicalFolderPaths)) || _decomposedFiles.containsKey(DecomposedFileSet.getPathKey(fileWithChildren, _canonicalFolderPaths));
+			_unallowedTargetChecks.add(new UnallowedTargetCheck(fileWithoutChildren, fileWithChildren, partKey, isUnallowed));
+			return isUnallowed;
+		}
+		
+		public void addDecomposedPart(File file, DocumentPart part, int[] partKey) {
+			if (_decomposedFiles.putIfAbsent(DecomposedFileSet.getPathKey(file, _canonicalFolderPaths), new DecomposedFile(file, part, partKey)) != null)
+				_fileWrittenTwice = true;
+		}
+		
+		/**
+		 * Get the decomposed files in the order in which they are written when decomposing sequentially (a part after its children).
+		 */
+		public List<DecomposedFile> getDecomposedFiles() {
+			return _decomposedFiles.values().stream().sorted((f1, f2) -> compareWriteOrder(f1.PartKey, f2.PartKey)).collect(Collectors.toList());
+		}
+		
+		private int compareWriteOrder(int[] partKey, int[] otherPartKey) {
+			for (int i = 0; i < partKey.length && i < otherPartKey.length; i++) {
+				if (partKey[i] != otherPartKey[i])
+					return Integer.compare(partKey[i], otherPartKey[i]);
+			}
+			// The descendant is written before its ancestor.
+			return Integer.compare(otherPartKey.length, partKey.length);
+		}
+		
+		/**
+		 * Validate all recorded checks against the files which would have been written before the check when decomposing sequentially.
+		 * When decomposing sequentially, a part is written after its children, so at the moment of the check all parts before the checking part in document order are written, except its ancestors.
+		 * @return Whether all checks had the same outcome as when decomposing sequentially.
+		 */
+		public boolean isEqualToSequential() {
+			if (_fileWrittenTwice)
+				return false;
+			for (UnallowedTargetCheck unallowedTargetCheck : _unallowedTargetChecks) {
+				boolean isSequentiallyUnallowed = isWrittenBefore(unallowedTargetCheck.FileWithoutChildren, unallowedTargetCheck.PartKey) || isWrittenBefore(unallowedTargetCheck.FileWithChildren, unallowedTargetCheck.PartKey);
+				if (isSequentiallyUnallowed != unallowedTargetCheck.IsUnallowed) {
+					logger.fine(String.format("The check on file '%s' differs from the sequential decompose.", unallowedTargetCheck.FileWithoutChildren));
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		/**
+		 * Check whether a file is written before a part is named when decomposing sequentially.
+		 */
+		private boolean isWrittenBefore(File file, int[] checkingPartKey) {
+			DecomposedFile decomposedFile = _decomposedFiles.get(DecomposedFileSet.getPathKey(file, _canonicalFolderPaths));
+			return decomposedFile != null && isWrittenBefore(decomposedFile.PartKey, checkingPartKey);
+		}
+		
+		/**
+		 * Check whether a part is written before another part is named when decomposing sequentially.
+		 * This is the case when the part is before the other part in document order and it's not one of its ancestors.
+		 */
+		private boolean isWrittenBefore(int[] writingPartKey, int[] checkingPartKey) {
+			for (int i = 0; i < writingPartKey.length && i < checkingPartKey.length; i++) {
+				if (writingPartKey[i] != checkingPartKey[i])
+					return writingPartKey[i] < checkingPartKey[i];
+			}
+			// One part is an ancestor of the other.
+			return false;
+		}
+	}
+	
+	private class DecomposedFile {
+		public File File;
+		public DocumentPart Part;
+		public int[] PartKey;
+		
+		public DecomposedFile(File file, DocumentPart part, int[] partKey) {
+			this.File = file;
+			this.Part = part;
+			this.PartKey = partKey;
+		}
+	}
+	
+	private class UnallowedTargetCheck {
+		public File FileWithoutChildren;
+		public File FileWithChildren;
+		public int[] PartKey;
+		public boolean IsUnallowed;
+		
+		public UnallowedTargetCheck(File fileWithoutChildren, File fileWithChildren, int[] partKey, boolean isUnallowed) {
+			this.FileWithoutChildren = fileWithoutChildren;
+			this.FileWithChildren = fileWithChildren;
+			this.PartKey = partKey;
+			this.IsUnallowed = isUnallowed;
+		}
+	}
+	
+	/**
+	 * A decomposable element found in the single pass decompose, which becomes a part when it's selected as child part.
+	 */
+	private class SinglePassPart {
+		public BookMark ElementPosition;
+		public int Offset;
+		public int EndOffset;
+		// The decomposable elements within the element (in the order of the XPath evaluation).
+		public List<SinglePassPart> DecomposableElements = new ArrayList<SinglePassPart>();
+		public TargetFileInfo FileInfo;
+		public HashMap<String, String> IncludeAttributesWithValues;
+		public String ObjectId;
+		// The path of the written file.
+		public Path FilePath;
+		
+		public SinglePassPart(BookMark elementPosition, int offset, int length) {
+			this.ElementPosition = elementPosition;
+			this.Offset = offset;
+			this.EndOffset = offset + length;
+		}
+	}
+	
+	private class ParallelChildPart {
+		public int ElementIndex;
+		public int ElementOffset;
+		public int ElementLength;
+		public HashMap<String, String> IncludeAttributesWithValues;
+		public DocumentPartTask ChildPartTask;
+		
+		public ParallelChildPart(int elementIndex, int elementOffset, int elementLength, HashMap<String, String> includeAttributesWithValues, DocumentPartTask childPartTask) {
+			this.ElementIndex = elementIndex;
+			this.ElementOffset = elementOffset;
+			this.ElementLength = elementLength;
+			this.IncludeAttributesWithValues = includeAttributesWithValues;
+			this.ChildPartTask = childPartTask;
+		}
+	}
+	
+	/**
+	 * The contents of a part, which are written to the file of the part.
+	 */
+	private class DocumentPart {
+		public byte[] Contents;
+		public int ExtractedChildCount;
+		public String ObjectId;
+		
+		public DocumentPart(byte[] contents, int extractedChildCount, String objectId) {
+			this.Contents = contents;
+			this.ExtractedChildCount = extractedChildCount;
+			this.ObjectId = objectId;
+		}
+	}
+	
+	/**
+	 * The fragment of a child part in the document, which is replaced by the include element when the part is written.
+	 */
+	private class IncludedFragment {
+		public int Offset;
+		public int Length;
+		public String IncludeElement;
+		
+		public IncludedFragment(int offset, int length, String includeElement) {
+			this.Offset = offset;
+			this.Length = length;
+			this.IncludeElement = includeElement;
+		}
+	}
+	
+	/**
+	 * The fragment of a child part (or of a window with child parts) in a large document, which is replaced when the part is written.
+	 */
+	private class LargeDocumentFragment {
+		public long Offset;
+		public long Length;
+		public byte[] Contents;
+		
+		public LargeDocumentFragment(long offset, long length, byte[] contents) {
+			this.Offset = offset;
+			this.Length = length;
+			this.Contents = contents;
+		}
+	}
+	
+	/**
+	 * Fork-join task to decompose a child part.
+	 */
+	private class DocumentPartTask extends RecursiveTask<Path> {
+		private static final long serialVersionUID = 1L;
+		
+		private byte[] _xmlFragmentBytes;
+		private VTDNav _documentNv;
+		private int _partElementIndex = -1;
+		private Charset _fileCharset;
+		private TargetFileInfo _fileInfo;
+		private int _depth;
+		private DecomposableElementConfig _decomposableElementConfig;
+		private PartFileWriter _partFileWriter;
+		private ParallelDecomposeState _parallelDecomposeState;
+		private int[] _partKey;
+		
+		public DocumentPartTask(byte[] xmlFragmentBytes, Charset fileCharset, TargetFileInfo fileInfo, int depth, DecomposableElementConfig decomposableElementConfig, PartFileWriter partFileWriter, ParallelDecomposeState parallelDecomposeState, int[] partKey) {
+			this._xmlFragmentBytes = xmlFragmentBytes;
+			this._fileCharset = fileCharset;
+			this._fileInfo = fileInfo;
+			this._depth = depth;
+			this._decomposableElementConfig = decomposableElementConfig;
+			this._partFileWriter = partFileWriter;
+			this._parallelDecomposeState = parallelDecomposeState;
+			this._partKey = partKey;
+		}
+		
+		public DocumentPartTask(VTDNav documentNv, int partElementIndex, Charset fileCharset, TargetFileInfo fileInfo, int depth, DecomposableElementConfig decomposableElementConfig, PartFileWriter partFileWriter, ParallelDecomposeState parallelDecomposeState, int[] partKey) {
+			this(null, fileCharset, fileInfo, depth, decomposableElementConfig, partFileWriter, parallelDecomposeState, partKey);
+			this._documentNv = documentNv;
+			this._partElementIndex = partElementIndex;
+		}
+		
+		@Override
+		protected Path compute() {
+			try {
+				// If the part is in the document, decompose it on the document.
+				if (_documentNv != null)
+					return parseAndWriteDocumentParts(_documentNv, _partElementIndex, _fileCharset, _fileInfo, _depth, _decomposableElementConfig, null, _partFileWriter, _parallelDecomposeState, _partKey);
+				// Create a VTDNav for navigating the document.
+				VTDNav partNv;
+				try {
+					partNv = XMLUtils.getVTDNav(_xmlFragmentBytes, false);
+				} catch (Exception e) {
+					throw new Exception(String.format("Error while parsing Xml Part: %s", e.getMessage()), e);
+				}
+				// The fragment bytes are not needed anymore.
+				_xmlFragmentBytes = null;
+				return parseAndWriteDocumentParts(partNv, -1, _fileCharset, _fileInfo, _depth, _decomposableElementConfig, null, _partFileWriter, _parallelDecomposeState, _partKey);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException(e.getMessage(), e);
+			}
+		}
+	}
+	
 	private class TargetFileInfo {
 		public Path FolderPath;
 		public Path FilePathWithoutChildren;
 		public Path FilePathWithChildren;
+		// The hash of the fragment of the part when decomposing incrementally (see DecomposeManifest.getFragmentHash).
+		public String FragmentHash;
 		
 		public String FileNameWithoutExtension;
 		public String FileExtension;
@@ -1,9 +1,21 @@
 package com.xbreeze.xml.decompose.config;
 
+import jakarta.xml.bind.annotation.XmlAttribute;
+
 import com.xbreeze.xml.config.AbstractConfigElementWithXPathAttribute;
 
 public class ChangeDetectionConfig extends AbstractConfigElementWithXPathAttribute {
+	private Boolean _fingerprint = false;
+	
+	@XmlAttribute(name = "fingerprint", required = false)
+	public Boolean getFingerprint() {
+		return _fingerprint;
+	}
 
+	public void setFingerprint(Boolean fingerprint) {
+		_fingerprint = fingerprint;
+	}
+	
 	public ChangeDetectionConfig() {
 		super();
 	}
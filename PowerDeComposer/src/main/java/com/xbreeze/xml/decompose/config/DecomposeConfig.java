@@ -1,5 +1,6 @@
 package com.xbreeze.xml.decompose.config;
 
+import java.nio.file.Paths;
 import java.util.List;
 
 import jakarta.xml.bind.annotation.XmlAccessType;
@@ -21,6 +22,49 @@ public class DecomposeConfig {
 	@XmlAttribute(name = "formalizeExtendedAttributes", required = false)
 	private Boolean _formalizeExtendedAttributes = true;
 	
+	// The number of threads writing the decomposed files to disk.
+	// By default this is 0, which means the files are written by the decomposing thread.
+	@XmlAttribute(name = "writerCount", required = false)
+	private Integer _writerCount = 0;
+	
+	// The number of threads decomposing the parts of the model.
+	// By default this is 1, which means the parts are decomposed one after another.
+	@XmlAttribute(name = "parallelism", required = false)
+	private Integer _parallelism = 1;
+	
+	// Whether to skip writing files which are unchanged (so the existing file has the same contents).
+	// By default this is disabled, which means all files are written.
+	@XmlAttribute(name = "skipUnchangedFiles", required = false)
+	private Boolean _skipUnchangedFiles = false;
+	
+	// The engine which decomposes the parts of the model.
+	// By default this is default, which selects the decomposable elements again in every part. Choose singlePass to select them once on the complete model.
+	@XmlAttribute(name = "engine", required = false)
+	private DecomposeEngine _engine = DecomposeEngine.DEFAULT;
+	
+	// The file size (in bytes) above which the model is decomposed as large document, using a memory-mapped parser instead of reading it into memory.
+	// By default this is the largest model which can be read into memory, so only models which can't be decomposed otherwise are decomposed as large document.
+	@XmlAttribute(name = "largeDocumentThreshold", required = false)
+	private Long _largeDocumentThreshold = (long) (Integer.MAX_VALUE - 8);
+	
+	// The directory in which the VTD indexes of parsed models are cached, so a model which didn't change doesn't need to be parsed again (no caching when not set).
+	@XmlAttribute(name = "indexCacheDirectory", required = false)
+	private String _indexCacheDirectory;
+	
+	// The maximum total size (in bytes) of the cached VTD indexes, when exceeded the least recently used indexes are removed.
+	@XmlAttribute(name = "indexCacheSize", required = false)
+	private Long _indexCacheSize = 1L << 30;
+	
+	// Whether to decompose incrementally, so parts which are unchanged since the former decompose (according to the manifest) are not decomposed again.
+	// By default this is disabled, which means all parts are decomposed.
+	@XmlAttribute(name = "incremental", required = false)
+	private Boolean _incremental = false;
+	
+	// The directory in which the state of the former decompose (like the manifest) is stored, which is outside the decomposed model so it isn't committed to version control.
+	// By default this is the folder .powerdecomposer/state in the home directory of the user.
+	@XmlAttribute(name = "stateDirectory", required = false)
+	private String _stateDirectory = Paths.get(System.getProperty("user.home"), ".powerdecomposer", "state").toString();
+	
 	private ChangeDetectionConfig _changeDetectionConfig;
 	private List<IdentifierReplacementConfig> _identifierReplacementConfigs;
 	private List<NodeRemovalConfig> _nodeRemovalConfigs;
@@ -45,6 +89,78 @@ public class DecomposeConfig {
 	public void setFormalizeExtendedAttributes(Boolean formalizeExtendedAttributes) {
 		this._formalizeExtendedAttributes = formalizeExtendedAttributes;
 	}
+	
+	public Integer getWriterCount() {
+		return _writerCount;
+	}
+	
+	public void setWriterCount(Integer writerCount) {
+		this._writerCount = writerCount;
+	}
+	
+	public Integer getParallelism() {
+		return _parallelism;
+	}
+	
+	public void setParallelism(Integer parallelism) {
+		this._parallelism = parallelism;
+	}
+	
+	public Boolean skipUnchangedFiles() {
+		return _skipUnchangedFiles;
+	}
+	
+	public void setSkipUnchangedFiles(Boolean skipUnchangedFiles) {
+		this._skipUnchangedFiles = skipUnchangedFiles;
+	}
+	
+	public DecomposeEngine getEngine() {
+		return _engine;
+	}
+	
+	public void setEngine(DecomposeEngine engine) {
+		this._engine = engine;
+	}
+	
+	public Long getLargeDocumentThreshold() {
+		return _largeDocumentThreshold;
+	}
+	
+	public void setLargeDocumentThreshold(Long largeDocumentThreshold) {
+		this._largeDocumentThreshold = largeDocumentThreshold;
+	}
+	
+	public String getIndexCacheDirectory() {
+		return _indexCacheDirectory;
+	}
+	
+	public void setIndexCacheDirectory(String indexCacheDirectory) {
+		this._indexCacheDirectory = indexCacheDirectory;
+	}
+	
+	public Long getIndexCacheSize() {
+		return _indexCacheSize;
+	}
+	
+	public void setIndexCacheSize(Long indexCacheSize) {
+		this._indexCacheSize = indexCacheSize;
+	}
+	
+	public Boolean getIncremental() {
+		return _incremental;
+	}
+	
+	public void setIncremental(Boolean incremental) {
+		this._incremental = incremental;
+	}
+	
+	public String getStateDirectory() {
+		return _stateDirectory;
+	}
+	
+	public void setStateDirectory(String stateDirectory) {
+		this._stateDirectory = stateDirectory;
+	}
 
 	@XmlElement(name = "ChangeDetection")
 	public ChangeDetectionConfig getChangeDetectionConfig() {
@@ -0,0 +1,44 @@
+package com.xbreeze.xml.decompose.config;
+
+import jakarta.xml.bind.annotation.XmlEnum;
+import jakarta.xml.bind.annotation.XmlEnumValue;
+import jakarta.xml.bind.annotation.XmlType;
+
+/**
+ * The engine which decomposes the parts of the model.
+ */
+@XmlType(name = "decomposeEngine")
+@XmlEnum
+public enum DecomposeEngine {
+	// Select the decomposable elements again in every part.
+	@XmlEnumValue("default")
+	DEFAULT("default"),
+
+	// Select the decomposable elements once on the complete model.
+	@XmlEnumValue("singlePass")
+	SINGLE_PASS("singlePass");
+
+	// The value of the engine attribute in the config file.
+	private final String _value;
+
+	private DecomposeEngine(String value) {
+		this._value = value;
+	}
+
+	public String getValue() {
+		return _value;
+	}
+
+	/**
+	 * Get the engine for the value of the engine attribute in the config file.
+	 * @param value The value of the attribute.
+	 * @return The engine, or null when there is no engine with the value.
+	 */
+	public static DecomposeEngine fromValue(String value) {
+		for (DecomposeEngine engine : values()) {
+			if (engine._value.equals(value))
+				return engine;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Client which sends a request to a PowerDeComposerServer and prints the response.
+ */
+public class PowerDeComposerClient {
+	private int _port;
+	private String _token;
+	
+	/**
+	 * Constructor, which reads the token of the server from the token file in the default token directory.
+	 * @param port The port the PowerDeComposerServer listens on.
+	 * @throws Exception When the token file can't be read.
+	 */
+	public PowerDeComposerClient(int port) throws Exception {
+		this(port, readToken(PowerDeComposerServer.DEFAULT_TOKEN_DIRECTORY_PATH, port));
+	}
+	
+	/**
+	 * Constructor.
+	 * @param port The port the PowerDeComposerServer listens on.
+	 * @param token The token of the server.
+	 */
+	public PowerDeComposerClient(int port, String token) {
+		this._port = port;
+		this._token = token;
+	}
+	
+	/**
+	 * Read the token of the server on a port from its token file.
+	 * @param tokenDirectoryPath The directory of the token files.
+	 * @param port The port of the server.
+	 * @return The token of the server.
+	 * @throws Exception When the token file can't be read.
+	 */
+	public static String readToken(Path tokenDirectoryPath, int port) throws Exception {
+		Path tokenFilePath = PowerDeComposerServer.getTokenFilePath(tokenDirectoryPath, port);
+		try {
+			return new String(Files.readAllBytes(tokenFilePath), StandardCharsets.UTF_8).trim();
+		} catch (IOException e) {
+			throw new Exception(String.format("Can't read the token file '%s' of the server on port %d, is the server running as this user?", tokenFilePath, port), e);
+		}
+	}
+	
+	/**
+	 * Send a request to the server, print the log output of the request and return the exit code.
+	 * @param arguments The arguments of the request (the same as on the command line, or shutdown).
+	 * @param output The stream to print the log output of the request to.
+	 * @return The exit code of the request (0 is success, 1 is failure).
+	 * @throws Exception When the server can't be reached.
+	 */
+	public int execute(String[] arguments, PrintStream output) throws Exception {
+		// The server resolves relative locations against its own working directory, so send absolute locations.
+		String[] requestArguments = new String[arguments.length];
+		for (int i = 0; i < arguments.length; i++) {
+			if (arguments[i].contains(PowerDeComposerServer.ARGUMENT_SEPARATOR) || arguments[i].contains("\n") || arguments[i].contains("\r"))
+				throw new Exception(String.format("The argument '%s' can't contain tabs or line breaks.", arguments[i]));
+			requestArguments[i] = (i == 0) ? arguments[i] : Paths.get(arguments[i].trim()).toAbsolutePath().toString();
+		}
+		
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), _port)) {
+			Writer requestWriter = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+			requestWriter.write(_token);
+			requestWriter.write("\n");
+			requestWriter.write(String.join(PowerDeComposerServer.ARGUMENT_SEPARATOR, requestArguments));
+			requestWriter.write("\n");
+			requestWriter.flush();
+			
+			// Print the response until the exit code is received.
+			BufferedReader responseReader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			String responseLine;
+			while ((responseLine = responseReader.readLine()) != null) {
+				if (responseLine.startsWith(PowerDeComposerServer.EXIT_CODE_PREFIX))
+					return Integer.parseInt(responseLine.substring(PowerDeComposerServer.EXIT_CODE_PREFIX.length()).trim());
+				output.println(responseLine);
+			}
+			throw new Exception("The server closed the connection without an exit code.");
+		} catch (IOException e) {
+			throw new Exception(String.format("Can't send the request to the server on port %d: %s", _port, e.getMessage()), e);
+		}
+	}
+}
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.server;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+import com.xbreeze.xml.Executor;
+import com.xbreeze.xml.config.PowerDeComposerConfig;
+import com.xbreeze.xml.utils.FileUtils;
+
+/**
+ * Server which executes compose and decompose requests in one long-running process.
+ * This way the JVM startup, class loading, config parsing and JIT warm-up are shared by all requests.
+ * The server listens on a port of the loopback address and handles one request per connection, one request after another:
+ * - The request starts with a line with the token of the server, which is written to a token file only the user can read (see getTokenFilePath).
+ *   This way other users of the machine can't execute requests as the user running the server.
+ * - The token is followed by one line with the arguments of the command line call (for example compose, xml-source-file, xml-target-file and config-file-location) separated by tabs.
+ * - The response is the log output of the request, followed by a line with the exit code (see EXIT_CODE_PREFIX), after which the connection is closed.
+ * The locations in the request are resolved against the working directory of the server, so clients should send absolute locations.
+ * The request shutdown stops the server.
+ * A client which doesn't send its request within the request timeout is disconnected, so it can't block the other requests.
+ */
+public class PowerDeComposerServer implements Closeable {
+	private static final Logger logger = Logger.getGlobal();
+	
+	// The separator of the arguments in a request.
+	public static final String ARGUMENT_SEPARATOR = "\t";
+	// The prefix of the last line of a response, which is followed by the exit code (0 is success, 1 is failure).
+	public static final String EXIT_CODE_PREFIX = "exit-code: ";
+	// The request to stop the server.
+	public static final String SHUTDOWN_REQUEST = "shutdown";
+	// The default directory of the token files.
+	public static final Path DEFAULT_TOKEN_DIRECTORY_PATH = Paths.get(System.getProperty("user.home"), ".powerdecomposer");
+	// The default time in milliseconds a client has to send its request.
+	public static final int DEFAULT_REQUEST_TIMEOUT = 10000;
+	
+	private ServerSocket _serverSocket;
+	private volatile boolean _stopped = false;
+	private Path _tokenFilePath;
+	private String _token;
+	private int _requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+	
+	/**
+	 * Constructor, which starts listening on the port and writes the token file in the default token directory.
+	 * @param port The port to listen on, or 0 to use a free port (see getPort).
+	 * @throws Exception When the server can't listen on the port or the token file can't be written.
+	 */
+	public PowerDeComposerServer(int port) throws Exception {
+		this(port, DEFAULT_TOKEN_DIRECTORY_PATH);
+	}
+	
+	/**
+	 * Constructor, which starts listening on the port and writes the token file.
+	 * @param port The port to listen on, or 0 to use a free port (see getPort).
+	 * @param tokenDirectoryPath The directory to write the token file in.
+	 * @throws Exception When the server can't listen on the port or the token file can't be written.
+	 */
+	public PowerDeComposerServer(int port, Path tokenDirectoryPath) throws Exception {
+		try {
+			this._serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		} catch (IOException e) {
+			throw new Exception(String.format("Can't start the server on port %d: %s", port, e.getMessage()), e);
+		}
+		// Generate a new token for every start of the server, so a token of a former server can't be used.
+		byte[] tokenBytes = new byte[32];
+		new SecureRandom().nextBytes(tokenBytes);
+		this._token = FileUtils.getHexString(tokenBytes);
+		this._tokenFilePath = getTokenFilePath(tokenDirectoryPath, getPort());
+		try {
+			writeTokenFile(this._tokenFilePath, this._token);
+		} catch (IOException e) {
+			this._serverSocket.close();
+			throw new Exception(String.format("Can't write the token file '%s': %s", this._tokenFilePath, e.getMessage()), e);
+		}
+	}
+	
+	/**
+	 * Get the location of the token file of the server on a port.
+	 * @param tokenDirectoryPath The directory of the token files.
+	 * @param port The port of the server.
+	 * @return The location of the token file.
+	 */
+	public static Path getTokenFilePath(Path tokenDirectoryPath, int port) {
+		return tokenDirectoryPath.resolve(String.format("server-%d.token", port));
+	}
+	
+	/**
+	 * Write the token file, which only the user running the server can read.
+	 * @param tokenFilePath The location of the token file.
+	 * @param token The token.
+	 * @throws IOException
+	 */
+	private static void writeTokenFile(Path tokenFilePath, String token) throws IOException {
+		Files.createDirectories(tokenFilePath.getParent());
+		// Create a new file, so the permissions are set before the token is written.
+		Files.deleteIfExists(tokenFilePath);
+		if (Files.getFileStore(tokenFilePath.getParent()).supportsFileAttributeView(PosixFileAttributeView.class))
+			Files.createFile(tokenFilePath, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		else
+			// Without POSIX permissions (on Windows) the file inherits the permissions of the directory, the user home directory is only accessible by the user.
+			Files.createFile(tokenFilePath);
+		Files.write(tokenFilePath, token.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Get the port the server listens on.
+	 */
+	public int getPort() {
+		return _serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * Get the time in milliseconds a client has to send its request.
+	 */
+	public int getRequestTimeout() {
+		return _requestTimeout;
+	}
+	
+	/**
+	 * Set the time in milliseconds a client has to send its request, after which the connection is closed.
+	 * @param requestTimeout The request timeout in milliseconds.
+	 */
+	public void setRequestTimeout(int requestTimeout) {
+		this._requestTimeout = requestTimeout;
+	}
+	
+	/**
+	 * Handle requests until the server is stopped (using the shutdown request or close).
+	 */
+	public void run() {
+		logger.info(String.format("PowerDeComposer server listening on port %d", getPort()));
+		while (!_stopped) {
+			try (Socket socket = _serverSocket.accept()) {
+				// Don't wait forever on a client which doesn't send its request, since the requests are handled one after another.
+				socket.setSoTimeout(_requestTimeout);
+				handleRequest(socket);
+			} catch (SocketTimeoutException e) {
+				logger.warning(String.format("Closed a connection which didn't send a request within %d ms.", _requestTimeout));
+			} catch (SocketException e) {
+				// The server socket is closed when the server is stopped.
+				if (!_stopped)
+					logger.warning(String.format("Error while handling a request: %s", e.getMessage()));
+			} catch (IOException e) {
+				logger.warning(String.format("Error while handling a request: %s", e.getMessage()));
+			}
+		}
+		logger.info("PowerDeComposer server stopped.");
+	}
+	
+	/**
+	 * Handle a request, the log output of the request is sent back to the client followed by the exit code.
+	 * @param socket The socket of the connection.
+	 * @throws IOException
+	 */
+	private void handleRequest(Socket socket) throws IOException {
+		BufferedReader requestReader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		String token = requestReader.readLine();
+		String request = requestReader.readLine();
+		if (token == null || request == null)
+			return;
+		
+		OutputStream responseStream = socket.getOutputStream();
+		Writer responseWriter = new OutputStreamWriter(responseStream, StandardCharsets.UTF_8);
+		// Reject the request when the token doesn't match, without executing it.
+		if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), _token.getBytes(StandardCharsets.UTF_8))) {
+			logger.warning("Rejected a request with an invalid token.");
+			responseWriter.write(String.format("An error ocurred while running PowerDeComposer: %n%s%n", "The token of the request is invalid."));
+			responseWriter.write(String.format("%s%d%n", EXIT_CODE_PREFIX, 1));
+			responseWriter.flush();
+			return;
+		}
+		
+		// Send the log output of the request to the client, the requests are handled one after another so all logging is part of the request.
+		StreamHandler responseHandler = new StreamHandler(responseStream, new SimpleFormatter());
+		responseHandler.setEncoding(StandardCharsets.UTF_8.name());
+		responseHandler.setLevel(Level.ALL);
+		logger.addHandler(responseHandler);
+		int exitCode = 0;
+		String errorMessage = null;
+		try {
+			executeRequest(request.split(ARGUMENT_SEPARATOR, -1));
+		} catch (Exception e) {
+			exitCode = 1;
+			errorMessage = e.getMessage();
+			logger.severe(String.format("Error while executing request '%s': %s", request.replace(ARGUMENT_SEPARATOR, " "), e.getMessage()));
+		} finally {
+			logger.removeHandler(responseHandler);
+			responseHandler.flush();
+		}
+		// Report the error like the command line does.
+		if (errorMessage != null)
+			responseWriter.write(String.format("An error ocurred while running PowerDeComposer: %n%s%n", errorMessage));
+		responseWriter.write(String.format("%s%d%n", EXIT_CODE_PREFIX, exitCode));
+		responseWriter.flush();
+	}
+	
+	/**
+	 * Execute a request.
+	 * @param arguments The arguments of the request.
+	 * @throws Exception When the request fails.
+	 */
+	private void executeRequest(String[] arguments) throws Exception {
+		if (arguments.length == 1 && arguments[0].equalsIgnoreCase(SHUTDOWN_REQUEST)) {
+			logger.info("Stopping PowerDeComposer server...");
+			close();
+		} else if (arguments.length == 3 || arguments.length == 4) {
+			// The config is only parsed again when the config file changed since the former request.
+			PowerDeComposerConfig pdcConfig = PowerDeComposerConfig.getCachedConfig((arguments.length == 4) ? new File(arguments[3].trim()) : null);
+			Executor.executeOperation(arguments[0], arguments[1].trim(), arguments[2].trim(), pdcConfig);
+		} else {
+			throw new Exception("Expecting exactly 3 or 4 arguments: (decompose, xml-file-path, target-directory[, config-file-location]) or (compose, xml-source-file, xml-target-file[, config-file-location]), or 1 argument: (shutdown).");
+		}
+	}
+	
+	/**
+	 * Stop the server, a request which is being handled is finished first.
+	 */
+	@Override
+	public void close() throws IOException {
+		_stopped = true;
+		_serverSocket.close();
+		// The token can't be used anymore, so remove the token file.
+		Files.deleteIfExists(_tokenFilePath);
+	}
+}
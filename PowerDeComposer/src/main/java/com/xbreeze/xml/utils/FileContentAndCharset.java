@@ -1,12 +1,15 @@
 package com.xbreeze.xml.utils;
 
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 public class FileContentAndCharset {
 	private static final Logger logger = Logger.getGlobal();
 	
 	private String _fileContents;
+	// The bytes of the file (in the file charset), when the contents are read as bytes the String of the contents is only created when it's requested.
+	private byte[] _fileBytes;
 	private Charset _fileCharset;
 	private String _lineSeparator;
 	
@@ -14,8 +17,16 @@ public class FileContentAndCharset {
 		this._fileContents = fileContents;
 		this._fileCharset = fileCharset;
 	}
+	
+	public FileContentAndCharset(byte[] fileBytes, Charset fileCharset) {
+		this._fileBytes = fileBytes;
+		this._fileCharset = fileCharset;
+	}
 
 	public String getFileContents() {
+		// When the contents are read as bytes, decode them (the String isn't kept, to limit the memory usage).
+		if (this._fileContents == null)
+			return new String(this._fileBytes, this._fileCharset);
 		return this._fileContents;
 	}
 
@@ -31,17 +42,34 @@ public class FileContentAndCharset {
 	public String getLineSeparator() throws Exception {
 		// If the line separator is not set yet, derive it from the file contents.
 		if (this._lineSeparator == null) {
-			// Find the first line-feed character.
-			int firstNewLineIndex = this._fileContents.indexOf('\n');
-			
-			if (firstNewLineIndex == -1)
-				throw new Exception("Cannot detect line separator. No line-feed character found in file!");
-			
-			// Check whether there is a carriage return before the line-feed character.
-			if (this._fileContents.charAt(firstNewLineIndex - 1) == '\r') {
-				this._lineSeparator = "\r\n";				
+			// When the contents are read as bytes and the charset encodes the line separator characters as single bytes, derive it from the bytes.
+			if (this._fileContents == null && Arrays.equals("\r\n".getBytes(this._fileCharset), new byte[] { '\r', '\n' })) {
+				// Find the first line-feed character.
+				int firstNewLineIndex = -1;
+				for (int i = 0; i < this._fileBytes.length && firstNewLineIndex == -1; i++) {
+					if (this._fileBytes[i] == '\n')
+						firstNewLineIndex = i;
+				}
+				
+				if (firstNewLineIndex == -1)
+					throw new Exception("Cannot detect line separator. No line-feed character found in file!");
+				
+				// Check whether there is a carriage return before the line-feed character.
+				this._lineSeparator = (firstNewLineIndex > 0 && this._fileBytes[firstNewLineIndex - 1] == '\r') ? "\r\n" : "\n";
 			} else {
-				this._lineSeparator = "\n";
+				String fileContents = getFileContents();
+				// Find the first line-feed character.
+				int firstNewLineIndex = fileContents.indexOf('\n');
+				
+				if (firstNewLineIndex == -1)
+					throw new Exception("Cannot detect line separator. No line-feed character found in file!");
+				
+				// Check whether there is a carriage return before the line-feed character.
+				if (firstNewLineIndex > 0 && fileContents.charAt(firstNewLineIndex - 1) == '\r') {
+					this._lineSeparator = "\r\n";				
+				} else {
+					this._lineSeparator = "\n";
+				}
 			}
 			logger.fine(String.format("Found line separator: %s", this._lineSeparator.replace("\n", "[LF]").replace("\r", "[CR]")));
 		}
@@ -49,6 +77,9 @@ public class FileContentAndCharset {
 	}
 	
 	public byte[] getBytes() {
+		// When the contents are read as bytes, they are returned as is (without creating a copy).
+		if (this._fileBytes != null)
+			return this._fileBytes;
 		// Currently the encoding is set to US_ASCII, cause this solves the issue for special characters and doesn't seem to break anything.
 		// Question is asked to the vtd-gen developer if this is a bug in vtg-gen.
 		// https://stackoverflow.com/questions/51507388/vtd-xml-element-fragment-incorrect
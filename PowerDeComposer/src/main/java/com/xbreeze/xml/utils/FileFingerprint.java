@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Fingerprint of a file, which is used to detect whether a file changed since the fingerprint was taken.
+ * The fingerprint consists of the size, modification time and content checksum (CRC32C) of the file.
+ */
+public class FileFingerprint {
+	// A file which is modified within this interval before the fingerprint was stored could have been modified again within the precision of the modification time, so the checksum is compared for it.
+	public static final long MODIFICATION_TIME_PRECISION = 2000;
+	
+	private File _file;
+	private long _size;
+	private long _modificationTime;
+	// The checksum is calculated on first use, since the file needs to be read for it.
+	private Integer _checksum;
+	
+	/**
+	 * Constructor.
+	 * The size and modification time of the file are taken at this point, the checksum is only calculated when it's needed.
+	 * @param file The file.
+	 */
+	public FileFingerprint(File file) {
+		this._file = file;
+		this._size = file.length();
+		this._modificationTime = file.lastModified();
+	}
+	
+	private FileFingerprint(long size, long modificationTime, int checksum) {
+		this._size = size;
+		this._modificationTime = modificationTime;
+		this._checksum = checksum;
+	}
+	
+	/**
+	 * Parse a stored fingerprint, which is in the first three columns (see toLine).
+	 * @param fingerprintColumns The columns.
+	 * @return The fingerprint.
+	 * @throws Exception When the columns don't contain a valid fingerprint.
+	 */
+	public static FileFingerprint fromColumns(String[] fingerprintColumns) throws Exception {
+		if (fingerprintColumns.length < 3)
+			throw new Exception(String.format("Invalid fingerprint '%s'.", String.join(";", fingerprintColumns)));
+		try {
+			return new FileFingerprint(Long.parseLong(fingerprintColumns[0]), Long.parseLong(fingerprintColumns[1]), Integer.parseUnsignedInt(fingerprintColumns[2], 16));
+		} catch (NumberFormatException e) {
+			throw new Exception(String.format("Invalid fingerprint '%s'.", String.join(";", fingerprintColumns)));
+		}
+	}
+	
+	/**
+	 * Get the fingerprint as line to store, with the size, modification time and checksum separated by a semicolon.
+	 * @return The line.
+	 * @throws IOException
+	 */
+	public String toLine() throws IOException {
+		return String.format("%d;%d;%08x", _size, _modificationTime, getChecksum());
+	}
+	
+	/**
+	 * Get the checksum of the file, which is calculated on first use.
+	 * @return The checksum.
+	 * @throws IOException
+	 */
+	public int getChecksum() throws IOException {
+		if (_checksum == null)
+			_checksum = FileUtils.getContentChecksum(_file);
+		return _checksum;
+	}
+	
+	/**
+	 * Check whether the file still has the size and modification time of when the fingerprint was taken.
+	 * @return Whether the file is unchanged.
+	 */
+	public boolean isUnchanged() {
+		return _file.exists() && _file.length() == _size && _file.lastModified() == _modificationTime;
+	}
+	
+	/**
+	 * Check whether the file matches a stored fingerprint.
+	 * The checksum is only compared when the modification time differs or is close to the time the fingerprint was stored.
+	 * @param storedFingerprint The stored fingerprint.
+	 * @param storedTime The time the fingerprint was stored.
+	 * @return Whether the file matches the stored fingerprint.
+	 * @throws IOException
+	 */
+	public boolean matches(FileFingerprint storedFingerprint, long storedTime) throws IOException {
+		if (!_file.exists() || _size != storedFingerprint._size)
+			return false;
+		// When the modification time is equal, the file is unchanged so the stored checksum can be used.
+		if (_modificationTime == storedFingerprint._modificationTime && _modificationTime < storedTime - MODIFICATION_TIME_PRECISION) {
+			if (_checksum == null)
+				_checksum = storedFingerprint._checksum;
+			return true;
+		}
+		return getChecksum() == storedFingerprint._checksum;
+	}
+}
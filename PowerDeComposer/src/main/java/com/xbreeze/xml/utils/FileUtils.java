@@ -22,15 +22,37 @@
  *******************************************************************************/
 package com.xbreeze.xml.utils;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Logger;
+import java.util.zip.CRC32C;
 
+import org.apache.commons.io.ByteOrderMark;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
 
@@ -39,32 +61,93 @@ public class FileUtils {
 	protected static final Logger logger = Logger.getLogger(XMLUtils.class.getName());
 	
 	private static final String XML_PROCESSING_INSTRUCTION_UTF8 = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+	private static final byte[] XML_PROCESSING_INSTRUCTION_UTF8_BYTES = XML_PROCESSING_INSTRUCTION_UTF8.getBytes(StandardCharsets.UTF_8);
+	// The BOM which is detected at the start of a file (like the default of the BOMInputStream).
+	private static final ByteOrderMark FILE_BOM = ByteOrderMark.UTF_8;
+	// The maximum size of an array.
+	private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
 	
+	private static final char[] HEX_CHARACTERS = "0123456789abcdef".toCharArray();
+	
+	/**
+	 * Get the contents of a file, where the charset is detected using the BOM or XML processing instruction at the start of the file.
+	 * The file is read into a byte array (without the BOM) which is used as is, the contents are only decoded into a String when they are requested.
+	 * When the file contains bytes which are invalid for the charset, the contents are decoded into a String (replacing the invalid bytes).
+	 * @param file The file to read.
+	 * @return The contents and charset of the file.
+	 * @throws IOException
+	 */
 	public static FileContentAndCharset getFileContent(File file) throws IOException {
-		// Create a input stream from the template file.
-		FileInputStream fis = new FileInputStream(file);
-		// Wrap the input stream in a BOMInputStream so it is invariant for the BOM.
-		BOMInputStream bomInputStream = new BOMInputStream(fis);
+		byte[] fileBytes;
+		boolean hasBOM;
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			// Check whether the file starts with a BOM.
+			byte[] fileStart = new byte[(int)Math.min(FILE_BOM.length(), randomAccessFile.length())];
+			randomAccessFile.readFully(fileStart);
+			hasBOM = Arrays.equals(fileStart, FILE_BOM.getBytes());
+			
+			// Read the rest of the file directly into an array of the right size.
+			long contentsOffset = hasBOM ? FILE_BOM.length() : 0;
+			if (randomAccessFile.length() - contentsOffset > MAX_ARRAY_SIZE)
+				throw new IOException(String.format("The file is too large to be read (%s).", file.getCanonicalPath()));
+			fileBytes = new byte[(int)(randomAccessFile.length() - contentsOffset)];
+			randomAccessFile.seek(contentsOffset);
+			randomAccessFile.readFully(fileBytes);
+		}
+		
+		// Detect the charset of the file.
+		Charset fileCharset = getFileCharset(hasBOM, fileBytes, file);
 		
+		// Only use the bytes as is when they are valid for the charset, otherwise decoding and encoding them gives other bytes.
+		if (!isValidlyEncoded(fileBytes, fileCharset)) {
+			logger.fine(String.format("The file contains invalid characters for charset %s, decoding the contents.", fileCharset.name()));
+			return new FileContentAndCharset(new String(fileBytes, fileCharset), fileCharset);
+		}
+		return new FileContentAndCharset(fileBytes, fileCharset);
+	}
+	
+	/**
+	 * Detect the charset of a file, using the BOM or XML processing instruction at the start of the file.
+	 * When the charset can't be detected, UTF-8 is assumed.
+	 * @param file The file to detect the charset for.
+	 * @return The charset of the file.
+	 * @throws IOException
+	 */
+	public static Charset getFileCharset(File file) throws IOException {
+		// Read the start of the file, which contains the BOM and XML processing instruction.
+		try (FileInputStream fis = new FileInputStream(file)) {
+			byte[] fileStart = fis.readNBytes(FILE_BOM.length() + XML_PROCESSING_INSTRUCTION_UTF8_BYTES.length);
+			boolean hasBOM = fileStart.length >= FILE_BOM.length() && Arrays.equals(fileStart, 0, FILE_BOM.length(), FILE_BOM.getBytes(), 0, FILE_BOM.length());
+			return getFileCharset(hasBOM, hasBOM ? Arrays.copyOfRange(fileStart, FILE_BOM.length(), fileStart.length) : fileStart, file);
+		}
+	}
+	
+	/**
+	 * Detect the charset of a file, using the BOM or XML processing instruction at the start of the file.
+	 * @param hasBOM Whether the file starts with a BOM.
+	 * @param fileBytes The bytes of the file after the BOM (at least the part with the XML processing instruction).
+	 * @param file The file, for logging.
+	 * @return The charset of the file.
+	 * @throws IOException
+	 */
+	private static Charset getFileCharset(boolean hasBOM, byte[] fileBytes, File file) throws IOException {
 		// Initialize the file charset to null.
 		Charset fileCharset = null;
 		// If the file has a BOM use the encoding according to the BOM.
-		if (bomInputStream.hasBOM()) {
-			// Get the charset from the bom of the input stream.
-			fileCharset = Charset.forName(bomInputStream.getBOMCharsetName());
+		if (hasBOM) {
+			// Get the charset from the bom.
+			fileCharset = Charset.forName(FILE_BOM.getCharsetName());
 			logger.fine(String.format("The file has a BOM specifying charset '%s'", fileCharset.name()));
 		}
 		
 		// If the file doesn't have a bom, check whether the first line of the file is a XML processing instruction.
 		if (fileCharset == null) {
-			// Read the first part of the file and check whether the first bytes equal the UTF-8 XML processing instruction.
-			byte[] readNBytes = bomInputStream.readNBytes(XML_PROCESSING_INSTRUCTION_UTF8.getBytes(StandardCharsets.UTF_8).length);
-			if (new String(readNBytes).equals(XML_PROCESSING_INSTRUCTION_UTF8)) {
+			// Check whether the first bytes equal the UTF-8 XML processing instruction.
+			int length = XML_PROCESSING_INSTRUCTION_UTF8_BYTES.length;
+			if (fileBytes.length >= length && Arrays.equals(fileBytes, 0, length, XML_PROCESSING_INSTRUCTION_UTF8_BYTES, 0, length)) {
 				logger.fine("The file starts with a XML processing instruction with UTF-8 encoding.");
 				fileCharset = StandardCharsets.UTF_8;
 			}
-			// Set the position for the file input stream back to 0, since we started reading the file here.
-			fis.getChannel().position(0);
 		}
 
 		// If the charset hasen't been set yet, we aren't sure what the encoding is, defaulting to UTF-8.
@@ -73,15 +156,117 @@ public class FileUtils {
 			fileCharset = StandardCharsets.UTF_8;
 		}
 		
-		// Read the file using the given charset.
-		return getFileContent(bomInputStream, fileCharset);
+		return fileCharset;
+	}
+	
+	/**
+	 * Check whether the bytes are valid for the charset (so decoding and encoding them again gives the same bytes).
+	 * The bytes are decoded in blocks, so the decoded contents aren't kept in memory.
+	 * @param bytes The bytes.
+	 * @param charset The charset.
+	 * @return Whether the bytes are valid.
+	 */
+	private static boolean isValidlyEncoded(byte[] bytes, Charset charset) {
+		CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+		ByteBuffer input = ByteBuffer.wrap(bytes);
+		CharBuffer output = CharBuffer.allocate(8192);
+		try {
+			CoderResult coderResult;
+			do {
+				output.clear();
+				coderResult = decoder.decode(input, output, true);
+				if (coderResult.isError())
+					coderResult.throwException();
+			} while (coderResult.isOverflow());
+			do {
+				output.clear();
+				coderResult = decoder.flush(output);
+			} while (coderResult.isOverflow());
+		} catch (CharacterCodingException e) {
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Get the bytes of a file, without the BOM (if the file has one).
+	 * @param file The file to read.
+	 * @return The bytes of the file.
+	 * @throws IOException
+	 */
+	public static byte[] getFileBytes(File file) throws IOException {
+		try (BOMInputStream bomInputStream = new BOMInputStream(new FileInputStream(file))) {
+			return IOUtils.toByteArray(bomInputStream);
+		}
+	}
+	
+	/**
+	 * Get the checksum (CRC32C) of file contents, which is used to detect whether a file changed.
+	 * CRC32C is used instead of a cryptographic hash, since it's calculated in a fraction of the time it takes to parse the file.
+	 * @param fileContents The file contents.
+	 * @return The checksum.
+	 */
+	public static int getContentChecksum(byte[] fileContents) {
+		CRC32C crc32c = new CRC32C();
+		crc32c.update(fileContents, 0, fileContents.length);
+		return (int) crc32c.getValue();
+	}
+	
+	/**
+	 * Get the checksum (CRC32C) of the complete file (including the BOM), by reading the file in blocks.
+	 * @param file The file.
+	 * @return The checksum.
+	 * @throws IOException
+	 */
+	public static int getContentChecksum(File file) throws IOException {
+		CRC32C crc32c = new CRC32C();
+		byte[] buffer = new byte[1 << 16];
+		try (FileInputStream fileInputStream = new FileInputStream(file)) {
+			int readLength;
+			while ((readLength = fileInputStream.read(buffer)) != -1)
+				crc32c.update(buffer, 0, readLength);
+		}
+		return (int) crc32c.getValue();
+	}
+	
+	/**
+	 * Check whether the existing file has the given contents.
+	 * The size is compared first, so the file is only read when the size is equal.
+	 * @param filePath The file.
+	 * @param fileContents The contents to compare with.
+	 * @return Whether the file exists and has the same contents.
+	 * @throws IOException
+	 */
+	public static boolean isFileContentEqual(Path filePath, byte[] fileContents) throws IOException {
+		if (!Files.isRegularFile(filePath) || Files.size(filePath) != fileContents.length)
+			return false;
+		return Arrays.equals(Files.readAllBytes(filePath), fileContents);
+	}
+	
+	/**
+	 * Check whether two existing files have the same contents, by reading the files in blocks.
+	 * The size is compared first, so the files are only read when the size is equal.
+	 * @param filePath The file.
+	 * @param otherFilePath The file to compare with.
+	 * @return Whether both files exist and have the same contents.
+	 * @throws IOException
+	 */
+	public static boolean isFileContentEqual(Path filePath, Path otherFilePath) throws IOException {
+		if (!Files.isRegularFile(filePath) || !Files.isRegularFile(otherFilePath) || Files.size(filePath) != Files.size(otherFilePath))
+			return false;
+		try (
+			InputStream fileInputStream = new BufferedInputStream(Files.newInputStream(filePath), 1 << 16);
+			InputStream otherFileInputStream = new BufferedInputStream(Files.newInputStream(otherFilePath), 1 << 16)
+		) {
+			return IOUtils.contentEquals(fileInputStream, otherFileInputStream);
+		}
 	}
 	
 	public static FileContentAndCharset getFileContent(File file, Charset fileCharset) throws IOException {
-		// Create a input stream from the template file.
-		FileInputStream fis = new FileInputStream(file);
+		// Create a input stream from the template file, skipping the byte order mark (like getFileContent(File) does).
+		BOMInputStream bomInputStream = new BOMInputStream(new FileInputStream(file));
 		// Read the file using the given charset.
-		return getFileContent(fis, fileCharset);
+		return getFileContent(bomInputStream, fileCharset);
 	}
 	
 	public static FileContentAndCharset getFileContent(InputStream fileInputStream, Charset fileCharset) throws IOException {
@@ -130,4 +315,123 @@ public class FileUtils {
 		// }
 		return basePath;
 	}
+	
+	/**
+	 * Get the path of a file in a directory which belongs to another file, like a cached index or the manifest of a decomposed model.
+	 * The file is named after the other file followed by a hash of its full path, so files with the same name in different folders don't share a file.
+	 * @param directoryPath The directory of the file.
+	 * @param file The file to which the file belongs.
+	 * @param fileExtension The extension of the file.
+	 * @return The path of the file.
+	 * @throws Exception
+	 */
+	public static Path getPathHashedFilePath(Path directoryPath, File file, String fileExtension) throws Exception {
+		byte[] pathHash = MessageDigest.getInstance("SHA-256").digest(file.getCanonicalPath().getBytes(StandardCharsets.UTF_8));
+		return directoryPath.resolve(String.format("%s_%s%s", file.getName(), getHexString(Arrays.copyOf(pathHash, 8)), fileExtension));
+	}
+	
+	/**
+	 * Get the lowercase hexadecimal representation of bytes.
+	 * @param bytes The bytes.
+	 * @return The hexadecimal string, with two characters per byte.
+	 */
+	public static String getHexString(byte[] bytes) {
+		char[] hexCharacters = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hexCharacters[i * 2] = HEX_CHARACTERS[(bytes[i] >> 4) & 0xF];
+			hexCharacters[i * 2 + 1] = HEX_CHARACTERS[bytes[i] & 0xF];
+		}
+		return new String(hexCharacters);
+	}
+	
+	/**
+	 * Get the absolute and normalized file, so the same file is always referred to by the same path.
+	 * @param file The file.
+	 * @return The absolute and normalized file.
+	 */
+	public static File getAbsoluteFile(File file) {
+		return file.toPath().toAbsolutePath().normalize().toFile();
+	}
+	
+	/**
+	 * Create a temporary file in the folder of a file, which is moved to the file when it's written (see moveAtomically).
+	 * This way a concurrent run never reads a partially written file, and concurrent runs writing the same file each use their own temporary file.
+	 * The temporary file is created with the default permissions (unlike Files.createTempFile), since it replaces the file.
+	 * @param filePath The file which is written using the temporary file, its folder is created when it doesn't exist.
+	 * @return The path of the temporary file.
+	 * @throws IOException
+	 */
+	public static Path createTemporaryFile(Path filePath) throws IOException {
+		Files.createDirectories(filePath.getParent());
+		while (true) {
+			Path temporaryFilePath = filePath.resolveSibling(String.format("%s.%016x.tmp", filePath.getFileName(), ThreadLocalRandom.current().nextLong()));
+			try {
+				return Files.createFile(temporaryFilePath);
+			} catch (FileAlreadyExistsException e) {
+				// Try another name.
+			}
+		}
+	}
+	
+	/**
+	 * Move a written temporary file to the file, replacing the existing file.
+	 * The file is moved atomically when the file system supports it.
+	 * @param temporaryFilePath The temporary file (see createTemporaryFile).
+	 * @param filePath The file.
+	 * @throws IOException
+	 */
+	public static void moveAtomically(Path temporaryFilePath, Path filePath) throws IOException {
+		try {
+			Files.move(temporaryFilePath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporaryFilePath, filePath, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Update the modification time of a cached file, so the least recently used files are removed first (see removeLeastRecentlyUsedFiles).
+	 * Failing to update the modification time isn't an error, since the file is only removed earlier.
+	 * @param filePath The cached file.
+	 */
+	public static void setLastUsedTime(Path filePath) {
+		try {
+			Files.setLastModifiedTime(filePath, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			logger.fine(String.format("Couldn't update the modification time of the cached file '%s': %s", filePath, e.getMessage()));
+		}
+	}
+	
+	/**
+	 * Remove the least recently used files (by modification time) from a cache directory, until the total size of the cached files is within the maximum size.
+	 * @param cacheDirectoryPath The cache directory.
+	 * @param fileExtension The extension of the cached files, the temporary files of the cached files are included as well.
+	 * @param maxSize The maximum total size of the cached files in bytes.
+	 * @param currentFilePath The file which is just stored, which is never removed.
+	 * @throws IOException
+	 */
+	public static void removeLeastRecentlyUsedFiles(Path cacheDirectoryPath, String fileExtension, long maxSize, Path currentFilePath) throws IOException {
+		List<Path> cachedFilePaths = new ArrayList<Path>();
+		long totalSize = 0;
+		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(cacheDirectoryPath, "*" + fileExtension + "*")) {
+			for (Path cachedFilePath : directoryStream) {
+				cachedFilePaths.add(cachedFilePath);
+				totalSize += Files.size(cachedFilePath);
+			}
+		}
+		if (totalSize <= maxSize)
+			return;
+		
+		cachedFilePaths.sort(Comparator.comparingLong(cachedFilePath -> cachedFilePath.toFile().lastModified()));
+		for (Path cachedFilePath : cachedFilePaths) {
+			if (totalSize <= maxSize)
+				break;
+			if (cachedFilePath.equals(currentFilePath))
+				continue;
+			long cachedFileSize = Files.size(cachedFilePath);
+			if (Files.deleteIfExists(cachedFilePath)) {
+				logger.fine(String.format("Removed the file '%s' from the cache directory.", cachedFilePath));
+				totalSize -= cachedFileSize;
+			}
+		}
+	}
 }
@@ -23,12 +23,18 @@
 package com.xbreeze.xml.utils;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.text.StringEscapeUtils;
 
 import com.ximpleware.AutoPilot;
@@ -46,6 +52,14 @@ public class XMLUtils {
 	// The logger for this class.
 	protected static final Logger logger = Logger.getLogger(XMLUtils.class.getName());
 	
+	// The pattern to recognize XPath expressions on processing instructions.
+	private static final Pattern PI_ATTRIBUTE_XPATH_PATTERN = Pattern.compile("(?<PIXPath>/?/processing-instruction\\(.+\\))/@(?<PIAttribute>.+)");
+	// The pattern to get the target of a XPath expression which selects processing instructions by their target only.
+	private static final Pattern PI_TARGET_XPATH_PATTERN = Pattern.compile("/?/processing-instruction\\(\\s*(['\"])(?<PITarget>[^'\"]+)\\1\\s*\\)");
+	
+	// The maximum number of bytes which is read to find the prolog of a file (see getPrologProcessingInstructions).
+	private static final int MAX_PROLOG_SIZE = 1 << 16;
+	
 	/**
 	 * Escape XML characters.
 	 * @param input The text to escape.
@@ -185,6 +199,15 @@ public class XMLUtils {
 		return sap.evalXPathToString();
 	}
 	
+	/**
+	 * Check whether the XPath selects an attribute of a processing instruction (which isn't supported by VTD-XML, so it's handled by getXPathText).
+	 * @param xpath The XPath expression.
+	 * @return Whether the XPath selects an attribute of a processing instruction.
+	 */
+	public static boolean isProcessingInstructionAttributeXPath(String xpath) {
+		return PI_ATTRIBUTE_XPATH_PATTERN.matcher(xpath).matches();
+	}
+	
 	/**
 	 * Get the text value of a sub element.
 	 * @param nv
@@ -193,10 +216,8 @@ public class XMLUtils {
 	 * @throws Exception 
 	 */
 	public static String getXPathText(VTDNav nv, String xpath) throws Exception {
-		// Create a pattern to recognize XPath expressions on processing instructions.
-		Pattern piAttributeXPathPattern = Pattern.compile("(?<PIXPath>/?/processing-instruction\\(.+\\))/@(?<PIAttribute>.+)");
 		// Get the matcher for the PI attribute xpath.
-		Matcher piAttributeXPathMatcher = piAttributeXPathPattern.matcher(xpath);
+		Matcher piAttributeXPathMatcher = PI_ATTRIBUTE_XPATH_PATTERN.matcher(xpath);
 		// Check whether the XPath matches a processing-instruction selection.
 		if (piAttributeXPathMatcher.matches()) {
 			String piNodeXPath = piAttributeXPathMatcher.group("PIXPath");
@@ -209,16 +230,7 @@ public class XMLUtils {
 				if (nv.getTokenType(currentNodeIndex) == VTDNav.TOKEN_PI_NAME) {
     				// The processing instruction value is in the token after the name.
         			String piValue = nv.toRawString(currentNodeIndex + 1);
-        			Pattern piAttributePattern = Pattern.compile(String.format(" %s=\\\"[a-zA-Z0-9]+\\\"", piAttributeToRemove));
-        			Matcher piAttributeMatcher = piAttributePattern.matcher(piValue);
-        			if (piAttributeMatcher.find()) {
-        				// Return the found processing instruction attribute.
-        				return piAttributeMatcher.group();
-        			}
-        			// If the processing instruction attribute can't be found, return null.
-        			else {
-        				return null;
-        			}
+        			return getProcessingInstructionAttributeText(piValue, piAttributeToRemove);
 				} else {
 					throw new Exception(String.format("The processing instruction XPath didn't result in a processing instruction token for: %s.", xpath));
 				}
@@ -228,12 +240,96 @@ public class XMLUtils {
 			}
 			
 		}
-		// If the XPath isn't a processing instruction attribute selection, perform the normal XPath on the AutoPilot.
+		// If the XPath isn't a processing instruction attribute selection, perform the normal XPath on the (cached) AutoPilot.
 		else {
-			AutoPilot sap = new AutoPilot(nv);
-			sap.selectXPath(xpath);
-			return sap.evalXPathToString();			
+			return XPathCache.getAutoPilot(nv, xpath).evalXPathToString();
+		}
+	}
+	
+	/**
+	 * Get the text of an attribute in the value of a processing instruction, which is the attribute with its value (like ' LastModificationDate="1234"').
+	 * @param piValue The value of the processing instruction.
+	 * @param piAttribute The name of the attribute.
+	 * @return The attribute text, or null when the processing instruction doesn't contain the attribute.
+	 */
+	public static String getProcessingInstructionAttributeText(String piValue, String piAttribute) {
+		Pattern piAttributePattern = Pattern.compile(String.format(" %s=\\\"[a-zA-Z0-9]+\\\"", piAttribute));
+		Matcher piAttributeMatcher = piAttributePattern.matcher(piValue);
+		if (piAttributeMatcher.find()) {
+			// Return the found processing instruction attribute.
+			return piAttributeMatcher.group();
 		}
+		// If the processing instruction attribute can't be found, return null.
+		return null;
+	}
+	
+	/**
+	 * Get the target of a XPath expression which selects processing instructions by their target only (like "/processing-instruction('PowerDesigner')").
+	 * @param piXPath The XPath expression.
+	 * @return The target, or null when the XPath expression isn't a selection by target only.
+	 */
+	public static String getProcessingInstructionTarget(String piXPath) {
+		Matcher piTargetXPathMatcher = PI_TARGET_XPATH_PATTERN.matcher(piXPath);
+		return piTargetXPathMatcher.matches() ? piTargetXPathMatcher.group("PITarget") : null;
+	}
+	
+	/**
+	 * Get the processing instructions in the prolog of a XML file (the part before the root element), by only reading the start of the file.
+	 * Only the first processing instruction of each target is returned, in order of appearance (the XML declaration isn't a processing instruction).
+	 * The value of a processing instruction is the text after the target and the whitespace following it, like the value token of VTD-XML.
+	 * @param xmlFile The XML file.
+	 * @return The values of the processing instructions by target, or null when the prolog can't be read this way (when the file isn't ASCII compatible, the prolog contains a document type declaration or the root element isn't found within the first 64 KB).
+	 * @throws IOException
+	 */
+	public static LinkedHashMap<String, String> getPrologProcessingInstructions(File xmlFile) throws IOException {
+		byte[] prologBytes = new byte[MAX_PROLOG_SIZE];
+		int prologLength;
+		try (InputStream xmlFileInputStream = new FileInputStream(xmlFile)) {
+			prologLength = IOUtils.read(xmlFileInputStream, prologBytes);
+		}
+		// The prolog is decoded per byte, since only the ASCII characters in the prolog are used.
+		String prolog = new String(prologBytes, 0, prologLength, StandardCharsets.ISO_8859_1);
+		// Skip the UTF-8 BOM.
+		int offset = prolog.startsWith("\u00EF\u00BB\u00BF") ? 3 : 0;
+		LinkedHashMap<String, String> processingInstructions = new LinkedHashMap<String, String>();
+		while (true) {
+			offset = skipWhiteSpace(prolog, offset, prolog.length());
+			if (prolog.startsWith("<?", offset)) {
+				int processingInstructionEnd = prolog.indexOf("?>", offset + 2);
+				if (processingInstructionEnd == -1)
+					return null;
+				int targetEnd = offset + 2;
+				while (targetEnd < processingInstructionEnd && !isWhiteSpace(prolog.charAt(targetEnd)))
+					targetEnd++;
+				String target = prolog.substring(offset + 2, targetEnd);
+				if (!target.equals("xml"))
+					processingInstructions.putIfAbsent(target, prolog.substring(skipWhiteSpace(prolog, targetEnd, processingInstructionEnd), processingInstructionEnd));
+				offset = processingInstructionEnd + 2;
+			} else if (prolog.startsWith("<!--", offset)) {
+				int commentEnd = prolog.indexOf("-->", offset + 4);
+				if (commentEnd == -1)
+					return null;
+				offset = commentEnd + 3;
+			} else if (prolog.startsWith("<", offset) && !prolog.startsWith("<!", offset) && offset + 1 < prolog.length()) {
+				// The root element is found, so the prolog is complete.
+				return processingInstructions;
+			} else {
+				return null;
+			}
+		}
+	}
+	
+	/**
+	 * Get the offset of the first character which isn't XML whitespace, starting at the offset.
+	 */
+	private static int skipWhiteSpace(String text, int offset, int endOffset) {
+		while (offset < endOffset && isWhiteSpace(text.charAt(offset)))
+			offset++;
+		return offset;
+	}
+	
+	private static boolean isWhiteSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
 	}
 	
 	/**
@@ -242,9 +338,7 @@ public class XMLUtils {
 	 * @param subElementName
 	 */
 	public static String getElementName(VTDNav nv) throws XPathParseException, NavException, XPathEvalException {
-		AutoPilot sap = new AutoPilot(nv);
-		sap.selectXPath("name()");
-		return sap.evalXPathToString();
+		return XPathCache.getAutoPilot(nv, "name()").evalXPathToString();
 	}
 	
 	/**
@@ -258,9 +352,10 @@ public class XMLUtils {
 	 */
 	public static String getParentElementName(VTDNav nv) throws XPathParseException, NavException, XPathEvalException {
 		VTDNav parentNav = nv.cloneNav();
-		AutoPilot sap = new AutoPilot(parentNav);
-		sap.selectXPath("..");
+		AutoPilot sap = XPathCache.getAutoPilot(parentNav, "..");
 		int parentElementIndex = sap.evalXPath();
+		// Reset the XPath, so the cached AutoPilot can be used again.
+		sap.resetXPath();
 		if (parentElementIndex != -1)
 			return parentNav.toString(parentElementIndex);
 		else
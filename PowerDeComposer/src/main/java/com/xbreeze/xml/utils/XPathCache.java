@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2022 CrossBreeze
+ *
+ * This file is part of PowerDeComposer.
+ *
+ * PowerDeComposer is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the 
+ * Free Software Foundation, either version 3 of the License, or (at your option) any 
+ * later version.
+ *
+ * PowerDeComposer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerDeComposer.  If not, see <https://www.gnu.org/licenses/>.
+ *      
+ * Contributors:
+ *   Harmen Wessels - CrossBreeze
+ *   Willem Otten - CrossBreeze
+ *******************************************************************************/
+package com.xbreeze.xml.utils;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.ximpleware.AutoPilot;
+import com.ximpleware.VTDNav;
+import com.ximpleware.XPathParseException;
+
+/**
+ * Cache of compiled XPath expressions, so each configured XPath is parsed once instead of for every element it's evaluated on.
+ * The compiled expressions are kept per thread (an AutoPilot can't be used by multiple threads at once) and are bound to the VTDNav when requested.
+ * Only use the cached AutoPilot for a single evaluation (evalXPathToString, evalXPathToBoolean or evalXPathToNumber), since the same AutoPilot is returned for the next request on the same expression.
+ */
+public class XPathCache {
+	
+	// The factory of AutoPilots without declared namespaces.
+	public static final AutoPilotFactory DEFAULT_AUTO_PILOT_FACTORY = new AutoPilotFactory("default", AutoPilot::new);
+	
+	// The compiled expressions of the current thread by the key of the AutoPilot factory and expression.
+	// The factory is part of the key, since an expression compiled by another factory might declare other namespaces.
+	private static final ThreadLocal<HashMap<String, HashMap<String, AutoPilot>>> _compiledExpressions = ThreadLocal.withInitial(HashMap::new);
+	
+	// The statistics of the current run, which are inherited by the threads created during the run (like the threads decomposing in parallel).
+	private static final InheritableThreadLocal<Statistics> _statistics = new InheritableThreadLocal<Statistics>() {
+		@Override
+		protected Statistics initialValue() {
+			return new Statistics();
+		}
+	};
+	
+	/**
+	 * Get an AutoPilot with the compiled XPath expression, bound to the VTDNav.
+	 * @param nv The VTDNav to evaluate the expression on.
+	 * @param xpath The XPath expression.
+	 * @return The AutoPilot.
+	 * @throws XPathParseException
+	 */
+	public static AutoPilot getAutoPilot(VTDNav nv, String xpath) throws XPathParseException {
+		return getAutoPilot(nv, xpath, 0, DEFAULT_AUTO_PILOT_FACTORY);
+	}
+	
+	/**
+	 * Get an AutoPilot with the compiled XPath expression for iterating the selected nodes, bound to the VTDNav.
+	 * Iterations which are active at the same time on the same thread (for example in recursive calls) must use a different level, since each level gets its own AutoPilot.
+	 * @param nv The VTDNav to evaluate the expression on.
+	 * @param xpath The XPath expression.
+	 * @param level The level of the iteration.
+	 * @param autoPilotFactory The factory to create a new AutoPilot (for example to declare namespaces), used when the expression isn't compiled yet. The expressions are cached per factory key.
+	 * @return The AutoPilot.
+	 * @throws XPathParseException
+	 */
+	public static AutoPilot getAutoPilot(VTDNav nv, String xpath, int level, AutoPilotFactory autoPilotFactory) throws XPathParseException {
+		HashMap<String, AutoPilot> compiledExpressions = _compiledExpressions.get().computeIfAbsent(autoPilotFactory.getKey(), factoryKey -> new HashMap<String, AutoPilot>());
+		String expressionKey = (level == 0) ? xpath : String.format("%d:%s", level, xpath);
+		AutoPilot ap = compiledExpressions.get(expressionKey);
+		if (ap == null) {
+			ap = autoPilotFactory.createAutoPilot(nv);
+			ap.selectXPath(xpath);
+			compiledExpressions.put(expressionKey, ap);
+			_statistics.get()._missCount.incrementAndGet();
+		} else {
+			// Bind to the VTDNav and reset the expression, in case a former evaluation was interrupted.
+			ap.bind(nv);
+			ap.resetXPath();
+			_statistics.get()._hitCount.incrementAndGet();
+		}
+		return ap;
+	}
+	
+	/**
+	 * Check whether an XPath expression is of numeric type.
+	 * A numeric expression used as predicate (like [1] or [number(@x)]) selects the element at that position in the selection, instead of being converted to a boolean.
+	 * @param nv The VTDNav to create the AutoPilot with.
+	 * @param xpath The XPath expression.
+	 * @param autoPilotFactory The factory to create a new AutoPilot, which declares the namespaces of the expression (VTD-XML registers the declared namespaces for all AutoPilots).
+	 * @return Whether the expression is numeric, or true when the expression can't be parsed (so the caller doesn't rely on it being a boolean).
+	 */
+	public static boolean isNumericExpression(VTDNav nv, String xpath, AutoPilotFactory autoPilotFactory) {
+		autoPilotFactory.createAutoPilot(nv);
+		ExpressionTypeAutoPilot ap = new ExpressionTypeAutoPilot(nv);
+		try {
+			ap.selectXPath(xpath);
+		} catch (XPathParseException e) {
+			return true;
+		}
+		return ap.isNumerical();
+	}
+	
+	/**
+	 * Start counting the compiled and reused expressions for a new run on the current thread (and the threads it creates from now on).
+	 */
+	public static void resetStatistics() {
+		_statistics.set(new Statistics());
+	}
+	
+	/**
+	 * Remove the compiled expressions of the current thread, so the VTDNav they are bound to can be released.
+	 */
+	public static void clear() {
+		_compiledExpressions.remove();
+	}
+	
+	/**
+	 * Get the number of times a compiled expression was reused in the current run.
+	 */
+	public static long getHitCount() {
+		return _statistics.get()._hitCount.get();
+	}
+	
+	/**
+	 * Get the number of times an expression was compiled in the current run.
+	 */
+	public static long getMissCount() {
+		return _statistics.get()._missCount.get();
+	}
+	
+	/**
+	 * A factory of AutoPilots with a key which identifies the namespaces the factory declares, so the expressions compiled by factories with other namespaces are cached separately.
+	 * The key is explicit, so the cache doesn't depend on the identity of the function (a method reference can create a new instance on every evaluation).
+	 * Factories which declare other namespaces must have another key, so declare each factory once as a constant.
+	 */
+	public static final class AutoPilotFactory {
+		private final String _key;
+		private final Function<VTDNav, AutoPilot> _createAutoPilot;
+		
+		/**
+		 * Constructor.
+		 * @param key The key of the namespaces the factory declares.
+		 * @param createAutoPilot The function to create a new AutoPilot on a VTDNav.
+		 */
+		public AutoPilotFactory(String key, Function<VTDNav, AutoPilot> createAutoPilot) {
+			this._key = key;
+			this._createAutoPilot = createAutoPilot;
+		}
+		
+		public String getKey() {
+			return _key;
+		}
+		
+		public AutoPilot createAutoPilot(VTDNav nv) {
+			return _createAutoPilot.apply(nv);
+		}
+	}
+	
+	/**
+	 * AutoPilot which gives access to the type of its compiled expression (which VTD-XML only exposes to subclasses).
+	 */
+	private static class ExpressionTypeAutoPilot extends AutoPilot {
+		public ExpressionTypeAutoPilot(VTDNav nv) {
+			super(nv);
+		}
+		
+		public boolean isNumerical() {
+			return xpe.isNumerical();
+		}
+	}
+	
+	/**
+	 * The number of requests for an expression which was already compiled and the number of compiled expressions in a run, over all threads of the run.
+	 */
+	private static class Statistics {
+		private final AtomicLong _hitCount = new AtomicLong();
+		private final AtomicLong _missCount = new AtomicLong();
+	}
+}
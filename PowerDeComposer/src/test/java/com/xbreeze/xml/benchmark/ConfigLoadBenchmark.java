@@ -0,0 +1,89 @@
+package com.xbreeze.xml.benchmark;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.xml.sax.InputSource;
+
+import com.xbreeze.xml.config.PowerDeComposerConfig;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.Unmarshaller;
+
+/**
+ * Benchmark measuring the latency of loading a config file.
+ * The cold load is the first load in the JVM using the config reader, which is compared with the first load using JAXB (which includes loading the JAXB classes, creating the JAXB context and compiling the schema).
+ * The warm loads using the config reader are compared with the former ways of loading, which created the JAXB context and compiled the schema for every load or shared them between loads, and with the cached config.
+ * Run it using: java -cp target/classes:target/test-classes:<dependencies> com.xbreeze.xml.benchmark.ConfigLoadBenchmark [config-file [load-count]]
+ */
+public class ConfigLoadBenchmark {
+	// The JAXB context and schema shared between loads, like they are shared when a config is read using JAXB.
+	private static JAXBContext _sharedJaxbContext;
+	private static Schema _sharedConfigSchema;
+	
+	public static void main(String[] args) throws Exception {
+		File configFile = new File((args.length > 0) ? args[0] : "src/main/resources/com/xbreeze/xml/config/DefaultPowerDeComposerConfig.xml");
+		int loadCount = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+		
+		long startTime = System.nanoTime();
+		PowerDeComposerConfig.fromFile(configFile);
+		System.out.println(String.format("Cold load using the config reader: %.1f ms.", (System.nanoTime() - startTime) / 1e6));
+		startTime = System.nanoTime();
+		fromFileUsingNewContext(configFile);
+		System.out.println(String.format("Cold load using JAXB: %.1f ms.", (System.nanoTime() - startTime) / 1e6));
+		
+		System.out.println(String.format("Warm load creating the JAXB context and schema per load: %.2f ms per load.", run(loadCount, () -> fromFileUsingNewContext(configFile))));
+		System.out.println(String.format("Warm load using the shared JAXB context and schema: %.2f ms per load.", run(loadCount, () -> fromFileUsingSharedContext(configFile))));
+		System.out.println(String.format("Warm load using the config reader: %.2f ms per load.", run(loadCount, () -> PowerDeComposerConfig.fromFile(configFile))));
+		System.out.println(String.format("Warm load using the config cache: %.3f ms per load.", run(loadCount, () -> PowerDeComposerConfig.getCachedConfig(configFile))));
+	}
+	
+	/**
+	 * Load the config the former way, creating a new JAXB context and compiling the schema for every load.
+	 */
+	private static PowerDeComposerConfig fromFileUsingNewContext(File configFile) throws Exception {
+		Schema configSchema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(PowerDeComposerConfig.class.getResource("PowerDeComposerConfig.xsd"));
+		Unmarshaller pdcConfigUnmarshaller = JAXBContext.newInstance(PowerDeComposerConfig.class).createUnmarshaller();
+		pdcConfigUnmarshaller.setSchema(configSchema);
+		try (FileReader configFileReader = new FileReader(configFile)) {
+			return (PowerDeComposerConfig) pdcConfigUnmarshaller.unmarshal(new InputSource(configFileReader));
+		}
+	}
+	
+	/**
+	 * Load the config using JAXB, sharing the JAXB context and compiled schema between loads.
+	 */
+	private static PowerDeComposerConfig fromFileUsingSharedContext(File configFile) throws Exception {
+		if (_sharedJaxbContext == null) {
+			_sharedConfigSchema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(PowerDeComposerConfig.class.getResource("PowerDeComposerConfig.xsd"));
+			_sharedJaxbContext = JAXBContext.newInstance(PowerDeComposerConfig.class);
+		}
+		Unmarshaller pdcConfigUnmarshaller = _sharedJaxbContext.createUnmarshaller();
+		pdcConfigUnmarshaller.setSchema(_sharedConfigSchema);
+		try (FileReader configFileReader = new FileReader(configFile)) {
+			return (PowerDeComposerConfig) pdcConfigUnmarshaller.unmarshal(new InputSource(configFileReader));
+		}
+	}
+	
+	/**
+	 * Load the config a number of times.
+	 * @return The average duration of a load in milliseconds.
+	 */
+	private static double run(int loadCount, ConfigLoader configLoader) throws Exception {
+		long startTime = System.nanoTime();
+		for (int i = 0; i < loadCount; i++) {
+			if (configLoader.load() == null)
+				throw new IOException("Unexpected benchmark result.");
+		}
+		return (System.nanoTime() - startTime) / 1e6 / loadCount;
+	}
+	
+	private interface ConfigLoader {
+		PowerDeComposerConfig load() throws Exception;
+	}
+}
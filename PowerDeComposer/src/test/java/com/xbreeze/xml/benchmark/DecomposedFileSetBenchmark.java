@@ -0,0 +1,77 @@
+package com.xbreeze.xml.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import com.xbreeze.xml.decompose.DecomposedFileSet;
+
+/**
+ * Benchmark comparing the DecomposedFileSet with the former TreeSet using a canonical path comparator.
+ * The benchmark does the same lookups as the decomposer: for each part the target file with and without children is checked and the file is added, afterwards the former files are removed.
+ * Run it using: java -cp target/classes:target/test-classes com.xbreeze.xml.benchmark.DecomposedFileSetBenchmark [file-count ...]
+ */
+public class DecomposedFileSetBenchmark {
+	
+	/**
+	 * The former comparator, which compares the canonical paths of the files ignoring case.
+	 */
+	private static final Comparator<File> CANONICAL_PATH_COMPARATOR = new Comparator<File>() {
+		@Override
+		public int compare(File f1, File f2) {
+			try {
+				return f1.getCanonicalPath().compareToIgnoreCase(f2.getCanonicalPath());
+			} catch (IOException e) {
+				return f1.toString().compareToIgnoreCase(f2.toString());
+			}
+		}
+	};
+	
+	public static void main(String[] args) {
+		int[] fileCounts = (args.length > 0) ? new int[args.length] : new int[] { 10000, 100000 };
+		for (int i = 0; i < args.length; i++)
+			fileCounts[i] = Integer.parseInt(args[i]);
+		
+		for (int fileCount : fileCounts) {
+			List<File> files = getFiles(fileCount);
+			long treeSetMillis = run(files, new TreeSet<File>(CANONICAL_PATH_COMPARATOR), new TreeSet<File>(CANONICAL_PATH_COMPARATOR));
+			long fileSetMillis = run(files, new DecomposedFileSet(), new DecomposedFileSet());
+			System.out.println(String.format("%d files: canonical path TreeSet %d ms, DecomposedFileSet %d ms (%.1fx faster).", fileCount, treeSetMillis, fileSetMillis, (fileSetMillis > 0) ? (double)treeSetMillis / fileSetMillis : (double)treeSetMillis));
+		}
+	}
+	
+	/**
+	 * Get a list of files in a folder structure like a decomposed model.
+	 */
+	private static List<File> getFiles(int fileCount) {
+		Path baseFolderPath = Paths.get("Decomposed");
+		List<File> files = new ArrayList<File>(fileCount);
+		for (int i = 0; i < fileCount; i++)
+			files.add(baseFolderPath.resolve(String.format("Entities/Entity%d/Attributes/Attribute%d.xml", i / 50, i)).toFile());
+		return files;
+	}
+	
+	/**
+	 * Register the files in the current set and remove them from the former set, the same way the decomposer uses them.
+	 * @return The duration in milliseconds.
+	 */
+	private static long run(List<File> files, Collection<File> currentFiles, Collection<File> formerFiles) {
+		long startTime = System.currentTimeMillis();
+		formerFiles.addAll(files);
+		for (File file : files) {
+			// The decomposer checks the file with and without children before adding it.
+			if (!currentFiles.contains(file) && !currentFiles.contains(new File(file.getPath().replace(".xml", "/file.xml"))))
+				currentFiles.add(file);
+		}
+		formerFiles.removeAll(currentFiles);
+		if (!formerFiles.isEmpty() || currentFiles.size() != files.size())
+			throw new IllegalStateException("Unexpected benchmark result.");
+		return System.currentTimeMillis() - startTime;
+	}
+}
@@ -8,22 +8,29 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
 
 import com.xbreeze.xml.Executor;
+import com.xbreeze.xml.server.PowerDeComposerClient;
+import com.xbreeze.xml.server.PowerDeComposerServer;
 
+import io.cucumber.java.After;
 import io.cucumber.java.Before;
 import io.cucumber.java.Scenario;
 import io.cucumber.java.en.Given;
@@ -51,6 +58,12 @@ public class PowerDeComposerTestSteps {
 	private String processOutput;
 	// The process execute code, when run using a separate Java process.
 	private int actualExitCode;
+	// The PowerDeComposer server, when run using a server.
+	private PowerDeComposerServer _server;
+	// The directory of the token files of the server.
+	private static final Path SERVER_TOKEN_DIRECTORY_PATH = Paths.get("target", "PdcServer");
+	// The connection which doesn't send a request, when connecting to the server without a request.
+	private Socket _idleSocket;
 
 	@Before
 	public void before(final Scenario scenario) throws Exception {
@@ -80,6 +93,15 @@ public class PowerDeComposerTestSteps {
 		scenario.log(String.format("Feature file-resource path: %s", _scenarioRuntimeResourcePath.toString()));
 	}
 	
+	@After
+	public void after() throws Exception {
+		// Stop the server, if it was started.
+		if (this._server != null)
+			this._server.close();
+		if (this._idleSocket != null)
+			this._idleSocket.close();
+	}
+	
 	public void createDirectoryIfItDoesntExist(Path directoryPath) throws Exception {
 		File directoryFile = directoryPath.toFile();
 		// If the directory exists, remove it.
@@ -190,6 +212,31 @@ public class PowerDeComposerTestSteps {
 		targetFileWrite.close();
 	}
 	
+	@Given("^the decomposed file '(.*)' was last modified a day ago$")
+	public void givenTheDecomposedFileWasLastModifiedADayAgo(String decomposedFileLocation) throws Throwable {
+		Path decomposedFilePath = this._decomposedFolderPath.resolve(decomposedFileLocation);
+		Files.setLastModifiedTime(decomposedFilePath, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+	}
+	
+	@Given("^the decomposed file '(.*)' starts with a byte order mark$")
+	public void givenTheDecomposedFileStartsWithAByteOrderMark(String decomposedFileLocation) throws Throwable {
+		// Prefix the file with the UTF-8 byte order mark.
+		Path decomposedFilePath = this._decomposedFolderPath.resolve(decomposedFileLocation);
+		byte[] fileBytes = Files.readAllBytes(decomposedFilePath);
+		byte[] bomFileBytes = new byte[fileBytes.length + 3];
+		bomFileBytes[0] = (byte) 0xEF;
+		bomFileBytes[1] = (byte) 0xBB;
+		bomFileBytes[2] = (byte) 0xBF;
+		System.arraycopy(fileBytes, 0, bomFileBytes, 3, fileBytes.length);
+		Files.write(decomposedFilePath, bomFileBytes);
+	}
+	
+	@Given("^the composed file '(.*)' was last modified a day ago$")
+	public void givenTheComposedFileWasLastModifiedADayAgo(String composedFileLocation) throws Throwable {
+		Path composedFilePath = this._composedFolderPath.resolve(composedFileLocation);
+		Files.setLastModifiedTime(composedFilePath, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+	}
+	
 	@When("^I perform a compose$")
 	public void iExecuteCompose() throws Throwable {
 		// Execute PowerDeComposer.
@@ -212,7 +259,55 @@ public class PowerDeComposerTestSteps {
 		iExecuteInSeparateProcess("decompose");
 	}
 	
+	@When("^I perform a batch with (\\d) threads and the manifest:$")
+	public void iExecuteBatch(int threadCount, String manifestFileContents) throws Throwable {
+		// Write the manifest in the scenario folder, so the paths in the manifest are relative to the scenario folder.
+		Path manifestFilePath = this._scenarioRuntimeResourcePath.resolve("BatchManifest.txt");
+		this.writeXmlFile(manifestFilePath, manifestFileContents);
+		// Execute PowerDeComposer.
+		Executor.main(new String[] { "batch", manifestFilePath.toString(), String.valueOf(threadCount) });
+	}
+	
+	@When("^I perform a batch with (\\d) threads in separate process and the manifest:$")
+	public void iExecuteBatchInSeparateProcess(int threadCount, String manifestFileContents) throws Throwable {
+		// Write the manifest in the scenario folder, so the paths in the manifest are relative to the scenario folder.
+		Path manifestFilePath = this._scenarioRuntimeResourcePath.resolve("BatchManifest.txt");
+		this.writeXmlFile(manifestFilePath, manifestFileContents);
+		iExecuteInSeparateProcess(new String[] { "batch", manifestFilePath.toString(), String.valueOf(threadCount) });
+	}
+	
+	@Given("^a PowerDeComposer server with a request timeout of (\\d+) ms$")
+	public void givenAPowerDeComposerServer(int requestTimeout) throws Throwable {
+		// Start the server on a free port, it handles the requests in the background.
+		this._server = new PowerDeComposerServer(0, SERVER_TOKEN_DIRECTORY_PATH);
+		this._server.setRequestTimeout(requestTimeout);
+		new Thread(this._server::run).start();
+	}
+	
+	@When("^I perform a (compose|decompose) using the server$")
+	public void iExecuteUsingTheServer(String operationType) throws Throwable {
+		// Send the request to the server, using the token from the token file, and store the exit code.
+		String token = PowerDeComposerClient.readToken(SERVER_TOKEN_DIRECTORY_PATH, this._server.getPort());
+		this.actualExitCode = new PowerDeComposerClient(this._server.getPort(), token).execute(getCommandArray(operationType), System.out);
+	}
+	
+	@When("^I perform a (compose|decompose) using the server with the token '(.*)'$")
+	public void iExecuteUsingTheServerWithToken(String operationType, String token) throws Throwable {
+		// Send the request to the server with the given token and store the exit code.
+		this.actualExitCode = new PowerDeComposerClient(this._server.getPort(), token).execute(getCommandArray(operationType), System.out);
+	}
+	
+	@When("^a client connects to the server without sending a request$")
+	public void aClientConnectsToTheServerWithoutSendingARequest() throws Throwable {
+		// Keep the connection open without sending anything, it's closed by the server after the request timeout.
+		this._idleSocket = new Socket(InetAddress.getLoopbackAddress(), this._server.getPort());
+	}
+	
 	public void iExecuteInSeparateProcess(String operationType) throws Throwable {
+		iExecuteInSeparateProcess(getCommandArray(operationType));
+	}
+	
+	public void iExecuteInSeparateProcess(String[] pdcCommandArray) throws Throwable {
 		// Add the first part of the command (in reverse order is java is the first argument).
 		Path pdcTargetPath = Paths.get(Executor.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getParent();
 		PathMatcher pdcJarMatcher = pdcTargetPath.getFileSystem().getPathMatcher("regex:.*PowerDeComposer-[0-9\\.]+-jar-with-dependencies.jar");
@@ -227,7 +322,7 @@ public class PowerDeComposerTestSteps {
 		commandLineArgs.add("-jar");
 		commandLineArgs.add(pdcTargetPath.resolve(optionalPdcJarPath.get()).toString());
 		// Add the rest of the pdc command.
-		Collections.addAll(commandLineArgs, getCommandArray(operationType));
+		Collections.addAll(commandLineArgs, pdcCommandArray);
 		
 		// Print the command array.
 		String[] cmdArray = commandLineArgs.toArray(new String[0]);
@@ -350,6 +445,14 @@ public class PowerDeComposerTestSteps {
 		);	
 	}
 	
+	@Then("^I expect the output contains '(.*)'$")
+	public void iExpectTheOutputContains(String expectedOutput) throws Throwable {
+		assertTrue(
+				this.processOutput.contains(expectedOutput),
+				String.format("The output doesn't contain '%s'", expectedOutput)
+		);
+	}
+	
 	private static String getFileContents(File file) throws IOException {
 		//Open the file and read to string
 		FileInputStream fis = new FileInputStream(file);
@@ -363,8 +466,19 @@ public class PowerDeComposerTestSteps {
 	@Then("^I (do not|do) expect the file '(.*)'$")
 	public void thenIDoExpectTheFile(String doOrDont,String targetFile)
 			throws Throwable {
+		thenIDoExpectTheFile(doOrDont, this._decomposedFolderPath.resolve(targetFile), targetFile);
+	}
+	
+	@Then("^I (do not|do) expect the composed file '(.*)'$")
+	public void thenIDoExpectTheComposedFile(String doOrDont,String targetFile)
+			throws Throwable {
+		thenIDoExpectTheFile(doOrDont, this._composedFolderPath.resolve(targetFile), targetFile);
+	}
+	
+	private void thenIDoExpectTheFile(String doOrDont, Path expectedFilePath, String targetFile)
+			throws Throwable {
 		
-		File expectedFile = this._decomposedFolderPath.resolve(targetFile).toFile();
+		File expectedFile = expectedFilePath.toFile();
 		
 		if (doOrDont.equalsIgnoreCase("do")){
 			assertTrue(
@@ -378,5 +492,30 @@ public class PowerDeComposerTestSteps {
 			);
 		}
 	}
+	
+	@Then("^I expect the decomposed file '(.*)' (is|is not) rewritten$")
+	public void thenIExpectTheDecomposedFileIsRewritten(String targetFile, String isOrIsNot)
+			throws Throwable {
+		thenIExpectTheFileIsRewritten(this._decomposedFolderPath.resolve(targetFile), isOrIsNot);
+	}
+	
+	@Then("^I expect the composed file '(.*)' (is|is not) rewritten$")
+	public void thenIExpectTheComposedFileIsRewritten(String targetFile, String isOrIsNot)
+			throws Throwable {
+		thenIExpectTheFileIsRewritten(this._composedFolderPath.resolve(targetFile), isOrIsNot);
+	}
+	
+	private void thenIExpectTheFileIsRewritten(Path expectedFilePath, String isOrIsNot)
+			throws Throwable {
+		String targetFile = expectedFilePath.getFileName().toString();
+		// A file which is rewritten has a modification time of less than an hour ago.
+		boolean isRewritten = Files.getLastModifiedTime(expectedFilePath).toMillis() > System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+		
+		assertEquals(
+				isOrIsNot.equalsIgnoreCase("is"),
+				isRewritten,
+				String.format("The file '%s' %s expected to be rewritten!", targetFile, isOrIsNot)
+		);
+	}
 
 }
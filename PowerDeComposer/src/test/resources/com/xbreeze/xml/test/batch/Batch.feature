@@ -0,0 +1,104 @@
+@Unit
+Feature: Batch
+  Here we test executing multiple compose and decompose operations in one batch.
+
+  Scenario: Decompose using a glob pattern
+    Given the composed file 'FirstModel.xml':
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Name>FirstModel</Name>
+      </RootElement>
+      """
+    And the composed file 'Sub/SecondModel.xml':
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Name>SecondModel</Name>
+      </RootElement>
+      """
+    When I perform a batch with 2 threads and the manifest:
+      """
+      # Decompose all xml files in the composed folder.
+      decompose;Composed/**.xml;Decomposed
+      """
+    Then I expect a decomposed file 'FirstModel/FirstModel.xml' with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Name>FirstModel</Name>
+      </RootElement>
+      """
+    And I expect a decomposed file 'Sub/SecondModel/SecondModel.xml' with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Name>SecondModel</Name>
+      </RootElement>
+      """
+
+  Scenario: Compose and decompose using explicit jobs
+    Given the decomposed file 'FirstModel/FirstModel.xml':
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<xi:include href="ChildElements/Child.xml" />
+      	</ChildElements>
+      </RootElement>
+      """
+    And the decomposed file 'FirstModel/ChildElements/Child.xml':
+      """
+      <ChildElement>Child</ChildElement>
+      """
+    And the composed file 'SecondModel.xml':
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement/>
+      """
+    When I perform a batch with 2 threads and the manifest:
+      """
+      compose;Decomposed/FirstModel/FirstModel.xml;Composed/FirstModel.xml
+      decompose;Composed/SecondModel.xml;Decomposed/SecondModel
+      """
+    Then I expect a composed file 'FirstModel.xml' with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement>Child</ChildElement>
+      	</ChildElements>
+      </RootElement>
+      """
+    And I expect a decomposed file 'SecondModel/SecondModel.xml' with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement/>
+      """
+
+  Scenario: Batch with a failing job
+    Given the composed file 'FirstModel.xml':
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Name>FirstModel</Name>
+      </RootElement>
+      """
+    When I perform a batch with 2 threads in separate process and the manifest:
+      """
+      decompose;Composed/FirstModel.xml;Decomposed/FirstModel
+      compose;Decomposed/MissingModel/MissingModel.xml;Composed/MissingModel.xml
+      """
+    Then I expect exit code 1
+    And I expect the output contains '[exit code 0] decompose'
+    And I expect the output contains '[exit code 1] compose'
+    And I expect the output contains 'Log of decompose'
+    And I expect the output contains '2 jobs, 1 succeeded, 1 failed'
+    And I expect the output contains '1 of the 2 batch jobs failed.'
+    And I expect a decomposed file 'FirstModel/FirstModel.xml' with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Name>FirstModel</Name>
+      </RootElement>
+      """
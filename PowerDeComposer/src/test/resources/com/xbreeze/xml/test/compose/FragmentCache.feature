@@ -0,0 +1,133 @@
+@Unit
+Feature: Configure compose fragmentCacheDirectory
+  Here we test the working of the fragmentCacheDirectory attribute while composing.
+  The result of composing a model using the cached fragments must be equal to the result of resolving all included files.
+
+  Background:
+    Given the decomposed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<xi:include href="ChildElements/FirstFileName.xml" />
+      		<xi:include href="ChildElements/SecondFileName.xml" />
+      	</ChildElements>
+      </RootElement>
+      """
+    And the decomposed file 'ChildElements/FirstFileName.xml':
+      """
+      <ChildElement id="FirstId">
+      			<ChildElements>
+      				<xi:include href="FirstFileName/ChildElements/ThirdFileName.xml" />
+      				<xi:include href="FirstFileName/ChildElements/FourthFileName.xml" />
+      			</ChildElements>
+      		</ChildElement>
+      """
+    And the decomposed file 'ChildElements/FirstFileName/ChildElements/ThirdFileName.xml':
+      """
+      <ChildElement id="ThirdId"/>
+      """
+    And the decomposed file 'ChildElements/FirstFileName/ChildElements/FourthFileName.xml':
+      """
+      <ChildElement id="FourthId"/>
+      """
+    And the decomposed file 'ChildElements/SecondFileName.xml':
+      """
+      <ChildElement id="SecondId"/>
+      """
+
+  Scenario Outline: Compose an unchanged model using the fragment cache <Scenario>
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Compose fragmentCacheDirectory="target/FragmentCache" <Parallelism> />
+      </PowerDeComposerConfig>
+      """
+    When I perform a compose
+    And I perform a compose
+    Then I expect a composed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId">
+      			<ChildElements>
+      				<ChildElement id="ThirdId"/>
+      				<ChildElement id="FourthId"/>
+      			</ChildElements>
+      		</ChildElement>
+      		<ChildElement id="SecondId"/>
+      	</ChildElements>
+      </RootElement>
+      """
+
+    Examples:
+      | Scenario   | Parallelism     |
+      | sequential |                 |
+      | parallel   | parallelism="4" |
+
+  Scenario Outline: Compose a changed model after the fragments are cached <Scenario>
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Compose fragmentCacheDirectory="target/FragmentCache" <Parallelism> />
+      </PowerDeComposerConfig>
+      """
+    When I perform a compose
+    And the decomposed file 'ChildElements/FirstFileName/ChildElements/FourthFileName.xml':
+      """
+      <ChildElement id="FourthId" name="Changed"/>
+      """
+    And I perform a compose
+    Then I expect a composed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId">
+      			<ChildElements>
+      				<ChildElement id="ThirdId"/>
+      				<ChildElement id="FourthId" name="Changed"/>
+      			</ChildElements>
+      		</ChildElement>
+      		<ChildElement id="SecondId"/>
+      	</ChildElements>
+      </RootElement>
+      """
+
+    Examples:
+      | Scenario   | Parallelism     |
+      | sequential |                 |
+      | parallel   | parallelism="4" |
+
+  Scenario: Compose a changed model using a fragment cache which is too small for the fragments
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Compose fragmentCacheDirectory="target/SmallFragmentCache" fragmentCacheSize="1" />
+      </PowerDeComposerConfig>
+      """
+    When I perform a compose
+    And the decomposed file 'ChildElements/SecondFileName.xml':
+      """
+      <ChildElement id="SecondId" name="Changed"/>
+      """
+    And I perform a compose
+    Then I expect a composed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId">
+      			<ChildElements>
+      				<ChildElement id="ThirdId"/>
+      				<ChildElement id="FourthId"/>
+      			</ChildElements>
+      		</ChildElement>
+      		<ChildElement id="SecondId" name="Changed"/>
+      	</ChildElements>
+      </RootElement>
+      """
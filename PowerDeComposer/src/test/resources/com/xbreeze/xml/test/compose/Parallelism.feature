@@ -0,0 +1,78 @@
+@Unit
+Feature: Configure compose parallelism
+  Here we test the working of the parallelism attribute while composing.
+
+  Background: 
+    Given the decomposed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<xi:include href="ChildElements/FirstFileName.xml" />
+      		<xi:include href="ChildElements/SecondFileName.xml" />
+      	</ChildElements>
+      </RootElement>
+      """
+    And the decomposed file 'ChildElements/FirstFileName.xml':
+      """
+      <ChildElement id="FirstId">
+      			<ChildElements>
+      				<xi:include href="FirstFileName/ChildElements/ThirdFileName.xml" />
+      				<xi:include href="FirstFileName/ChildElements/FourthFileName.xml" />
+      			</ChildElements>
+      		</ChildElement>
+      """
+    And the decomposed file 'ChildElements/FirstFileName/ChildElements/ThirdFileName.xml':
+      """
+      <ChildElement id="ThirdId"/>
+      """
+    And the decomposed file 'ChildElements/FirstFileName/ChildElements/FourthFileName.xml':
+      """
+      <ChildElement id="FourthId"/>
+      """
+
+  Scenario Outline: Compose parallelism <Scenario>
+    Given the decomposed file 'ChildElements/SecondFileName.xml':
+      """
+      <ChildElement id="SecondId"/>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Compose <Parallelism> />
+      </PowerDeComposerConfig>
+      """
+    When I perform a compose
+    Then I expect a composed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId">
+      			<ChildElements>
+      				<ChildElement id="ThirdId"/>
+      				<ChildElement id="FourthId"/>
+      			</ChildElements>
+      		</ChildElement>
+      		<ChildElement id="SecondId"/>
+      	</ChildElements>
+      </RootElement>
+      """
+
+    Examples: 
+      | Scenario     | Parallelism     |
+      | no-specified |                 |
+      | sequential   | parallelism="1" |
+      | parallel     | parallelism="4" |
+
+  Scenario: Compose parallel with missing include
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Compose parallelism="4" />
+      </PowerDeComposerConfig>
+      """
+    When I perform a compose in separate process
+    Then I expect exit code 1
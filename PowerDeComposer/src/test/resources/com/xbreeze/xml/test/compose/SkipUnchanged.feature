@@ -0,0 +1,95 @@
+@Unit
+Feature: Configure compose skipUnchanged
+  Here we test the working of the skipUnchanged attribute while composing.
+  When the target file and the files read by the former compose are unchanged, the compose is skipped.
+  Otherwise the target file is only written when the composed model differs.
+
+  Background: 
+    Given the decomposed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<xi:include href="ChildElements/FirstFileName.xml" />
+      	</ChildElements>
+      </RootElement>
+      """
+    And the decomposed file 'ChildElements/FirstFileName.xml':
+      """
+      <ChildElement id="FirstId"/>
+      """
+
+  Scenario Outline: Compose an unchanged model <Scenario>
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Compose skipUnchanged="true" stateDirectory="target/PdcState" <Streaming> />
+      </PowerDeComposerConfig>
+      """
+    When I perform a compose
+    And the composed file 'InlineFile.xml' was last modified a day ago
+    And I perform a compose
+    Then I expect the composed file 'InlineFile.xml' is not rewritten
+    And I do not expect the composed file 'InlineFile.xml.pdcfingerprint'
+
+    Examples: 
+      | Scenario       | Streaming         |
+      | in memory      |                  |
+      | with streaming | streaming="true" |
+
+  Scenario Outline: Compose a model with a rewritten include <Scenario>
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Compose skipUnchanged="true" stateDirectory="target/PdcState" <Streaming> />
+      </PowerDeComposerConfig>
+      """
+    When I perform a compose
+    And the composed file 'InlineFile.xml' was last modified a day ago
+    And the decomposed file 'ChildElements/FirstFileName.xml':
+      """
+      <ChildElement id="<Id>"/>
+      """
+    And I perform a compose
+    Then I expect the composed file 'InlineFile.xml' <IsRewritten> rewritten
+    And I expect a composed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="<Id>"/>
+      	</ChildElements>
+      </RootElement>
+      """
+
+    Examples: 
+      | Scenario                      | Streaming         | Id       | IsRewritten |
+      | with the same contents        |                   | FirstId  | is not      |
+      | with other contents           |                   | OtherId  | is          |
+      | with other contents streaming | streaming="true"  | OtherId  | is          |
+
+  Scenario: Compose an unchanged model with a fingerprint of a former version next to the composed model
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Compose skipUnchanged="true" stateDirectory="target/PdcState" />
+      </PowerDeComposerConfig>
+      """
+    And the composed file 'InlineFile.xml.pdcfingerprint':
+      """
+      # PowerDeComposer compose fingerprint 1.0: size;modification-time;crc32c;path
+      """
+    When I perform a compose
+    Then I expect a composed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId"/>
+      	</ChildElements>
+      </RootElement>
+      """
+    And I do not expect the composed file 'InlineFile.xml.pdcfingerprint'
@@ -0,0 +1,149 @@
+@Unit
+Feature: Configure compose streaming
+  Here we test the working of the streaming attribute while composing.
+
+  Background: 
+    Given the decomposed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<xi:include href="ChildElements/FirstFileName.xml" />
+      		<xi:include href="ChildElements/SecondFileName.xml" />
+      	</ChildElements>
+      </RootElement>
+      """
+    And the decomposed file 'ChildElements/FirstFileName.xml':
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <ChildElement id="FirstId">
+      <ExtendedAttributes>
+      <OriginatingExtension ObjectID="4202E4F4-4187-47CE-83BE-51088F229451" Name="TestExtension">
+      <ExtendedAttribute ObjectID="DA1CC8BE-C80A-4B74-BB79-10F50BE06CBC" Name="TestBooleanField">true</ExtendedAttribute>
+      </OriginatingExtension>
+      </ExtendedAttributes>
+      			<ChildElements>
+      				<xi:include href="FirstFileName/ChildElements/ThirdFileName.xml" />
+      			</ChildElements>
+      		</ChildElement>
+      """
+    And the decomposed file 'ChildElements/FirstFileName/ChildElements/ThirdFileName.xml':
+      """
+      <ChildElement id="ThirdId"/>
+      """
+
+  Scenario Outline: Compose streaming <Scenario>
+    Given the decomposed file 'ChildElements/SecondFileName.xml':
+      """
+      <ChildElement id="SecondId"/>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Compose <Streaming> />
+      </PowerDeComposerConfig>
+      """
+    When I perform a compose
+    Then I expect a composed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId">
+      <a:ExtendedAttributesText>{4202E4F4-4187-47CE-83BE-51088F229451},TestExtension,64={DA1CC8BE-C80A-4B74-BB79-10F50BE06CBC},TestBooleanField,4=true
+      
+      </a:ExtendedAttributesText>
+      			<ChildElements>
+      				<ChildElement id="ThirdId"/>
+      			</ChildElements>
+      		</ChildElement>
+      		<ChildElement id="SecondId"/>
+      	</ChildElements>
+      </RootElement>
+      """
+
+    Examples: 
+      | Scenario     | Streaming         |
+      | no-specified |                   |
+      | disabled     | streaming="false" |
+      | enabled      | streaming="true"  |
+
+  Scenario: Compose streaming with missing include
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Compose streaming="true" />
+      </PowerDeComposerConfig>
+      """
+    When I perform a compose in separate process
+    Then I expect exit code 1
+
+  Scenario Outline: Compose with an include cycle using a relative path <Scenario>
+    Given the decomposed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<xi:include href="Sub/ChildElement.xml" />
+      </RootElement>
+      """
+    And the decomposed file 'Sub/ChildElement.xml':
+      """
+      <ChildElement>
+      	<xi:include href="../InlineFile.xml" />
+      </ChildElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Compose <Streaming> />
+      </PowerDeComposerConfig>
+      """
+    When I perform a compose in separate process
+    Then I expect exit code 1
+    And I expect the output contains 'Include cycle detected'
+
+    Examples: 
+      | Scenario | Streaming         |
+      | disabled | streaming="false" |
+      | enabled  | streaming="true"  |
+
+  Scenario Outline: Compose an include with a byte order mark <Scenario>
+    Given the decomposed file 'ChildElements/SecondFileName.xml':
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <ChildElement id="SecondId"/>
+      """
+    And the decomposed file 'ChildElements/SecondFileName.xml' starts with a byte order mark
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Compose <Streaming> />
+      </PowerDeComposerConfig>
+      """
+    When I perform a compose
+    Then I expect a composed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId">
+      <a:ExtendedAttributesText>{4202E4F4-4187-47CE-83BE-51088F229451},TestExtension,64={DA1CC8BE-C80A-4B74-BB79-10F50BE06CBC},TestBooleanField,4=true
+      
+      </a:ExtendedAttributesText>
+      			<ChildElements>
+      				<ChildElement id="ThirdId"/>
+      			</ChildElements>
+      		</ChildElement>
+      		<ChildElement id="SecondId"/>
+      	</ChildElements>
+      </RootElement>
+      """
+
+    Examples: 
+      | Scenario | Streaming         |
+      | disabled | streaming="false" |
+      | enabled  | streaming="true"  |
@@ -0,0 +1,70 @@
+@Unit
+Feature: Config file
+  Here we test reading the config file.
+  Valid config files are read without JAXB, invalid config files must report the same errors as before.
+
+  Background:
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId" name="First Name" />
+      	</ChildElements>
+      </RootElement>
+      """
+
+  Scenario: Config file with comments, whitespace and references in attribute values
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <!-- The config for this scenario. -->
+      <PowerDeComposerConfig>
+      	<Decompose formalizeExtendedAttributes=" false " writerCount="&#9;0&#10;">
+      		<DecomposableElement>
+      			<!-- Decompose the elements with an id. -->
+      			<ElementCondition xpath="@id and name() = &quot;ChildElement&quot;" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="translate(@name, '&#32;', '_')" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<xi:include href="ChildElements/First_Name.xml" />
+      	</ChildElements>
+      </RootElement>
+      """
+
+  Scenario Outline: Invalid config file with <Scenario>
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose <DecomposeAttributes>>
+      		<DecomposableElement>
+      			<ElementCondition xpath="@id" />
+      			<TargetFileNames>
+      				<TargetFileNameElement>
+      			</TargetFileNames>
+      		</DecomposableElement>
+      		<NodeRemovals />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose in separate process
+    Then I expect exit code 1
+    And I expect the output contains '<ExpectedError>'
+
+    Examples:
+      | Scenario              | DecomposeAttributes | TargetFileNameElement         | ExpectedError                                                  |
+      | wrong element order   |                     | <TargetFileName xpath="@id"/> | Invalid content was found starting with element 'NodeRemovals' |
+      | invalid boolean value | incremental="yes"   | <TargetFileName xpath="@id"/> | 'yes' is not a valid value for 'boolean'                       |
+      | invalid engine value  | engine="fast"       | <TargetFileName xpath="@id"/> | 'fast' is not facet-valid with respect to enumeration          |
+      | missing element       |                     |                               | The content of element 'TargetFileNames' is not complete       |
@@ -49,3 +49,187 @@ Feature: Configure ChangeDetection
       | composed empty     |              | false         |               | B             |
       | decomposed empty   | false        |               | false         | B             |
       | both empty         |              |               |               | A             |
+
+  Scenario Outline: ChangeDetection on a processing instruction detects <Scenario>
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <?PowerDesigner AppLocale="UTF16" LastModificationDate="<InputDate>"?>
+      <RootElement>
+      	<Something else="B" />
+      </RootElement>
+      """
+    Given the decomposed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <?PowerDesigner AppLocale="UTF16" LastModificationDate="<TargetDate>"?>
+      <RootElement>
+      	<Something else="A" />
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose>
+      		<ChangeDetection xpath="/processing-instruction('PowerDesigner')/@LastModificationDate" />
+      		<DecomposableElement />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <?PowerDesigner AppLocale="UTF16" LastModificationDate="<ResultDate>"?>
+      <RootElement>
+      	<Something else="<SomethingElse>" />
+      </RootElement>
+      """
+
+    Examples: 
+      | Scenario           | InputDate  | TargetDate | ResultDate | SomethingElse |
+      | composed changed   | 1700000001 | 1700000000 | 1700000001 | B             |
+      | both unchanged     | 1700000000 | 1700000000 | 1700000000 | A             |
+      | composed empty     |            | 1700000000 |            | B             |
+      | both empty         |            |            |            | A             |
+
+  Scenario: ChangeDetection on a processing instruction after the root element
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Something else="B" />
+      </RootElement>
+      <?PowerDesigner AppLocale="UTF16" LastModificationDate="1700000001"?>
+      """
+    Given the decomposed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Something else="A" />
+      </RootElement>
+      <?PowerDesigner AppLocale="UTF16" LastModificationDate="1700000000"?>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose>
+      		<ChangeDetection xpath="//processing-instruction('PowerDesigner')/@LastModificationDate" />
+      		<DecomposableElement />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Something else="B" />
+      </RootElement>
+      <?PowerDesigner AppLocale="UTF16" LastModificationDate="1700000001"?>
+      """
+
+  Scenario: ChangeDetection fingerprint of an unchanged model
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Something changed="false" />
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose stateDirectory="target/PdcState">
+      		<ChangeDetection xpath="/RootElement/Something/@changed" fingerprint="true" />
+      		<DecomposableElement />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    And the decomposed file 'InlineFile.xml' was last modified a day ago
+    And I perform a decompose
+    Then I do not expect the file 'InlineFile.xml.pdcfingerprint'
+    And I expect the decomposed file 'InlineFile.xml' is not rewritten
+
+  Scenario: ChangeDetection fingerprint of a changed model
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Something changed="false" />
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose stateDirectory="target/PdcState">
+      		<ChangeDetection xpath="/RootElement/Something/@changed" fingerprint="true" />
+      		<DecomposableElement />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    And the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Something changed="true!" />
+      </RootElement>
+      """
+    And I perform a decompose
+    Then I do not expect the file 'InlineFile.xml.pdcfingerprint'
+    And I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Something changed="true!" />
+      </RootElement>
+      """
+
+  Scenario: ChangeDetection fingerprint after a config change
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Something changed="false" />
+      	<RemovedElement />
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose stateDirectory="target/PdcState">
+      		<ChangeDetection xpath="/RootElement/Something/@changed" fingerprint="true" />
+      		<NodeRemovals>
+      			<NodeRemoval xpath="/RootElement/RemovedElement" />
+      		</NodeRemovals>
+      		<DecomposableElement />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose stateDirectory="target/PdcState">
+      		<ChangeDetection xpath="/RootElement/Something/@changed" fingerprint="true" />
+      		<DecomposableElement />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    And I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Something changed="false" />
+      	<RemovedElement />
+      </RootElement>
+      """
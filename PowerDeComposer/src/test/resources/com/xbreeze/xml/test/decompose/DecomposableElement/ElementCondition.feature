@@ -48,3 +48,6 @@ Feature: Configure ElementCondition
       | element condition             | starts-with(name(), 'Second')                       | <FirstElement id="1"/>                    | <xi:include href="ChildElements/2.xml" /> |
       | parent condition              | parent::node()[starts-with(name(), 'c:')]           | <xi:include href="ChildElements/1.xml" /> | <xi:include href="ChildElements/2.xml" /> |
       | multiple conditions existence | ./@id and parent::node()[starts-with(name(), 'c:')] | <xi:include href="ChildElements/1.xml" /> | <xi:include href="ChildElements/2.xml" /> |
+      | element name                  | name() = 'FirstElement'                             | <xi:include href="ChildElements/1.xml" /> | <SecondElement id="2"/>                   |
+      | mixed conditions              | ./@id and @id &gt; 1                                | <FirstElement id="1"/>                    | <xi:include href="ChildElements/2.xml" /> |
+      | alternative conditions        | name() = 'FirstElement' or @id = 2                  | <xi:include href="ChildElements/1.xml" /> | <xi:include href="ChildElements/2.xml" /> |
@@ -0,0 +1,180 @@
+@Unit
+Feature: Configure engine
+  Here we test the working of the engine attribute.
+  The result of the single pass engine must be equal to the result of the default engine.
+
+  Scenario Outline: engine <Scenario> with nested elements and duplicate names
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<Item id="1" name="X">
+      			<SubItems>
+      				<SubItem id="11" name="Y"/>
+      				<SubItem id="12" name="Y">
+      					<Properties>
+      						<Property id="121" name="Z"/>
+      					</Properties>
+      				</SubItem>
+      			</SubItems>
+      		</Item>
+      		<Item id="2" name="X"/>
+      		<Item id="3" name="Z"/>
+      	</Items>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose <Engine>>
+      		<DecomposableElement>
+      			<ElementCondition xpath="@name" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@name" />
+      				<TargetFileName xpath="@id" />
+      			</TargetFileNames>
+      			<IncludeAttributes>
+      				<IncludeAttribute name="id" xpath="@id" />
+      			</IncludeAttributes>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<xi:include href="Items/X/X.xml" id="1" />
+      		<xi:include href="Items/2.xml" id="2" />
+      		<xi:include href="Items/Z.xml" id="3" />
+      	</Items>
+      </RootElement>
+      """
+    And I expect a decomposed file 'Items/X/X.xml' with the following content:
+      """
+      <Item id="1" name="X">
+      			<SubItems>
+      				<xi:include href="SubItems/Y.xml" id="11" />
+      				<xi:include href="SubItems/12/12.xml" id="12" />
+      			</SubItems>
+      		</Item>
+      """
+    And I expect a decomposed file 'Items/X/SubItems/12/12.xml' with the following content:
+      """
+      <SubItem id="12" name="Y">
+      					<Properties>
+      						<xi:include href="Properties/Z.xml" id="121" />
+      					</Properties>
+      				</SubItem>
+      """
+    And I expect a decomposed file 'Items/X/SubItems/12/Properties/Z.xml' with the following content:
+      """
+      <Property id="121" name="Z"/>
+      """
+
+    Examples: 
+      | Scenario     | Engine                |
+      | no-specified |                       |
+      | default      | engine="default"      |
+      | singlePass   | engine="singlePass"   |
+
+  Scenario Outline: engine <Scenario> with an expression outside of the decomposed element
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<Item id="1" name="X">
+      			<SubItems>
+      				<SubItem id="11" name="Y"/>
+      			</SubItems>
+      		</Item>
+      	</Items>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose <Engine>>
+      		<DecomposableElement>
+      			<ElementCondition xpath="@name" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="concat(count(ancestor::*), '_', @id)" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<xi:include href="Items/3_1/3_1.xml" />
+      	</Items>
+      </RootElement>
+      """
+    And I expect a decomposed file 'Items/3_1/3_1.xml' with the following content:
+      """
+      <Item id="1" name="X">
+      			<SubItems>
+      				<xi:include href="SubItems/3_11.xml" />
+      			</SubItems>
+      		</Item>
+      """
+
+    Examples: 
+      | Scenario   | Engine              |
+      | default    | engine="default"    |
+      | singlePass | engine="singlePass" |
+
+  Scenario Outline: engine <Scenario> with a numeric element condition
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<Item id="1" position="1"/>
+      		<Item id="2" position="1"/>
+      		<Item id="3" position="3"/>
+      	</Items>
+      </RootElement>
+      """
+    # A numeric condition selects the elements at that position, so only the elements with their own position.
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose <Engine>>
+      		<DecomposableElement>
+      			<ElementCondition xpath="number(@position)" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@id" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<xi:include href="Items/1.xml" />
+      		<Item id="2" position="1"/>
+      		<xi:include href="Items/3.xml" />
+      	</Items>
+      </RootElement>
+      """
+
+    Examples: 
+      | Scenario   | Engine              |
+      | default    | engine="default"    |
+      | singlePass | engine="singlePass" |
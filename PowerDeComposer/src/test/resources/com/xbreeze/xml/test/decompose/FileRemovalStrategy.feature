@@ -51,7 +51,121 @@ Feature: Configure FileRemovalStrategy
     Then I <DoOrDont> expect the file 'SubFolder/ExtraFileName.xml'
 
     Examples: 
-      | Scenario     | FileRemovalStrategy            | DoOrDont |
-      | includes     | fileRemovalStrategy="includes" | do       |
-      | files        | fileRemovalStrategy="files"    | do not   |
-      | no-specified |                                | do       |
+      | Scenario     | FileRemovalStrategy                                             | DoOrDont |
+      | includes     | fileRemovalStrategy="includes"                                  | do       |
+      | files        | fileRemovalStrategy="files"                                     | do not   |
+      | manifest     | fileRemovalStrategy="manifest" stateDirectory="target/PdcState" | do       |
+      | no-specified |                                                                 | do       |
+
+  Scenario: fileRemovalStrategy manifest removes the files of the former decompose
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose fileRemovalStrategy="manifest" stateDirectory="target/PdcState">
+      		<DecomposableElement>
+      			<ElementCondition xpath="parent::node()[starts-with(name(), 'c:')]" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@id" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    And the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<c:ChildElements>
+      		<ChildElement id="1"/>
+      		<ChildElement id="2"/>
+      	</c:ChildElements>
+      </RootElement>
+      """
+    When I perform a decompose
+    Then I do not expect the file 'InlineFile.xml.pdcmanifest'
+    And I do expect the file 'ChildElements/2.xml'
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<c:ChildElements>
+      		<ChildElement id="1"/>
+      	</c:ChildElements>
+      </RootElement>
+      """
+    When I perform a decompose
+    Then I do expect the file 'ChildElements/1.xml'
+    And I do not expect the file 'ChildElements/2.xml'
+    And I do expect the file 'SubFolder/ExtraFileName.xml'
+
+  Scenario: fileRemovalStrategy manifest falls back to includes when the manifest is inconsistent
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose fileRemovalStrategy="manifest" stateDirectory="target/PdcState">
+      		<DecomposableElement>
+      			<ElementCondition xpath="parent::node()[starts-with(name(), 'c:')]" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@id" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    And the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<c:ChildElements>
+      		<ChildElement id="1"/>
+      		<ChildElement id="2"/>
+      	</c:ChildElements>
+      </RootElement>
+      """
+    When I perform a decompose
+    Then I do not expect the file 'InlineFile.xml.pdcmanifest'
+    And I do expect the file 'ChildElements/2.xml'
+    Given the decomposed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<c:ChildElements>
+      		<xi:include href="ChildElements/1.xml" />
+      		<xi:include href="ChildElements/2.xml" />
+      		<xi:include href="SubFolder/ExtraFileName.xml" />
+      	</c:ChildElements>
+      </RootElement>
+      """
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<c:ChildElements>
+      		<ChildElement id="1"/>
+      	</c:ChildElements>
+      </RootElement>
+      """
+    When I perform a decompose
+    Then I do expect the file 'ChildElements/1.xml'
+    And I do not expect the file 'ChildElements/2.xml'
+    And I do not expect the file 'SubFolder/ExtraFileName.xml'
+
+  Scenario: fileRemovalStrategy files keeps the files written by PowerDeComposer
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose fileRemovalStrategy="files">
+      		<DecomposableElement />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    And the decomposed file 'InlineFile.xml.pdcmanifest':
+      """
+      # PowerDeComposer manifest 1.1: size;sha-256;object-id;fragment-sha-256;path
+      """
+    When I perform a decompose
+    Then I do not expect the file 'SubFolder/ExtraFileName.xml'
+    And I do expect the file 'InlineFile.xml.pdcmanifest'
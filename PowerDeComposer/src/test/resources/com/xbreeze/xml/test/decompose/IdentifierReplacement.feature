@@ -119,3 +119,55 @@ Feature: Configure IdentifierReplacement
       	</ReferencingElements>
       </RootElement>
       """
+
+  Scenario: IdentifierReplacement with sparse local identifiers
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<KeyElements>
+      		<KeyElement id="o1" alternateKey="a" />
+      		<KeyElement id="o1500" alternateKey="b" />
+      		<KeyElement id="o1024" alternateKey="c" />
+      		<KeyElement id="o16000000" alternateKey="d" />
+      	</KeyElements>
+      	<ReferencingElements>
+      		<ReferencingElement ref="o16000000" />
+      		<ReferencingElement ref="o1024" />
+      		<ReferencingElement ref="o1500" />
+      		<ReferencingElement ref="o1" />
+      	</ReferencingElements>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose>
+      		<IdentifierReplacements>
+      			<IdentifierReplacement identifierNodeXPath="//*/@id" replacementValueXPath="../@alternateKey" referencingNodeXPath="//*/@ref" />
+      		</IdentifierReplacements>
+      		<!-- The DecomposableElement element must be here, otherwise the decomposer won't write the composed file to the decomposed folder. -->
+      		<DecomposableElement />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<KeyElements>
+      		<KeyElement id="a" alternateKey="a" />
+      		<KeyElement id="b" alternateKey="b" />
+      		<KeyElement id="c" alternateKey="c" />
+      		<KeyElement id="d" alternateKey="d" />
+      	</KeyElements>
+      	<ReferencingElements>
+      		<ReferencingElement ref="d" />
+      		<ReferencingElement ref="c" />
+      		<ReferencingElement ref="b" />
+      		<ReferencingElement ref="a" />
+      	</ReferencingElements>
+      </RootElement>
+      """
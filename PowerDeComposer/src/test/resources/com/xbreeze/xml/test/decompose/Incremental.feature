@@ -0,0 +1,170 @@
+@Unit
+Feature: Incremental decompose
+  Here we test the working of the incremental attribute.
+  The files of elements which are unchanged since the former decompose are kept, the result must be equal to decomposing all elements.
+
+  Background:
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<Item Id="o1" name="X">
+      			<SubItems>
+      				<SubItem Id="o2" name="Y">
+      					<Value>1</Value>
+      				</SubItem>
+      				<SubItem Id="o3" name="Z"/>
+      			</SubItems>
+      		</Item>
+      		<Item Id="o4" name="Z">
+      			<Value>1</Value>
+      		</Item>
+      		<Item Id="o5" name="W"/>
+      	</Items>
+      </RootElement>
+      """
+
+  Scenario Outline: incremental <Scenario> with a changed and removed element
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose fileRemovalStrategy="manifest" stateDirectory="target/PdcState" <Incremental>>
+      		<DecomposableElement>
+      			<ElementCondition xpath="@name" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@name" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    And the decomposed file 'Items/X/X.xml' was last modified a day ago
+    And the decomposed file 'Items/X/SubItems/Y.xml' was last modified a day ago
+    And the decomposed file 'Items/X/SubItems/Z.xml' was last modified a day ago
+    And the decomposed file 'Items/Z.xml' was last modified a day ago
+    And the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<Item Id="o1" name="X">
+      			<SubItems>
+      				<SubItem Id="o2" name="Y">
+      					<Value>2</Value>
+      				</SubItem>
+      				<SubItem Id="o3" name="Z"/>
+      			</SubItems>
+      		</Item>
+      		<Item Id="o4" name="Z">
+      			<Value>1</Value>
+      		</Item>
+      	</Items>
+      </RootElement>
+      """
+    And I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<xi:include href="Items/X/X.xml" />
+      		<xi:include href="Items/Z.xml" />
+      	</Items>
+      </RootElement>
+      """
+    And I expect a decomposed file 'Items/X/SubItems/Y.xml' with the following content:
+      """
+      <SubItem Id="o2" name="Y">
+      					<Value>2</Value>
+      				</SubItem>
+      """
+    And I expect a decomposed file 'Items/Z.xml' with the following content:
+      """
+      <Item Id="o4" name="Z">
+      			<Value>1</Value>
+      		</Item>
+      """
+    And I expect the decomposed file 'Items/X/X.xml' is rewritten
+    And I expect the decomposed file 'Items/X/SubItems/Y.xml' is rewritten
+    And I expect the decomposed file 'Items/X/SubItems/Z.xml' <UnchangedFilesRewritten> rewritten
+    And I expect the decomposed file 'Items/Z.xml' <UnchangedFilesRewritten> rewritten
+    And I do not expect the file 'Items/W.xml'
+
+    Examples:
+      | Scenario     | Incremental           | UnchangedFilesRewritten |
+      | no-specified |                       | is                      |
+      | disabled     | incremental="false"   | is                      |
+      | enabled      | incremental="true"    | is not                  |
+
+  Scenario: incremental with a changed decomposed file
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose fileRemovalStrategy="manifest" stateDirectory="target/PdcState" incremental="true">
+      		<DecomposableElement>
+      			<ElementCondition xpath="@name" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@name" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    And the decomposed file 'Items/X/X.xml' was last modified a day ago
+    And the decomposed file 'Items/X/SubItems/Z.xml' was last modified a day ago
+    And the decomposed file 'Items/Z.xml' was last modified a day ago
+    And the decomposed file 'Items/X/SubItems/Y.xml':
+      """
+      <SubItem Id="o2" name="Y"/>
+      """
+    And I perform a decompose
+    Then I expect a decomposed file 'Items/X/SubItems/Y.xml' with the following content:
+      """
+      <SubItem Id="o2" name="Y">
+      					<Value>1</Value>
+      				</SubItem>
+      """
+    And I expect the decomposed file 'Items/X/X.xml' is rewritten
+    And I expect the decomposed file 'Items/X/SubItems/Z.xml' is rewritten
+    And I expect the decomposed file 'Items/Z.xml' is rewritten
+
+  Scenario: incremental with a decomposed file changed without changing its size
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose fileRemovalStrategy="manifest" stateDirectory="target/PdcState" incremental="true">
+      		<DecomposableElement>
+      			<ElementCondition xpath="@name" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@name" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    And the decomposed file 'Items/X/X.xml' was last modified a day ago
+    And the decomposed file 'Items/X/SubItems/Y.xml' was last modified a day ago
+    And the decomposed file 'Items/X/SubItems/Z.xml' was last modified a day ago
+    And the decomposed file 'Items/Z.xml':
+      """
+      <Item Id="o4" name="Z">
+      			<Value>9</Value>
+      		</Item>
+      """
+    And I perform a decompose
+    Then I expect a decomposed file 'Items/Z.xml' with the following content:
+      """
+      <Item Id="o4" name="Z">
+      			<Value>1</Value>
+      		</Item>
+      """
+    And I expect the decomposed file 'Items/X/X.xml' is not rewritten
+    And I expect the decomposed file 'Items/X/SubItems/Y.xml' is not rewritten
+    And I expect the decomposed file 'Items/X/SubItems/Z.xml' is not rewritten
@@ -0,0 +1,109 @@
+@Unit
+Feature: Index cache
+  Here we test the working of the indexCacheDirectory attribute.
+  The result of decomposing a model using the cached index must be equal to the result of parsing the model.
+
+  Scenario: decompose an unchanged model using the cached index
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId" name="FirstName">
+      			<ChildElementValue>1</ChildElementValue>
+      		</ChildElement>
+      	</ChildElements>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose indexCacheDirectory="target/IndexCache">
+      		<DecomposableElement>
+      			<ElementCondition xpath="@id" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@name" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    And I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<xi:include href="ChildElements/FirstName.xml" />
+      	</ChildElements>
+      </RootElement>
+      """
+    And I expect a decomposed file 'ChildElements/FirstName.xml' with the following content:
+      """
+      <ChildElement id="FirstId" name="FirstName">
+      			<ChildElementValue>1</ChildElementValue>
+      		</ChildElement>
+      """
+
+  Scenario: decompose a changed model after the index is cached
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId" name="FirstName">
+      			<ChildElementValue>1</ChildElementValue>
+      		</ChildElement>
+      	</ChildElements>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose indexCacheDirectory="target/IndexCache">
+      		<DecomposableElement>
+      			<ElementCondition xpath="@id" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@name" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    And the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId" name="FirstName">
+      			<ChildElementValue>2</ChildElementValue>
+      		</ChildElement>
+      		<ChildElement id="SecondId" name="SecondName" />
+      	</ChildElements>
+      </RootElement>
+      """
+    And I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<xi:include href="ChildElements/FirstName.xml" />
+      		<xi:include href="ChildElements/SecondName.xml" />
+      	</ChildElements>
+      </RootElement>
+      """
+    And I expect a decomposed file 'ChildElements/FirstName.xml' with the following content:
+      """
+      <ChildElement id="FirstId" name="FirstName">
+      			<ChildElementValue>2</ChildElementValue>
+      		</ChildElement>
+      """
+    And I expect a decomposed file 'ChildElements/SecondName.xml' with the following content:
+      """
+      <ChildElement id="SecondId" name="SecondName" />
+      """
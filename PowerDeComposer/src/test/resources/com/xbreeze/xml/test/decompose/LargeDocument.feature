@@ -0,0 +1,87 @@
+@Unit
+Feature: Large document
+  Here we test the working of the largeDocumentThreshold attribute.
+  The result of decomposing a large document must be equal to the result of decomposing it in memory.
+
+  Scenario Outline: large document <Scenario> with pre-processing and nested elements
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Code>ROOT</Code>
+      	<Items>
+      		<Item Id="o1" name="X">
+      			<Code>ITEM_X</Code>
+      			<ModificationDate>1</ModificationDate>
+      			<SubItems>
+      				<SubItem Id="o2" name="Y">
+      					<ModificationDate>2</ModificationDate>
+      					<Ref Ref="o3" />
+      				</SubItem>
+      				<SubItem Id="o3" name="Z"/>
+      			</SubItems>
+      		</Item>
+      		<Item Id="o4" name="Z">
+      			<Code>ITEM_Z</Code>
+      		</Item>
+      	</Items>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose <LargeDocumentThreshold>>
+      		<NodeRemovals>
+      			<NodeRemoval xpath="//ModificationDate" />
+      		</NodeRemovals>
+      		<IdentifierReplacements>
+      			<IdentifierReplacement identifierNodeXPath="//SubItem/@Id" replacementValueXPath="concat(../../../Code, '_', ../@name)" referencingNodeXPath="//*/@Ref" />
+      		</IdentifierReplacements>
+      		<DecomposableElement>
+      			<ElementCondition xpath="@name" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@name" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Code>ROOT</Code>
+      	<Items>
+      		<xi:include href="Items/X/X.xml" />
+      		<xi:include href="Items/Z.xml" />
+      	</Items>
+      </RootElement>
+      """
+    And I expect a decomposed file 'Items/X/X.xml' with the following content:
+      """
+      <Item Id="o1" name="X">
+      			<Code>ITEM_X</Code>
+      			<SubItems>
+      				<xi:include href="SubItems/Y.xml" />
+      				<xi:include href="SubItems/Z.xml" />
+      			</SubItems>
+      		</Item>
+      """
+    And I expect a decomposed file 'Items/X/SubItems/Y.xml' with the following content:
+      """
+      <SubItem Id="ITEM_X_Y" name="Y">
+      					<Ref Ref="ITEM_X_Z" />
+      				</SubItem>
+      """
+    And I expect a decomposed file 'Items/X/SubItems/Z.xml' with the following content:
+      """
+      <SubItem Id="ITEM_X_Z" name="Z"/>
+      """
+
+    Examples:
+      | Scenario     | LargeDocumentThreshold        |
+      | no-specified |                               |
+      | all-elements | largeDocumentThreshold="0"    |
+      | segments     | largeDocumentThreshold="120"  |
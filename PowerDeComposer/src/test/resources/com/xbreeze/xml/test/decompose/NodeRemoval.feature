@@ -243,3 +243,52 @@ Feature: Configure NodeRemoval
       <?ExamplePI AttributeBefore="A" AttributeAfter="B" ?>
       <RootElement/>
       """
+
+  Scenario: Remove overlapping nodes
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <?ExamplePI FirstAttribute="A" SecondAttribute="B" KeepAttribute="C" ThirdAttribute="D"?>
+      <RootElement>
+      	<ParentElement RemoveAttribute="A" OtherRemoveAttribute="B" KeepAttribute="C">
+      		<ChildElement RemoveAttribute="D">Text</ChildElement>
+      		<KeepElement RemoveAttribute="E" />
+      	</ParentElement>
+      	<RemoveParentElement>
+      		<ChildElement RemoveAttribute="F">Text</ChildElement>
+      	</RemoveParentElement>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose>
+      		<NodeRemovals>
+      			<NodeRemoval xpath="/processing-instruction('ExamplePI')/@FirstAttribute" />
+      			<NodeRemoval xpath="/processing-instruction('ExamplePI')/@ThirdAttribute" />
+      			<NodeRemoval xpath="/processing-instruction('ExamplePI')/@SecondAttribute" />
+      			<NodeRemoval xpath="//ChildElement/@RemoveAttribute" />
+      			<NodeRemoval xpath="//ChildElement/text()" />
+      			<NodeRemoval xpath="//ChildElement" />
+      			<NodeRemoval xpath="//RemoveParentElement/ChildElement" />
+      			<NodeRemoval xpath="//RemoveParentElement" />
+      			<NodeRemoval xpath="//@RemoveAttribute" />
+      			<NodeRemoval xpath="//ParentElement/@OtherRemoveAttribute" />
+      			<NodeRemoval xpath="//RemoveParentElement" />
+      		</NodeRemovals>
+      		<DecomposableElement />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <?ExamplePI KeepAttribute="C"?>
+      <RootElement>
+      	<ParentElement KeepAttribute="C">
+      		<KeepElement />
+      	</ParentElement>
+      </RootElement>
+      """
@@ -0,0 +1,163 @@
+@Unit
+Feature: Configure parallelism
+  Here we test the working of the parallelism attribute.
+  The result of decomposing in parallel must be equal to decomposing sequentially.
+
+  Scenario Outline: parallelism <Scenario> with duplicate names
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<Item id="1" name="X">
+      			<SubItems>
+      				<SubItem id="11" name="Y"/>
+      				<SubItem id="12" name="Y"/>
+      			</SubItems>
+      		</Item>
+      		<Item id="2" name="X"/>
+      		<Item id="3" name="Z"/>
+      	</Items>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose <Parallelism>>
+      		<DecomposableElement>
+      			<ElementCondition xpath="@name" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@name" />
+      				<TargetFileName xpath="@id" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<xi:include href="Items/X/X.xml" />
+      		<xi:include href="Items/2.xml" />
+      		<xi:include href="Items/Z.xml" />
+      	</Items>
+      </RootElement>
+      """
+    And I expect a decomposed file 'Items/X/X.xml' with the following content:
+      """
+      <Item id="1" name="X">
+      			<SubItems>
+      				<xi:include href="SubItems/Y.xml" />
+      				<xi:include href="SubItems/12.xml" />
+      			</SubItems>
+      		</Item>
+      """
+    And I expect a decomposed file 'Items/X/SubItems/12.xml' with the following content:
+      """
+      <SubItem id="12" name="Y"/>
+      """
+
+    Examples: 
+      | Scenario     | Parallelism     |
+      | no-specified |                 |
+      | sequential   | parallelism="1" |
+      | parallel     | parallelism="4" |
+
+  Scenario Outline: parallelism <Scenario> with a name only free in the sequential result
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<Item id="1" name="X"/>
+      		<Item id="2" name="X" folder="X"/>
+      	</Items>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose <Parallelism>>
+      		<DecomposableElement>
+      			<ElementCondition xpath="@name" />
+      			<TargetFolderNames>
+      				<TargetFolderName xpath="@folder" condition="@folder" />
+      			</TargetFolderNames>
+      			<TargetFileNames>
+      				<TargetFileName xpath="@name" />
+      				<TargetFileName xpath="@id" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<xi:include href="Items/X.xml" />
+      		<xi:include href="Items/X/X.xml" />
+      	</Items>
+      </RootElement>
+      """
+    And I do not expect the file 'Items/X/2.xml'
+
+    Examples: 
+      | Scenario   | Parallelism     |
+      | sequential | parallelism="1" |
+      | parallel   | parallelism="4" |
+
+  Scenario Outline: parallelism <Scenario> keeps a file with a name only used in the parallel result
+    Given the decomposed file 'Items/X/2.xml':
+      """
+      <ManuallyAddedElement />
+      """
+    And the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Items>
+      		<Item id="1" name="X"/>
+      		<Item id="2" name="X" folder="X"/>
+      	</Items>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose fileRemovalStrategy="includes" <Parallelism>>
+      		<DecomposableElement>
+      			<ElementCondition xpath="@name" />
+      			<TargetFolderNames>
+      				<TargetFolderName xpath="@folder" condition="@folder" />
+      			</TargetFolderNames>
+      			<TargetFileNames>
+      				<TargetFileName xpath="@name" />
+      				<TargetFileName xpath="@id" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file 'Items/X/X.xml' with the following content:
+      """
+      <Item id="2" name="X" folder="X"/>
+      """
+    And I expect a decomposed file 'Items/X/2.xml' with the following content:
+      """
+      <ManuallyAddedElement />
+      """
+
+    Examples: 
+      | Scenario   | Parallelism     |
+      | sequential | parallelism="1" |
+      | parallel   | parallelism="4" |
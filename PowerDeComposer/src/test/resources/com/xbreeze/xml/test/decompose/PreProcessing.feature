@@ -0,0 +1,132 @@
+@Unit
+Feature: Pre-processing
+  Here we test the combination of the NodeRemoval and IdentifierReplacement configuration during decompose.
+  The pre-processing steps are applied together, but the result should be the same as applying them one after another.
+
+  Scenario: NodeRemoval depending on a previous NodeRemoval
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ParentElement name="A">
+      		<RemoveElement />
+      	</ParentElement>
+      	<ParentElement name="B">
+      		<RemoveElement />
+      		<KeepElement />
+      	</ParentElement>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose>
+      		<NodeRemovals>
+      			<NodeRemoval xpath="//RemoveElement" />
+      			<NodeRemoval xpath="//ParentElement[count(child::*) = 0]" />
+      		</NodeRemovals>
+      		<DecomposableElement />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ParentElement name="B">
+      		<KeepElement />
+      	</ParentElement>
+      </RootElement>
+      """
+
+  Scenario: IdentifierReplacement depending on a previous IdentifierReplacement
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Object Id="o1">
+      		<ObjectID>A</ObjectID>
+      	</Object>
+      	<Symbol Id="o2">
+      		<Object Ref="o1" />
+      	</Symbol>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose>
+      		<IdentifierReplacements>
+      			<IdentifierReplacement identifierNodeXPath="//*/@Id[../ObjectID]" replacementValueXPath="../ObjectID" referencingNodeXPath="//*/@Ref" />
+      			<IdentifierReplacement identifierNodeXPath="//Symbol/@Id" replacementValueXPath="concat('Symbol_', ../Object/@Ref)" />
+      		</IdentifierReplacements>
+      		<DecomposableElement />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<Object Id="A">
+      		<ObjectID>A</ObjectID>
+      	</Object>
+      	<Symbol Id="Symbol_A">
+      		<Object Ref="A" />
+      	</Symbol>
+      </RootElement>
+      """
+
+  Scenario: IdentifierReplacement after NodeRemoval
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<KeyElements>
+      		<KeyElement id="1" alternateKey="a" />
+      		<RemovedElements>
+      			<KeyElement id="2" alternateKey="b" />
+      		</RemovedElements>
+      	</KeyElements>
+      	<ReferencingElements>
+      		<ReferencingElement ref="1" />
+      		<ReferencingElement ref="2" />
+      		<RemovedElements>
+      			<ReferencingElement ref="1" />
+      		</RemovedElements>
+      	</ReferencingElements>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose>
+      		<NodeRemovals>
+      			<NodeRemoval xpath="//RemovedElements" />
+      		</NodeRemovals>
+      		<IdentifierReplacements>
+      			<IdentifierReplacement identifierNodeXPath="//*/@id" replacementValueXPath="../@alternateKey" referencingNodeXPath="//*/@ref" />
+      		</IdentifierReplacements>
+      		<DecomposableElement />
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<KeyElements>
+      		<KeyElement id="a" alternateKey="a" />
+      	</KeyElements>
+      	<ReferencingElements>
+      		<ReferencingElement ref="a" />
+      		<ReferencingElement ref="2" />
+      	</ReferencingElements>
+      </RootElement>
+      """
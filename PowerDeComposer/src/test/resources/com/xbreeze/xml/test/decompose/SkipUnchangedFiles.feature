@@ -0,0 +1,104 @@
+@Unit
+Feature: Configure skipUnchangedFiles
+  Here we test the working of the skipUnchangedFiles attribute.
+
+  Background: 
+    Given the decomposed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<c:ChildElements>
+      		<xi:include href="ChildElements/1.xml" />
+      		<xi:include href="ChildElements/2.xml" />
+      		<xi:include href="ChildElements/3.xml" />
+      	</c:ChildElements>
+      </RootElement>
+      """
+    And the decomposed file 'ChildElements/1.xml':
+      """
+      <ChildElement id="1"/>
+      """
+    And the decomposed file 'ChildElements/2.xml':
+      """
+      <ChildElement id="2" name="Former"/>
+      """
+    And the decomposed file 'ChildElements/3.xml':
+      """
+      <ChildElement id="3"/>
+      """
+    And the decomposed file 'ChildElements/1.xml' was last modified a day ago
+    And the decomposed file 'ChildElements/2.xml' was last modified a day ago
+    And the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<c:ChildElements>
+      		<ChildElement id="1"/>
+      		<ChildElement id="2" name="Current"/>
+      	</c:ChildElements>
+      </RootElement>
+      """
+
+  Scenario Outline: skipUnchangedFiles <Scenario>
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose <SkipUnchangedFiles>>
+      		<DecomposableElement>
+      			<ElementCondition xpath="parent::node()[starts-with(name(), 'c:')]" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@id" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<c:ChildElements>
+      		<xi:include href="ChildElements/1.xml" />
+      		<xi:include href="ChildElements/2.xml" />
+      	</c:ChildElements>
+      </RootElement>
+      """
+    And I expect a decomposed file 'ChildElements/2.xml' with the following content:
+      """
+      <ChildElement id="2" name="Current"/>
+      """
+    And I expect the decomposed file 'ChildElements/1.xml' <FirstFileRewritten> rewritten
+    And I expect the decomposed file 'ChildElements/2.xml' is rewritten
+    And I do not expect the file 'ChildElements/3.xml'
+
+    Examples: 
+      | Scenario     | SkipUnchangedFiles          | FirstFileRewritten |
+      | no-specified |                             | is                 |
+      | disabled     | skipUnchangedFiles="false"  | is                 |
+      | enabled      | skipUnchangedFiles="true"   | is not             |
+
+  Scenario: skipUnchangedFiles with multiple writers
+    Given the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose skipUnchangedFiles="true" writerCount="2">
+      		<DecomposableElement>
+      			<ElementCondition xpath="parent::node()[starts-with(name(), 'c:')]" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@id" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file 'ChildElements/2.xml' with the following content:
+      """
+      <ChildElement id="2" name="Current"/>
+      """
+    And I expect the decomposed file 'ChildElements/1.xml' is not rewritten
+    And I expect the decomposed file 'ChildElements/2.xml' is rewritten
+    And I do not expect the file 'ChildElements/3.xml'
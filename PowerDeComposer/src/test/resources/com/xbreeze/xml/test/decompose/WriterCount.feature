@@ -0,0 +1,112 @@
+@Unit
+Feature: Configure writerCount
+  Here we test the working of the writerCount attribute.
+
+  Scenario Outline: writerCount <Scenario>
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<c:ChildElements>
+      		<ChildElement id="1">
+      			<c:SubElements>
+      				<SubElement id="11"/>
+      			</c:SubElements>
+      		</ChildElement>
+      		<ChildElement id="2"/>
+      		<ChildElement id="3"/>
+      	</c:ChildElements>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose <WriterCount>>
+      		<DecomposableElement>
+      			<ElementCondition xpath="parent::node()[starts-with(name(), 'c:')]" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@id" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose
+    Then I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<c:ChildElements>
+      		<xi:include href="ChildElements/1/1.xml" />
+      		<xi:include href="ChildElements/2.xml" />
+      		<xi:include href="ChildElements/3.xml" />
+      	</c:ChildElements>
+      </RootElement>
+      """
+    And I expect a decomposed file 'ChildElements/1/1.xml' with the following content:
+      """
+      <ChildElement id="1">
+      			<c:SubElements>
+      				<xi:include href="SubElements/11.xml" />
+      			</c:SubElements>
+      		</ChildElement>
+      """
+    And I expect a decomposed file 'ChildElements/1/SubElements/11.xml' with the following content:
+      """
+      <SubElement id="11"/>
+      """
+    And I expect a decomposed file 'ChildElements/3.xml' with the following content:
+      """
+      <ChildElement id="3"/>
+      """
+
+    Examples: 
+      | Scenario      | WriterCount     |
+      | no-specified  |                 |
+      | synchronous   | writerCount="0" |
+      | multithreaded | writerCount="4" |
+
+  Scenario Outline: writerCount <Scenario> with a failed write
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<c:ChildElements>
+      		<ChildElement id="1">
+      			<c:SubElements>
+      				<SubElement id="11"/>
+      			</c:SubElements>
+      		</ChildElement>
+      		<ChildElement id="2"/>
+      	</c:ChildElements>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose <WriterCount>>
+      		<DecomposableElement>
+      			<ElementCondition xpath="parent::node()[starts-with(name(), 'c:')]" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@id" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    # The folder of the first child element can't be created, since a file with the same name exists.
+    And the decomposed file 'ChildElements/1':
+      """
+      Not a folder
+      """
+    When I perform a decompose in separate process
+    Then I expect exit code 1
+    And I expect the output contains 'Error while writing file'
+    And I expect the output contains '11.xml'
+
+    Examples: 
+      | Scenario      | WriterCount     |
+      | synchronous   | writerCount="0" |
+      | multithreaded | writerCount="4" |
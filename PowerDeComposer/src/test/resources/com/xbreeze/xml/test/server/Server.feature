@@ -0,0 +1,150 @@
+@Unit
+Feature: Server
+  Here we test executing compose and decompose operations using the PowerDeComposer server.
+  The result of an operation using the server must be equal to the result of the operation on the command line.
+
+  Background:
+    Given a PowerDeComposer server with a request timeout of 1000 ms
+
+  Scenario: Decompose and compose using the server
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId" name="FirstName">
+      			<ChildElementValue>1</ChildElementValue>
+      		</ChildElement>
+      	</ChildElements>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose>
+      		<DecomposableElement>
+      			<ElementCondition xpath="@id" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@name" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose using the server
+    Then I expect exit code 0
+    And I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<xi:include href="ChildElements/FirstName.xml" />
+      	</ChildElements>
+      </RootElement>
+      """
+    When I perform a compose using the server
+    Then I expect exit code 0
+    And I expect a composed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId" name="FirstName">
+      			<ChildElementValue>1</ChildElementValue>
+      		</ChildElement>
+      	</ChildElements>
+      </RootElement>
+      """
+
+  Scenario: Decompose using the server after the config changed
+    Given the composed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<ChildElement id="FirstId" name="FirstName" />
+      	</ChildElements>
+      </RootElement>
+      """
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose>
+      		<DecomposableElement>
+      			<ElementCondition xpath="@id" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@name" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    When I perform a decompose using the server
+    And the config file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <PowerDeComposerConfig>
+      	<Decompose>
+      		<DecomposableElement>
+      			<ElementCondition xpath="@id" />
+      			<TargetFileNames>
+      				<TargetFileName xpath="@id" />
+      			</TargetFileNames>
+      		</DecomposableElement>
+      	</Decompose>
+      </PowerDeComposerConfig>
+      """
+    And I perform a decompose using the server
+    Then I expect exit code 0
+    And I expect a decomposed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElements>
+      		<xi:include href="ChildElements/FirstId.xml" />
+      	</ChildElements>
+      </RootElement>
+      """
+    And I expect a decomposed file 'ChildElements/FirstId.xml' with the following content:
+      """
+      <ChildElement id="FirstId" name="FirstName" />
+      """
+
+  Scenario: Unsuccesfull exit code using the server
+    Given the decomposed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      """
+    When I perform a compose using the server
+    Then I expect exit code 1
+
+  Scenario: Rejected request with an invalid token using the server
+    Given the decomposed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement />
+      """
+    When I perform a compose using the server with the token 'InvalidToken'
+    Then I expect exit code 1
+
+  Scenario: Compose using the server after a client connected without sending a request
+    Given the decomposed file:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElement id="FirstId" />
+      </RootElement>
+      """
+    When a client connects to the server without sending a request
+    And I perform a compose using the server
+    Then I expect exit code 0
+    And I expect a composed file with the following content:
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <RootElement>
+      	<ChildElement id="FirstId" />
+      </RootElement>
+      """